@@ -0,0 +1,186 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.zoodb.index.critbit.CritBit.QueryIteratorKD;
+import org.zoodb.index.critbit.CritBitKD;
+
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
+
+/**
+ * Common interface of the benchmarked indexes.
+ */
+public interface BenchIndex {
+
+	Object put(long[] key, Object value);
+
+	Object get(long[] key);
+
+	Object remove(long[] key);
+
+	/**
+	 * @param oldKey old key
+	 * @param newKey new key
+	 * @return the value of the entry or {@code null} if the key could not be updated
+	 */
+	Object update(long[] oldKey, long[] newKey);
+
+	/**
+	 * Window query.
+	 * @param min lower left corner
+	 * @param max upper right corner
+	 * @return the number of entries in the window
+	 */
+	int query(long[] min, long[] max);
+
+	int size();
+
+	/**
+	 * @return an index for the same tree with its own query buffers, for use by another thread
+	 */
+	BenchIndex newView();
+
+	/**
+	 * A {@link PhTree} of any version. The window query iterator is reused with 
+	 * {@link PhQuery#reset(long[], long[])}.
+	 */
+	class PhTreeIndex implements BenchIndex {
+		private final PhTree<Object> tree;
+		private PhQuery<Object> query;
+
+		public PhTreeIndex(PhTree<Object> tree) {
+			this.tree = tree;
+		}
+
+		public PhTree<Object> tree() {
+			return tree;
+		}
+
+		@Override
+		public Object put(long[] key, Object value) {
+			return tree.put(key, value);
+		}
+
+		@Override
+		public Object get(long[] key) {
+			return tree.get(key);
+		}
+
+		@Override
+		public Object remove(long[] key) {
+			return tree.remove(key);
+		}
+
+		@Override
+		public Object update(long[] oldKey, long[] newKey) {
+			return tree.update(oldKey, newKey);
+		}
+
+		@Override
+		public int query(long[] min, long[] max) {
+			int n = 0;
+			PhQuery<Object> it = query;
+			if (it == null) {
+				it = query = tree.query(min, max);
+			} else {
+				it.reset(min, max);
+			}
+			while (it.hasNext()) {
+				it.nextValue();
+				n++;
+			}
+			return n;
+		}
+
+		@Override
+		public int size() {
+			return tree.size();
+		}
+
+		@Override
+		public BenchIndex newView() {
+			return new PhTreeIndex(tree);
+		}
+	}
+
+	/**
+	 * A k-dimensional {@link CritBitKD}. Updates are implemented as remove and put.
+	 */
+	class CritBitIndex implements BenchIndex {
+		private final CritBitKD<Object> tree;
+
+		public CritBitIndex(CritBitKD<Object> tree) {
+			this.tree = tree;
+		}
+
+		@Override
+		public Object put(long[] key, Object value) {
+			return tree.putKD(key, value);
+		}
+
+		@Override
+		public Object get(long[] key) {
+			return tree.getKD(key);
+		}
+
+		@Override
+		public Object remove(long[] key) {
+			return tree.removeKD(key);
+		}
+
+		@Override
+		public Object update(long[] oldKey, long[] newKey) {
+			if (tree.containsKD(newKey)) {
+				return null;
+			}
+			Object v = tree.removeKD(oldKey);
+			if (v != null) {
+				tree.putKD(newKey, v);
+			}
+			return v;
+		}
+
+		@Override
+		public int query(long[] min, long[] max) {
+			int n = 0;
+			QueryIteratorKD<Object> it = tree.queryKD(min, max);
+			while (it.hasNext()) {
+				it.next();
+				n++;
+			}
+			return n;
+		}
+
+		@Override
+		public int size() {
+			return tree.size();
+		}
+
+		@Override
+		public BenchIndex newView() {
+			return new CritBitIndex(tree);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with the GC profiler, which also reports the allocated bytes per operation
+ * ({@code gc.alloc.rate.norm}). The profiler is not added if other profilers are 
+ * requested with '-prof'. All arguments are passed to JMH, see '-h'.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> list = new ArrayList<>(Arrays.asList(args));
+		if (!list.contains("-prof")) {
+			list.add(0, "-prof");
+			list.add(1, "gc");
+		}
+		org.openjdk.jmh.Main.main(list.toArray(new String[list.size()]));
+	}
+}
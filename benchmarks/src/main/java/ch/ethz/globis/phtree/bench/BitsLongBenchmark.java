@@ -0,0 +1,157 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.globis.phtree.util.BitsLong;
+
+/**
+ * Reading and writing the postfix of a key with 'dims' entries of 'len' bits, and 
+ * inserting and removing a postfix in a node array. The '...Entries' benchmarks read or 
+ * write one entry at a time, the '...Array' benchmarks use the bulk methods of 
+ * {@link BitsLong}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BitsLongBenchmark {
+
+	/**
+	 * Number of node arrays, a power of two. They are used round robin.
+	 */
+	private static final int N = 1024;
+
+	@Param({"3", "8", "16"})
+	public int dims;
+
+	@Param({"8", "21", "32", "63"})
+	public int len;
+
+	private long[][] arrays;
+	private int[] offsets;
+	private long[] prefix;
+	private long prefixMask;
+	private long[] values;
+	private long[] out;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random R = new Random(0);
+		int postBits = dims * len;
+		arrays = new long[N][];
+		offsets = new int[N];
+		for (int i = 0; i < N; i++) {
+			//room for inserting a postfix behind the offset
+			arrays[i] = BitsLong.arrayCreate(4 * postBits + 64);
+			for (int j = 0; j < arrays[i].length; j++) {
+				arrays[i][j] = R.nextLong();
+			}
+			offsets[i] = R.nextInt(2 * postBits);
+		}
+		prefix = new long[dims];
+		values = new long[dims];
+		for (int d = 0; d < dims; d++) {
+			prefix[d] = R.nextLong();
+			values[d] = R.nextLong();
+		}
+		prefixMask = len == 64 ? 0 : -1L << len;
+		out = new long[dims];
+	}
+
+	private int next() {
+		pos = (pos + 1) & (N - 1);
+		return pos;
+	}
+
+	@Benchmark
+	public long[] readEntries() {
+		int i = next();
+		long[] ba = arrays[i];
+		int offs = offsets[i];
+		for (int d = 0; d < dims; d++) {
+			out[d] = (prefix[d] & prefixMask) | BitsLong.readArray(ba, offs, len);
+			offs += len;
+		}
+		return out;
+	}
+
+	@Benchmark
+	public long[] readArray() {
+		int i = next();
+		BitsLong.readArray(arrays[i], offsets[i], len, prefix, prefixMask, out);
+		return out;
+	}
+
+	@Benchmark
+	public long[] writeEntries() {
+		int i = next();
+		long[] ba = arrays[i];
+		int offs = offsets[i];
+		for (int d = 0; d < dims; d++) {
+			BitsLong.writeArray(ba, offs, len, values[d]);
+			offs += len;
+		}
+		return ba;
+	}
+
+	@Benchmark
+	public long[] writeArray() {
+		int i = next();
+		BitsLong.writeArray(arrays[i], offsets[i], len, values);
+		return arrays[i];
+	}
+
+	@Benchmark
+	public long[] insertBits() {
+		int i = next();
+		BitsLong.insertBits(arrays[i], offsets[i], dims * len);
+		return arrays[i];
+	}
+
+	@Benchmark
+	public long[] removeBits() {
+		int i = next();
+		BitsLong.removeBits(arrays[i], offsets[i], dims * len);
+		return arrays[i];
+	}
+}
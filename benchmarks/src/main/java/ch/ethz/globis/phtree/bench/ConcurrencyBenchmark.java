@@ -0,0 +1,239 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+
+/**
+ * Throughput and latency with several threads, use {@link ScalabilityMain} to run it
+ * for a range of thread counts.
+ * <ul>
+ * <li>{@code get} and {@code query}: read-only point and window queries on a shared index.</li>
+ * <li>{@code mixed}: point queries and updates on a shared index, synchronized with a
+ * {@link ReentrantReadWriteLock}. Every thread updates its own entries.</li>
+ * <li>{@code ingest}: every thread inserts and then removes its own entries in its own
+ * index. The trees share the static node and array pools, their contention is visible 
+ * by comparing {@code pooling=true} with {@code pooling=false}, which disables the 
+ * array pools ({@link PhTreeHelper#ARRAY_POOLING}).</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConcurrencyBenchmark {
+
+	/**
+	 * Volume of the windows of {@code query}.
+	 */
+	private static final double SELECTIVITY = 0.0001;
+
+	/**
+	 * Bit that is flipped in each dimension by {@code mixed}.
+	 */
+	private static final long MOVE = 1L << 20;
+
+	/**
+	 * Shared index with all entries and the query windows.
+	 */
+	@State(Scope.Benchmark)
+	public static class Shared extends DataState {
+		@Param({"V11", "V12", "CRITBIT"})
+		public TreeType impl;
+
+		/**
+		 * Percentage of updates in {@code mixed}.
+		 */
+		@Param({"10"})
+		public int writePercent;
+
+		BenchIndex index;
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		long[][] min;
+		long[][] max;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			createKeys();
+			index = createIndex(impl);
+			double halfSide = Math.pow(SELECTIVITY, 1.0 / dims) / 2;
+			double[] center = new double[dims];
+			double[] lower = new double[dims];
+			double[] upper = new double[dims];
+			min = new long[N_QUERIES][];
+			max = new long[N_QUERIES][];
+			generator.reset(SEED + 1);
+			for (int i = 0; i < N_QUERIES; i++) {
+				generator.next(center);
+				for (int d = 0; d < dims; d++) {
+					lower[d] = center[d] - halfSide;
+					upper[d] = center[d] + halfSide;
+				}
+				min[i] = DataGenerator.encode(lower, new long[dims]);
+				max[i] = DataGenerator.encode(upper, new long[dims]);
+			}
+		}
+	}
+
+	/**
+	 * The query buffers of a thread and its share of the entries of {@link Shared}.
+	 */
+	@State(Scope.Thread)
+	public static class Reader {
+		BenchIndex index;
+		long[][] current;
+		long[] buffer;
+		int pos;
+		int query;
+		int ops;
+
+		@Setup(Level.Trial)
+		public void setup(Shared shared, ThreadParams threads) {
+			index = shared.index.newView();
+			int nThreads = threads.getThreadCount();
+			int id = threads.getThreadIndex();
+			current = new long[(shared.n - id + nThreads - 1) / nThreads][];
+			for (int i = 0; i < current.length; i++) {
+				current[i] = shared.keys[id + i * nThreads].clone();
+			}
+			buffer = new long[shared.dims];
+			query = id * (DataState.N_QUERIES / nThreads);
+		}
+
+		int nextPos() {
+			if (++pos >= current.length) {
+				pos = 0;
+			}
+			return pos;
+		}
+
+		int nextQuery() {
+			if (++query >= DataState.N_QUERIES) {
+				query = 0;
+			}
+			return query;
+		}
+	}
+
+	/**
+	 * A private index of a thread for {@code ingest}.
+	 */
+	@State(Scope.Thread)
+	public static class Ingest extends DataState {
+		@Param({"V11", "V12", "CRITBIT"})
+		public TreeType impl;
+
+		@Param({"true", "false"})
+		public boolean pooling;
+
+		BenchIndex index;
+		int pos;
+		boolean removing;
+
+		@Setup(Level.Trial)
+		public void setup(ThreadParams threads) {
+			PhTreeHelper.ARRAY_POOLING = pooling;
+			//every thread inserts 'n' entries in total
+			int nThread = Math.max(1, n / threads.getThreadCount());
+			keys = data.create(dims, SEED).reset(SEED + 1 + threads.getThreadIndex()).keys(nThread);
+			index = impl.create(dims);
+		}
+	}
+
+	@Benchmark
+	public Object get(Shared shared, Reader r) {
+		return r.index.get(r.current[r.nextPos()]);
+	}
+
+	@Benchmark
+	public int query(Shared shared, Reader r) {
+		int q = r.nextQuery();
+		return r.index.query(shared.min[q], shared.max[q]);
+	}
+
+	@Benchmark
+	public Object mixed(Shared shared, Reader r) {
+		int i = r.nextPos();
+		if (++r.ops >= 100) {
+			r.ops = 0;
+		}
+		if (r.ops >= shared.writePercent) {
+			ReentrantReadWriteLock.ReadLock lock = shared.lock.readLock();
+			lock.lock();
+			try {
+				return r.index.get(r.current[i]);
+			} finally {
+				lock.unlock();
+			}
+		}
+		long[] k = r.current[i];
+		long[] k2 = r.buffer;
+		for (int d = 0; d < k.length; d++) {
+			k2[d] = k[d] ^ MOVE;
+		}
+		Object v;
+		ReentrantReadWriteLock.WriteLock lock = shared.lock.writeLock();
+		lock.lock();
+		try {
+			v = r.index.update(k, k2);
+		} finally {
+			lock.unlock();
+		}
+		if (v != null) {
+			r.current[i] = k2;
+			r.buffer = k;
+		}
+		return v;
+	}
+
+	@Benchmark
+	public Object ingest(Ingest s) {
+		long[] k = s.keys[s.pos];
+		Object v = s.removing ? s.index.remove(k) : s.index.put(k, DataState.VALUE);
+		if (++s.pos == s.keys.length) {
+			s.pos = 0;
+			s.removing = !s.removing;
+		}
+		return v;
+	}
+}
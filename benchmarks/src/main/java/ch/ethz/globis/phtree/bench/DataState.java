@@ -0,0 +1,88 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+import ch.ethz.globis.phtree.test.data.Dataset;
+
+/**
+ * Benchmark parameters that are shared by all benchmarks: dimensionality, number of 
+ * entries and data distribution.
+ */
+@State(Scope.Benchmark)
+public abstract class DataState {
+
+	static final Object VALUE = Boolean.TRUE;
+
+	static final long SEED = 0;
+
+	/**
+	 * Number of different queries, they are executed round robin.
+	 */
+	static final int N_QUERIES = 1000;
+
+	@Param({"2", "3", "8", "16", "30"})
+	public int dims;
+
+	@Param({"100000", "1000000", "10000000"})
+	public int n;
+
+	/**
+	 * The data sets TIGER (2D only) and EMBEDDING are not run by default, 
+	 * see {@link Dataset}.
+	 */
+	@Param({"CUBE", "CLUSTER_0_5", "CLUSTER_5", "SKEWED"})
+	public Dataset data;
+
+	/**
+	 * The generator of the data set, it can also be used for query points.
+	 */
+	protected DataGenerator generator;
+
+	/**
+	 * The keys of the entries, there may be a few duplicates.
+	 */
+	protected long[][] keys;
+
+	protected void createKeys() {
+		generator = data.create(dims, SEED);
+		keys = generator.keys(n);
+	}
+
+	/**
+	 * @param type index type
+	 * @return a new index with all 'keys'
+	 */
+	protected BenchIndex createIndex(TreeType type) {
+		BenchIndex index = type.create(dims);
+		for (long[] k : keys) {
+			index.put(k, VALUE);
+		}
+		return index;
+	}
+}
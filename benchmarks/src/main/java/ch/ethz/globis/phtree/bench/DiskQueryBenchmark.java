@@ -0,0 +1,139 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+import ch.ethz.globis.phtree.test.data.Dataset;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.tree.spatial.ph.DiskPHTree;
+import elki.index.tree.spatial.ph.PhTreePage;
+import elki.persistent.MemoryPageFile;
+
+/**
+ * Range queries on a {@link DiskPHTree} with a cold cache, with and without prefetching. 
+ * A range query is a window query on the bounding box of the query sphere whose results 
+ * are filtered by their distance. The page file has no cache, every page read waits for 
+ * 'latency' microseconds, similar to a random read from an SSD. The wait can be longer, 
+ * depending on the timer resolution of the OS. 
+ * The range queries return about 'k' entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DiskQueryBenchmark {
+
+	private static final int PAGE_SIZE = 4096;
+
+	@Param({"3", "8"})
+	public int dims;
+
+	@Param({"100000"})
+	public int n;
+
+	@Param({"100"})
+	public int k;
+
+	@Param({"0", "100"})
+	public int latency;
+
+	@Param({"0", "1", "4"})
+	public int prefetchThreads;
+
+	private NumberVector[] queries;
+	private double radius;
+	private RangeSearcher<NumberVector> range;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		DataGenerator generator = Dataset.CUBE.create(dims, DataState.SEED);
+		Relation<NumberVector> relation = ElkiIndexMain.relation(generator.points(n));
+		generator.reset(DataState.SEED + 1);
+		queries = new NumberVector[DataState.N_QUERIES];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = DoubleVector.wrap(generator.next(new double[dims]));
+		}
+		radius = ElkiIndexMain.radius(relation, queries, k);
+		DiskPHTree<NumberVector> index = new DiskPHTree<>(relation, 
+				new LatencyPageFile(PAGE_SIZE, latency * 1000L), prefetchThreads);
+		index.initialize();
+		DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+		range = index.rangeByObject(dq, radius, 0);
+	}
+
+	@Benchmark
+	public int rangeQuery() {
+		if (++pos == queries.length) {
+			pos = 0;
+		}
+		return range.getRange(queries[pos], radius, DBIDUtil.newDistanceDBIDList()).size();
+	}
+
+	/**
+	 * Memory page file that waits for a fixed time on every page read.
+	 */
+	static class LatencyPageFile extends MemoryPageFile<PhTreePage> {
+
+		private final long latencyNanos;
+
+		LatencyPageFile(int pageSize, long latencyNanos) {
+			super(pageSize);
+			this.latencyNanos = latencyNanos;
+		}
+
+		@Override
+		public PhTreePage readPage(int pageID) {
+			if (latencyNanos > 0) {
+				//no busy waiting, the CPU is free for the query and the other reads
+				LockSupport.parkNanos(latencyNanos);
+			}
+			return super.readPage(pageID);
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+import ch.ethz.globis.phtree.test.data.Dataset;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.Index;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.index.tree.metrical.covertree.CoverTree;
+import elki.index.tree.spatial.kd.MemoryKDTree;
+import elki.index.tree.spatial.kd.split.BoundedMidpointSplit;
+import elki.index.tree.spatial.ph.MemoryPHTree;
+import elki.index.tree.spatial.ph.PhtSettings;
+import elki.index.tree.spatial.rstarvariants.RTreeSettings;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import elki.logging.LoggingConfiguration;
+import elki.persistent.MemoryPageFileFactory;
+
+/**
+ * Comparison of {@link MemoryPHTree} with the in-memory indexes of ELKI. 
+ * Every index is built on the same relation and runs the same kNN and range 
+ * queries through its {@link KNNSearcher} and {@link RangeSearcher}, as ELKI 
+ * algorithms do.
+ * <p>
+ * Reported are the build time, the memory in bytes per entry (difference of the 
+ * used heap, the relation is not included), the 50th, 90th and 99th percentile 
+ * of the query latency in microseconds and the distance computations per query, 
+ * as counted by the indexes themselves with {@link Index#logStatistics()}. The 
+ * range queries use the median distance of the k-th neighbour of the query 
+ * points, so that they return about 'k' entries. The queries are run once for 
+ * warm-up before they are measured.
+ * <p>
+ * Usage: {@code ElkiIndexMain [-index PH,PH_V12,RSTAR,RSTAR_STR,COVER,KD] 
+ * [-data CUBE,CLUSTER_5,SKEWED] [-dims 2,3,8,16] [-n 100000,1000000] [-k 10] 
+ * [-queries 1000]}
+ * <p>
+ * The indexes use the default parameters of ELKI, 'NaN' distance computations 
+ * are reported for an index that does not count them. 'build[dc]' are the 
+ * distance computations of the construction.
+ */
+public class ElkiIndexMain {
+
+	/**
+	 * Indexes with their ELKI default parameters.
+	 */
+	enum IndexType {
+		PH {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new MemoryPHTree.Factory<>();
+			}
+		},
+		PH_V12 {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new MemoryPHTree.Factory<>(false,
+						new PhtSettings(PhtSettings.Version.V12, PhtSettings.Preprocessor.AUTO));
+			}
+		},
+		/** R*-tree, built by insertion */
+		RSTAR {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new RStarTreeFactory<>(new MemoryPageFileFactory<>(PAGE_SIZE), new RTreeSettings());
+			}
+		},
+		/** R*-tree, bulk loaded with sort-tile-recursive */
+		RSTAR_STR {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new RStarTreeFactory<>(new MemoryPageFileFactory<>(PAGE_SIZE), 
+						new RTreeSettings(SortTileRecursiveBulkSplit.STATIC));
+			}
+		},
+		COVER {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new CoverTree.Factory<>(EuclideanDistance.STATIC, 1.3, 10);
+			}
+		},
+		KD {
+			@Override
+			IndexFactory<NumberVector> create() {
+				return new MemoryKDTree.Factory<>(BoundedMidpointSplit.STATIC, 2);
+			}
+		};
+
+		abstract IndexFactory<NumberVector> create();
+	}
+
+	private static final int PAGE_SIZE = 4000;
+
+	private static final String[] COLUMNS = {"index", "data", "dims", "n", "build[ms]", 
+			"mem[B/e]", "build[dc]", "knn50", "knn90", "knn99", "knn[dc]", 
+			"range50", "range90", "range99", "range[dc]", "range[res]"};
+
+	/**
+	 * Number of query points that are used to determine the radius of the range queries.
+	 */
+	private static final int N_RADIUS = 100;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> opt = new HashMap<>();
+		opt.put("-index", "PH,PH_V12,RSTAR,RSTAR_STR,COVER,KD");
+		opt.put("-data", "CUBE,CLUSTER_5,SKEWED");
+		opt.put("-dims", "2,3,8,16");
+		opt.put("-n", "100000,1000000");
+		opt.put("-k", "10");
+		opt.put("-queries", Integer.toString(DataState.N_QUERIES));
+		for (int i = 0; i < args.length; i += 2) {
+			if (!args[i].startsWith("-") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Invalid argument: " + args[i]);
+			}
+			opt.put(args[i], args[i + 1]);
+		}
+		int k = Integer.parseInt(opt.get("-k"));
+		int nQueries = Integer.parseInt(opt.get("-queries"));
+
+		StatisticsHandler stats = new StatisticsHandler();
+		LoggingConfiguration.setStatistics();
+		LoggingConfiguration.replaceDefaultHandler(stats);
+		MemoryMain.initPools();
+
+		print(COLUMNS);
+		for (String data : opt.get("-data").split(",")) {
+			for (String dims : opt.get("-dims").split(",")) {
+				for (String n : opt.get("-n").split(",")) {
+					Dataset ds = Dataset.valueOf(data);
+					int d = Integer.parseInt(dims);
+					DataGenerator generator = ds.create(d, DataState.SEED);
+					Relation<NumberVector> relation = relation(generator.points(Integer.parseInt(n)));
+					generator.reset(DataState.SEED + 1);
+					NumberVector[] queries = new NumberVector[nQueries];
+					for (int i = 0; i < nQueries; i++) {
+						queries[i] = DoubleVector.wrap(generator.next(new double[d]));
+					}
+					double radius = radius(relation, queries, k);
+					for (String index : opt.get("-index").split(",")) {
+						String[] r = run(IndexType.valueOf(index), relation, queries, k, radius, stats);
+						r[1] = data;
+						print(r);
+					}
+				}
+			}
+		}
+	}
+
+	static Relation<NumberVector> relation(double[][] points) {
+		Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(points));
+		db.initialize();
+		return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+	}
+
+	/**
+	 * @return the median distance of the k-th neighbour of the first query points, 
+	 * calculated with a linear scan
+	 */
+	static double radius(Relation<NumberVector> relation, NumberVector[] queries, int k) {
+		int nq = Math.min(N_RADIUS, queries.length);
+		double[] kDist = new double[nq];
+		double[] dist = new double[relation.size()];
+		for (int q = 0; q < nq; q++) {
+			int i = 0;
+			for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+				dist[i++] = EuclideanDistance.STATIC.distance(queries[q], relation.get(it));
+			}
+			Arrays.sort(dist);
+			kDist[q] = dist[Math.min(k, dist.length) - 1];
+		}
+		Arrays.sort(kDist);
+		return kDist[nq / 2];
+	}
+
+	/**
+	 * Build an index and measure it.
+	 * @return the results, without the data set name 
+	 */
+	@SuppressWarnings("unchecked")
+	private static String[] run(IndexType type, Relation<NumberVector> relation, 
+			NumberVector[] queries, int k, double radius, StatisticsHandler stats) {
+		IndexFactory<NumberVector> factory = type.create();
+		long before = MemoryMain.usedHeap();
+		long t0 = System.nanoTime();
+		Index index = factory.instantiate(relation);
+		index.initialize();
+		long buildTime = System.nanoTime() - t0;
+		long withIndex = MemoryMain.usedHeap();
+		Map<String, Long> built = stats.log(index);
+
+		DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+		KNNSearcher<NumberVector> knn = ((KNNIndex<NumberVector>) index).kNNByObject(dq, k, 0);
+		RangeSearcher<NumberVector> range = ((RangeIndex<NumberVector>) index).rangeByObject(dq, radius, 0);
+		long[] knnTimes = new long[queries.length];
+		long[] rangeTimes = new long[queries.length];
+		//warm-up
+		for (NumberVector q : queries) {
+			knn.getKNN(q, k);
+			range.getRange(q, radius);
+		}
+		Map<String, Long> warm = stats.log(index);
+		for (int i = 0; i < queries.length; i++) {
+			long t = System.nanoTime();
+			knn.getKNN(queries[i], k);
+			knnTimes[i] = System.nanoTime() - t;
+		}
+		Map<String, Long> afterKnn = stats.log(index);
+		long results = 0;
+		for (int i = 0; i < queries.length; i++) {
+			long t = System.nanoTime();
+			results += range.getRange(queries[i], radius).size();
+			rangeTimes[i] = System.nanoTime() - t;
+		}
+		Map<String, Long> afterRange = stats.log(index);
+
+		List<String> r = new ArrayList<>();
+		r.add(type.name());
+		r.add(null);
+		r.add(Integer.toString(queries[0].getDimensionality()));
+		r.add(Integer.toString(relation.size()));
+		r.add(format(buildTime / 1e6));
+		r.add(format((withIndex - before) / (double) relation.size()));
+		r.add(format(distances(new HashMap<>(), built)));
+		addPercentiles(r, knnTimes);
+		r.add(format(distances(warm, afterKnn) / queries.length));
+		addPercentiles(r, rangeTimes);
+		r.add(format(distances(afterKnn, afterRange) / queries.length));
+		r.add(format(results / (double) queries.length));
+		return r.toArray(new String[r.size()]);
+	}
+
+	private static void addPercentiles(List<String> r, long[] times) {
+		Arrays.sort(times);
+		for (double p : new double[] {0.5, 0.9, 0.99}) {
+			r.add(format(times[(int) Math.ceil(p * times.length) - 1] / 1e3));
+		}
+	}
+
+	/**
+	 * @return the distance computations between two snapshots of the statistics, 
+	 * or NaN if the index does not report any
+	 */
+	private static double distances(Map<String, Long> before, Map<String, Long> after) {
+		long sum = 0;
+		boolean found = false;
+		for (Map.Entry<String, Long> e : after.entrySet()) {
+			if (isDistanceStatistic(e.getKey())) {
+				sum += e.getValue() - before.getOrDefault(e.getKey(), 0L);
+				found = true;
+			}
+		}
+		return found ? sum : Double.NaN;
+	}
+
+	private static boolean isDistanceStatistic(String key) {
+		String k = key.toLowerCase(Locale.ROOT);
+		return k.contains("distance") && (k.contains("comp") || k.contains("calc"));
+	}
+
+	private static String format(double x) {
+		return String.format(Locale.ROOT, "%.1f", x);
+	}
+
+	private static void print(String[] r) {
+		System.out.println(String.format(Locale.ROOT, 
+				"%-9s %-11s %4s %8s %9s %8s %10s %8s %8s %8s %8s %8s %8s %8s %9s %10s", (Object[]) r));
+	}
+
+	/**
+	 * Collects the statistics that the indexes log, in the format 'key: value'. 
+	 * Other log messages are printed to System.err.
+	 */
+	private static class StatisticsHandler extends Handler {
+		private Map<String, Long> values = new HashMap<>();
+
+		/**
+		 * @return a snapshot of the statistics of the index
+		 */
+		Map<String, Long> log(Index index) {
+			values = new HashMap<>();
+			index.logStatistics();
+			return values;
+		}
+
+		@Override
+		public void publish(LogRecord record) {
+			String msg = record.getMessage();
+			int sep = msg == null ? -1 : msg.lastIndexOf(": ");
+			if (sep > 0) {
+				try {
+					values.put(msg.substring(0, sep), Long.parseLong(msg.substring(sep + 2).trim()));
+					return;
+				} catch (NumberFormatException e) {
+					//not a counter
+				}
+			}
+			System.err.println(msg);
+		}
+
+		@Override
+		public void flush() {
+			System.err.flush();
+		}
+
+		@Override
+		public void close() {
+			//nothing to close
+		}
+	}
+}
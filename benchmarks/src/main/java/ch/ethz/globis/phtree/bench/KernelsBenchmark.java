@@ -0,0 +1,138 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.globis.phtree.PhDistanceF;
+import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.BitTools;
+import ch.ethz.globis.phtree.util.Kernels;
+
+/**
+ * The per-dimension {@link Kernels} with the scalar code and with the Vector API. The 
+ * scalar code is called through {@link PhTreeHelper} and {@link PhDistanceF}, the vector 
+ * kernels are called directly. They are only available if the PH-tree JAR is built with 
+ * {@code -Pjava17}, the benchmark requires Java 17 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KernelsBenchmark {
+
+	/**
+	 * Implementation of the kernels.
+	 */
+	public enum Impl {
+		SCALAR, VECTOR
+	}
+
+	/**
+	 * Number of keys, a power of two. They are used round robin.
+	 */
+	private static final int N = 1024;
+
+	@Param({"8", "16", "24", "32"})
+	public int dims;
+
+	@Param({"SCALAR", "VECTOR"})
+	public Impl impl;
+
+	private Kernels vector;
+	private long[][] keys;
+	private long[] hcPos;
+	private int[] postLen;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (Kernels.VECTOR != null) {
+			throw new IllegalStateException("The scalar code requires -Dphtree.vector=false");
+		}
+		if (impl == Impl.VECTOR) {
+			vector = Kernels.createVector();
+			if (vector == null) {
+				throw new IllegalStateException("Vector kernels not available, build with -Pjava17");
+			}
+		}
+		Random R = new Random(0);
+		keys = new long[N][dims];
+		hcPos = new long[N];
+		postLen = new int[N];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < dims; d++) {
+				keys[i][d] = BitTools.toSortableLong(R.nextGaussian());
+			}
+			hcPos[i] = R.nextLong() & ((1L << dims) - 1);
+			postLen[i] = R.nextInt(64);
+		}
+	}
+
+	private int next() {
+		pos = (pos + 1) & (N - 1);
+		return pos;
+	}
+
+	@Benchmark
+	public long posInArray() {
+		int i = next();
+		return vector == null ? PhTreeHelper.posInArray(keys[i], postLen[i]) 
+				: vector.posInArray(keys[i], postLen[i]);
+	}
+
+	@Benchmark
+	public long[] applyHcPos() {
+		int i = next();
+		if (vector == null) {
+			PhTreeHelper.applyHcPos(hcPos[i], postLen[i], keys[i]);
+		} else {
+			vector.applyHcPos(hcPos[i], postLen[i], keys[i]);
+		}
+		return keys[i];
+	}
+
+	@Benchmark
+	public double distF() {
+		int i = next();
+		long[] v2 = keys[(i + 1) & (N - 1)];
+		return vector == null ? PhDistanceF.THIS.dist(keys[i], v2) : vector.distF(keys[i], v2);
+	}
+}
@@ -0,0 +1,106 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inserting all 'n' entries into an empty index and removing all entries from a full 
+ * index. Each invocation processes all entries, the time per entry is the score 
+ * divided by 'n'.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LoadBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Empty extends DataState {
+		@Param({"V8", "V11", "V12", "CRITBIT"})
+		public TreeType impl;
+
+		BenchIndex index;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			createKeys();
+		}
+
+		@Setup(Level.Invocation)
+		public void setupInvocation() {
+			index = impl.create(dims);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Full extends DataState {
+		@Param({"V8", "V11", "V12", "CRITBIT"})
+		public TreeType impl;
+
+		BenchIndex index;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			createKeys();
+		}
+
+		@Setup(Level.Invocation)
+		public void setupInvocation() {
+			index = createIndex(impl);
+		}
+	}
+
+	@Benchmark
+	public BenchIndex insert(Empty s) {
+		BenchIndex index = s.index;
+		for (long[] k : s.keys) {
+			index.put(k, DataState.VALUE);
+		}
+		return index;
+	}
+
+	@Benchmark
+	public BenchIndex remove(Full s) {
+		BenchIndex index = s.index;
+		for (long[] k : s.keys) {
+			index.remove(k);
+		}
+		return index;
+	}
+}
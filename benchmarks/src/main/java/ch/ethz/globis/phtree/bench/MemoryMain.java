@@ -0,0 +1,291 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ch.ethz.globis.phtree.test.data.Dataset;
+import ch.ethz.globis.phtree.util.PhTreeStats;
+
+/**
+ * Memory footprint of the trees in bytes per entry, calculated with 
+ * {@link PhTreeStats} and measured as difference of the used heap.
+ * <p>
+ * Every configuration is measured in a new JVM, because the array and node pools 
+ * are static. The measured footprint is the used heap with the tree minus the used 
+ * heap after the tree has been released. The latter minus the used heap before the 
+ * tree was built is reported as 'pool', the arrays and nodes that remain in the 
+ * pools after building the tree. The pools themselves, a few MB per array type, 
+ * are created before the measurement and are not included. 
+ * The calculated size is broken down into the components of 
+ * {@link PhTreeStats#addSize(int, long)}.
+ * <p>
+ * Usage: {@code MemoryMain [-impl V11,V12] [-data CUBE,CLUSTER_5,SKEWED] 
+ * [-dims 2,3,8,16] [-n 100000,1000000] [-label dev] [-out file.csv] 
+ * [-baseline file.csv]}
+ * <ul>
+ * <li>'-out' appends the results to a CSV file, with the label in the first column.</li>
+ * <li>'-baseline' compares the results with the last results of a CSV file 
+ * for the same configuration.</li>
+ * </ul>
+ * The forked JVMs get the JVM arguments of this JVM, with the serial GC unless 
+ * another GC is specified.
+ */
+public class MemoryMain {
+
+	private static final String[] COLUMNS = {"label", "impl", "data", "dims", "n", 
+			"entries", "measured", "calculated", "nodes", "ba", "values", "subCodes", 
+			"NT", "pool"};
+
+	/**
+	 * Columns that identify a configuration.
+	 */
+	private static final int N_KEY_COLUMNS = 5;
+
+	/**
+	 * Classes with array pools, they are created when the class is initialized.
+	 */
+	private static final String[] POOL_CLASSES = {"ch.ethz.globis.phtree.util.BitsLong", 
+			"ch.ethz.globis.phtree.util.Refs", "ch.ethz.globis.phtree.util.RefsLong", 
+			"ch.ethz.globis.phtree.util.RefsByte"};
+
+	private static final int MIN_GC = 3;
+	private static final int MAX_GC = 20;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("-single")) {
+			System.out.println(measure(args[1], TreeType.valueOf(args[2]), 
+					Dataset.valueOf(args[3]), Integer.parseInt(args[4]), 
+					Integer.parseInt(args[5])));
+			return;
+		}
+		Map<String, String> opt = new HashMap<>();
+		opt.put("-impl", "V11,V12");
+		opt.put("-data", "CUBE,CLUSTER_5,SKEWED");
+		opt.put("-dims", "2,3,8,16");
+		opt.put("-n", "100000,1000000");
+		opt.put("-label", "dev");
+		for (int i = 0; i < args.length; i += 2) {
+			if (!args[i].startsWith("-") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Invalid argument: " + args[i]);
+			}
+			opt.put(args[i], args[i + 1]);
+		}
+		Map<String, String[]> baseline = opt.containsKey("-baseline") ? 
+				read(new File(opt.get("-baseline"))) : new HashMap<>();
+
+		List<String[]> results = new ArrayList<>();
+		print(COLUMNS);
+		for (String impl : opt.get("-impl").split(",")) {
+			for (String data : opt.get("-data").split(",")) {
+				for (String dims : opt.get("-dims").split(",")) {
+					for (String n : opt.get("-n").split(",")) {
+						String[] r = fork(opt.get("-label"), impl, data, dims, n);
+						results.add(r);
+						print(r);
+						String[] b = baseline.get(key(r));
+						if (b != null) {
+							print(delta(b, r));
+						}
+					}
+				}
+			}
+		}
+
+		if (opt.containsKey("-out")) {
+			File f = new File(opt.get("-out"));
+			boolean header = !f.exists();
+			try (PrintWriter out = new PrintWriter(new FileWriter(f, true))) {
+				if (header) {
+					out.println(String.join(",", COLUMNS));
+				}
+				for (String[] r : results) {
+					out.println(String.join(",", r));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build a tree and measure it.
+	 * @return the results as CSV line 
+	 */
+	private static String measure(String label, TreeType impl, Dataset data, int dims, int n) 
+			throws ClassNotFoundException {
+		long[][] keys = data.create(dims, DataState.SEED).keys(n);
+		initPools();
+		BenchIndex index = impl.create(dims);
+		for (int i = 0; i < Math.min(1000, n); i++) {
+			index.put(keys[i], DataState.VALUE);
+		}
+
+		index = impl.create(dims);
+		long before = usedHeap();
+		for (long[] k : keys) {
+			index.put(k, DataState.VALUE);
+		}
+		long withTree = usedHeap();
+		//use the tree after the measurement, so that it is not collected before
+		int entries = index.size();
+		PhTreeStats stats = index instanceof BenchIndex.PhTreeIndex ? 
+				((BenchIndex.PhTreeIndex) index).tree().getStats() : null;
+		index = null;
+		long after = usedHeap();
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(label).append(',').append(impl).append(',').append(data);
+		sb.append(',').append(dims).append(',').append(n).append(',').append(entries);
+		sb.append(',').append(perEntry(withTree - after, entries));
+		sb.append(',').append(stats == null ? "NaN" : perEntry(stats.getCalculatedMemSize(), entries));
+		for (int c = PhTreeStats.MEM_NODE; c <= PhTreeStats.MEM_NT; c++) {
+			sb.append(',');
+			sb.append(stats == null ? "NaN" : perEntry(stats.getCalculatedMemSize(c), entries));
+		}
+		sb.append(',').append(perEntry(after - before, entries));
+		//keep the keys reachable until all measurements are done
+		return keys.length > 0 ? sb.toString() : null;
+	}
+
+	/**
+	 * Initialize the classes with array pools, so that the pools are not 
+	 * included in a measurement.
+	 */
+	static void initPools() throws ClassNotFoundException {
+		for (String pool : POOL_CLASSES) {
+			Class.forName(pool);
+		}
+	}
+
+	private static String perEntry(long bytes, int entries) {
+		return String.format(Locale.ROOT, "%.1f", bytes / (double) entries);
+	}
+
+	/**
+	 * @return used heap after garbage collection. A single collection does not 
+	 * always release all unreachable objects, the heap is collected until the 
+	 * used heap does not decrease anymore.
+	 */
+	static long usedHeap() {
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < MAX_GC; i++) {
+			System.gc();
+			//the usage after the collection, without objects allocated since then
+			long u = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+					u += pool.getCollectionUsage().getUsed();
+				}
+			}
+			if (u >= used && i >= MIN_GC) {
+				return u;
+			}
+			used = u;
+		}
+		return used;
+	}
+
+	/**
+	 * Measure a configuration in a new JVM.
+	 */
+	private static String[] fork(String... args) throws IOException, InterruptedException {
+		List<String> cmd = new ArrayList<>();
+		cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+		List<String> jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+		cmd.addAll(jvmArgs);
+		if (jvmArgs.stream().noneMatch(a -> a.startsWith("-XX:+Use") && a.endsWith("GC"))) {
+			cmd.add("-XX:+UseSerialGC");
+		}
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(MemoryMain.class.getName());
+		cmd.add("-single");
+		cmd.addAll(Arrays.asList(args));
+		Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		String line = null;
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+			for (String l; (l = in.readLine()) != null; ) {
+				line = l;
+			}
+		}
+		if (p.waitFor() != 0 || line == null) {
+			throw new IllegalStateException("Measurement failed: " + String.join(" ", args));
+		}
+		return line.split(",");
+	}
+
+	/**
+	 * @return the last results in the CSV file per configuration
+	 */
+	private static Map<String, String[]> read(File f) throws IOException {
+		Map<String, String[]> map = new HashMap<>();
+		try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+			in.readLine();
+			for (String l; (l = in.readLine()) != null; ) {
+				if (!l.trim().isEmpty()) {
+					String[] r = l.split(",");
+					map.put(key(r), r);
+				}
+			}
+		}
+		return map;
+	}
+
+	private static String key(String[] r) {
+		return String.join(",", Arrays.copyOfRange(r, 1, N_KEY_COLUMNS));
+	}
+
+	/**
+	 * @return the differences of the byte counts of 'r' to 'base', labeled with 
+	 * the label of 'base'
+	 */
+	private static String[] delta(String[] base, String[] r) {
+		String[] d = r.clone();
+		d[0] = "vs " + base[0];
+		for (int i = N_KEY_COLUMNS + 1; i < r.length; i++) {
+			double x = Double.parseDouble(r[i]) - Double.parseDouble(base[i]);
+			d[i] = String.format(Locale.ROOT, "%+.1f", x);
+		}
+		return d;
+	}
+
+	private static void print(String[] r) {
+		System.out.println(String.format(Locale.ROOT, 
+				"%-8s %-7s %-11s %4s %8s %8s %8s %10s %7s %7s %7s %8s %7s %7s", (Object[]) r));
+	}
+}
@@ -0,0 +1,128 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.globis.phtree.PhDistanceF;
+import ch.ethz.globis.phtree.PhRangeQuery;
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+
+/**
+ * kNN queries and range queries with euclidean distance. The radius of a range query 
+ * is the distance of the k-th nearest neighbour of its center, so both queries return 
+ * about 'k' entries. The query centers follow the distribution of the data.
+ * The query iterators are reused. 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NeighbourQueryBenchmark extends DataState {
+
+	@Param({"V8", "V11", "V12"})
+	public TreeType impl;
+
+	@Param({"1", "10", "100"})
+	public int k;
+
+	private PhKnnQuery<Object> knn;
+	private PhRangeQuery<Object> range;
+	private long[][] centers;
+	private double[] radius;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		createKeys();
+		PhTree<Object> tree = ((BenchIndex.PhTreeIndex) createIndex(impl)).tree();
+		generator.reset(SEED + 1);
+		centers = new long[N_QUERIES][];
+		radius = new double[N_QUERIES];
+		for (int i = 0; i < N_QUERIES; i++) {
+			centers[i] = generator.nextKey(new long[dims]);
+			if (knn == null) {
+				knn = tree.nearestNeighbour(k, PhDistanceF.THIS, null, centers[i]);
+			} else {
+				knn.reset(k, PhDistanceF.THIS, centers[i]);
+			}
+			while (knn.hasNext()) {
+				radius[i] = Math.max(radius[i], knn.nextEntryReuse().dist());
+			}
+		}
+		range = tree.rangeQuery(radius[0], PhDistanceF.THIS, centers[0]);
+	}
+
+	private int next() {
+		if (++pos == N_QUERIES) {
+			pos = 0;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return number of results
+	 */
+	@Benchmark
+	public int knn() {
+		int n = 0;
+		knn.reset(k, PhDistanceF.THIS, centers[next()]);
+		while (knn.hasNext()) {
+			knn.nextValue();
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return number of results
+	 */
+	@Benchmark
+	public int range() {
+		int n = 0;
+		int i = next();
+		range.reset(radius[i], centers[i]);
+		while (range.hasNext()) {
+			range.nextValue();
+			n++;
+		}
+		return n;
+	}
+}
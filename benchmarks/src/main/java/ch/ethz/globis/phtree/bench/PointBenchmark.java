@@ -0,0 +1,109 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point operations on an index with 'n' entries. The entries are accessed round robin
+ * in the order of insertion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PointBenchmark extends DataState {
+
+	/**
+	 * Bit that is flipped in each dimension by {@link #update()}. This moves a point by 
+	 * a small distance.
+	 */
+	private static final long MOVE = 1L << 20;
+
+	@Param({"V8", "V11", "V12", "CRITBIT"})
+	public TreeType impl;
+
+	private BenchIndex index;
+	private long[][] current;
+	private long[] buffer;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		createKeys();
+		index = createIndex(impl);
+		current = new long[n][];
+		for (int i = 0; i < n; i++) {
+			current[i] = keys[i].clone();
+		}
+		buffer = new long[dims];
+	}
+
+	private int next() {
+		if (++pos == n) {
+			pos = 0;
+		}
+		return pos;
+	}
+
+	@Benchmark
+	public Object get() {
+		return index.get(keys[next()]);
+	}
+
+	/**
+	 * Move an entry back and forth by a small distance.
+	 * @return the value of the entry
+	 */
+	@Benchmark
+	public Object update() {
+		int i = next();
+		long[] oldKey = current[i];
+		long[] newKey = buffer;
+		for (int d = 0; d < newKey.length; d++) {
+			newKey[d] = oldKey[d] ^ MOVE;
+		}
+		Object v = index.update(oldKey, newKey);
+		if (v != null) {
+			current[i] = newKey;
+			buffer = oldKey;
+		}
+		return v;
+	}
+}
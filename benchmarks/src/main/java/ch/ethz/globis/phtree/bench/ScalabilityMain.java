@@ -0,0 +1,120 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ConcurrencyBenchmark} with increasing numbers of threads and prints 
+ * the throughput (ops/s) and the 99th percentile latency (us) per thread count.
+ * <p>
+ * Usage: {@code ScalabilityMain [-threads 1,2,4] [JMH options]}. The thread counts 
+ * default to the powers of two up to the number of processors. Unless specified 
+ * otherwise, the benchmark is run with {@code dims=3}, {@code n=1000000} and 
+ * {@code data=CUBE}.
+ */
+public class ScalabilityMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> list = new ArrayList<>(Arrays.asList(args));
+		List<Integer> threads = new ArrayList<>();
+		int i = list.indexOf("-threads");
+		if (i >= 0) {
+			for (String t : list.get(i + 1).split(",")) {
+				threads.add(Integer.parseInt(t.trim()));
+			}
+			list.remove(i + 1);
+			list.remove(i);
+		} else {
+			for (int t = 1; t <= Runtime.getRuntime().availableProcessors(); t *= 2) {
+				threads.add(t);
+			}
+		}
+		CommandLineOptions cmd = new CommandLineOptions(list.toArray(new String[list.size()]));
+
+		//benchmark and parameters -> thread count -> {ops/s, p99}
+		Map<String, Map<Integer, double[]>> table = new TreeMap<>();
+		for (int t : threads) {
+			OptionsBuilder opt = new OptionsBuilder();
+			opt.parent(cmd);
+			defaultParam(cmd, opt, "dims", "3");
+			defaultParam(cmd, opt, "n", "1000000");
+			defaultParam(cmd, opt, "data", "CUBE");
+			if (cmd.getIncludes().isEmpty()) {
+				opt.include(ConcurrencyBenchmark.class.getSimpleName());
+			}
+			opt.threads(t);
+			for (RunResult r : new Runner(opt.build()).run()) {
+				String key = r.getParams().getBenchmark().replaceFirst(".*\\.", "") + " " + params(r);
+				double[] row = table.computeIfAbsent(key, k -> new TreeMap<>())
+						.computeIfAbsent(t, k -> new double[] {Double.NaN, Double.NaN});
+				if (r.getParams().getMode() == Mode.Throughput) {
+					//ops/us -> ops/s
+					row[0] = r.getPrimaryResult().getScore() * 1e6;
+				} else if (r.getParams().getMode() == Mode.SampleTime) {
+					row[1] = r.getPrimaryResult().getStatistics().getPercentile(99);
+				}
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format(Locale.ROOT, "%-60s %8s %14s %10s", 
+				"Benchmark", "Threads", "ops/s", "p99 us"));
+		for (Map.Entry<String, Map<Integer, double[]>> e : table.entrySet()) {
+			for (Map.Entry<Integer, double[]> r : e.getValue().entrySet()) {
+				System.out.println(String.format(Locale.ROOT, "%-60s %8d %14.0f %10.3f", 
+						e.getKey(), r.getKey(), r.getValue()[0], r.getValue()[1]));
+			}
+		}
+	}
+
+	private static void defaultParam(CommandLineOptions cmd, OptionsBuilder opt, 
+			String name, String value) {
+		if (!cmd.getParameter(name).hasValue()) {
+			opt.param(name, value);
+		}
+	}
+
+	private static String params(RunResult r) {
+		StringBuilder sb = new StringBuilder();
+		for (String p : r.getParams().getParamsKeys()) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(p).append('=').append(r.getParams().getParam(p));
+		}
+		return sb.toString();
+	}
+}
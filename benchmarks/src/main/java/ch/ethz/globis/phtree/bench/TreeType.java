@@ -0,0 +1,71 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.zoodb.index.critbit.CritBit;
+
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhTree12;
+import ch.ethz.globis.phtree.v8.PhTree8;
+
+/**
+ * The benchmarked index implementations.
+ */
+public enum TreeType {
+	V8 {
+		@Override
+		public BenchIndex create(int dims) {
+			return new BenchIndex.PhTreeIndex(new PhTree8<>(dims));
+		}
+	},
+	V11 {
+		@Override
+		public BenchIndex create(int dims) {
+			return new BenchIndex.PhTreeIndex(new PhTree11<>(new PhTreeConfig(dims)));
+		}
+	},
+	V12 {
+		@Override
+		public BenchIndex create(int dims) {
+			return new BenchIndex.PhTreeIndex(new PhTree12<>(new PhTreeConfig(dims)));
+		}
+	},
+	/**
+	 * 64 bit {@link CritBit} with k-dimensional keys. It supports no kNN or range 
+	 * queries.
+	 */
+	CRITBIT {
+		@Override
+		public BenchIndex create(int dims) {
+			return new BenchIndex.CritBitIndex(CritBit.createKD(64, dims));
+		}
+	};
+
+	/**
+	 * @param dims number of dimensions
+	 * @return a new empty index
+	 */
+	public abstract BenchIndex create(int dims);
+}
@@ -0,0 +1,99 @@
+package ch.ethz.globis.phtree.bench;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+
+/**
+ * Window queries. The windows are cubes with a volume of 'selectivity', their centers
+ * follow the distribution of the data. For CUBE data, a query returns about
+ * {@code selectivity*n} entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WindowQueryBenchmark extends DataState {
+
+	@Param({"V8", "V11", "V12", "CRITBIT"})
+	public TreeType impl;
+
+	@Param({"0.00001", "0.001", "0.1"})
+	public double selectivity;
+
+	private BenchIndex index;
+	private long[][] min;
+	private long[][] max;
+	private int pos;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		createKeys();
+		index = createIndex(impl);
+		double halfSide = Math.pow(selectivity, 1.0 / dims) / 2;
+		generator.reset(SEED + 1);
+		double[] center = new double[dims];
+		double[] lower = new double[dims];
+		double[] upper = new double[dims];
+		min = new long[N_QUERIES][];
+		max = new long[N_QUERIES][];
+		for (int i = 0; i < N_QUERIES; i++) {
+			generator.next(center);
+			for (int d = 0; d < dims; d++) {
+				lower[d] = center[d] - halfSide;
+				upper[d] = center[d] + halfSide;
+			}
+			min[i] = DataGenerator.encode(lower, new long[dims]);
+			max[i] = DataGenerator.encode(upper, new long[dims]);
+		}
+	}
+
+	/**
+	 * @return number of results
+	 */
+	@Benchmark
+	public int query() {
+		if (++pos == N_QUERIES) {
+			pos = 0;
+		}
+		return index.query(min[pos], max[pos]);
+	}
+}
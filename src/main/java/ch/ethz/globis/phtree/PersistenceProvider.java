@@ -41,9 +41,10 @@ public abstract class PersistenceProvider {
 	
 	/**
 	 * The empty implementation of a persistence provide, it does not provide persistence.
+	 * It is shared by all trees and therefore does not keep a reference to a tree, 
+	 * {@link #loadTree()} returns {@code null}.
 	 */
 	public static class PersistenceProviderNone extends PersistenceProvider {
-		private PhTree<?> tree;
 		@Override
 		public Object registerNode(Externalizable o) {
 			return o;
@@ -80,19 +81,18 @@ public abstract class PersistenceProvider {
 		}
 	
 		@Override
-		public void writeTree(PhTree<?> tree, int dims) {
-			this.tree = tree;
+		public void writeTree(PhTree<?> tree, PhTreeConfig cfg) {
+			//
 		}
 
 		@Override
 		public void updateTree(PhTree<?> tree, int dims, int nEntries, Object rootId) {
-			this.tree = tree;
+			//
 		}
 
-		@SuppressWarnings("unchecked")
 		@Override
 		public <T> PhTree<T> loadTree() {
-			return (PhTree<T>) tree;
+			return null;
 		}
 
 		@Override
@@ -110,13 +110,28 @@ public abstract class PersistenceProvider {
 	 */
 	public abstract Object registerNode(Externalizable o);
 	public abstract void updateNode(Externalizable o);
+
+	/**
+	 * Called when a node has been removed from the tree, i.e. after it has been merged into
+	 * its parent. The default implementation does nothing.
+	 * @param o the removed node
+	 */
+	public void removeNode(Externalizable o) {
+		//
+	}
 	
 	public abstract String getDescription();
 	public abstract int statsGetPageReads();
 	public abstract int statsGetPageWrites();
 	public abstract void statsReset();
 
-	public abstract void writeTree(PhTree<?> tree, int dims);
+	/**
+	 * Called when a new tree is created.
+	 * @param tree the tree
+	 * @param cfg dimensionality, depth and node thresholds of the tree, they must be 
+	 * restored by {@link #loadTree()}
+	 */
+	public abstract void writeTree(PhTree<?> tree, PhTreeConfig cfg);
 
 	public abstract void updateTree(PhTree<?> tree, int dims, int nEntries, Object rootId);
 
@@ -124,6 +139,42 @@ public abstract class PersistenceProvider {
 	
 	public abstract void flush();
 
+	/**
+	 * Hint that the node with the given identifier is likely to be loaded soon. 
+	 * Implementations may start loading the node asynchronously. 
+	 * The default implementation does nothing.
+	 * @param o the node identifier
+	 */
+	public void prefetchNode(Object o) {
+		//
+	}
+
+	/**
+	 * @return true if {@link #prefetchNode(Object)} should be called by query iterators.
+	 */
+	public boolean isPrefetchEnabled() {
+		return false;
+	}
+
+	/**
+	 * Called by the tree for every key that is inserted.
+	 * The default implementation does nothing.
+	 * @param key the key
+	 */
+	public void registerKey(long[] key) {
+		//
+	}
+
+	/**
+	 * Allows the persistence provider to answer point lookups for absent keys without 
+	 * loading any nodes. The default implementation always returns true.
+	 * @param key the key
+	 * @return false if the key is definitely not in the tree, otherwise true.
+	 */
+	public boolean mightContainKey(long[] key) {
+		return true;
+	}
+
 	public static void write(Object[] values, ObjectOutput out) throws IOException {
 		out.writeShort(values.length);
 		for (int i = 0; i < values.length; i++) {
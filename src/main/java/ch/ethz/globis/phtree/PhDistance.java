@@ -48,4 +48,32 @@ public interface PhDistance {
 	 * @param outMax returns the new max values
    */
   void toMBB(double distance, long[] center, long[] outMin, long[] outMax);
+
+  /**
+   * Returns the minimum distance between {@code v} and any point in the node 
+   * with the given prefix. This is used to prune nodes during queries.
+   * <p>
+   * The default implementation calculates the distance between {@code v} and
+   * the closest point of the node, which is correct for distances that are
+   * monotone in every dimension, such as the Lp norms. It allocates a buffer for the 
+   * closest point, implementations should override it to keep queries allocation-free. 
+   * 
+   * @param v a value
+   * @param prefix the prefix of the node
+   * @param bitsToIgnore the number of postfix bits of the node
+   * @return The minimum distance between v and the node.
+   */
+  default double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    long[] buf = new long[prefix.length];
+    for (int i = 0; i < buf.length; i++) {
+      //if v is outside the node, return distance to closest edge,
+      //otherwise return v itself (assume possible distance=0)
+      long min = prefix[i] & maskMin;
+      long max = prefix[i] | maskMax;
+      buf[i] = min > v[i] ? min : (max < v[i] ? max : v[i]); 
+    }
+    return dist(v, buf);
+  }
 }
\ No newline at end of file
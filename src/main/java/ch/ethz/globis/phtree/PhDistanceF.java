@@ -1,6 +1,7 @@
 package ch.ethz.globis.phtree;
 
 import ch.ethz.globis.phtree.util.BitTools;
+import ch.ethz.globis.phtree.util.Kernels;
 
 
 /**
@@ -21,6 +22,9 @@ public class PhDistanceF implements PhDistance {
    */
   @Override
   public double dist(long[] v1, long[] v2) {
+    if (v1.length >= Kernels.VECTOR_MIN_DIMS) {
+      return Kernels.VECTOR.distF(v1, v2);
+    }
     double d = 0;
     for (int i = 0; i < v1.length; i++) {
       double dl = BitTools.toDouble(v1[i]) - BitTools.toDouble(v2[i]);
@@ -38,4 +42,20 @@ public class PhDistanceF implements PhDistance {
       outMax[i] = BitTools.toSortableLong(c + distance);
     }
   }
+
+  @Override
+  public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    double d = 0;
+    for (int i = 0; i < v.length; i++) {
+      //distance to the closest point of the node, see PhDistance
+      long min = prefix[i] & maskMin;
+      long max = prefix[i] | maskMax;
+      long c = min > v[i] ? min : (max < v[i] ? max : v[i]);
+      double dl = BitTools.toDouble(v[i]) - BitTools.toDouble(c);
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
 }
\ No newline at end of file
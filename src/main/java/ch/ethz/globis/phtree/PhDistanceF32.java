@@ -0,0 +1,84 @@
+package ch.ethz.globis.phtree;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import ch.ethz.globis.phtree.util.BitTools;
+
+
+/**
+ * Calculate the euclidean distance for {@code float} values that are encoded with
+ * {@link BitTools#toSortableUInt(float)}, see {@link PhTreeF32}.
+ *
+ * @see PhDistance
+ */
+public class PhDistanceF32 implements PhDistance {
+
+	public static final PhDistanceF32 THIS = new PhDistanceF32();
+
+  /**
+	 * Calculate the euclidean distance for encoded {@code float} values.
+   *
+   * @see PhDistance#dist(long[], long[])
+   */
+  @Override
+  public double dist(long[] v1, long[] v2) {
+    double d = 0;
+    for (int i = 0; i < v1.length; i++) {
+      double dl = (double) BitTools.uIntToFloat(v1[i]) - BitTools.uIntToFloat(v2[i]);
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
+
+  @Override
+  public void toMBB(double distance, long[] center, long[] outMin,
+      long[] outMax) {
+    for (int i = 0; i < center.length; i++) {
+      double c = BitTools.uIntToFloat(center[i]);
+      //round outwards, the box must not exclude any float within the distance
+      double min = c - distance;
+      double max = c + distance;
+      float fMin = (float) min;
+      float fMax = (float) max;
+      outMin[i] = BitTools.toSortableUInt(fMin > min ? Math.nextDown(fMin) : fMin);
+      outMax[i] = BitTools.toSortableUInt(fMax < max ? Math.nextUp(fMax) : fMax);
+    }
+  }
+
+  @Override
+  public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    double d = 0;
+    for (int i = 0; i < v.length; i++) {
+      //distance to the closest point of the node, see PhDistance
+      long min = prefix[i] & maskMin;
+      long max = prefix[i] | maskMax;
+      long c = min > v[i] ? min : (max < v[i] ? max : v[i]);
+      double dl = (double) BitTools.uIntToFloat(v[i]) - BitTools.uIntToFloat(c);
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
+}
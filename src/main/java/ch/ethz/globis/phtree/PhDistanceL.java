@@ -71,4 +71,20 @@ public class PhDistanceL implements PhDistance {
 			outMax[i] = (long) (center[i] + distance + 1);
     }
   }
+
+  @Override
+  public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    double d = 0;
+    for (int i = 0; i < v.length; i++) {
+      //distance to the closest point of the node, see PhDistance
+      long min = prefix[i] & maskMin;
+      long max = prefix[i] | maskMax;
+      long c = min > v[i] ? min : (max < v[i] ? max : v[i]);
+      double dl = (double)v[i] - (double)c;
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
 }
\ No newline at end of file
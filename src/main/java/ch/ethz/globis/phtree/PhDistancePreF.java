@@ -0,0 +1,87 @@
+package ch.ethz.globis.phtree;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+
+/**
+ * Calculate the euclidean distance for {@code double} values that are encoded
+ * with any {@link PreProcessorPointF}. The keys are converted back with 
+ * {@link PreProcessorPointF#post(long[], double[])}.
+ * <p>
+ * Instances use internal buffers and must not be shared between threads.
+ * 
+ * @see PhDistanceF
+ */
+public class PhDistancePreF implements PhDistance {
+
+  private final PreProcessorPointF pre;
+  private final double[] d1;
+  private final double[] d2;
+  private final long[] buf;
+
+  public PhDistancePreF(PreProcessorPointF pre, int dims) {
+    this.pre = pre;
+    this.d1 = new double[dims];
+    this.d2 = new double[dims];
+    this.buf = new long[dims];
+  }
+
+  @Override
+  public double dist(long[] v1, long[] v2) {
+    pre.post(v1, d1);
+    pre.post(v2, d2);
+    double d = 0;
+    for (int i = 0; i < d1.length; i++) {
+      double dl = d1[i] - d2[i];
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
+
+  @Override
+  public void toMBB(double distance, long[] center, long[] outMin,
+      long[] outMax) {
+    pre.post(center, d1);
+    for (int i = 0; i < d1.length; i++) {
+      d2[i] = d1[i] + distance;
+      d1[i] -= distance;
+    }
+    pre.pre(d1, outMin);
+    pre.pre(d2, outMax);
+  }
+
+  @Override
+  public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    for (int i = 0; i < buf.length; i++) {
+      //closest point of the node, see PhDistance
+      long min = prefix[i] & maskMin;
+      long max = prefix[i] | maskMax;
+      buf[i] = min > v[i] ? min : (max < v[i] ? max : v[i]);
+    }
+    return dist(v, buf);
+  }
+}
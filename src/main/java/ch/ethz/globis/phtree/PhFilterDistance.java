@@ -38,6 +38,8 @@ public class PhFilterDistance implements PhFilter {
   private long[] v;
   private PhDistance dist;
   private double maxDist;
+  private double lastDist = Double.NaN;
+  private long[] lastKey;
 
 	/**
 	 * Set the parameters for this distance filter.
@@ -57,24 +59,38 @@ public class PhFilterDistance implements PhFilter {
 
   @Override
   public boolean isValid(long[] key) {
-    return dist.dist(v, key) <= maxDist;
+    double d = dist.dist(v, key);
+    if (d <= maxDist) {
+      if (lastKey == null || lastKey.length != key.length) {
+        lastKey = new long[key.length];
+      }
+      System.arraycopy(key, 0, lastKey, 0, key.length);
+      lastDist = d;
+      return true;
+    }
+    return false;
   }
 
   @Override
   public boolean isValid(int bitsToIgnore, long[] prefix) {
-    long maskMin = (-1L) << bitsToIgnore;
-    long maskMax = ~maskMin;
-    long[] buf = new long[prefix.length];
-    for (int i = 0; i < buf.length; i++) {
-      //if v is outside the node, return distance to closest edge,
-      //otherwise return v itself (assume possible distance=0)
-      long min = prefix[i] & maskMin;
-      long max = prefix[i] | maskMax;
-      buf[i] = min > v[i] ? min : (max < v[i] ? max : v[i]); 
-    }
-    return dist.dist(v, buf) <= maxDist;
+    return dist.distToPrefix(v, prefix, bitsToIgnore) <= maxDist;
   }
 
+	/**
+	 * @return the distance of the last key that was accepted by {@link #isValid(long[])}
+	 */
+	public double getLastDistance() {
+		return lastDist;
+	}
+
+	/**
+	 * @return the last key that was accepted by {@link #isValid(long[])}, or {@code null}.
+	 * The returned array is reused.
+	 */
+	public long[] getLastKey() {
+		return lastKey;
+	}
+
 	public PhDistance getDistance() {
 		return dist;
 	}
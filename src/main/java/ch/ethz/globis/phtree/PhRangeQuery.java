@@ -1,7 +1,10 @@
 package ch.ethz.globis.phtree;
 
+import java.util.Arrays;
+
 import ch.ethz.globis.phtree.PhTree.PhIterator;
 import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * Range query.
@@ -18,6 +21,13 @@ public class PhRangeQuery<T> implements PhIterator<T> {
   private final int dims;
   private final PhDistance dist;
   private final PhFilterDistance filter;
+  private long[] center;
+  private PhQueryStats stats;
+  //The iterators look ahead, so the distance that was last calculated by the filter
+  //usually belongs to the entry that will be returned next.
+  private final long[] nextKey;
+  private double nextDist = Double.NaN;
+  private double currentDist = Double.NaN;
 
   public PhRangeQuery(PhQuery<T> iter, PhTree<T> tree, 
       PhDistance dist, PhFilterDistance filter) {
@@ -27,28 +37,73 @@ public class PhRangeQuery<T> implements PhIterator<T> {
     this.filter = filter;
     this.min = new long[dims];
     this.max = new long[dims];
+    this.nextKey = new long[dims];
   }
 
   public PhRangeQuery<T> reset(double range, long... center) {
-    filter.set(center, dist, range);
+    this.center = center;
+    filter.set(center, stats == null ? dist : stats.countDistances(dist), range);
     dist.toMBB(range, center, min, max);
     q.reset(min, max);
+    lookAhead();
+    currentDist = Double.NaN;
     return this;
   }
 
+  /**
+   * Count the work of the following calls to {@link #reset(double, long...)} in 
+   * 'stats', see {@link PhQuery#setStats(PhQueryStats)}.
+   * @param stats the statistics, or {@code null} to stop counting
+   */
+  public void setStats(PhQueryStats stats) {
+    this.stats = stats;
+    q.setStats(stats);
+  }
+
+  /**
+   * The distance of the entry that was returned by the last call to any of the
+   * next() methods. The distance has already been calculated by the query, 
+   * so there is usually no need to calculate it a second time.
+   * @return the distance between the center and the last returned entry
+   */
+  public double lastDistance() {
+    return currentDist;
+  }
+
+  private void lookAhead() {
+    long[] key = filter.getLastKey();
+    if (key != null) {
+      System.arraycopy(key, 0, nextKey, 0, dims);
+      nextDist = filter.getLastDistance();
+    }
+  }
+
+  private PhEntry<T> advance() {
+    PhEntry<T> e = q.nextEntryReuse();
+    long[] key = e.getKey();
+    if (Arrays.equals(key, nextKey)) {
+      currentDist = nextDist;
+    } else {
+      //Iterators that look ahead by more than one entry, such as in v8
+      currentDist = dist.dist(center, key);
+    }
+    lookAhead();
+    return e;
+  }
+
   @Override
   public long[] nextKey() {
-    return q.nextKey();
+    return advance().getKey().clone();
   }
 
   @Override
   public T nextValue() {
-    return q.nextValue();
+    return advance().getValue();
   }
 
   @Override
   public PhEntry<T> nextEntry() {
-    return q.nextEntry();
+    return new PhEntry<>(advance());
   }
 
   @Override
@@ -58,7 +113,8 @@ public class PhRangeQuery<T> implements PhIterator<T> {
 
   @Override
   public T next() {
-    return q.next();
+    T v = advance().getValue();
+    return v == PhTreeHelper.NULL ? null : v;
   }
 
   @Override
@@ -68,7 +124,7 @@ public class PhRangeQuery<T> implements PhIterator<T> {
 
   @Override
   public PhEntry<T> nextEntryReuse() {
-    return q.nextEntryReuse();
+    return advance();
   }
 
 }
@@ -1,9 +1,21 @@
 package ch.ethz.globis.phtree;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 import ch.ethz.globis.phtree.util.PhIteratorBase;
 import ch.ethz.globis.phtree.util.PhMapper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.PhTreeStats;
 import ch.ethz.globis.phtree.v11.PhTree11;
 import ch.ethz.globis.phtree.v12.PhTree12;
@@ -102,7 +114,8 @@ public abstract class PhTree<T> {
 
   /**
    * 
-   * @return The bit depths for the tree. The latest versions will always return 64. 
+   * @return The bit depths for the tree. This is 64 unless a smaller depth is configured 
+   * with {@link PhTreeConfig#setDepth(int)}.
    */
   public abstract int getBitDepth();
 
@@ -144,6 +157,20 @@ public abstract class PhTree<T> {
    */
   public abstract PhRangeQuery<T> rangeQuery(double dist, PhDistance optionalDist, long... center);
 
+  /**
+   * Incremental nearest neighbour query. The entries are returned in order of increasing 
+   * distance from the center, without a fixed number of results. Nodes are visited 
+   * best-first, ordered by the distance of their prefix to the center
+   * (see {@link PhDistance#distToPrefix(long[], long[], int)}).
+   * @param dist the distance function, can be {@code null}. The default is {@link PhDistanceL}.
+   * @param center the center point
+   * @return The query iterator.
+   * @throws UnsupportedOperationException if the tree does not support incremental queries
+   */
+  public PhIncrementalQuery<T> incrementalNearestNeighbour(PhDistance dist, long... center) {
+    throw new UnsupportedOperationException(getClass().getSimpleName());
+  }
+
   /**
    * Update the key of an entry. Update may fail if the old key does not exist, or if the new
    * key already exists.
@@ -195,9 +222,80 @@ public abstract class PhTree<T> {
    * @param <T> the type of the values
    */
   public static <T> PhTree<T> create(PhTreeConfig cfg) {
+    if (cfg.getPersistenceProvider() != PersistenceProvider.NONE) {
+      //Only v12 supports persistence providers
+      return new PhTree12<>(cfg);
+    }
     return new PhTree11<>(cfg);
   }
 
+  /**
+   * Write a snapshot of the tree to a stream. Nodes are written depth-first in their
+   * internal representation, which allows {@link #readSnapshot(InputStream)} to rebuild 
+   * the tree without re-inserting any entries. 
+   * Values are written with Java serialization, they must be {@link java.io.Serializable}.
+   * <p>
+   * The stream is not closed. For best performance, the stream should be buffered.
+   * 
+   * @param os the output stream
+   * @throws IOException if writing fails
+   * @throws UnsupportedOperationException if the tree does not support snapshots
+   */
+  public void writeSnapshot(OutputStream os) throws IOException {
+    throw new UnsupportedOperationException(getClass().getSimpleName());
+  }
+
+  /**
+   * Write a snapshot of the tree to a channel.
+   * 
+   * @param channel the channel
+   * @throws IOException if writing fails
+   * @see #writeSnapshot(OutputStream)
+   */
+  public void writeSnapshot(WritableByteChannel channel) throws IOException {
+    BufferedOutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+    writeSnapshot(os);
+    os.flush();
+  }
+
+  /**
+   * Read a tree from a snapshot that was written with {@link #writeSnapshot(OutputStream)}.
+   * Trees written by {@link PhTree12} are returned without persistence provider. 
+   * <p>
+   * The stream is not closed. For best performance, the stream should be buffered.
+   * 
+   * @param is the input stream
+   * @return the tree
+   * @throws IOException if reading fails
+   * @param <T> the type of the values
+   */
+  public static <T> PhTree<T> readSnapshot(InputStream is) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(is);
+    int version = PhSnapshot.readHeader(in);
+    switch (version) {
+    case PhSnapshot.VERSION_V11:
+      return PhTree11.readSnapshotData(in);
+    case PhSnapshot.VERSION_V12:
+      return PhTree12.readSnapshotData(in);
+    default:
+      throw new StreamCorruptedException("Unsupported snapshot version: " + version);
+    }
+  }
+
+  /**
+   * Read a tree from a snapshot channel. 
+   * Data beyond the end of the snapshot may be consumed from the channel.
+   * 
+   * @param channel the channel
+   * @return the tree
+   * @throws IOException if reading fails
+   * @param <T> the type of the values
+   * @see #readSnapshot(InputStream)
+   */
+  public static <T> PhTree<T> readSnapshot(ReadableByteChannel channel) throws IOException {
+    return readSnapshot(new BufferedInputStream(Channels.newInputStream(channel)));
+  }
+
   /**
    * Interface for iterators that can reuse entries to avoid garbage collection. 
    *
@@ -247,6 +345,13 @@ public abstract class PhTree<T> {
      * @param max max values
      */
     void reset(long[] min, long[] max);
+
+    /**
+     * Count the work of the following calls to {@link #reset(long[], long[])} in 
+     * 'stats'.
+     * @param stats the statistics, or {@code null} to stop counting
+     */
+    void setStats(PhQueryStats stats);
   }
 
   /**
@@ -269,6 +374,47 @@ public abstract class PhTree<T> {
      * @return the query itself
      */
     PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center);
+
+    /**
+     * Count the work of the following calls to {@link #reset(int, PhDistance, long...)} 
+     * in 'stats'.
+     * @param stats the statistics, or {@code null} to stop counting
+     */
+    void setStats(PhQueryStats stats);
+  }
+
+  /**
+   * Interface for incremental nearest neighbor queries. The reset methods allows reusing 
+   * the query.
+   * 
+   * @param <T> the type of the iterator value
+   */
+  public static interface PhIncrementalQuery<T> extends PhIteratorBase<long[], T, PhEntryDist<T>> {
+
+    /**
+     * @return the next key
+     */
+    long[] nextKey();
+
+    /**
+     * Reset the query with the new parameters. This also removes the maximum distance.
+     * @param dist Distance function
+     * @param center The point to find the nearest neighbours for
+     * @return the query itself
+     */
+    PhIncrementalQuery<T> reset(PhDistance dist, long... center);
+
+    /**
+     * Set the maximum distance. Entries and nodes that are further away are not visited.
+     * @param maxDist the maximum distance
+     */
+    void setMaxDistance(double maxDist);
+
+    /**
+     * @return a lower bound for the distance of all entries that have not been returned yet,
+     * or {@link Double#POSITIVE_INFINITY} if there are no more entries.
+     */
+    double lowerBound();
   }
 
   /**
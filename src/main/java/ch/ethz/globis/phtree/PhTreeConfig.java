@@ -23,12 +23,39 @@ You should have received a copy of the GNU Affero General Public License
 along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
 public class PhTreeConfig {
 
+	/**
+	 * Default bias for switching nodes between linear (LHC) and hypercube (AHC)
+	 * representation.
+	 */
+	public static final double DEFAULT_AHC_LHC_BIAS = 2.0;
+
+	/**
+	 * Default number of entries at which nodes switch to the nested tree (NT)
+	 * representation.
+	 */
+	public static final int DEFAULT_NT_THRESHOLD = 150;
+
+	/**
+	 * Default number of skipped entries at which iterators use binary search
+	 * to find the first matching entry of a linear (LHC) node.
+	 */
+	public static final int DEFAULT_LHC_BINARY_SEARCH_THRESHOLD = 50;
+
 	private int dimUser;
 	private int dimActual;
 	private boolean[] unique; 
 	private PersistenceProvider persProvider = PersistenceProvider.NONE;
+	private double ahcLhcBias = DEFAULT_AHC_LHC_BIAS;
+	private int ntThreshold = DEFAULT_NT_THRESHOLD;
+	private int lhcBinarySearchThreshold = DEFAULT_LHC_BINARY_SEARCH_THRESHOLD;
+	private int depth = 64;
 	
 	public PhTreeConfig(int dim) {
 		this.dimUser = dim;
@@ -36,6 +63,21 @@ public class PhTreeConfig {
 		this.unique = new boolean[dimUser];
 	}
 	
+	/**
+	 * @return a copy of this configuration, with the same persistence provider
+	 */
+	public PhTreeConfig copy() {
+		PhTreeConfig cfg = new PhTreeConfig(dimUser);
+		cfg.dimActual = dimActual;
+		cfg.unique = unique.clone();
+		cfg.persProvider = persProvider;
+		cfg.ahcLhcBias = ahcLhcBias;
+		cfg.ntThreshold = ntThreshold;
+		cfg.lhcBinarySearchThreshold = lhcBinarySearchThreshold;
+		cfg.depth = depth;
+		return cfg;
+	}
+
 	/**
 	 * Mark a dimension as unique
 	 * @param dim number of dimensions
@@ -62,7 +104,20 @@ public class PhTreeConfig {
 	 * @return Depth in bits.
 	 */
 	public int getDepth() {
-		return 64;
+		return depth;
+	}
+
+	/**
+	 * Set the number of bits per key value. With a depth of less than 64 all key values 
+	 * must be in the range [0, 2^depth-1], the tree then needs fewer nodes and 
+	 * shorter infixes. This is only supported by PhTree11 and PhTree12.
+	 * @param depth the depth in bits, between 1 and 64
+	 */
+	public void setDepth(int depth) {
+		if (depth < 1 || depth > 64) {
+			throw new IllegalArgumentException("depth=" + depth);
+		}
+		this.depth = depth;
 	}
 
 	public int[] getDimsToSplit() {
@@ -84,4 +139,89 @@ public class PhTreeConfig {
 	public PersistenceProvider getPersistenceProvider() {
 		return persProvider;
 	}
+
+	/**
+	 * Nodes use the hypercube (AHC) representation when
+	 * size(LHC) * bias >= size(AHC). Larger values favour AHC, which is faster
+	 * but needs more space. This is only supported by PhTree11 and PhTree12.
+	 * @param ahcLhcBias the bias, must not be negative
+	 */
+	public void setAhcLhcBias(double ahcLhcBias) {
+		if (!(ahcLhcBias >= 0)) {
+			throw new IllegalArgumentException("ahcLhcBias=" + ahcLhcBias);
+		}
+		this.ahcLhcBias = ahcLhcBias;
+	}
+
+	public double getAhcLhcBias() {
+		return ahcLhcBias;
+	}
+
+	/**
+	 * Nodes with at least this number of entries are stored as nested tree (NT).
+	 * This is only supported by PhTree11 and PhTree12.
+	 * @param ntThreshold the threshold, must be positive
+	 */
+	public void setNtThreshold(int ntThreshold) {
+		if (ntThreshold <= 0) {
+			throw new IllegalArgumentException("ntThreshold=" + ntThreshold);
+		}
+		this.ntThreshold = ntThreshold;
+	}
+
+	public int getNtThreshold() {
+		return ntThreshold;
+	}
+
+	/**
+	 * During queries on linear (LHC) nodes, the first entry in the query range
+	 * is found by binary search if at least this number of entries would
+	 * otherwise be scanned. This is only supported by PhTree11 and PhTree12.
+	 * @param lhcBinarySearchThreshold the threshold, must not be negative
+	 */
+	public void setLhcBinarySearchThreshold(int lhcBinarySearchThreshold) {
+		if (lhcBinarySearchThreshold < 0) {
+			throw new IllegalArgumentException(
+					"lhcBinarySearchThreshold=" + lhcBinarySearchThreshold);
+		}
+		this.lhcBinarySearchThreshold = lhcBinarySearchThreshold;
+	}
+
+	public int getLhcBinarySearchThreshold() {
+		return lhcBinarySearchThreshold;
+	}
+
+	/**
+	 * Write the dimensionality, depth and node thresholds. Unique dimensions and
+	 * the persistence provider are not written.
+	 * @param out output
+	 * @throws IOException if writing fails
+	 * @see #read(DataInput)
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(dimActual);
+		out.writeByte(depth);
+		out.writeDouble(ahcLhcBias);
+		out.writeInt(ntThreshold);
+		out.writeInt(lhcBinarySearchThreshold);
+	}
+
+	/**
+	 * Read a configuration that was written with {@link #write(DataOutput)}.
+	 * @param in input
+	 * @return the configuration
+	 * @throws IOException if reading fails
+	 */
+	public static PhTreeConfig read(DataInput in) throws IOException {
+		PhTreeConfig cfg = new PhTreeConfig(in.readInt());
+		try {
+			cfg.setDepth(in.readByte());
+			cfg.setAhcLhcBias(in.readDouble());
+			cfg.setNtThreshold(in.readInt());
+			cfg.setLhcBinarySearchThreshold(in.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new StreamCorruptedException("Invalid tree configuration: " + e.getMessage());
+		}
+		return cfg;
+	}
 }
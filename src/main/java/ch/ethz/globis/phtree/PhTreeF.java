@@ -8,7 +8,7 @@ import ch.ethz.globis.phtree.PhTree.PhQuery;
 import ch.ethz.globis.phtree.pre.PreProcessorPointF;
 import ch.ethz.globis.phtree.util.PhIteratorBase;
 import ch.ethz.globis.phtree.util.PhMapper;
-import ch.ethz.globis.phtree.util.PhMapperK;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * k-dimensional index (quad-/oct-/n-tree).
@@ -22,19 +22,23 @@ import ch.ethz.globis.phtree.util.PhMapperK;
  */
 public class PhTreeF<T> {
 
-  private final PHMF<T> pefMapper = new PHMF<>();
+  private final PHMF<T> pefMapper;
 
   private final PhTree<T> pht;
   private final PreProcessorPointF pre;
 
   protected PhTreeF(int dim, PreProcessorPointF pre) {
-    this.pht = PhTree.create(dim);
-    this.pre = pre;
+    this(PhTree.create(dim), pre);
   }
 
   protected PhTreeF(PhTree<T> tree) {
+    this(tree, new PreProcessorPointF.IEEE());
+  }
+
+  protected PhTreeF(PhTree<T> tree, PreProcessorPointF pre) {
     this.pht = tree;
-    this.pre = new PreProcessorPointF.IEEE();
+    this.pre = pre;
+    this.pefMapper = new PHMF<>(pre);
   }
 
   /**
@@ -61,6 +65,33 @@ public class PhTreeF<T> {
     return new PhTreeF<>(dim, pre);
   }
 
+  /**
+   * Create a new tree for data in the given range. The keys are quantized with
+   * {@link PreProcessorPointF.Quantize}, which gives shorter trees than the
+   * lossless IEEE encoding of {@link #create(int)}. Keys outside the range can still be
+   * stored, see {@link PreProcessorPointF.Quantize}.
+   * 
+   * @param min the minimum values of the data
+   * @param max the maximum values of the data
+   * @return PhTreeF
+   * @param <T> value type of the tree
+   */
+  public static <T> PhTreeF<T> create(double[] min, double[] max) {
+    return new PhTreeF<>(min.length, new PreProcessorPointF.Quantize(min, max));
+  }
+
+  /**
+   * Create a new tree for data that is similar to the given sample, see 
+   * {@link #create(double[], double[])}.
+   * 
+   * @param sample a sample of the data
+   * @return PhTreeF
+   * @param <T> value type of the tree
+   */
+  public static <T> PhTreeF<T> create(double[][] sample) {
+    return new PhTreeF<>(sample[0].length, PreProcessorPointF.Quantize.fit(sample));
+  }
+
   /**
    * Create a new PhTreeF as a wrapper around an existing PhTree.
    * 
@@ -72,6 +103,19 @@ public class PhTreeF<T> {
     return new PhTreeF<>(tree);
   }
 
+  /**
+   * Create a new PhTreeF as a wrapper around an existing PhTree, using
+   * a custom preprocessor.
+   * 
+   * @param tree another tree
+   * @param pre The preprocessor to be used
+   * @return PhTreeF
+   * @param <T> value type of the tree
+   */
+  public static <T> PhTreeF<T> wrap(PhTree<T> tree, PreProcessorPointF pre) {
+    return new PhTreeF<>(tree, pre);
+  }
+
   public int size() {
     return pht.size();
   }
@@ -139,7 +183,7 @@ public class PhTreeF<T> {
    * @return All entries with at most distance `dist` from `center`.
    */
   public PhRangeQueryF<T> rangeQuery(double dist, double...center) {
-    return rangeQuery(dist, PhDistanceF.THIS, center);
+    return rangeQuery(dist, null, center);
   }
 
   /**
@@ -151,7 +195,7 @@ public class PhTreeF<T> {
    */
   public PhRangeQueryF<T> rangeQuery(double dist, PhDistance optionalDist, double...center) {
     if (optionalDist == null) {
-      optionalDist = PhDistanceF.THIS; 
+      optionalDist = defaultDistance(); 
     }
     long[] lKey = new long[center.length];
     pre.pre(center, lKey);
@@ -163,6 +207,14 @@ public class PhTreeF<T> {
     return pht.getDim();
   }
 
+  /**
+   * @return the euclidean distance for the preprocessor of this tree 
+   */
+  private PhDistance defaultDistance() {
+    return pre instanceof PreProcessorPointF.IEEE ? PhDistanceF.THIS : 
+      new PhDistancePreF(pre, pht.getDim());
+  }
+
   /**
    * Locate nearest neighbours for a given point in space.
    * @param nMin number of entries to be returned. More entries may or may not be returned if 
@@ -173,7 +225,7 @@ public class PhTreeF<T> {
   public PhKnnQueryF<T> nearestNeighbour(int nMin, double... key) {
     long[] lKey = new long[key.length];
     pre.pre(key, lKey);
-    PhKnnQuery<T> iter = pht.nearestNeighbour(nMin, PhDistanceF.THIS, null, lKey);
+    PhKnnQuery<T> iter = pht.nearestNeighbour(nMin, defaultDistance(), null, lKey);
     return new PhKnnQueryF<>(iter, pht.getDim(), pre);
   }
 
@@ -281,6 +333,13 @@ public class PhTreeF<T> {
       pre.pre(upper, lMax);
       q.reset(lMin, lMax);
     }
+
+    /**
+     * @param stats see {@link PhQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
   }
 
   public static class PhKnnQueryF<T> extends PhIteratorF<T> {
@@ -309,7 +368,7 @@ public class PhTreeF<T> {
     public PhEntryDistF<T> nextEntryReuse() {
       PhEntryDist<T> e = q.nextEntryReuse();
       pre.post(e.getKey(), buffer.getKey());
-      buffer.setValue( e.getValue() );
+      buffer.set(e.getValue(), e.dist());
       return buffer;
     }
 
@@ -318,6 +377,13 @@ public class PhTreeF<T> {
       q.reset(nMin, dist, lCenter);
       return this;
     }
+
+    /**
+     * @param stats see {@link PhKnnQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
   }
 
   public static class PhRangeQueryF<T> extends PhIteratorF<T> {
@@ -337,6 +403,20 @@ public class PhTreeF<T> {
       q.reset(range, lCenter);
       return this;
     }
+
+    /**
+     * @param stats see {@link PhRangeQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
+
+    /**
+     * @return the distance of the last returned entry, see {@link PhRangeQuery#lastDistance()}
+     */
+    public double lastDistance() {
+      return q.lastDistance();
+    }
   }
 
   /**
@@ -424,10 +504,17 @@ public class PhTreeF<T> {
 
   private static final class PHMF<T> implements PhMapper<T,PhEntryF<T>> {
     private static final long serialVersionUID = 1L;
+    private final PreProcessorPointF pre;
+
+    PHMF(PreProcessorPointF pre) {
+      this.pre = pre;
+    }
 
     @Override
     public PhEntryF<T> map(PhEntry<T> e) {
-      return new PhEntryF<T>(PhMapperK.toDouble(e.getKey()), e.getValue());
+      double[] key = new double[e.getKey().length];
+      pre.post(e.getKey(), key);
+      return new PhEntryF<T>(key, e.getValue());
     }
   }
 
@@ -0,0 +1,473 @@
+package ch.ethz.globis.phtree;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import ch.ethz.globis.phtree.PhTree.PhExtent;
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.util.BitTools;
+import ch.ethz.globis.phtree.util.PhIteratorBase;
+import ch.ethz.globis.phtree.util.PhMapper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
+
+/**
+ * k-dimensional index (quad-/oct-/n-tree) for {@code float} keys.
+ * Supports key/value pairs.
+ * <p>
+ * Unlike {@link PhTreeF}, which converts keys to 64 bit values, the keys are encoded
+ * with {@link BitTools#toSortableUInt(float)} and stored in a tree with a depth of 32 bits
+ * (see {@link PhTreeConfig#setDepth(int)}). The encoding is lossless, including infinity.
+ * Distances are calculated from the float values with double precision, see
+ * {@link PhDistanceF32}.
+ *
+ * @param <T> The value type of the tree
+ */
+public class PhTreeF32<T> {
+  /**
+   * Bits per key value.
+   */
+  public static final int DEPTH = 32;
+
+  private final PhTree<T> pht;
+
+  protected PhTreeF32(PhTree<T> tree) {
+    if (tree.getBitDepth() != DEPTH) {
+      throw new IllegalArgumentException("Tree depth must be " + DEPTH + ": " +
+          tree.getBitDepth());
+    }
+    this.pht = tree;
+  }
+
+  /**
+   * Create a new tree with the specified number of dimensions.
+   *
+   * @param dim number of dimensions
+   * @return PhTreeF32
+   * @param <T> value type of the tree
+   */
+  public static <T> PhTreeF32<T> create(int dim) {
+    return create(new PhTreeConfig(dim));
+  }
+
+  /**
+   * Create a new tree with a configuration instance. The tree uses a depth of 32 bits, 
+   * the depth of the configuration is ignored.
+   *
+   * @param cfg configuration instance, it is not modified
+   * @return PhTreeF32
+   * @param <T> value type of the tree
+   */
+  public static <T> PhTreeF32<T> create(PhTreeConfig cfg) {
+    PhTreeConfig cfg32 = cfg.copy();
+    cfg32.setDepth(DEPTH);
+    return new PhTreeF32<>(PhTree.create(cfg32));
+  }
+
+  public int size() {
+    return pht.size();
+  }
+
+  /**
+   * Insert an entry associated with a k dimensional key.
+   * @param key the key to store the value to store
+   * @param value the value
+   * @return the previously associated value or {@code null} if the key was found
+   */
+  public T put(float[] key, T value) {
+    return pht.put(pre(key, new long[key.length]), value);
+  }
+
+  public boolean contains(float ... key) {
+    return pht.contains(pre(key, new long[key.length]));
+  }
+
+  public T get(float ... key) {
+    return pht.get(pre(key, new long[key.length]));
+  }
+
+  /**
+   * Remove the entry associated with a k dimensional key.
+   * @param key the key to remove
+   * @return the associated value or {@code null} if the key was found
+   */
+  public T remove(float... key) {
+    return pht.remove(pre(key, new long[key.length]));
+  }
+
+  /**
+   * Update the key of an entry. Update may fail if the old key does not exist, or if the new
+   * key already exists.
+   * @param oldKey old key
+   * @param newKey new key
+   * @return the value (can be {@code null}) associated with the updated key if the key could be
+   * updated, otherwise {@code null}.
+   */
+  public T update(float[] oldKey, float[] newKey) {
+    return pht.update(pre(oldKey, new long[oldKey.length]), pre(newKey, new long[newKey.length]));
+  }
+
+  public PhExtentF32<T> queryExtent() {
+    return new PhExtentF32<>(pht.queryExtent(), pht.getDim());
+  }
+
+  /**
+   * Performs a rectangular window query. The parameters are the min and max keys which
+   * contain the minimum respectively the maximum keys in every dimension.
+   * @param min Minimum values
+   * @param max Maximum values
+   * @return Result iterator.
+   */
+  public PhQueryF32<T> query(float[] min, float[] max) {
+    long[] lMin = pre(min, new long[min.length]);
+    long[] lMax = pre(max, new long[max.length]);
+    return new PhQueryF32<>(pht.query(lMin, lMax), pht.getDim());
+  }
+
+  /**
+   * Same as {@link #query(float[], float[])}, except that it returns a list
+   * instead of an iterator. This may be faster for small result sets.
+   * @param min min values
+   * @param max max values
+   * @return List of query results
+   */
+  public List<PhEntryF32<T>> queryAll(float[] min, float[] max) {
+    long[] lMin = pre(min, new long[min.length]);
+    long[] lMax = pre(max, new long[max.length]);
+    return pht.queryAll(lMin, lMax, Integer.MAX_VALUE, null,
+        e -> new PhEntryF32<>(post(e.getKey(), new float[e.getKey().length]), e.getValue()));
+  }
+
+  /**
+   * Find all entries within a given distance from a center point.
+   * @param dist Maximum distance
+   * @param center Center point
+   * @return All entries with at most distance `dist` from `center`.
+   */
+  public PhRangeQueryF32<T> rangeQuery(double dist, float...center) {
+    return rangeQuery(dist, null, center);
+  }
+
+  /**
+   * Find all entries within a given distance from a center point.
+   * @param dist Maximum distance
+   * @param optionalDist Distance function, optional, can be `null`.
+   * @param center Center point
+   * @return All entries with at most distance `dist` from `center`.
+   */
+  public PhRangeQueryF32<T> rangeQuery(double dist, PhDistance optionalDist, float...center) {
+    if (optionalDist == null) {
+      optionalDist = PhDistanceF32.THIS;
+    }
+    PhRangeQuery<T> iter = pht.rangeQuery(dist, optionalDist, pre(center, new long[center.length]));
+    return new PhRangeQueryF32<>(iter, pht.getDim());
+  }
+
+  /**
+   * Locate nearest neighbours for a given point in space.
+   * @param nMin number of entries to be returned. More entries may or may not be returned if
+   * several points have the same distance.
+   * @param key the center point
+   * @return List of neighbours.
+   */
+  public PhKnnQueryF32<T> nearestNeighbour(int nMin, float... key) {
+    return nearestNeighbour(nMin, PhDistanceF32.THIS, key);
+  }
+
+  /**
+   * Locate nearest neighbours for a given point in space.
+   * @param nMin number of entries to be returned. More entries may or may not be returned if
+   * several points have the same distance.
+   * @param dist Distance function, it has to work on keys that are encoded with
+   * {@link BitTools#toSortableUInt(float)}.
+   * @param key the center point
+   * @return KNN query iterator.
+   */
+  public PhKnnQueryF32<T> nearestNeighbour(int nMin, PhDistance dist, float... key) {
+    PhKnnQuery<T> iter = pht.nearestNeighbour(nMin, dist, null, pre(key, new long[key.length]));
+    return new PhKnnQueryF32<>(iter, pht.getDim());
+  }
+
+  public int getDim() {
+    return pht.getDim();
+  }
+
+  private static long[] pre(float[] key, long[] out) {
+    for (int d = 0; d < key.length; d++) {
+      out[d] = BitTools.toSortableUInt(key[d]);
+    }
+    return out;
+  }
+
+  private static float[] post(long[] key, float[] out) {
+    for (int d = 0; d < key.length; d++) {
+      out[d] = BitTools.uIntToFloat(key[d]);
+    }
+    return out;
+  }
+
+  public static class PhIteratorF32<T>
+  implements PhIteratorBase<float[], T, PhEntryF32<T>> {
+    private final PhIteratorBase<long[], T, ? extends PhEntry<T>> iter;
+    private final int dims;
+    private final PhEntryF32<T> buffer;
+
+    protected PhIteratorF32(PhIteratorBase<long[], T, ? extends PhEntry<T>> iter, int dims) {
+      this.iter = iter;
+      this.dims = dims;
+      this.buffer = new PhEntryF32<>(new float[dims], null);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iter.hasNext();
+    }
+
+    @Override
+    public T next() {
+      return nextValue();
+    }
+
+    @Override
+    public PhEntryF32<T> nextEntry() {
+      PhEntry<T> e = iter.nextEntryReuse();
+      return new PhEntryF32<T>(post(e.getKey(), new float[dims]), e.getValue());
+    }
+
+    @Override
+    public PhEntryF32<T> nextEntryReuse() {
+      PhEntry<T> e = iter.nextEntryReuse();
+      post(e.getKey(), buffer.getKey());
+      buffer.setValue( e.getValue() );
+      return buffer;
+    }
+
+    public float[] nextKey() {
+      return post(iter.nextEntryReuse().getKey(), new float[dims]);
+    }
+
+    @Override
+    public T nextValue() {
+      return iter.nextValue();
+    }
+
+    @Override
+    public void remove() {
+      iter.remove();
+    }
+  }
+
+  public static class PhExtentF32<T> extends PhIteratorF32<T> {
+    private final PhExtent<T> iter;
+    protected PhExtentF32(PhExtent<T> iter, int dims) {
+      super(iter, dims);
+      this.iter = iter;
+    }
+
+    public PhExtentF32<T> reset() {
+      iter.reset();
+      return this;
+    }
+  }
+
+  public static class PhQueryF32<T> extends PhIteratorF32<T> {
+    private final long[] lMin;
+    private final long[] lMax;
+    private final PhQuery<T> q;
+
+    protected PhQueryF32(PhQuery<T> iter, int dims) {
+      super(iter, dims);
+      q = iter;
+      lMin = new long[dims];
+      lMax = new long[dims];
+    }
+
+    public void reset(float[] lower, float[] upper) {
+      pre(lower, lMin);
+      pre(upper, lMax);
+      q.reset(lMin, lMax);
+    }
+
+    /**
+     * @param stats see {@link PhQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
+  }
+
+  public static class PhKnnQueryF32<T> extends PhIteratorF32<T> {
+    private final long[] lCenter;
+    private final PhKnnQuery<T> q;
+    private final PhEntryDistF32<T> buffer;
+    private final int dims;
+
+    protected PhKnnQueryF32(PhKnnQuery<T> iter, int dims) {
+      super(iter, dims);
+      this.dims = dims;
+      q = iter;
+      lCenter = new long[dims];
+      buffer = new PhEntryDistF32<>(new float[dims], null, Double.NaN);
+    }
+
+    @Override
+    public PhEntryDistF32<T> nextEntry() {
+      PhEntryDist<T> e = q.nextEntryReuse();
+      return new PhEntryDistF32<>(post(e.getKey(), new float[dims]), e.getValue(), e.dist());
+    }
+
+    @Override
+    public PhEntryDistF32<T> nextEntryReuse() {
+      PhEntryDist<T> e = q.nextEntryReuse();
+      post(e.getKey(), buffer.getKey());
+      buffer.set(e.getValue(), e.dist());
+      return buffer;
+    }
+
+    public PhKnnQueryF32<T> reset(int nMin, PhDistance dist, float... center) {
+      q.reset(nMin, dist, pre(center, lCenter));
+      return this;
+    }
+
+    /**
+     * @param stats see {@link PhKnnQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
+  }
+
+  public static class PhRangeQueryF32<T> extends PhIteratorF32<T> {
+    private final long[] lCenter;
+    private final PhRangeQuery<T> q;
+
+    protected PhRangeQueryF32(PhRangeQuery<T> iter, int dims) {
+      super(iter, dims);
+      this.q = iter;
+      this.lCenter = new long[dims];
+    }
+
+    public PhRangeQueryF32<T> reset(double range, float... center) {
+      q.reset(range, pre(center, lCenter));
+      return this;
+    }
+
+    /**
+     * @param stats see {@link PhRangeQuery#setStats(PhQueryStats)}
+     */
+    public void setStats(PhQueryStats stats) {
+      q.setStats(stats);
+    }
+
+    /**
+     * @return the distance of the last returned entry, see {@link PhRangeQuery#lastDistance()}
+     */
+    public double lastDistance() {
+      return q.lastDistance();
+    }
+  }
+
+  /**
+   * Entry class for Float entries.
+   *
+   * @param <T> value type of the entries
+   */
+  public static class PhEntryF32<T> {
+    protected float[] key;
+    protected T value;
+
+    /**
+     * @param key the key
+     * @param value the value
+     */
+    public PhEntryF32(float[] key, T value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public float[] getKey() {
+      return key;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    public void setValue(T value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Entry class for Float entries with distance information for nearest neighbour queries.
+   *
+   * @param <T> value type of the entries
+   */
+  public static class PhEntryDistF32<T> extends PhEntryF32<T> {
+    private double dist;
+
+    public PhEntryDistF32(float[] key, T value, double dist) {
+      super(key, value);
+      this.dist = dist;
+    }
+
+    public void set(T value, double dist) {
+      this.value = value;
+      this.dist = dist;
+    }
+
+    public double dist() {
+      return dist;
+    }
+  }
+
+  /**
+   * Clear the tree.
+   */
+  public void clear() {
+    pht.clear();
+  }
+
+  /**
+   *
+   * @return the internal PhTree that backs this PhTreeF32.
+   */
+  public PhTree<T> getInternalTree() {
+    return pht;
+  }
+
+  /**
+   * @return A string tree view of all entries in the tree.
+   * @see PhTree#toStringTree()
+   */
+  public String toStringTree() {
+    return pht.toStringTree();
+  }
+
+  @Override
+  public String toString() {
+    return pht.toString();
+  }
+}
@@ -23,6 +23,10 @@ You should have received a copy of the GNU Affero General Public License
 along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
+import java.util.Arrays;
+
+import ch.ethz.globis.phtree.util.Kernels;
+
 /**
  *
  * @author ztilmann (Tilmann Zaeschke)
@@ -120,6 +124,43 @@ public abstract class PhTreeHelper {
     	return (int) (8*Math.ceil(n/8.0));
     }
 
+	/**
+	 * @param depth bit depth of a tree
+	 * @return Mask of the key bits that are outside of the domain of the tree, 
+	 * this is 0 for a depth of 64.
+	 */
+	public static final long domainMask(int depth) {
+		return depth == 64 ? 0 : (-1L) << depth;
+	}
+
+	/**
+	 * @param key a key
+	 * @param domainMask mask of the bits outside of the domain, see {@link #domainMask(int)}
+	 * @return true if all values of the key are within the domain 
+	 */
+	public static final boolean isInDomain(long[] key, long domainMask) {
+		if (domainMask == 0) {
+			return true;
+		}
+		long x = 0;
+		for (int i = 0; i < key.length; i++) {
+			x |= key[i];
+		}
+		return (x & domainMask) == 0;
+	}
+
+	/**
+	 * @param key a key
+	 * @param domainMask mask of the bits outside of the domain, see {@link #domainMask(int)}
+	 * @throws IllegalArgumentException if a value is outside of the domain
+	 */
+	public static final void checkDomain(long[] key, long domainMask) {
+		if (!isInDomain(key, domainMask)) {
+			throw new IllegalArgumentException("Key outside of [0, " + ~domainMask + "]: " + 
+					Arrays.toString(key));
+		}
+	}
+
 	/**
 	 * 
 	 * @param v1 one vector
@@ -205,6 +246,9 @@ public abstract class PhTreeHelper {
         //Following formula was for inverse ordering of current ordering...
         //pos = sum (i=1..n, len/2^i) = sum (..., 2^(n-i))
 
+    	if (valSet.length >= Kernels.VECTOR_MIN_DIMS) {
+    		return Kernels.VECTOR.posInArray(valSet, postLen);
+    	}
     	long valMask = 1l << postLen;
         long pos = 0;
         for (int i = 0; i < valSet.length; i++) {
@@ -259,6 +303,10 @@ public abstract class PhTreeHelper {
      * @param val value
      */
     public static void applyHcPos(long pos, int currentPostLen, long[] val) {
+    	if (val.length >= Kernels.VECTOR_MIN_DIMS) {
+    		Kernels.VECTOR.applyHcPos(pos, currentPostLen, val);
+    		return;
+    	}
     	long mask = 1L << currentPostLen;
     	pos = Long.rotateLeft(pos, currentPostLen); //leftmost bit is at position of mask
     	for (int d = val.length-1; d >= 0; d--) {
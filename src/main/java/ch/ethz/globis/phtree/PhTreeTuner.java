@@ -0,0 +1,360 @@
+package ch.ethz.globis.phtree;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.util.PhTreeStats;
+
+/**
+ * Tuning of the node thresholds (AHC/LHC bias and NT threshold) for a dataset 
+ * and a query mix.
+ * <p>
+ * The tuner builds a tree from a sample of the data for every candidate configuration
+ * and replays the recorded window and kNN queries on it. The candidates are then ranked
+ * by the memory size of the tree, by the throughput, or by a weighted combination of both.
+ * <p>
+ * Example:
+ * <pre>
+ * PhTreeTuner tuner = new PhTreeTuner(dims);
+ * tuner.recordWindowQuery(min, max);
+ * tuner.recordKnnQuery(10, center);
+ * PhTreeTuner.Result best = tuner.tune(data, PhTreeTuner.Objective.THROUGHPUT);
+ * PhTree&lt;T&gt; tree = PhTree.create(best.getConfig());
+ * </pre>
+ * The tuner uses wall clock time, results are only meaningful if nothing else is 
+ * running on the machine.
+ */
+public class PhTreeTuner {
+
+	public enum Objective {
+		/** Smallest memory size. */
+		MEMORY,
+		/** Highest number of operations per second. */
+		THROUGHPUT,
+		/** Lowest weighted sum of relative memory size and relative time. 
+		 * @see PhTreeTuner#setMemoryWeight(double) */
+		WEIGHTED
+	}
+
+	public static final double[] DEFAULT_AHC_LHC_BIAS_CANDIDATES = {0.5, 1, 2, 4, 8};
+	public static final int[] DEFAULT_NT_THRESHOLD_CANDIDATES = {50, 100, 150, 300, 600};
+
+	/**
+	 * A recorded query, either a window query or a kNN query.
+	 */
+	private static class Query {
+		private final long[] min;
+		private final long[] max;
+		private final int k;
+
+		Query(long[] min, long[] max, int k) {
+			this.min = min;
+			this.max = max;
+			this.k = k;
+		}
+	}
+
+	/**
+	 * Measurements of one candidate configuration.
+	 */
+	public static class Result {
+		private final PhTreeConfig config;
+		private final PhTreeStats stats;
+		private final long nanos;
+		private final int nOps;
+		private double score;
+
+		Result(PhTreeConfig config, PhTreeStats stats, long nanos, int nOps) {
+			this.config = config;
+			this.stats = stats;
+			this.nanos = nanos;
+			this.nOps = nOps;
+		}
+
+		public PhTreeConfig getConfig() {
+			return config;
+		}
+
+		/**
+		 * @return statistics of the tree that was built from the sample, including the 
+		 * node-type histogram
+		 */
+		public PhTreeStats getStats() {
+			return stats;
+		}
+
+		/**
+		 * @return calculated memory size in bytes of the tree that was built from the sample
+		 */
+		public long getMemory() {
+			return stats.getCalculatedMemSize();
+		}
+
+		/**
+		 * @return time for building the tree and executing all queries
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return insertions and queries per second
+		 */
+		public double getThroughput() {
+			return nOps * 1e9 / Math.max(1, nanos);
+		}
+
+		/**
+		 * @return score for the objective of the tuning, lower is better
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return "AHC/LHC=" + config.getAhcLhcBias() + " NtLimit=" + config.getNtThreshold() + 
+					" memory=" + getMemory() + " ops/s=" + (long)getThroughput() + 
+					" LHC/AHC/NT=" + stats.getLhcCount() + "/" + stats.getAhcCount() + "/" + 
+					stats.getNtCount() + " score=" + score;
+		}
+	}
+
+	private final int dims;
+	private final List<Query> queries = new ArrayList<>();
+	private double[] biasCandidates = DEFAULT_AHC_LHC_BIAS_CANDIDATES;
+	private int[] ntCandidates = DEFAULT_NT_THRESHOLD_CANDIDATES;
+	private int sampleSize = 10000;
+	private int rounds = 3;
+	private double memoryWeight = 0.5;
+	private long seed = 0;
+	//prevents that the JIT removes the queries
+	private long blackhole;
+
+	public PhTreeTuner(int dims) {
+		this.dims = dims;
+	}
+
+	public void recordWindowQuery(long[] min, long[] max) {
+		queries.add(new Query(min.clone(), max.clone(), 0));
+	}
+
+	public void recordKnnQuery(int k, long[] center) {
+		queries.add(new Query(center.clone(), null, k));
+	}
+
+	/**
+	 * @param ahcLhcBias candidate values for {@link PhTreeConfig#setAhcLhcBias(double)}, 
+	 * at least one, none of them negative
+	 */
+	public void setAhcLhcBiasCandidates(double... ahcLhcBias) {
+		if (ahcLhcBias.length == 0) {
+			throw new IllegalArgumentException("No ahcLhcBias candidates");
+		}
+		for (double bias : ahcLhcBias) {
+			if (!(bias >= 0)) {
+				throw new IllegalArgumentException("ahcLhcBias=" + bias);
+			}
+		}
+		this.biasCandidates = ahcLhcBias.clone();
+	}
+
+	/**
+	 * @param ntThreshold candidate values for {@link PhTreeConfig#setNtThreshold(int)}, 
+	 * at least one, all positive
+	 */
+	public void setNtThresholdCandidates(int... ntThreshold) {
+		if (ntThreshold.length == 0) {
+			throw new IllegalArgumentException("No ntThreshold candidates");
+		}
+		for (int nt : ntThreshold) {
+			if (nt <= 0) {
+				throw new IllegalArgumentException("ntThreshold=" + nt);
+			}
+		}
+		this.ntCandidates = ntThreshold.clone();
+	}
+
+	/**
+	 * @param sampleSize maximum number of entries that are used for tuning, must be positive
+	 */
+	public void setSampleSize(int sampleSize) {
+		if (sampleSize <= 0) {
+			throw new IllegalArgumentException("sampleSize=" + sampleSize);
+		}
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * @param rounds number of measurements per candidate, the fastest one is used, 
+	 * must be positive
+	 */
+	public void setRounds(int rounds) {
+		if (rounds <= 0) {
+			throw new IllegalArgumentException("rounds=" + rounds);
+		}
+		this.rounds = rounds;
+	}
+
+	/**
+	 * @param memoryWeight weight of the memory size for {@link Objective#WEIGHTED}, 
+	 * between 0 (only throughput) and 1 (only memory).
+	 */
+	public void setMemoryWeight(double memoryWeight) {
+		if (!(memoryWeight >= 0 && memoryWeight <= 1)) {
+			throw new IllegalArgumentException("memoryWeight=" + memoryWeight);
+		}
+		this.memoryWeight = memoryWeight;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Find the best configuration.
+	 * @param data the data, only a sample of it is used
+	 * @param objective the objective
+	 * @return the best candidate
+	 */
+	public Result tune(long[][] data, Objective objective) {
+		List<Result> results = evaluate(data, objective);
+		Result best = results.get(0);
+		for (Result r : results) {
+			if (r.score < best.score) {
+				best = r;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Measure all candidate configurations.
+	 * @param data the data, only a sample of it is used
+	 * @param objective the objective for calculating the scores
+	 * @return results for all candidates
+	 */
+	public List<Result> evaluate(long[][] data, Objective objective) {
+		long[][] sample = sample(data);
+		//warm up
+		run(new PhTreeConfig(dims), sample);
+		
+		List<Result> results = new ArrayList<>();
+		for (double bias : biasCandidates) {
+			for (int nt : ntCandidates) {
+				PhTreeConfig cfg = new PhTreeConfig(dims);
+				cfg.setAhcLhcBias(bias);
+				cfg.setNtThreshold(nt);
+				results.add(run(cfg, sample));
+			}
+		}
+		
+		long minMemory = Long.MAX_VALUE;
+		long minNanos = Long.MAX_VALUE;
+		for (Result r : results) {
+			minMemory = Math.min(minMemory, r.getMemory());
+			minNanos = Math.min(minNanos, r.nanos);
+		}
+		double w;
+		switch (objective) {
+		case MEMORY: w = 1; break;
+		case THROUGHPUT: w = 0; break;
+		default: w = memoryWeight;
+		}
+		for (Result r : results) {
+			r.score = w * r.getMemory() / Math.max(1, minMemory) 
+					+ (1-w) * r.nanos / (double)Math.max(1, minNanos);
+		}
+		return results;
+	}
+
+	private long[][] sample(long[][] data) {
+		if (data.length <= sampleSize) {
+			return data;
+		}
+		//partial Fisher-Yates shuffle
+		Random rnd = new Random(seed);
+		int[] ids = new int[data.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		long[][] sample = new long[sampleSize][];
+		for (int i = 0; i < sampleSize; i++) {
+			int j = i + rnd.nextInt(ids.length - i);
+			int t = ids[j];
+			ids[j] = ids[i];
+			ids[i] = t;
+			sample[i] = data[t];
+		}
+		return sample;
+	}
+
+	private Result run(PhTreeConfig cfg, long[][] sample) {
+		PhTree<long[]> tree = null;
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < rounds; r++) {
+			long t0 = System.nanoTime();
+			tree = PhTree.create(cfg);
+			for (long[] key : sample) {
+				tree.put(key, key);
+			}
+			runQueries(tree);
+			best = Math.min(best, System.nanoTime() - t0);
+		}
+		return new Result(cfg, tree.getStats(), best, sample.length + queries.size());
+	}
+
+	private void runQueries(PhTree<long[]> tree) {
+		PhQuery<long[]> window = null;
+		PhKnnQuery<long[]> knn = null;
+		long n = 0;
+		for (Query q : queries) {
+			if (q.max != null) {
+				if (window == null) {
+					window = tree.query(q.min, q.max);
+				} else {
+					window.reset(q.min, q.max);
+				}
+				while (window.hasNext()) {
+					n += window.nextEntryReuse().getKey()[0];
+				}
+			} else {
+				if (knn == null) {
+					knn = tree.nearestNeighbour(q.k, q.min);
+				} else {
+					knn.reset(q.k, null, q.min);
+				}
+				while (knn.hasNext()) {
+					n += knn.nextEntryReuse().getKey()[0];
+				}
+			}
+		}
+		blackhole += n;
+	}
+}
@@ -1,5 +1,7 @@
 package ch.ethz.globis.phtree.pre;
 
+import java.util.Arrays;
+
 import ch.ethz.globis.phtree.util.BitTools;
 
 /*
@@ -44,6 +46,14 @@ public interface PreProcessorPointF {
    */
   public void post(long[] pre, double[] post);
 
+  /**
+   * @return the number of bits of the pre-processed values, see 
+   * {@link ch.ethz.globis.phtree.PhTreeConfig#setDepth(int)}
+   */
+  public default int getBitDepth() {
+    return 64;
+  }
+
 
   /**
    * Preprocessor with IEEE conversion. This maintains full precision including infinity.
@@ -65,6 +75,33 @@ public interface PreProcessorPointF {
   }
 
 
+  /**
+   * Preprocessor that rounds to {@code float} and uses the 32 bit IEEE conversion of
+   * {@link BitTools#toSortableUInt(float)}. This is lossless for {@code float} data and 
+   * requires a tree with a depth of 32 bits.
+   */
+  public class Float32 implements PreProcessorPointF {
+    @Override
+    public void pre(double[] raw, long[] pre) {
+      for (int d=0; d<raw.length; d++) {
+        pre[d] = BitTools.toSortableUInt((float) raw[d]);
+      }
+    }
+
+    @Override
+    public void post(long[] pre, double[] post) {
+      for (int d=0; d<pre.length; d++) {
+        post[d] = BitTools.uIntToFloat(pre[d]);
+      }
+    }
+
+    @Override
+    public int getBitDepth() {
+      return 32;
+    }
+  }
+
+
   /**
    * Preprocessing by multiplication with constant.
    */
@@ -93,4 +130,121 @@ public interface PreProcessorPointF {
     }
   }
 
+
+  /**
+   * Preprocessing by quantization with an offset and a scale per dimension.
+   * <p>
+   * The range {@code [min, max]} of every dimension is mapped to the integers
+   * {@code [0, 2^bits)}, so that small coordinate ranges share long key prefixes.
+   * Values outside of the range use the remaining bits of the key, they remain ordered 
+   * up to about {@code 2^(62-bits)} times the range away from it, further values are 
+   * clamped to the smallest or largest key.
+   * The mapping is monotone, {@link #post(long[], double[])} returns the lower end of 
+   * the quantization interval. The quantization error is less than 
+   * {@link #getErrorBound(int)} in every dimension.
+   */
+  public class Quantize implements PreProcessorPointF {
+
+    /** Default number of bits, this is the precision of a {@code double}. */
+    public static final int DEFAULT_BITS = 52;
+
+    private final double[] offset;
+    private final double[] preMult;
+    private final double[] postMult;
+
+    public Quantize(double[] min, double[] max) {
+      this(min, max, DEFAULT_BITS);
+    }
+
+    /**
+     * @param min minimum values of the data
+     * @param max maximum values of the data
+     * @param bits number of bits for the range of the data, at most 62
+     */
+    public Quantize(double[] min, double[] max, int bits) {
+      if (bits < 1 || bits > 62) {
+        throw new IllegalArgumentException("bits=" + bits);
+      }
+      offset = new double[min.length];
+      preMult = new double[min.length];
+      postMult = new double[min.length];
+      for (int d = 0; d < min.length; d++) {
+        if (!Double.isFinite(min[d]) || !Double.isFinite(max[d]) || min[d] > max[d]) {
+          throw new IllegalArgumentException("Invalid range in dimension " + d + 
+              ": " + min[d] + " - " + max[d]);
+        }
+        double range = max[d] - min[d];
+        if (!(range > 0) || Double.isInfinite(range)) {
+          range = Math.max(1, Math.max(Math.abs(min[d]), Math.abs(max[d])));
+        }
+        offset[d] = min[d];
+        preMult[d] = Math.scalb(1., bits) / range;
+        postMult[d] = range / Math.scalb(1., bits);
+      }
+    }
+
+    /**
+     * Create a preprocessor for the range of the data.
+     * @param data the data or a sample of it, non-finite values are ignored
+     * @return the preprocessor
+     */
+    public static Quantize fit(double[][] data) {
+      return fit(data, DEFAULT_BITS);
+    }
+
+    /**
+     * Create a preprocessor for the range of the data.
+     * @param data the data or a sample of it, non-finite values are ignored
+     * @param bits number of bits for the range of the data
+     * @return the preprocessor
+     */
+    public static Quantize fit(double[][] data, int bits) {
+      if (data.length == 0) {
+        throw new IllegalArgumentException("No data");
+      }
+      int dims = data[0].length;
+      double[] min = new double[dims];
+      double[] max = new double[dims];
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for (double[] v : data) {
+        for (int d = 0; d < dims; d++) {
+          if (Double.isFinite(v[d])) {
+            min[d] = Math.min(min[d], v[d]);
+            max[d] = Math.max(max[d], v[d]);
+          }
+        }
+      }
+      for (int d = 0; d < dims; d++) {
+        if (min[d] > max[d]) {
+          min[d] = 0;
+          max[d] = 0;
+        }
+      }
+      return new Quantize(min, max, bits);
+    }
+
+    /**
+     * @param dim dimension
+     * @return upper bound for the quantization error in the given dimension
+     */
+    public double getErrorBound(int dim) {
+      return postMult[dim];
+    }
+
+    @Override
+    public void pre(double[] raw, long[] pre) {
+      for (int d=0; d<raw.length; d++) {
+        pre[d] = (long) Math.floor((raw[d] - offset[d]) * preMult[d]);
+      }
+    }
+
+    @Override
+    public void post(long[] pre, double[] post) {
+      for (int d=0; d<pre.length; d++) {
+        post[d] = offset[d] + pre[d] * postMult[d];
+      }
+    }
+  }
+
 }
@@ -54,6 +54,25 @@ public class BitTools {
 		return Float.intBitsToFloat(iVal >= 0.0 ? iVal : iVal ^ 0x7FFFFFFF);
 	}
 
+	/**
+	 * @param value a float
+	 * @return Unsigned 32 bit representation with the same ordering as the float values, 
+	 * for trees with a depth of 32 bits.
+	 */
+	public static long toSortableUInt(float value) {
+		//see toSortableLong(float), the offset moves negative values below positive values
+		return toSortableLong(value) + 0x80000000L;
+	}
+
+	/**
+	 * @param value unsigned 32 bit representation
+	 * @return the float value
+	 * @see #toSortableUInt(float)
+	 */
+	public static float uIntToFloat(long value) {
+		return toFloat(value - 0x80000000L);
+	}
+
     /**
      * @param value
      * @param ret The array used to store the return value
@@ -337,4 +356,72 @@ public class BitTools {
     	}
     	return true;
     }
+
+	/**
+	 * Computes the leading 64 bits of the z-order value of a k-dimensional key, i.e. of the 
+	 * interleaved bits of all dimensions. Bits above 'startBit' are ignored, they are 
+	 * usually the same for all keys of interest.
+	 * Comparing the results as unsigned values gives the order of the keys in a PH-tree, 
+	 * except for keys that differ only in lower bits. 
+	 * 
+	 * @param key array of keys
+	 * @param offs offset of the key in the array
+	 * @param dims number of dimensions
+	 * @param startBit highest bit to consider [0..63]
+	 * @return The leading 64 bits of the z-order value
+	 */
+	public static long zOrderPrefix(long[] key, int offs, int dims, int startBit) {
+		if (dims > Spread.MAX_DIMS) {
+			return zOrderPrefixBitwise(key, offs, dims, startBit, 0, 0);
+		}
+		//Interleave all levels that fit completely into the result at once: the bits of 
+		//each dimension are spread byte by byte with a lookup table.
+		long[] table = Spread.TABLES[dims];
+		int levels = Math.min(64 / dims, startBit + 1);
+		int low = startBit + 1 - levels;
+		long levelMask = -1L >>> (64 - levels);
+		int byteShift = 8 * dims;
+		long z = 0;
+		for (int d = 0; d < dims; d++) {
+			long bits = (key[offs + d] >>> low) & levelMask;
+			long s = 0;
+			for (int shift = 0; bits != 0; shift += byteShift, bits >>>= 8) {
+				s |= table[(int) bits & 0xFF] << shift;
+			}
+			z |= s << (dims - 1 - d);
+		}
+		//The last level may fit only partially
+		return zOrderPrefixBitwise(key, offs, dims, low - 1, z, levels * dims);
+	}
+
+	private static long zOrderPrefixBitwise(long[] key, int offs, int dims, int startBit, 
+			long z, int nBits) {
+		for (int b = startBit; b >= 0 && nBits < 64; b--) {
+			for (int d = 0; d < dims && nBits < 64; d++) {
+				z = (z << 1) | ((key[offs + d] >>> b) & 1L);
+				nBits++;
+			}
+		}
+		return nBits < 64 ? z << (64 - nBits) : z;
+	}
+
+	/**
+	 * Lookup tables for {@link BitTools#zOrderPrefix(long[], int, int, int)}. For 
+	 * 'k' dimensions, the entry for a byte 'b' has bit 'i' of 'b' at bit 'i*k'.
+	 */
+	private static class Spread {
+		static final int MAX_DIMS = 8;
+		static final long[][] TABLES = new long[MAX_DIMS + 1][];
+		static {
+			for (int k = 1; k <= MAX_DIMS; k++) {
+				long[] t = new long[256];
+				for (int b = 0; b < 256; b++) {
+					for (int i = 0; i < 8; i++) {
+						t[b] |= ((long) (b >>> i) & 1L) << (i * k);
+					}
+				}
+				TABLES[k] = t;
+			}
+		}
+	}
 }
@@ -197,6 +197,93 @@ public class BitsLong {
     }
   }
 
+  /**
+   * Read consecutive entries of the same length, for example the postfix of a key.
+   * Unlike calling {@link #readArray(long[], int, int)} for each entry, this keeps the
+   * current array slot in a local variable and reads each slot only once.
+   * The result is {@code out[i] = (prefix[i] & prefixMask) | entry[i]}.
+   * 
+   * @param ba the array
+   * @param offsetBit position of the first entry
+   * @param entryLen length of each entry in bits
+   * @param prefix Bits that are combined with the entries, can be the same array as 'out'.
+   * @param prefixMask Bits of the prefix that are used, usually the bits above the entries.
+   * @param out one value per entry
+   */
+  public static void readArray(long[] ba, int offsetBit, int entryLen, long[] prefix, 
+      long prefixMask, long[] out) {
+    if (entryLen == 0 || out.length == 0) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = prefix[i] & prefixMask;
+      }
+      return;
+    }
+    int pA = offsetBit >>> UNIT_3;
+    int bit = offsetBit & UNIT_0x1F;
+    long mask = UNIT_0xFF >>> (UNIT_BITS - entryLen);
+    long cur = ba[pA];
+    for (int i = 0; i < out.length; i++) {
+      int end = bit + entryLen;
+      long v;
+      if (end <= UNIT_BITS) {
+        v = (cur >>> (UNIT_BITS - end)) & mask;
+        bit = end;
+        if (bit == UNIT_BITS && i + 1 < out.length) {
+          cur = ba[++pA];
+          bit = 0;
+        }
+      } else {
+        //read from second slot
+        long next = ba[++pA];
+        end -= UNIT_BITS;
+        v = ((cur << end) | (next >>> (UNIT_BITS - end))) & mask;
+        cur = next;
+        bit = end;
+      }
+      out[i] = (prefix[i] & prefixMask) | v;
+    }
+  }
+
+  /**
+   * Write consecutive entries of the same length, for example the postfix of a key.
+   * Unlike calling {@link #writeArray(long[], int, int, long)} for each entry, this 
+   * assembles each array slot in a local variable and writes it only once.
+   * 
+   * @param ba the array
+   * @param offsetBit position of the first entry
+   * @param entryLen length of each entry in bits, only the rightmost bits of the values 
+   * are written
+   * @param values one value per entry
+   */
+  public static void writeArray(long[] ba, int offsetBit, int entryLen, long[] values) {
+    if (entryLen == 0 || values.length == 0) {
+      return;
+    }
+    int pA = offsetBit >>> UNIT_3;
+    int bit = offsetBit & UNIT_0x1F;
+    long mask = UNIT_0xFF >>> (UNIT_BITS - entryLen);
+    //keep the bits in front of the first entry
+    long cur = bit == 0 ? 0 : ba[pA] & ~(UNIT_0xFF >>> bit);
+    for (int i = 0; i < values.length; i++) {
+      long v = values[i] & mask;
+      int end = bit + entryLen;
+      if (end < UNIT_BITS) {
+        cur |= v << (UNIT_BITS - end);
+        bit = end;
+      } else {
+        //complete the current slot, the remaining bits go to the next slot
+        end -= UNIT_BITS;
+        ba[pA++] = cur | (v >>> end);
+        cur = end == 0 ? 0 : v << (UNIT_BITS - end);
+        bit = end;
+      }
+    }
+    if (bit > 0) {
+      //keep the bits after the last entry
+      ba[pA] = (ba[pA] & (UNIT_0xFF >>> bit)) | cur;
+    }
+  }
+
   /**
    * 
    * @param ba
@@ -239,15 +326,18 @@ public class BitsLong {
       int localShift = nBits & UNIT_0x1F; //Always positive!
       int nBytesShift = nBits >>> UNIT_3; //integer division!
       if (localShift > 0) {
+        //keep the source slot in a local variable, every slot is read only once
+        long src = ba[ba.length-1-nBytesShift];
         for (int i = ba.length-1; i > dstByteStart; i--) {
-          ba[i] = (ba[i-nBytesShift] >>> localShift) |
-              (ba[i-nBytesShift-1] << -localShift);
+          long srcPrev = ba[i-nBytesShift-1];
+          ba[i] = (src >>> localShift) | (srcPrev << -localShift);
+          src = srcPrev;
           //(Integer.rotateRight(ba[i-nBytesShift-1], localShift) & ~rMask);
         }
-      } else {
-        for (int i = ba.length-1; i > dstByteStart; i--) {
-          ba[i] = ba[i-nBytesShift];
-        }
+      } else if (ba.length-1 > dstByteStart) {
+        //shifting by whole slots
+        System.arraycopy(ba, dstByteStart+1-nBytesShift, ba, dstByteStart+1, 
+            ba.length-1-dstByteStart);
       }
 
       long mask0 = (UNIT_0xFF >>> dstLocalStart);
@@ -301,11 +391,9 @@ public class BitsLong {
         dstByteStart++;
         ba[dstByteStart] = (ba[i] << localShift);
       }
-    } else {
-      for (int i = srcByteStart+1; i < ba.length; i++) {
-        dstByteStart++;
-        ba[dstByteStart] = ba[i];
-      }
+    } else if (srcByteStart+1 < ba.length) {
+      //shifting by whole slots
+      System.arraycopy(ba, srcByteStart+1, ba, dstByteStart+1, ba.length-srcByteStart-1);
     }
   }
 
@@ -0,0 +1,159 @@
+package ch.ethz.globis.phtree.util;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+/**
+ * Bloom filter for k-dimensional keys.
+ *
+ * The filter can report false positives, but never false negatives. Keys can not be removed,
+ * removed keys simply remain as false positives until the filter is rebuilt.
+ */
+public class BloomFilter implements Externalizable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long[] bits;
+	private int nBits;
+	private int nHashes;
+	private int nKeys;
+
+	/**
+	 * DO NOT USE.
+	 */
+	public BloomFilter() {
+		// For Externalizable only
+	}
+
+	/**
+	 * @param expectedKeys expected number of keys
+	 * @param fpp expected false positive probability, for example 0.01
+	 */
+	public BloomFilter(int expectedKeys, double fpp) {
+		expectedKeys = Math.max(expectedKeys, 1);
+		double ln2 = Math.log(2);
+		long m = (long) Math.ceil(-expectedKeys * Math.log(fpp) / (ln2 * ln2));
+		nBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+		nHashes = (int) Math.max(1, Math.round(nBits / (double)expectedKeys * ln2));
+		bits = new long[(nBits + 63) >>> 6];
+	}
+
+	private static long mix(long h) {
+		//MurmurHash3 finalizer
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long hash(long[] key) {
+		long h = 0x9e3779b97f4a7c15L;
+		for (int i = 0; i < key.length; i++) {
+			h = mix(h ^ key[i]) + i;
+		}
+		return h;
+	}
+
+	/**
+	 * Add a key to the filter.
+	 * @param key the key
+	 */
+	public void add(long[] key) {
+		long h = hash(key);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		for (int i = 0; i < nHashes; i++) {
+			int pos = ((h1 + i * h2) & Integer.MAX_VALUE) % nBits;
+			bits[pos >>> 6] |= 1L << pos;
+		}
+		nKeys++;
+	}
+
+	/**
+	 * @param key the key
+	 * @return false if the key is definitely not in the filter, otherwise true.
+	 */
+	public boolean mightContain(long[] key) {
+		long h = hash(key);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		for (int i = 0; i < nHashes; i++) {
+			int pos = ((h1 + i * h2) & Integer.MAX_VALUE) % nBits;
+			if ((bits[pos >>> 6] & (1L << pos)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all keys from the filter.
+	 */
+	public void clear() {
+		Arrays.fill(bits, 0);
+		nKeys = 0;
+	}
+
+	/**
+	 * @return The number of add() operations since creation or the last clear().
+	 */
+	public int getKeyCount() {
+		return nKeys;
+	}
+
+	/**
+	 * @return The size of the filter in bits.
+	 */
+	public int getBitCount() {
+		return nBits;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(nBits);
+		out.writeInt(nHashes);
+		out.writeInt(nKeys);
+		RefsLong.write(bits, out);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		nBits = in.readInt();
+		nHashes = in.readInt();
+		nKeys = in.readInt();
+		bits = RefsLong.read(in);
+	}
+
+	@Override
+	public String toString() {
+		return "nBits=" + nBits + "  nHashes=" + nHashes + "  nKeys=" + nKeys;
+	}
+}
@@ -0,0 +1,103 @@
+package ch.ethz.globis.phtree.util;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Kernels for the innermost per-dimension loops: the hypercube address of a key
+ * ({@link ch.ethz.globis.phtree.PhTreeHelper#posInArray(long[], int)}), applying
+ * a hypercube address to a key 
+ * ({@link ch.ethz.globis.phtree.PhTreeHelper#applyHcPos(long, int, long[])}) and the 
+ * euclidean distance of IEEE encoded keys ({@link ch.ethz.globis.phtree.PhDistanceF}).
+ * <p>
+ * The scalar code in the callers is the default. If the JAR is built with the 
+ * {@code java17} profile, it is a multi-release JAR with an implementation that uses the 
+ * (incubating) Vector API. This implementation is only used if the JVM is started with 
+ * {@code --add-modules jdk.incubator.vector -Dphtree.vector=true}. Keys with fewer 
+ * dimensions than {@link #VECTOR_MIN_DIMS} always use the scalar code.
+ * <p>
+ * The vector implementation is disabled by default for two reasons: It only avoids 
+ * allocating vector objects where the JIT inlines all Vector API calls, which may fail if 
+ * a kernel is inlined deep into a large caller. And {@link #distF(long[], long[])} sums 
+ * the squares in a different order, so the distances may differ in the last bits from the 
+ * scalar code.
+ */
+public abstract class Kernels {
+
+	private static final String VECTOR_CLASS = "ch.ethz.globis.phtree.util.KernelsVector";
+
+	/**
+	 * The vector implementation, or {@code null} if it is not available or not enabled. 
+	 */
+	public static final Kernels VECTOR = 
+			Boolean.getBoolean("phtree.vector") ? createVector() : null;
+
+	/**
+	 * The minimum number of dimensions for the vector implementation, 
+	 * {@link Integer#MAX_VALUE} if it is not available or not enabled. 
+	 */
+	public static final int VECTOR_MIN_DIMS = VECTOR == null ? Integer.MAX_VALUE : VECTOR.minDims();
+
+	/**
+	 * Create the vector implementation, regardless of whether it is enabled.
+	 * @return the vector implementation, or {@code null} if it is not available
+	 */
+	public static Kernels createVector() {
+		try {
+			return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			//Java 8, or the vector module is not available
+			return null;
+		}
+	}
+
+	/**
+	 * @return the minimum number of dimensions for which this implementation is faster
+	 * than the scalar code
+	 */
+	protected abstract int minDims();
+
+	/**
+	 * @param valSet vector
+	 * @param postLen the postfix length
+	 * @return Encoded HC position
+	 * @see ch.ethz.globis.phtree.PhTreeHelper#posInArray(long[], int)
+	 */
+	public abstract long posInArray(long[] valSet, int postLen);
+
+	/**
+	 * @param pos hc-position
+	 * @param postLen current postfix length
+	 * @param val value
+	 * @see ch.ethz.globis.phtree.PhTreeHelper#applyHcPos(long, int, long[])
+	 */
+	public abstract void applyHcPos(long pos, int postLen, long[] val);
+
+	/**
+	 * @param v1 one value
+	 * @param v2 other value
+	 * @return The euclidean distance of IEEE encoded {@code double} values.
+	 * @see ch.ethz.globis.phtree.PhDistanceF#dist(long[], long[])
+	 */
+	public abstract double distF(long[] v1, long[] v2);
+}
@@ -0,0 +1,171 @@
+package ch.ethz.globis.phtree.util;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import ch.ethz.globis.phtree.PhDistance;
+
+/**
+ * Counters of window, range and kNN queries, for example to find out whether a slow 
+ * query suffers from poor pruning, from iterating NT nodes or simply from a large 
+ * result. The counters are filled by the queries after {@code setStats()} was called 
+ * on the query. Queries without statistics do not count anything. PH-tree version 8 
+ * does not count {@code nHcSkipped} and counts its NI nodes as NT nodes.
+ * <p>
+ * The counters accumulate over all queries that use the same instance. Instances 
+ * are not thread-safe, queries in different threads should use different instances, 
+ * which can be combined with {@link #add(PhQueryStats)}.
+ */
+public final class PhQueryStats {
+  public long nQueries; //executed queries (calls to reset())
+  public long nNodes; //nodes visited
+  public long nAHC; //visited nodes with AHC representation
+  public long nLHC; //visited nodes with LHC representation
+  public long nNT; //visited nodes with NT representation
+  public long nHcSkipped; //HC positions skipped by the HC incrementer (HCI)
+  public long nPostfixChecked; //entries or sub-nodes whose postfix/infix was compared with the query
+  public long nPostfixMatched; //entries inside the query rectangle (kNN: candidates)
+  public long nKnnExpansions; //kNN restarts with a larger radius
+  public long nDist; //distance calculations between points
+  public long nDistPrefix; //distance calculations between a point and a node
+
+  private CountingDistance counting;
+
+  /**
+   * Count a visited node.
+   * @param isAHC whether the node has AHC representation
+   * @param isNT whether the node has NT representation
+   */
+  public void addNode(boolean isAHC, boolean isNT) {
+    nNodes++;
+    if (isNT) {
+      nNT++;
+    } else if (isAHC) {
+      nAHC++;
+    } else {
+      nLHC++;
+    }
+  }
+
+  /**
+   * Add the counters of another instance.
+   * @param s other statistics
+   * @return this
+   */
+  public PhQueryStats add(PhQueryStats s) {
+    nQueries += s.nQueries;
+    nNodes += s.nNodes;
+    nAHC += s.nAHC;
+    nLHC += s.nLHC;
+    nNT += s.nNT;
+    nHcSkipped += s.nHcSkipped;
+    nPostfixChecked += s.nPostfixChecked;
+    nPostfixMatched += s.nPostfixMatched;
+    nKnnExpansions += s.nKnnExpansions;
+    nDist += s.nDist;
+    nDistPrefix += s.nDistPrefix;
+    return this;
+  }
+
+  /**
+   * Set all counters to 0.
+   */
+  public void clear() {
+    nQueries = 0;
+    nNodes = 0;
+    nAHC = 0;
+    nLHC = 0;
+    nNT = 0;
+    nHcSkipped = 0;
+    nPostfixChecked = 0;
+    nPostfixMatched = 0;
+    nKnnExpansions = 0;
+    nDist = 0;
+    nDistPrefix = 0;
+  }
+
+  /**
+   * @return the ratio of matching to checked postfixes, or NaN if no postfix was checked
+   */
+  public double getMatchRatio() {
+    return nPostfixChecked == 0 ? Double.NaN : nPostfixMatched / (double) nPostfixChecked;
+  }
+
+  /**
+   * @param dist a distance function
+   * @return a distance function that counts the calculations of 'dist' in this instance. 
+   * The returned instance is reused for the same distance function.
+   */
+  public PhDistance countDistances(PhDistance dist) {
+    if (dist instanceof CountingDistance) {
+      dist = ((CountingDistance) dist).dist;
+    }
+    if (counting == null || counting.dist != dist) {
+      counting = new CountingDistance(dist, this);
+    }
+    return counting;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilderLn r = new StringBuilderLn();
+    r.appendLn("  nQueries = " + nQueries);
+    r.appendLn("  nNodes = " + nNodes + "  AHC=" + nAHC + "  LHC=" + nLHC + "  NT=" + nNT);
+    r.appendLn("  nHcSkipped = " + nHcSkipped);
+    r.appendLn("  nPostfix = " + nPostfixChecked + "  matched=" + nPostfixMatched 
+        + " (" + getMatchRatio() + ")");
+    r.appendLn("  nKnnExpansions = " + nKnnExpansions);
+    r.appendLn("  nDist = " + nDist + "  nDistPrefix=" + nDistPrefix);
+    return r.toString();
+  }
+
+  /**
+   * Distance function that counts the calculations.
+   */
+  private static final class CountingDistance implements PhDistance {
+    private final PhDistance dist;
+    private final PhQueryStats stats;
+
+    CountingDistance(PhDistance dist, PhQueryStats stats) {
+      this.dist = dist;
+      this.stats = stats;
+    }
+
+    @Override
+    public double dist(long[] v1, long[] v2) {
+      stats.nDist++;
+      return dist.dist(v1, v2);
+    }
+
+    @Override
+    public void toMBB(double distance, long[] center, long[] outMin, long[] outMax) {
+      dist.toMBB(distance, center, outMin, outMax);
+    }
+
+    @Override
+    public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+      stats.nDistPrefix++;
+      return dist.distToPrefix(v, prefix, bitsToIgnore);
+    }
+  }
+}
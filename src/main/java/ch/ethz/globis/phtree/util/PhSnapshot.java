@@ -0,0 +1,200 @@
+package ch.ethz.globis.phtree.util;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import ch.ethz.globis.phtree.PhTreeHelper;
+
+/**
+ * Constants and helpers for tree snapshots.
+ *
+ * A snapshot consists of a header (magic number, tree version, format version) followed 
+ * by the tree configuration (see {@link ch.ethz.globis.phtree.PhTreeConfig#write}) and 
+ * the tree specific data. Nodes are written depth-first, every slot in a node's value array
+ * is prefixed with a slot code that indicates whether the slot is empty, contains a
+ * sub-node or contains a value.
+ * Values are written with Java serialization, they must be {@link java.io.Serializable}.
+ */
+public class PhSnapshot {
+
+	public static final int MAGIC = 0x50485353;
+
+	public static final int VERSION_V11 = 11;
+	public static final int VERSION_V12 = 12;
+
+	/**
+	 * Version of the snapshot format, it is incremented whenever the format changes.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	public static final byte SLOT_EMPTY = 0;
+	public static final byte SLOT_NODE = 1;
+	public static final byte SLOT_NT_NODE = 2;
+	public static final byte SLOT_VALUE = 3;
+	public static final byte SLOT_VALUE_NULL = 4;
+
+	private PhSnapshot() {
+		//
+	}
+
+	/**
+	 * Read the snapshot header.
+	 * @param in input
+	 * @return the tree version
+	 * @throws IOException if reading fails, if the stream is not a snapshot or if the
+	 * format version is not supported
+	 */
+	public static int readHeader(ObjectInput in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a PH-tree snapshot");
+		}
+		int version = in.readByte();
+		int format = in.readByte();
+		if (format != FORMAT_VERSION) {
+			throw new StreamCorruptedException("Unsupported snapshot format: " + format);
+		}
+		return version;
+	}
+
+	/**
+	 * Write a long array that may be {@code null}.
+	 * @param a the array
+	 * @param out output
+	 * @throws IOException if writing fails
+	 */
+	public static void writeLongs(long[] a, ObjectOutput out) throws IOException {
+		out.writeBoolean(a != null);
+		if (a != null) {
+			RefsLong.write(a, out);
+		}
+	}
+
+	/**
+	 * @param in input
+	 * @return a long array or {@code null}
+	 * @throws IOException if reading fails
+	 */
+	public static long[] readLongs(ObjectInput in) throws IOException {
+		return in.readBoolean() ? RefsLong.read(in) : null;
+	}
+
+	/**
+	 * Write a byte array that may be {@code null}.
+	 * @param a the array
+	 * @param out output
+	 * @throws IOException if writing fails
+	 */
+	public static void writeBytes(byte[] a, ObjectOutput out) throws IOException {
+		out.writeBoolean(a != null);
+		if (a != null) {
+			RefsByte.write(a, out);
+		}
+	}
+
+	/**
+	 * @param in input
+	 * @return a byte array or {@code null}
+	 * @throws IOException if reading fails
+	 */
+	public static byte[] readBytes(ObjectInput in) throws IOException {
+		return in.readBoolean() ? RefsByte.read(in) : null;
+	}
+
+	/**
+	 * Read a value that has been written with {@link Output#writeValue(Object)}.
+	 * @param slot the slot code that precedes the value
+	 * @param in input
+	 * @return the value
+	 * @throws IOException if reading fails
+	 */
+	public static Object readValue(byte slot, ObjectInput in) throws IOException {
+		if (slot == SLOT_VALUE_NULL) {
+			return PhTreeHelper.NULL;
+		}
+		try {
+			return in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Callback for writing the entries of a nested tree, i.e. sub-nodes or values.
+	 * Implementations have to write the slot code.
+	 */
+	public interface SlotWriter {
+		void write(Object entry, Output out) throws IOException;
+	}
+
+	/**
+	 * Callback for reading the entries of a nested tree, i.e. sub-nodes or values.
+	 */
+	public interface SlotReader {
+		Object read(byte slot, ObjectInput in) throws IOException;
+	}
+
+	/**
+	 * Output stream for snapshots.
+	 */
+	public static class Output extends ObjectOutputStream {
+
+		//Reset the stream regularly, otherwise the stream keeps a reference to every value
+		private static final int RESET_INTERVAL = 1 << 16;
+
+		private int nValues = 0;
+
+		public Output(OutputStream out) throws IOException {
+			super(out);
+		}
+
+		public void writeHeader(int version) throws IOException {
+			writeInt(MAGIC);
+			writeByte(version);
+			writeByte(FORMAT_VERSION);
+		}
+
+		/**
+		 * Write a value, including the slot code.
+		 * @param value the value
+		 * @throws IOException if writing fails
+		 */
+		public void writeValue(Object value) throws IOException {
+			if (value == PhTreeHelper.NULL) {
+				writeByte(SLOT_VALUE_NULL);
+				return;
+			}
+			writeByte(SLOT_VALUE);
+			writeObject(value);
+			if (++nValues % RESET_INTERVAL == 0) {
+				reset();
+			}
+		}
+	}
+}
@@ -29,6 +29,19 @@ import java.util.Arrays;
  * Quality stats related to data characteristics and tree quality.
  */
 public final class PhTreeStats {
+  /** Node types, see {@link #nodeTypeHist}. */
+  public static final int TYPE_LHC = 0;
+  public static final int TYPE_AHC = 1;
+  public static final int TYPE_NT = 2;
+  private static final String[] TYPE_NAMES = {"LHC", "AHC", "NT"};
+  /** Memory components, see {@link #addSize(int, long)}. */
+  public static final int MEM_NODE = 0; //Node objects without arrays
+  public static final int MEM_BA = 1; //bit arrays (postfixes and HC positions) of Nodes
+  public static final int MEM_VALUES = 2; //value/sub-node arrays of Nodes
+  public static final int MEM_SUBCODES = 3; //sub-node codes of Nodes (v12 only)
+  public static final int MEM_NT = 4; //NtNodes, including their arrays
+  private static final String[] MEM_NAMES = {"nodes", "ba", "values", "subCodes", "NT"};
+
   private final int bitWidth;
   public int nNodes;
   public int nAHC; //AHC nodes (formerly Nodes with AHC-postfix representation)
@@ -36,11 +49,13 @@ public final class PhTreeStats {
   public int nNT; //nodes with NT representation
   public int nTotalChildren;
   public long size;  //calculated size in bytes
+  public long[] memSize = new long[MEM_NAMES.length];  //calculated size per component
   public int q_totalDepth;
   public int[] q_nPostFixN;  //filled with  x[currentDepth] = nPost;
   public int[] infixHist = new int[64];  //prefix len
   public int[] nodeDepthHist = new int[64];  //prefix len
   public int[] nodeSizeLogHist = new int[32];  //log (nEntries)
+  public int[][] nodeTypeHist = new int[3][32];  //[node type][log (nEntries)]
 
   public PhTreeStats() {
     this(64);
@@ -57,9 +72,15 @@ public final class PhTreeStats {
     r.appendLn("  nNodes = " + nNodes);
     r.appendLn("  avgNodeDepth = " + (double)q_totalDepth/(double)nNodes); 
     //            "  noPostChildren=" + q_nPostFix1 + "\n" +
-    r.appendLn("  AHC=" + nAHC + "  NI=" + nNT + "  nNtNodes=" + nNtNodes);
+    r.appendLn("  AHC=" + nAHC + "  NI=" + nNT + "  nNtNodes=" + nNtNodes
+        + "  LHC=" + getLhcCount());
     double apl = getAvgPostlen(r);
     r.appendLn("  avgPostLen = " + apl + " (" + (bitWidth-apl) + ")");
+    StringBuilder mem = new StringBuilder("  size = " + size);
+    for (int c = 0; c < MEM_NAMES.length; c++) {
+      mem.append(c == 0 ? " (" : ", ").append(MEM_NAMES[c]).append('=').append(memSize[c]);
+    }
+    r.appendLn(mem.append(')').toString());
 
     return r.toString();
   }
@@ -70,9 +91,44 @@ public final class PhTreeStats {
     r.appendLn("  nodeSizeLog   = " + Arrays.toString(nodeSizeLogHist));
     r.appendLn("  nodeDepthHist = " + Arrays.toString(nodeDepthHist));
     r.appendLn("  depthHist     = " + Arrays.toString(q_nPostFixN));
+    for (int t = 0; t < nodeTypeHist.length; t++) {
+      r.appendLn("  nodeSizeLog" + TYPE_NAMES[t] + (t == TYPE_NT ? " " : "") 
+          + "= " + Arrays.toString(nodeTypeHist[t]));
+    }
     return r.toString();
   }
 
+  /**
+   * Count a node in the node size histograms.
+   * @param type node type, one of TYPE_LHC, TYPE_AHC or TYPE_NT
+   * @param nEntries number of entries in the node
+   */
+  public void addNode(int type, int nEntries) {
+    int sizeLog = 32-Integer.numberOfLeadingZeros(nEntries);
+    nodeSizeLogHist[sizeLog]++;
+    nodeTypeHist[type][sizeLog]++;
+  }
+
+  /**
+   * Add to the calculated size.
+   * @param component memory component, one of the MEM_* constants
+   * @param bytes calculated size in bytes
+   */
+  public void addSize(int component, long bytes) {
+    size += bytes;
+    memSize[component] += bytes;
+  }
+
+  /**
+   * @return node-type histogram: number of nodes per type and log(nEntries)
+   * @see #TYPE_LHC
+   * @see #TYPE_AHC
+   * @see #TYPE_NT
+   */
+  public int[][] getNodeTypeHistogram() {
+    return nodeTypeHist;
+  }
+
   /**
    * 
    * @param r String builder
@@ -99,6 +155,10 @@ public final class PhTreeStats {
     return nAHC;
   }
 
+  public int getLhcCount() {
+    return count(nodeTypeHist[TYPE_LHC]);
+  }
+
   public int getNtInternalNodeCount() {
     return nNtNodes;
   }
@@ -111,8 +171,33 @@ public final class PhTreeStats {
     return size;
   }
 
+  /**
+   * @param component memory component, one of the MEM_* constants
+   * @return calculated size of the component in bytes
+   * @see #getCalculatedMemSize()
+   */
+  public long getCalculatedMemSize(int component) {
+    return memSize[component];
+  }
+
+  /**
+   * @param component memory component, one of the MEM_* constants
+   * @return name of the component
+   */
+  public static String getMemComponentName(int component) {
+    return MEM_NAMES[component];
+  }
+
   public int getBitDepth() {
     return bitWidth;
   }
 
+  private static int count(int[] hist) {
+    int n = 0;
+    for (int x : hist) {
+      n += x;
+    }
+    return n;
+  }
+
 }
\ No newline at end of file
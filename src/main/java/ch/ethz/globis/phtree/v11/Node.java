@@ -25,10 +25,15 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 import static ch.ethz.globis.phtree.PhTreeHelper.posInArray;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+
 import ch.ethz.globis.pht64kd.MaxKTreeI.NtEntry;
 import ch.ethz.globis.pht64kd.MaxKTreeI.PhIterator64;
 import ch.ethz.globis.phtree.PhEntry;
+import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.Refs;
 import ch.ethz.globis.phtree.util.RefsLong;
 import ch.ethz.globis.phtree.v11.nt.NodeTreeV11;
@@ -49,8 +54,8 @@ public class Node {
   private static final int REF_BITS = 4*8;
   private static final int HC_BITS = 0;  //number of bits required for storing current (HC)-representation
   private static final int INN_HC_WIDTH = 0; //Index-NotNull: width of not-null flag for post/infix-hc
-  public static final double AHC_LHC_BIAS = 2.0; 
-  public static final int NT_THRESHOLD = 150; 
+  public static final double AHC_LHC_BIAS = PhTreeConfig.DEFAULT_AHC_LHC_BIAS; 
+  public static final int NT_THRESHOLD = PhTreeConfig.DEFAULT_NT_THRESHOLD; 
 
   private Object[] values;
 
@@ -87,13 +92,13 @@ public class Node {
   /**
    * @return true if NI should be used. 
    */
-  private static final boolean shouldSwitchToNT(int entryCount) {
+  private static final boolean shouldSwitchToNT(int entryCount, PhTree11<?> tree) {
     //Maybe just provide a switching threshold? 5-10?
-    return entryCount >= NT_THRESHOLD;
+    return entryCount >= tree.ntThreshold();
   }
 
-  private static final boolean shouldSwitchFromNtToHC(int entryCount) {
-    return entryCount <= NT_THRESHOLD-30;
+  private static final boolean shouldSwitchFromNtToHC(int entryCount, PhTree11<?> tree) {
+    return entryCount <= tree.ntThreshold()-30;
   }
 
   static final int IK_WIDTH(int dims) { return dims; }; //post index key width 
@@ -150,8 +155,9 @@ public class Node {
   }
 
   void discardNode() {
-    Bits.arrayReplace(ba, null);
-    Refs.arrayReplace(values, null);
+    //pooled nodes must not keep the arrays, they may be reused by other nodes
+    ba = Bits.arrayReplace(ba, null);
+    values = Refs.arrayReplace(values, null);
     entryCnt = 0;
     NodePool.offer(this);
     ind = null;
@@ -191,11 +197,8 @@ public class Node {
     }
     //To cut of trailing bits
     long mask = (-1L) << postLen;
-    for (int i = 0; i < outVal.length; i++) {
-      //Replace val with infix (val may be !=0 from traversal)
-      outVal[i] = (mask & outVal[i]) | Bits.readArray(ba, offs, postLen);
-      offs += postLen;
-    }
+    //Replace val with infix (val may be !=0 from traversal)
+    Bits.readArray(ba, offs, postLen, outVal, mask, outVal);
     return true;
   }
 
@@ -234,7 +237,7 @@ public class Node {
     //check whether hcPos is valid
     if (pin < 0) {
       tree.increaseNrEntries();
-      addPostPIN(hcPos, pin, keyToMatch, newValueToInsert);
+      addPostPIN(hcPos, pin, keyToMatch, newValueToInsert, tree);
       return null;
     }
 
@@ -503,7 +506,7 @@ public class Node {
     if (parent == null || getEntryCount() > 2) {
       //no merging required
       //value exists --> remove it
-      return removeEntry(hcPos, pinToDelete, dims);
+      return removeEntry(hcPos, pinToDelete, dims, tree);
     }
 
     //okay, at his point we have a post that matches and (since it matches) we need to remove
@@ -609,11 +612,7 @@ public class Node {
     } else {
       int offsetBit = pinToOffsBitsData(posInNode, hcPos, postBuf.length);
       final long mask = (~0L)<<postLen;
-      for (int i = 0; i < postBuf.length; i++) {
-        postBuf[i] &= mask;
-        postBuf[i] |= Bits.readArray(ba, offsetBit, postLen);
-        offsetBit += postLen;
-      }
+      Bits.readArray(ba, offsetBit, postLen, postBuf, mask, postBuf);
     }
     return o;
   }
@@ -649,30 +648,27 @@ public class Node {
     } else {
       int offsetBit = pinToOffsBitsData(posInNode, hcPos, subNodePrefix.length);
       final long mask = (~0L)<<postLen;
-      for (int i = 0; i < subNodePrefix.length; i++) {
-        outKey[i] = (subNodePrefix[i] & mask) | Bits.readArray(ba, offsetBit, postLen);
-        offsetBit += postLen;
-      }
+      Bits.readArray(ba, offsetBit, postLen, subNodePrefix, mask, outKey);
     }
     return o;
   }
 
-  private boolean shouldSwitchToAHC(int entryCount, int dims) {
-    return useAHC(entryCount, dims);
+  private boolean shouldSwitchToAHC(int entryCount, int dims, PhTree11<?> tree) {
+    return useAHC(entryCount, dims, tree);
   }
 
-  private boolean shouldSwitchToLHC(int entryCount, int dims) {
-    return !useAHC(entryCount+2, dims);
+  private boolean shouldSwitchToLHC(int entryCount, int dims, PhTree11<?> tree) {
+    return !useAHC(entryCount+2, dims, tree);
   }
 
-  private boolean useAHC(int entryCount, int dims) {
+  private boolean useAHC(int entryCount, int dims, PhTree11<?> tree) {
     //calc post mode.
     //+1 bit for null/not-null flag
     long sizeAHC = (dims * postLen + INN_HC_WIDTH + REF_BITS) * (1L << dims); 
     //+DIM because every index entry needs DIM bits
     long sizeLHC = (dims * postLen + IK_WIDTH(dims) + REF_BITS) * (long)entryCount;
     //Already 1.1 i.o. 1.0 has significant bad impact on perf.
-    return PhTree11.AHC_ENABLED && (dims<=31) && (sizeLHC*AHC_LHC_BIAS >= sizeAHC);
+    return PhTree11.AHC_ENABLED && (dims<=31) && (sizeLHC*tree.ahcLhcBias() >= sizeAHC);
   }
 
   /**
@@ -707,19 +703,13 @@ public class Node {
       ((Node)value).setInfixLen(newSubInfixLen);
       writeSubInfix(pin, hcPos, newKey, newSubInfixLen);
     } else if (postLen > 0) {
-      for (int i = 0; i < newKey.length; i++) {
-        Bits.writeArray(ba, offsKey, postLen, newKey[i]);
-        offsKey += postLen;
-      }
+      Bits.writeArray(ba, offsKey, postLen, newKey);
     }
   }
 
   private Object replacePost(int pin, long hcPos, long[] newKey) {
     int offs = pinToOffsBitsData(pin, hcPos, newKey.length);
-    for (int i = 0; i < newKey.length; i++) {
-      Bits.writeArray(ba, offs, postLen, newKey[i]);
-      offs += postLen;
-    }
+    Bits.writeArray(ba, offs, postLen, newKey);
     return values[pin];
   }
 
@@ -900,8 +890,10 @@ public class Node {
    * @param hcPos
    * @param pin position in node: ==hcPos for AHC or pos in array for LHC
    * @param key
+   * @param value
+   * @param tree the tree, provides the thresholds for switching the node representation
    */
-  void addPostPIN(long hcPos, int pin, long[] key, Object value) {
+  void addPostPIN(long hcPos, int pin, long[] key, Object value, PhTree11<?> tree) {
     final int dims = key.length;
     final int bufEntryCnt = getEntryCount();
     //decide here whether to use hyper-cube or linear representation
@@ -910,7 +902,7 @@ public class Node {
     //    For one dimension, both need one additional bit to indicate either
     //    null/not-null (hypercube, actually two bit) or to indicate the index. 
 
-    if (!isNT() && shouldSwitchToNT(bufEntryCnt)) {
+    if (!isNT() && shouldSwitchToNT(bufEntryCnt, tree)) {
       ntBuild(bufEntryCnt, dims, key);
     }
     if (isNT()) {
@@ -919,7 +911,7 @@ public class Node {
     }
 
     //switch representation (HC <-> Linear)?
-    if (!isAHC() && shouldSwitchToAHC(bufEntryCnt + 1, dims)) {
+    if (!isAHC() && shouldSwitchToAHC(bufEntryCnt + 1, dims, tree)) {
       switchLhcToAhcAndGrow(bufEntryCnt, dims);
       //no need to update pin now, we are in HC now.
     }
@@ -930,9 +922,7 @@ public class Node {
     if (isAHC()) {
       //hyper-cube
       int offsPostKey = posToOffsBitsDataAHC(hcPos, offsIndex, dims);
-      for (int i = 0; i < key.length; i++) {
-        Bits.writeArray(ba, offsPostKey + postLen * i, postLen, key[i]);
-      }
+      Bits.writeArray(ba, offsPostKey, postLen, key);
       values[(int) hcPos] = value;
     } else {
       //get position
@@ -947,36 +937,26 @@ public class Node {
       Bits.writeArray(ia, offs, IK_WIDTH(dims), hcPos);
       //insert value:
       offs += IK_WIDTH(dims);
-      for (int i = 0; i < key.length; i++) {
-        Bits.writeArray(ia, offs, postLen, key[i]);
-        offs += postLen;
-      }
+      Bits.writeArray(ia, offs, postLen, key);
       values = Refs.insertSpaceAtPos(values, pin, bufEntryCnt+1);
       values[pin] = value;
     }
   }
 
   void postToNI(int startBit, int postLen, long[] outKey, long hcPos, long[] prefix, long mask) {
-    for (int d = 0; d < outKey.length; d++) {
-      outKey[d] = Bits.readArray(ba, startBit, postLen) | (prefix[d] & mask);
-      startBit += postLen;
-    }
+    Bits.readArray(ba, startBit, postLen, prefix, mask, outKey);
     PhTreeHelper.applyHcPos(hcPos, postLen, outKey);
   }
 
   void postFromNI(long[] ia, int startBit, long key[], int postLen) {
     //insert postifx
-    for (int d = 0; d < key.length; d++) {
-      Bits.writeArray(ia, startBit + postLen * d, postLen, key[d]);
-    }
+    Bits.writeArray(ia, startBit, postLen, key);
   }
 
   void infixFromNI(long[] ba, int startBit, long[] key, int subInfixLen) {
     //insert infix:
-    for (int i = 0; i < key.length; i++) {
-      Bits.writeArray(ba, startBit, postLen, key[i]);
-      startBit += postLen;
-    }
+    Bits.writeArray(ba, startBit, postLen, key);
+    startBit += key.length * postLen;
     int subInfoOffs = startBit-1; 
     writeSubInfixInfo(ba, subInfoOffs, subInfixLen);
   }
@@ -1046,7 +1026,7 @@ public class Node {
    * @param removeSub Remove sub or post?
    * @return Previous value if post was removed
    */
-  private Object ntDeconstruct(int dims, long posToRemove) {
+  private Object ntDeconstruct(int dims, long posToRemove, PhTree11<?> tree) {
     //Migrate node to node-index representation
     if (ind == null || !isNT()) {
       throw new IllegalStateException();
@@ -1056,7 +1036,7 @@ public class Node {
     decEntryCount();
 
     //calc node mode.
-    boolean shouldBeAHC = useAHC(entryCountNew, dims);
+    boolean shouldBeAHC = useAHC(entryCountNew, dims, tree);
     setAHC(shouldBeAHC);
 
 
@@ -1317,11 +1297,11 @@ public class Node {
   }
 
 
-  Object removeEntry(long hcPos, int posInNode, final int dims) {
+  Object removeEntry(long hcPos, int posInNode, final int dims, PhTree11<?> tree) {
     final int bufEntryCnt = getEntryCount();
     if (isNT()) {
-      if (shouldSwitchFromNtToHC(bufEntryCnt)) {
-        return ntDeconstruct(dims, hcPos);
+      if (shouldSwitchFromNtToHC(bufEntryCnt, tree)) {
+        return ntDeconstruct(dims, hcPos, tree);
       }
       Object o = ntRemoveAnything(hcPos, dims);
       decEntryCount();
@@ -1329,7 +1309,7 @@ public class Node {
     }
 
     //switch representation (HC <-> Linear)?
-    if (isAHC() && shouldSwitchToLHC(bufEntryCnt, dims)) {
+    if (isAHC() && shouldSwitchToLHC(bufEntryCnt, dims, tree)) {
       //revert to linearized representation, if applicable
       Object oldVal = switchAhcToLhcAndShrink(bufEntryCnt, dims, hcPos);
       decEntryCount();
@@ -1484,4 +1464,75 @@ public class Node {
     return values;
   }
 
+  /**
+   * Write this node and all sub-nodes to a snapshot.
+   * @param out output
+   * @throws IOException if writing fails
+   */
+  void writeSnapshot(PhSnapshot.Output out) throws IOException {
+    out.writeInt(entryCnt);
+    out.writeByte(postLen);
+    out.writeByte(infixLen);
+    out.writeBoolean(isHC);
+    PhSnapshot.writeLongs(ba, out);
+    boolean isNT = ind != null;
+    out.writeBoolean(isNT);
+    if (isNT) {
+      ind.writeSnapshot(out, Node::writeSnapshotEntry);
+    } else {
+      out.writeInt(values.length);
+      for (int i = 0; i < values.length; i++) {
+        writeSnapshotEntry(values[i], out);
+      }
+    }
+  }
+
+  private static void writeSnapshotEntry(Object v, PhSnapshot.Output out) throws IOException {
+    if (v == null) {
+      out.writeByte(PhSnapshot.SLOT_EMPTY);
+    } else if (v instanceof Node) {
+      out.writeByte(PhSnapshot.SLOT_NODE);
+      ((Node)v).writeSnapshot(out);
+    } else {
+      out.writeValue(v);
+    }
+  }
+
+  /**
+   * Read a node and all sub-nodes from a snapshot.
+   * @param in input
+   * @return the node
+   * @throws IOException if reading fails
+   */
+  static Node readSnapshot(ObjectInput in) throws IOException {
+    Node n = NodePool.getNode();
+    n.entryCnt = in.readInt();
+    n.postLen = in.readByte();
+    n.infixLen = in.readByte();
+    n.isHC = in.readBoolean();
+    n.ba = PhSnapshot.readLongs(in);
+    if (in.readBoolean()) {
+      n.ind = NtNode.readSnapshot(in, Node::readSnapshotEntry);
+      n.values = null;
+    } else {
+      int nValues = in.readInt();
+      n.values = Refs.arrayCreate(nValues);
+      for (int i = 0; i < nValues; i++) {
+        n.values[i] = readSnapshotEntry(in.readByte(), in);
+      }
+    }
+    return n;
+  }
+
+  private static Object readSnapshotEntry(byte slot, ObjectInput in) throws IOException {
+    switch (slot) {
+    case PhSnapshot.SLOT_EMPTY: 
+      return null;
+    case PhSnapshot.SLOT_NODE: 
+      return readSnapshot(in);
+    default:
+      return PhSnapshot.readValue(slot, in);
+    }
+  }
+
 }
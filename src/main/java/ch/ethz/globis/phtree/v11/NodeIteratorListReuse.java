@@ -28,6 +28,7 @@ import java.util.List;
 import ch.ethz.globis.pht64kd.MaxKTreeI.NtEntry;
 import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v11.nt.NtIteratorMask;
 
 /**
@@ -74,6 +75,7 @@ public class NodeIteratorListReuse<T, R> {
   private long[] rangeMax;
 
   private final PhIteratorStack pool;
+  private PhQueryStats stats;
 
   private final class NodeIterator {
 
@@ -99,15 +101,22 @@ public class NodeIteratorListReuse<T, R> {
     void reinitAndRun(Node node, long lower, long upper) {
       this.node = node;
       boolean isNI = node.isNT();
-      this.niIterator = null;
+      if (stats != null) {
+        stats.addNode(node.isAHC(), isNI);
+      }
       nMaxEntry = node.getEntryCount();
       this.nEntryFound = 0;
       this.maskLower = lower;
       this.maskUpper = upper;
 
       useHcIncrementer = false;
-      if (isNI && niIterator == null) {
-        niIterator = node.ntIteratorWithMask(dims, maskLower, maskUpper);
+      if (isNI) {
+        //the NT iterator is reused with the NodeIterator
+        if (niIterator == null) {
+          niIterator = node.ntIteratorWithMask(dims, maskLower, maskUpper);
+        } else {
+          niIterator.reset(node.ind(), maskLower, maskUpper);
+        }
       }
 
       if (dims > 6) {
@@ -145,6 +154,9 @@ public class NodeIteratorListReuse<T, R> {
     }
 
     private void checkAndAddResult(PhEntry<T> e) {
+      if (stats != null) {
+        stats.nPostfixMatched++;
+      }
       results.phOffer(e);
     }
 
@@ -159,6 +171,9 @@ public class NodeIteratorListReuse<T, R> {
 
     @SuppressWarnings("unchecked")
     private void readValue(int pin, long pos) {
+      if (stats != null) {
+        stats.nPostfixChecked++;
+      }
       PhEntry<T> resultBuffer = results.phGetTempEntry();
       long[] key = resultBuffer.getKey();
       Object o = node.checkAndGetEntryPIN(pin, pos, valTemplate, key, rangeMin, rangeMax);
@@ -175,6 +190,9 @@ public class NodeIteratorListReuse<T, R> {
     }
 
     private void readValue(long pos, Object value, PhEntry<T> result) {
+      if (stats != null) {
+        stats.nPostfixChecked++;
+      }
       if (!node.checkAndGetEntryNt(pos, value, result, valTemplate, rangeMin, rangeMax)) {
         return;
       }
@@ -192,10 +210,14 @@ public class NodeIteratorListReuse<T, R> {
           readValue(pin, currentPos);
         }
 
+        long prev = currentPos;
         currentPos = PhTree11.inc(currentPos, maskLower, maskUpper);
         if (currentPos <= maskLower) {
           break;
         }
+        if (stats != null) {
+          stats.nHcSkipped += currentPos - prev - 1;
+        }
       } while (results.size() < maxResults);
     }
 
@@ -273,6 +295,9 @@ public class NodeIteratorListReuse<T, R> {
         if (v instanceof Node) {
           Node nextSubNode = (Node) v; 
           PhTreeHelper.applyHcPos(e.key(), node.getPostLen(), valTemplate);
+          if (stats != null) {
+            stats.nPostfixChecked++;
+          }
           if (node.checkAndApplyInfixNt(nextSubNode.getInfixLen(), e.getKdKey(),
               valTemplate, rangeMin, rangeMax)) {
             checkAndRunSubnode(nextSubNode, null);
@@ -297,6 +322,9 @@ public class NodeIteratorListReuse<T, R> {
         if (v instanceof Node) {
           Node sub = (Node) v;
           PhTreeHelper.applyHcPos(currentPos, node.getPostLen(), valTemplate);
+          if (stats != null) {
+            stats.nPostfixChecked++;
+          }
           if (node.checkAndApplyInfixNt(sub.getInfixLen(), resultBuffer.getKey(), 
               valTemplate, rangeMin, rangeMax)) {
             checkAndRunSubnode(sub, resultBuffer);
@@ -306,10 +334,14 @@ public class NodeIteratorListReuse<T, R> {
           readValue(currentPos, v, resultBuffer);
         }
 
+        long prev = currentPos;
         currentPos = PhTree11.inc(currentPos, maskLower, maskUpper);
         if (currentPos <= maskLower) {
           break;
         }
+        if (stats != null) {
+          stats.nHcSkipped += currentPos - prev - 1;
+        }
       }
     }
 
@@ -335,6 +367,13 @@ public class NodeIteratorListReuse<T, R> {
     return results;
   }
 
+  /**
+   * @param stats statistics of the following queries, can be {@code null}
+   */
+  void setStats(PhQueryStats stats) {
+    this.stats = stats;
+  }
+
   void run(Node node) {
     //create limits for the local node. there is a lower and an upper limit. Each limit
     //consists of a series of DIM bit, one for each dimension.
@@ -26,6 +26,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 import ch.ethz.globis.pht64kd.MaxKTreeI.NtEntry;
 import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilter;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v11.nt.NtIteratorMask;
 
 
@@ -60,6 +62,8 @@ public class NodeIteratorNoGC<T> {
   private boolean useHcIncrementer;
   private boolean useNiHcIncrementer;
   private PhFilter checker;
+  private PhQueryStats stats;
+  private final int lhcBinarySearchThreshold;
 
   /**
    * 
@@ -67,8 +71,19 @@ public class NodeIteratorNoGC<T> {
    * @param valTemplate A null indicates that no values are to be extracted.
    */
   public NodeIteratorNoGC(int dims, long[] valTemplate) {
+    this(dims, valTemplate, PhTree11.LHC_BINARY_SEARCH_THRESHOLD);
+  }
+
+  /**
+   * 
+   * @param dims dimensions
+   * @param valTemplate A null indicates that no values are to be extracted.
+   * @param lhcBinarySearchThreshold see {@link PhTreeConfig#setLhcBinarySearchThreshold(int)}
+   */
+  public NodeIteratorNoGC(int dims, long[] valTemplate, int lhcBinarySearchThreshold) {
     this.dims = dims;
     this.valTemplate = valTemplate;
+    this.lhcBinarySearchThreshold = lhcBinarySearchThreshold;
   }
 
   /**
@@ -158,6 +173,9 @@ public class NodeIteratorNoGC<T> {
    */
   @SuppressWarnings("unchecked")
   private boolean readValue(int pin, long pos, PhEntry<T> result) {
+    if (stats != null) {
+      stats.nPostfixChecked++;
+    }
     Object o = node.checkAndGetEntryPIN(pin, pos, valTemplate, result.getKey(), 
         rangeMin, rangeMax);
     if (o == null) {
@@ -183,6 +201,9 @@ public class NodeIteratorNoGC<T> {
   }
 
   private boolean readValue(long pos, Object value, PhEntry<T> result) {
+    if (stats != null) {
+      stats.nPostfixChecked++;
+    }
     if (!node.checkAndGetEntryNt(pos, value, result, valTemplate, rangeMin, rangeMax)) {
       return false;
     }
@@ -210,10 +231,14 @@ public class NodeIteratorNoGC<T> {
         //starting position
         currentPos = maskLower;
       } else {
+        long prev = currentPos;
         currentPos = PhTree11.inc(currentPos, maskLower, maskUpper);
         if (currentPos <= maskLower) {
           return false;
         }
+        if (stats != null) {
+          stats.nHcSkipped += currentPos - prev - 1;
+        }
       }
 
       int pin = node.getPosition(currentPos, dims);
@@ -304,10 +329,14 @@ public class NodeIteratorNoGC<T> {
         //starting position
         currentPos = maskLower;
       } else {
+        long prev = currentPos;
         currentPos = PhTree11.inc(currentPos, maskLower, maskUpper);
         if (currentPos <= maskLower) {
           break;
         }
+        if (stats != null) {
+          stats.nHcSkipped += currentPos - prev - 1;
+        }
       }
 
       Object v = node.ntGetEntry(currentPos, result.getKey(), valTemplate);
@@ -424,7 +453,7 @@ public class NodeIteratorNoGC<T> {
         }
       } else {
         //LHC
-        if (this.next + PhTree11.LHC_BINARY_SEARCH_THRESHOLD < this.maskLower) {
+        if (this.next + lhcBinarySearchThreshold < this.maskLower) {
           int pin = node.getPosition(maskLower, dims);
           //If we don't find it we use the next following entry, i.e. -(pin+1)
           pin = pin >= 0 ? pin : -(pin+1); 
@@ -452,7 +481,9 @@ public class NodeIteratorNoGC<T> {
     return true;
   }
 
-  void init(long[] rangeMin, long[] rangeMax, Node node, PhFilter checker) {
+  void init(long[] rangeMin, long[] rangeMax, Node node, PhFilter checker, 
+      PhQueryStats stats) {
+    this.stats = stats;
     this.node = node; //for calcLimits
     calcLimits(rangeMin, rangeMax);
     reinit(node, rangeMin, rangeMax, checker);
@@ -48,8 +48,8 @@ public final class PhIteratorFullNoGC<T> implements PhExtent<T> {
 		private int size = 0;
 		
 		@SuppressWarnings("unchecked")
-		public PhIteratorStack() {
-			stack = new NodeIteratorFullNoGC[PhTree11.DEPTH_64];
+		public PhIteratorStack(int depth) {
+			stack = new NodeIteratorFullNoGC[depth];
 		}
 
 		public boolean isEmpty() {
@@ -89,7 +89,7 @@ public final class PhIteratorFullNoGC<T> implements PhExtent<T> {
 	public PhIteratorFullNoGC(PhTree11<T> pht, PhFilter checker) {
 		this.dims = pht.getDim();
 		this.checker = checker;
-		this.stack = new PhIteratorStack();
+		this.stack = new PhIteratorStack(pht.getBitDepth());
 		this.valTemplate = new long[dims];
 		this.pht = pht;
 		this.resultFree = new PhEntry<>(new long[dims], null);
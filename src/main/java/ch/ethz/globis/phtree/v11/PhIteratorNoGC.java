@@ -29,6 +29,7 @@ import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilter;
 import ch.ethz.globis.phtree.PhTree.PhQuery;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * This PhIterator uses a loop instead of recursion in findNextElement();. 
@@ -49,8 +50,8 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		private int size = 0;
 		
 		@SuppressWarnings("unchecked")
-		public PhIteratorStack() {
-			stack = new NodeIteratorNoGC[PhTree11.DEPTH_64];
+		public PhIteratorStack(int depth) {
+			stack = new NodeIteratorNoGC[depth];
 		}
 
 		public boolean isEmpty() {
@@ -60,10 +61,13 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		public NodeIteratorNoGC<T> prepareAndPush(Node node) {
 			NodeIteratorNoGC<T> ni = stack[size++];
 			if (ni == null)  {
-				ni = new NodeIteratorNoGC<>(dims, valTemplate);
+				ni = new NodeIteratorNoGC<>(dims, valTemplate, pht.lhcBinarySearchThreshold());
 				stack[size-1] = ni;
 			}
-			ni.init(rangeMin, rangeMax, node, checker);
+			ni.init(rangeMin, rangeMax, node, checker, stats);
+			if (stats != null) {
+				stats.addNode(node.isAHC(), node.isNT());
+			}
 			return ni;
 		}
 
@@ -82,6 +86,7 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 	private long[] rangeMin;
 	private long[] rangeMax;
 	private PhFilter checker;
+	private PhQueryStats stats;
 	private final PhTree11<T> pht;
 	
 	private PhEntry<T> resultFree;
@@ -91,7 +96,7 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 	public PhIteratorNoGC(PhTree11<T> pht, PhFilter checker) {
 		this.dims = pht.getDim();
 		this.checker = checker;
-		this.stack = new PhIteratorStack();
+		this.stack = new PhIteratorStack(pht.getBitDepth());
 		this.valTemplate = new long[dims];
 		this.pht = pht;
 		this.resultFree = new PhEntry<>(new long[dims], null);
@@ -104,6 +109,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		this.rangeMax = rangeMax;
 		this.stack.size = 0;
 		this.isFinished = false;
+		if (stats != null) {
+			stats.nQueries++;
+		}
 		
 		if (pht.getRoot() == null) {
 			//empty index
@@ -124,6 +132,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 					p = stack.prepareAndPush((Node) result.getNodeInternal());
 					continue;
 				} else {
+					if (stats != null) {
+						stats.nPostfixMatched++;
+					}
 					resultFree = resultToReturn;
 					resultToReturn = result;
 					return;
@@ -136,6 +147,11 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		isFinished = true;
 	}
 	
+	@Override
+	public void setStats(PhQueryStats stats) {
+		this.stats = stats;
+	}
+
 	@Override
 	public long[] nextKey() {
 		long[] key = nextEntryReuse().getKey();
@@ -0,0 +1,227 @@
+package ch.ethz.globis.phtree.v11;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import ch.ethz.globis.phtree.PhDistance;
+import ch.ethz.globis.phtree.PhDistanceL;
+import ch.ethz.globis.phtree.PhEntry;
+import ch.ethz.globis.phtree.PhEntryDist;
+import ch.ethz.globis.phtree.PhTree.PhIncrementalQuery;
+import ch.ethz.globis.phtree.PhTreeHelper;
+
+/**
+ * Incremental nearest neighbour query.
+ *
+ * The query traverses the tree best-first (Hjaltason and Samet): nodes and entries are
+ * kept in a priority queue that is ordered by their (minimum) distance to the center.
+ * The minimum distance of a node is calculated from its prefix with
+ * {@link PhDistance#distToPrefix(long[], long[], int)}. Whenever an entry is at the
+ * head of the queue, no node or entry in the queue can be closer to the center, so the
+ * entry can be returned.
+ *
+ * Unlike the kNN queries, this query does not require the number of results in advance.
+ *
+ * @param <T> value type
+ */
+public class PhQueryKnnIncremental<T> implements PhIncrementalQuery<T> {
+
+	/**
+	 * A node or an entry in the queue.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		private double dist;
+		private Node node;
+		private final long[] key;
+		private Object value;
+
+		Candidate(int dims) {
+			key = new long[dims];
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			return Double.compare(dist, o.dist);
+		}
+	}
+
+	private final int dims;
+	private final PhTree11<T> pht;
+	private PhDistance distance;
+	private long[] center;
+	private double maxDist = Double.POSITIVE_INFINITY;
+	private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+	private final ArrayList<Candidate> pool = new ArrayList<>();
+	private final NodeIteratorFullNoGC<T> ni;
+	private final long[] niTemplate;
+	private final PhEntry<T> niResult;
+	private final PhEntryDist<T> resultBuffer;
+	private Candidate next;
+
+	public PhQueryKnnIncremental(PhTree11<T> pht) {
+		this.dims = pht.getDim();
+		this.pht = pht;
+		this.niTemplate = new long[dims];
+		this.ni = new NodeIteratorFullNoGC<>(dims, niTemplate);
+		this.niResult = new PhEntry<>(new long[dims], null);
+		this.resultBuffer = new PhEntryDist<>(new long[dims], null, Double.NaN);
+	}
+
+	@Override
+	public PhQueryKnnIncremental<T> reset(PhDistance dist, long... center) {
+		this.distance = dist == null ? PhDistanceL.THIS : dist;
+		this.center = center;
+		this.maxDist = Double.POSITIVE_INFINITY;
+		while (!queue.isEmpty()) {
+			pool.add(queue.poll());
+		}
+		if (next != null) {
+			pool.add(next);
+			next = null;
+		}
+		Node root = pht.getRoot();
+		if (root != null) {
+			Candidate c = create();
+			//The root covers the whole space, its prefix is always 0.
+			c.dist = 0;
+			c.node = root;
+			queue.add(c);
+			findNext();
+		}
+		return this;
+	}
+
+	private Candidate create() {
+		return pool.isEmpty() ? new Candidate(dims) : pool.remove(pool.size() - 1);
+	}
+
+	private void findNext() {
+		while (!queue.isEmpty()) {
+			Candidate c = queue.poll();
+			if (c.dist > maxDist) {
+				pool.add(c);
+				break;
+			}
+			if (c.node == null) {
+				next = c;
+				return;
+			}
+			expand(c);
+			pool.add(c);
+		}
+		//finished
+		next = null;
+	}
+
+	private void expand(Candidate c) {
+		Node node = c.node;
+		c.node = null;
+		System.arraycopy(c.key, 0, niTemplate, 0, dims);
+		ni.init(node, null);
+		while (ni.increment(niResult)) {
+			Candidate e = create();
+			if (niResult.hasNodeInternal()) {
+				Node sub = (Node) niResult.getNodeInternal();
+				System.arraycopy(niTemplate, 0, e.key, 0, dims);
+				//skip this for postLen>=63
+				double d = sub.getPostLen() < (PhTree11.DEPTH_64-1) ?
+						distance.distToPrefix(center, e.key, sub.getPostLen()+1) : 0;
+				e.dist = Math.max(c.dist, d);
+				e.node = sub;
+				e.value = null;
+			} else {
+				System.arraycopy(niResult.getKey(), 0, e.key, 0, dims);
+				e.dist = distance.dist(center, e.key);
+				e.node = null;
+				e.value = niResult.getValue();
+			}
+			if (e.dist <= maxDist) {
+				queue.add(e);
+			} else {
+				pool.add(e);
+			}
+		}
+	}
+
+	@Override
+	public void setMaxDistance(double maxDist) {
+		this.maxDist = maxDist;
+		if (next != null && next.dist > maxDist) {
+			pool.add(next);
+			next = null;
+		}
+	}
+
+	@Override
+	public double lowerBound() {
+		return next != null ? next.dist : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public PhEntryDist<T> nextEntryReuse() {
+		if (next == null) {
+			throw new NoSuchElementException();
+		}
+		resultBuffer.setCopyKey(next.key, (T) next.value, next.dist);
+		next.value = null;
+		pool.add(next);
+		findNext();
+		return resultBuffer;
+	}
+
+	@Override
+	public PhEntryDist<T> nextEntry() {
+		return new PhEntryDist<>(nextEntryReuse());
+	}
+
+	@Override
+	public long[] nextKey() {
+		return nextEntryReuse().getKey().clone();
+	}
+
+	@Override
+	public T nextValue() {
+		return nextEntryReuse().getValue();
+	}
+
+	@Override
+	public T next() {
+		T v = nextEntryReuse().getValue();
+		return v == PhTreeHelper.NULL ? null : v;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
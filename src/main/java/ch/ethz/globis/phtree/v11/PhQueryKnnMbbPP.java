@@ -34,6 +34,7 @@ import ch.ethz.globis.phtree.PhEntryDist;
 import ch.ethz.globis.phtree.PhFilterDistance;
 import ch.ethz.globis.phtree.PhTree.PhExtent;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * kNN query implementation that uses preprocessors and distance functions.
@@ -73,7 +74,11 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
 	private final int dims;
 	private int nMin;
 	private PhTree11<T> pht;
+	private PhDistance userDistance;
 	private PhDistance distance;
+	private PhQueryStats stats;
+	//counters of the window queries, they are part of this query
+	private final PhQueryStats windowStats = new PhQueryStats();
 	private final ArrayList<PhEntryDist<T>> entries = new ArrayList<>();
 	private int resultSize = 0;
 	private int currentPos = -1;
@@ -124,15 +129,30 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
 		return nextValue();
 	}
 
+	@Override
+	public void setStats(PhQueryStats stats) {
+		this.stats = stats;
+		iter.setStats(stats == null ? null : windowStats);
+	}
+
 	@Override
 	public PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center) {
-		this.distance = dist == null ? this.distance : dist;
+		this.userDistance = dist == null ? this.userDistance : dist;
+		this.distance = stats == null ? userDistance : stats.countDistances(userDistance);
 		this.nMin = nMin;
+		if (stats != null) {
+			stats.nQueries++;
+			windowStats.clear();
+		}
 		clearEntries();
 
 		if (nMin > 0) {
 			nearestNeighbourBinarySearch(center, nMin);
 		}
+		if (stats != null) {
+			windowStats.nQueries = 0;
+			stats.add(windowStats);
+		}
 
 		currentPos = 0;
 		return this;
@@ -235,6 +255,9 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
 
 		while (!findNeighbours(currentDist, nMin, val)) {
 			currentDist *= 10;
+			if (stats != null) {
+				stats.nKnnExpansions++;
+			}
 		}
 	}
 
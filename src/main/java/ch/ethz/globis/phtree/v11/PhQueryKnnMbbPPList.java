@@ -32,6 +32,7 @@ import ch.ethz.globis.phtree.PhEntryDist;
 import ch.ethz.globis.phtree.PhFilterDistance;
 import ch.ethz.globis.phtree.PhTree.PhExtent;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * kNN query implementation that uses preprocessors and distance functions.
@@ -72,6 +73,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	private int nMin;
 	private PhTree11<T> pht;
 	private PhDistance distance;
+	//the distance function without counting
+	private PhDistance userDistance;
+	private PhQueryStats stats;
 	private int currentPos = -1;
 	private final long[] mbbMin;
 	private final long[] mbbMax;
@@ -80,6 +84,7 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	private final KnnResultList results; 
 	private final NodeIteratorFullNoGC<T> ni;
 	private final long[] niBuffer; 
+	private final PhEntry<T> niResult;
 
 
 	/**
@@ -96,6 +101,14 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 		this.iter = new NodeIteratorListReuse<>(dims, results);
 		this.niBuffer = new long[dims];
 		ni = new NodeIteratorFullNoGC<>(dims, niBuffer);
+		//This allows writing the result directly into 'niBuffer'
+		this.niResult = new PhEntry<>(niBuffer, null);
+	}
+
+	@Override
+	public void setStats(PhQueryStats stats) {
+		this.stats = stats;
+		iter.setStats(stats);
 	}
 
 	@Override
@@ -133,8 +146,12 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 	@Override
 	public PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center) {
-		this.distance = dist == null ? this.distance : dist;
+		this.userDistance = dist == null ? this.userDistance : dist;
+		this.distance = stats == null ? userDistance : stats.countDistances(userDistance);
 		this.nMin = nMin;
+		if (stats != null) {
+			stats.nQueries++;
+		}
 		
 		if (nMin > 0) {
 			results.reset(nMin, center);
@@ -184,8 +201,7 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 			niBuffer[i] = key[i] & mask;
 		}
 		
-		//This allows writing the result directly into 'ret'
-		PhEntry<T> result = new PhEntry<>(niBuffer, null);
+		PhEntry<T> result = niResult;
 		ni.init(node, null);
 		while (ni.increment(result)) {
 			if (result.hasNodeInternal()) {
@@ -214,9 +230,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	}
 
 	private double calcDiagonal(long[] key, Node node) {
-		//First, get min/max.
-		long[] min = new long[dims];
-		long[] max = new long[dims];
+		//First, get min/max. The MBB is not used yet, it is calculated after the estimate.
+		long[] min = mbbMin;
+		long[] max = mbbMax;
 		long mask = (-1L) << (node.getPostLen()+1);
 		long mask1111 = ~mask;
 		for (int i = 0; i < dims; i++) {
@@ -276,6 +292,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 		while (!findNeighbours(estimatedDist, nMin, val)) {
 			estimatedDist *= 10;
+			if (stats != null) {
+				stats.nKnnExpansions++;
+			}
 		}
 	}
 
@@ -476,19 +495,8 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 		@Override
 		boolean phIsPrefixValid(long[] prefix, int bitsToIgnore) {
-			long maskMin = (-1L) << bitsToIgnore;
-			long maskMax = ~maskMin;
-			long[] buf = new long[prefix.length];
-			for (int i = 0; i < buf.length; i++) {
-				//if v is outside the node, return distance to closest edge,
-				//otherwise return v itself (assume possible distance=0)
-				long min = prefix[i] & maskMin;
-				long max = prefix[i] | maskMax;
-				buf[i] = min > center[i] ? min : (max < center[i] ? max : center[i]); 
-			}
-			//TODO if buf==center -> no need to check distance 
 			//TODO return true for dim < 3????
-			return distance.dist(center, buf) <= maxDistance;
+			return distance.distToPrefix(center, prefix, bitsToIgnore) <= maxDistance;
 			//return checker.isValid(bitsToIgnore, prefix);
 //			return true;
 		}
@@ -4,7 +4,11 @@ import static ch.ethz.globis.phtree.PhTreeHelper.align8;
 import static ch.ethz.globis.phtree.PhTreeHelper.debugCheck;
 import static ch.ethz.globis.phtree.PhTreeHelper.posInArray;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,6 +22,7 @@ import ch.ethz.globis.phtree.PhTree;
 import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTreeHelper;
 import ch.ethz.globis.phtree.util.PhMapper;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.PhTreeStats;
 import ch.ethz.globis.phtree.util.StringBuilderLn;
 import ch.ethz.globis.phtree.v11.PhResultList.PhEntryFactory;
@@ -76,7 +81,8 @@ public class PhTree11<T> extends PhTree<T> {
 	
 	//This threshold is used to decide during query iteration whether the first value
 	//should be found by binary search or by full scan.
-	public static final int LHC_BINARY_SEARCH_THRESHOLD = 50;
+	public static final int LHC_BINARY_SEARCH_THRESHOLD = 
+			PhTreeConfig.DEFAULT_LHC_BINARY_SEARCH_THRESHOLD;
 	
 	static final int DEPTH_64 = 64;
 	
@@ -88,8 +94,21 @@ public class PhTree11<T> extends PhTree<T> {
 
 	private final AtomicInteger nEntries = new AtomicInteger();
 
+	//Node thresholds, see PhTreeConfig.
+	private final double ahcLhcBias;
+	private final int ntThreshold;
+	private final int lhcBinarySearchThreshold;
+
+	//Bits per key value, keys must not have any bits of the domainMask set.
+	private final int depth;
+	private final long domainMask;
+
 	private Node root = null;
 
+	//Buffers of update(), they are allocated on the first update.
+	private Node[] updateStack;
+	private final int[] updateInsertRequired = new int[1];
+
 	Node getRoot() {
 		return root;
 	}
@@ -100,14 +119,49 @@ public class PhTree11<T> extends PhTree<T> {
 
 	public PhTree11(int dim) {
 		dims = dim;
+		ahcLhcBias = Node.AHC_LHC_BIAS;
+		ntThreshold = Node.NT_THRESHOLD;
+		lhcBinarySearchThreshold = LHC_BINARY_SEARCH_THRESHOLD;
+		depth = DEPTH_64;
+		domainMask = 0;
 		debugCheck();
 	}
 
 	public PhTree11(PhTreeConfig cnf) {
 		dims = cnf.getDimActual();
+		ahcLhcBias = cnf.getAhcLhcBias();
+		ntThreshold = cnf.getNtThreshold();
+		lhcBinarySearchThreshold = cnf.getLhcBinarySearchThreshold();
+		depth = cnf.getDepth();
+		domainMask = PhTreeHelper.domainMask(depth);
 		debugCheck();
 	}
 
+	/**
+	 * @return a new configuration with the dimensionality, depth and node thresholds 
+	 * of this tree 
+	 */
+	public PhTreeConfig getConfig() {
+		PhTreeConfig cfg = new PhTreeConfig(dims);
+		cfg.setDepth(depth);
+		cfg.setAhcLhcBias(ahcLhcBias);
+		cfg.setNtThreshold(ntThreshold);
+		cfg.setLhcBinarySearchThreshold(lhcBinarySearchThreshold);
+		return cfg;
+	}
+
+	double ahcLhcBias() {
+		return ahcLhcBias;
+	}
+
+	int ntThreshold() {
+		return ntThreshold;
+	}
+
+	int lhcBinarySearchThreshold() {
+		return lhcBinarySearchThreshold;
+	}
+
 	void increaseNrEntries() {
 		nEntries.incrementAndGet();
 	}
@@ -123,7 +177,7 @@ public class PhTree11<T> extends PhTree<T> {
 
 	@Override
 	public PhTreeStats getStats() {
-		return getStats(0, getRoot(), new PhTreeStats(DEPTH_64));
+		return getStats(0, getRoot(), new PhTreeStats(depth));
 	}
 
 	private PhTreeStats getStats(int currentDepth, Node node, PhTreeStats stats) {
@@ -137,7 +191,8 @@ public class PhTree11<T> extends PhTree<T> {
 		stats.infixHist[node.getInfixLen()]++;
 		stats.nodeDepthHist[currentDepth]++;
 		int size = node.getEntryCount();
-		stats.nodeSizeLogHist[32-Integer.numberOfLeadingZeros(size)]++;
+		stats.addNode(node.isNT() ? PhTreeStats.TYPE_NT 
+				: (node.isAHC() ? PhTreeStats.TYPE_AHC : PhTreeStats.TYPE_LHC), size);
 		
 		currentDepth += node.getInfixLen();
 		stats.q_totalDepth += currentDepth;
@@ -168,11 +223,12 @@ public class PhTree11<T> extends PhTree<T> {
 		
 		final int REF = 4;//bytes for a reference
 		// this +  value[] + ba[] + ind() + isHC + postLen + infLen + nEntries
-		stats.size += align8(12 + REF + REF + REF + 1 + 1 + 1 + 4);
+		stats.addSize(PhTreeStats.MEM_NODE, align8(12 + REF + REF + REF + 1 + 1 + 1 + 4));
 		//count children
 		int nChildren = node.getEntryCount();
-		stats.size += 16 + align8(Bits.arraySizeInByte(node.ba));
-		stats.size += node.values() != null ? 16 + align8(node.values().length * REF) : 0;
+		stats.addSize(PhTreeStats.MEM_BA, 16 + align8(Bits.arraySizeInByte(node.ba)));
+		stats.addSize(PhTreeStats.MEM_VALUES, 
+				node.values() != null ? 16 + align8(node.values().length * REF) : 0);
 		if (nChildren == 1 && (node != getRoot()) && nEntries.get() > 1) {
 			//This should not happen! Except for a root node if the tree has <2 entries.
 			System.err.println("WARNING: found lonely node...");
@@ -200,6 +256,7 @@ public class PhTree11<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T put(long[] key, T value) {
+		PhTreeHelper.checkDomain(key, domainMask);
 		Object nonNullValue = value == null ? PhTreeHelper.NULL : value;
 		if (getRoot() == null) {
 			insertRoot(key, nonNullValue);
@@ -215,15 +272,18 @@ public class PhTree11<T> extends PhTree<T> {
     }
 
     void insertRoot(long[] key, Object value) {
-        root = Node.createNode(dims, 0, DEPTH_64-1);
+        root = Node.createNode(dims, 0, depth-1);
         long pos = posInArray(key, root.getPostLen());
-        root.addPostPIN(pos, -1, key, value);
+        root.addPostPIN(pos, -1, key, value, this);
         increaseNrEntries();
     }
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean contains(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask)) {
+			return false;
+		}
 		Object o = getRoot();
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
@@ -236,6 +296,9 @@ public class PhTree11<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T get(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask)) {
+			return null;
+		}
 		Object o = getRoot();
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
@@ -253,6 +316,9 @@ public class PhTree11<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T remove(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask)) {
+			return null;
+		}
 		Object o = getRoot();
 		Node parentNode = null;
 		while (o instanceof Node) {
@@ -266,18 +332,27 @@ public class PhTree11<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T update(long[] oldKey, long[] newKey) {
-		Node[] stack = new Node[64];
+		if (!PhTreeHelper.isInDomain(oldKey, domainMask)) {
+			return null;
+		}
+		PhTreeHelper.checkDomain(newKey, domainMask);
+		if (updateStack == null) {
+			updateStack = new Node[depth];
+		}
+		Node[] stack = updateStack;
 		int stackSize = 0;
 		
 		Object o = getRoot();
 		Node parentNode = null;
-		final int[] insertRequired = new int[]{NO_INSERT_REQUIRED};
+		final int[] insertRequired = updateInsertRequired;
+		insertRequired[0] = NO_INSERT_REQUIRED;
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
 			stack[stackSize++] = currentNode;
 			o = currentNode.doIfMatching(oldKey, false, parentNode, newKey, insertRequired, this);
 			parentNode = currentNode;
 		}
+		final int stackUsed = stackSize;
 		
 		Object value = o == PhTreeHelper.NULL ? null : o;
 
@@ -301,6 +376,8 @@ public class PhTree11<T> extends PhTree<T> {
 				}
 			}
 		}		
+		//do not keep removed nodes alive
+		Arrays.fill(stack, 0, stackUsed, null);
 		
 		return (T) value;
 	}
@@ -308,10 +385,11 @@ public class PhTree11<T> extends PhTree<T> {
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + 
-				" AHC/LHC=" + Node.AHC_LHC_BIAS +  
+				" depth=" + depth +  
+				" AHC/LHC=" + ahcLhcBias() +  
 				" AHC-on=" + AHC_ENABLED +  
 				" HCI-on=" + HCI_ENABLED +  
-				" NtLimit=" + Node.NT_THRESHOLD +  
+				" NtLimit=" + ntThreshold() +  
 				" NtMaxDim=" + NtNode.MAX_DIM +  
 				" DEBUG=" + PhTreeHelper.DEBUG;
 	}
@@ -335,7 +413,7 @@ public class PhTree11<T> extends PhTree<T> {
 			if (o instanceof Node) {
 				toStringPlain(sb, (Node) o, key);
 			} else {
-				sb.append(Bits.toBinary(key, DEPTH_64));
+				sb.append(Bits.toBinary(key, depth));
 				sb.appendLn("  v=" + o);
 			}
 		}
@@ -383,7 +461,7 @@ public class PhTree11<T> extends PhTree<T> {
 				toStringTree(sb, currentDepth + 1, (Node) o, key, printValue);
 			}  else {
 				//post-fix
-				sb.append(ind + Bits.toBinary(key, DEPTH_64));
+				sb.append(ind + Bits.toBinary(key, depth));
 				sb.append("  hcPos=" + i);
 				if (printValue) {
 					sb.append("  v=" + o);
@@ -475,7 +553,7 @@ public class PhTree11<T> extends PhTree<T> {
 
 	@Override
 	public int getBitDepth() {
-		return PhTree11.DEPTH_64;
+		return depth;
 	}
 
 	/**
@@ -498,6 +576,11 @@ public class PhTree11<T> extends PhTree<T> {
 		return new PhQueryKnnMbbPPList<T>(this).reset(nMin, dist, center);
 	}
 
+	@Override
+	public PhIncrementalQuery<T> incrementalNearestNeighbour(PhDistance dist, long... center) {
+		return new PhQueryKnnIncremental<T>(this).reset(dist, center);
+	}
+
 	@Override
 	public PhRangeQuery<T> rangeQuery(double dist, long... center) {
 		return rangeQuery(dist, null, center);
@@ -529,6 +612,36 @@ public class PhTree11<T> extends PhTree<T> {
 		nEntries.addAndGet(-deletedPosts);
 	}
 
+	@Override
+	public void writeSnapshot(OutputStream os) throws IOException {
+		PhSnapshot.Output out = new PhSnapshot.Output(os);
+		out.writeHeader(PhSnapshot.VERSION_V11);
+		getConfig().write(out);
+		out.writeInt(nEntries.get());
+		out.writeBoolean(root != null);
+		if (root != null) {
+			root.writeSnapshot(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a tree from a snapshot. The header must already have been read.
+	 * @param in input
+	 * @return the tree
+	 * @throws IOException if reading fails
+	 * @param <T> value type
+	 * @see PhTree#readSnapshot(java.io.InputStream)
+	 */
+	public static <T> PhTree11<T> readSnapshotData(ObjectInput in) throws IOException {
+		PhTree11<T> tree = new PhTree11<>(PhTreeConfig.read(in));
+		tree.nEntries.set(in.readInt());
+		if (in.readBoolean()) {
+			tree.root = Node.readSnapshot(in);
+		}
+		return tree;
+	}
+
 
 	/**
 	 * Best HC incrementer ever. 
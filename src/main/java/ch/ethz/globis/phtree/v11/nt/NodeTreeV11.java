@@ -647,7 +647,7 @@ public class NodeTreeV11<T> implements MaxKTreeI {
 		stats.nNtNodes++;
 
 		// ba[] + values[] + kdKey[] + postLen + isAHC + entryCount
-		stats.size += align8(12 + REF + REF + REF + 1 + 1 + 2);
+		stats.addSize(PhTreeStats.MEM_NT, align8(12 + REF + REF + REF + 1 + 1 + 2));
 
 		int nNodeEntriesFound = 0;
 		for (Object o: node.values()) {
@@ -668,9 +668,9 @@ public class NodeTreeV11<T> implements MaxKTreeI {
 		}
 		//count children
 		//nChildren += node.getEntryCount();
-		stats.size += 16 + align8(node.ba.length * 8);
-		stats.size += 16 + align8(node.values().length * REF);
-		stats.size += 16 + align8(node.kdKeys().length * 8); //8 bytes per LONG
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.ba.length * 8));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.values().length * REF));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.kdKeys().length * 8)); //8 bytes per LONG
 		
 		if (dims<=31 && node.getEntryCount() > (1L<<dims)) {
 			System.err.println("WARNING: Over-populated node found: ntec=" + node.getEntryCount());
@@ -23,6 +23,10 @@ You should have received a copy of the GNU Affero General Public License
 along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
+import java.io.IOException;
+import java.io.ObjectInput;
+
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.Refs;
 import ch.ethz.globis.phtree.util.RefsLong;
 
@@ -112,9 +116,10 @@ public class NtNode<T> {
 	}
 	
 	void discardNode() {
-		Bits.arrayReplace(ba, null);
-		RefsLong.arrayReplace(kdKeys, null);
-		Refs.arrayReplace(values, null);
+		//pooled nodes must not keep the arrays, they may be reused by other nodes
+		ba = Bits.arrayReplace(ba, null);
+		kdKeys = RefsLong.arrayReplace(kdKeys, null);
+		values = Refs.arrayReplace(values, null);
 		NtNodePool.offer(this);
 	}
 	
@@ -675,4 +680,63 @@ public class NtNode<T> {
 		return kdKeys;
 	}
 	
+	/**
+	 * Write this node and all nested sub-nodes to a snapshot.
+	 * @param out output
+	 * @param entryWriter writer for entries that are not nested sub-nodes
+	 * @throws IOException if writing fails
+	 */
+	public void writeSnapshot(PhSnapshot.Output out, PhSnapshot.SlotWriter entryWriter) 
+			throws IOException {
+		out.writeShort(entryCnt);
+		out.writeByte(postLen);
+		out.writeBoolean(isAHC);
+		PhSnapshot.writeLongs(ba, out);
+		PhSnapshot.writeLongs(kdKeys, out);
+		//LHC arrays may be longer than the number of entries
+		int nValues = isAHC ? values.length : entryCnt;
+		out.writeInt(nValues);
+		for (int i = 0; i < nValues; i++) {
+			Object v = values[i];
+			if (v == null) {
+				out.writeByte(PhSnapshot.SLOT_EMPTY);
+			} else if (v instanceof NtNode) {
+				out.writeByte(PhSnapshot.SLOT_NT_NODE);
+				((NtNode<?>)v).writeSnapshot(out, entryWriter);
+			} else {
+				entryWriter.write(v, out);
+			}
+		}
+	}
+
+	/**
+	 * Read a node and all nested sub-nodes from a snapshot.
+	 * @param in input
+	 * @param entryReader reader for entries that are not nested sub-nodes
+	 * @return the node
+	 * @throws IOException if reading fails
+	 * @param <T> value type
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> NtNode<T> readSnapshot(ObjectInput in, PhSnapshot.SlotReader entryReader) 
+			throws IOException {
+		NtNode<T> n = (NtNode<T>) NtNodePool.getNode();
+		n.entryCnt = in.readShort();
+		n.postLen = in.readByte();
+		n.isAHC = in.readBoolean();
+		n.ba = PhSnapshot.readLongs(in);
+		n.kdKeys = PhSnapshot.readLongs(in);
+		int nValues = in.readInt();
+		n.values = Refs.arrayCreate(nValues);
+		for (int i = 0; i < nValues; i++) {
+			byte slot = in.readByte();
+			if (slot == PhSnapshot.SLOT_NT_NODE) {
+				n.values[i] = readSnapshot(in, entryReader);
+			} else if (slot != PhSnapshot.SLOT_EMPTY) {
+				n.values[i] = entryReader.read(slot, in);
+			}
+		}
+		return n;
+	}
+
 }
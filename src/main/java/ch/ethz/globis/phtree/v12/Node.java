@@ -11,7 +11,10 @@ import java.io.ObjectOutput;
 import ch.ethz.globis.pht64kd.MaxKTreeI.NtEntry;
 import ch.ethz.globis.pht64kd.MaxKTreeI.PhIterator64;
 import ch.ethz.globis.phtree.PersistenceProvider;
+import ch.ethz.globis.phtree.PhFilter;
+import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.Refs;
 import ch.ethz.globis.phtree.util.RefsByte;
 import ch.ethz.globis.phtree.util.RefsLong;
@@ -39,12 +42,12 @@ public class Node implements Externalizable {
 	/**
 	 * Nodes switch to AHC when space(LHC)*AHC_HC_BIAS > space(AHC). 
 	 */
-	public static final double AHC_LHC_BIAS = 2.0;
+	public static final double AHC_LHC_BIAS = PhTreeConfig.DEFAULT_AHC_LHC_BIAS;
 	
 	/**
 	 * Threshold at which nodes should be turned into NT nodes.
 	 */
-	public static final int NT_THRESHOLD = 150; 
+	public static final int NT_THRESHOLD = PhTreeConfig.DEFAULT_NT_THRESHOLD; 
 	
 	public static final byte SUBCODE_EMPTY = -1;
 	public static final byte SUBCODE_KEY_VALUE = -2;
@@ -93,13 +96,13 @@ public class Node implements Externalizable {
 	/**
 	 * @return true if NI should be used. 
 	 */
-	private static final boolean shouldSwitchToNT(int entryCount) {
+	private static final boolean shouldSwitchToNT(int entryCount, PhTree12<?> tree) {
 		//Maybe just provide a switching threshold? 5-10?
-		return entryCount >= NT_THRESHOLD;
+		return entryCount >= tree.ntThreshold();
 	}
 
-	private static final boolean shouldSwitchFromNtToHC(int entryCount) {
-		return entryCount <= NT_THRESHOLD-30;
+	private static final boolean shouldSwitchFromNtToHC(int entryCount, PhTree12<?> tree) {
+		return entryCount <= tree.ntThreshold()-30;
 	}
 
 	static final int IK_WIDTH(int dims) { return dims; }; //post index key width 
@@ -160,12 +163,16 @@ public class Node implements Externalizable {
 	}
 	
 	void discardNode() {
+		//pooled nodes must not keep the arrays, they may be reused by other nodes
 		if (ind == null) {
-		Bits.arrayReplace(ba, null);
-		Refs.arrayReplace(values, null);
-		RefsByte.arrayReplace(subCodes, null);
+		ba = Bits.arrayReplace(ba, null);
+		values = Refs.arrayReplace(values, null);
+		subCodes = RefsByte.arrayReplace(subCodes, null);
 		} else {
 			ind = null;
+			ba = null;
+			values = null;
+			subCodes = null;
 		}
 		entryCnt = 0;
 		NodePool.offer(this);
@@ -205,11 +212,8 @@ public class Node implements Externalizable {
 		int offs = pinToOffsBitsData(pin, hcPos, outVal.length);
 		//To cut of trailing bits
 		long mask = (-1L) << postLen;
-		for (int i = 0; i < outVal.length; i++) {
-			//Replace val with infix (val may be !=0 from traversal)
-			outVal[i] = (mask & outVal[i]) | Bits.readArray(ba, offs, postLen);
-			offs += postLen;
-		}
+		//Replace val with infix (val may be !=0 from traversal)
+		Bits.readArray(ba, offs, postLen, outVal, mask, outVal);
 		return true;
 	}
 
@@ -249,7 +253,7 @@ public class Node implements Externalizable {
 		//check whether hcPos is valid
 		if (pin < 0) {
 			tree.increaseNrEntries();
-			addPostPIN(hcPos, pin, keyToMatch, newValueToInsert, tree.getPersistenceProvider());
+			addPostPIN(hcPos, pin, keyToMatch, newValueToInsert, tree);
 			return null;
 		}
 		
@@ -535,7 +539,7 @@ public class Node implements Externalizable {
 		if (parent == null || getEntryCount() > 2) {
 			//no merging required
 			//value exists --> remove it
-			return removeEntry(hcPos, pinToDelete, dims);
+			return removeEntry(hcPos, pinToDelete, dims, tree);
 		}
 
 		//okay, at his point we have a post that matches and (since it matches) we need to remove
@@ -586,6 +590,7 @@ public class Node implements Externalizable {
 		}
 
 		tree.getPersistenceProvider().updateNode(parent);
+		tree.getPersistenceProvider().removeNode(this);
 		discardNode();
 		return valueToDelete;
 	}
@@ -626,6 +631,8 @@ public class Node implements Externalizable {
 		}
 
 		pp.updateNode(parent);
+		ind.removeSubNodes(pp);
+		pp.removeNode(this);
 		discardNode();
 	}
 
@@ -642,11 +649,7 @@ public class Node implements Externalizable {
 		} else {
 			int offsetBit = pinToOffsBitsData(posInNode, hcPos, postBuf.length);
 			final long mask = (~0L)<<postLen;
-			for (int i = 0; i < postBuf.length; i++) {
-				postBuf[i] &= mask;
-				postBuf[i] |= Bits.readArray(ba, offsetBit, postLen);
-				offsetBit += postLen;
-			}
+			Bits.readArray(ba, offsetBit, postLen, postBuf, mask, postBuf);
 		}
 		return getValue(posInNode);
 	}
@@ -688,30 +691,27 @@ public class Node implements Externalizable {
 		} else {
 			int offsetBit = pinToOffsBitsData(posInNode, hcPos, subNodePrefix.length);
 			final long mask = (~0L)<<postLen;
-			for (int i = 0; i < subNodePrefix.length; i++) {
-				outKey[i] = (subNodePrefix[i] & mask) | Bits.readArray(ba, offsetBit, postLen);
-				offsetBit += postLen;
-			}
+			Bits.readArray(ba, offsetBit, postLen, subNodePrefix, mask, outKey);
 		}
 		return getValue(posInNode);
 	}
 
-	private boolean shouldSwitchToAHC(int entryCount, int dims) {
-		return useAHC(entryCount, dims);
+	private boolean shouldSwitchToAHC(int entryCount, int dims, PhTree12<?> tree) {
+		return useAHC(entryCount, dims, tree);
 	}
 	
-	private boolean shouldSwitchToLHC(int entryCount, int dims) {
-		return !useAHC(entryCount+2, dims);
+	private boolean shouldSwitchToLHC(int entryCount, int dims, PhTree12<?> tree) {
+		return !useAHC(entryCount+2, dims, tree);
 	}
 	
-	private boolean useAHC(int entryCount, int dims) {
+	private boolean useAHC(int entryCount, int dims, PhTree12<?> tree) {
 		//calc post mode.
 		//+1 bit for null/not-null flag
 		long sizeAHC = (dims * postLen + INN_HC_WIDTH + REF_BITS + 8) * (1L << dims); 
 		//+DIM because every index entry needs DIM bits
 		long sizeLHC = (dims * postLen + IK_WIDTH(dims) + REF_BITS + 8) * (long)entryCount;
 		//Already 1.1 i.o. 1.0 has significant bad impact on perf.
-		return PhTree12.AHC_ENABLED && (dims<=31) && (sizeLHC*AHC_LHC_BIAS >= sizeAHC);
+		return PhTree12.AHC_ENABLED && (dims<=31) && (sizeLHC*tree.ahcLhcBias() >= sizeAHC);
 	}
 
 	/**
@@ -742,19 +742,13 @@ public class Node implements Externalizable {
 			offsKey += IK_WIDTH(dims);
 		}
 		if (postLen > 0) {
-			for (int i = 0; i < newKey.length; i++) {
-				Bits.writeArray(ba, offsKey, postLen, newKey[i]);
-				offsKey += postLen;
-			}
+			Bits.writeArray(ba, offsKey, postLen, newKey);
 		}
 	}
 
 	private Object replacePost(int pin, long hcPos, long[] newKey) {
 		int offs = pinToOffsBitsData(pin, hcPos, newKey.length);
-		for (int i = 0; i < newKey.length; i++) {
-			Bits.writeArray(ba, offs, postLen, newKey[i]);
-			offs += postLen;
-		}
+		Bits.writeArray(ba, offs, postLen, newKey);
 		return getValue(pin);
 	}
 
@@ -912,13 +906,96 @@ public class Node implements Externalizable {
 	}
 	
 	
+	/**
+	 * Issue prefetch hints for all sub-nodes that the query iterator will visit, i.e. whose 
+	 * HC-position matches the masks and whose prefix matches the range and the filter.
+	 * For NT nodes the nested NtNodes are loaded right away, only the sub-nodes are prefetched.
+	 * @param maskLower lower HC-pos mask
+	 * @param maskUpper upper HC-pos mask
+	 * @param valTemplate prefix of this node
+	 * @param rangeMin lower corner of the query range
+	 * @param rangeMax upper corner of the query range
+	 * @param checker filter, can be null
+	 * @param buffer buffer for the prefix of a sub-node, same length as valTemplate 
+	 * @param ntIter iterator for NT nodes, must not be the iterator of the query  
+	 * @param pp the persistence provider
+	 */
+	void prefetchSubNodes(long maskLower, long maskUpper, long[] valTemplate, long[] rangeMin, 
+			long[] rangeMax, PhFilter checker, long[] buffer, NtIteratorMask<Object> ntIter, 
+			PersistenceProvider pp) {
+		if (isNT()) {
+			ntIter.reset(ind(), maskLower, maskUpper);
+			while (ntIter.hasNext()) {
+				NtEntry12<Object> e = ntIter.nextEntryReuse();
+				byte subCode = e.getKdSubCode();
+				if (!isSubNode(subCode)) {
+					continue;
+				}
+				System.arraycopy(valTemplate, 0, buffer, 0, buffer.length);
+				PhTreeHelper.applyHcPos(e.key(), postLen, buffer);
+				if (checkAndApplyInfixNt(subCode, e.getKdKey(), buffer, rangeMin, rangeMax)) {
+					prefetchSubNode(subCode, e.value(), checker, buffer, pp);
+				}
+			}
+			return;
+		}
+		int dims = valTemplate.length;
+		if (isAHC()) {
+			for (long pos = maskLower; pos <= maskUpper; pos++) {
+				if (((pos | maskLower) & maskUpper) == pos) {
+					prefetchSubNode((int) pos, pos, valTemplate, rangeMin, rangeMax, checker, buffer, pp);
+				}
+			}
+		} else {
+			int offs = getBitPosIndex();
+			int entryLen = IK_WIDTH(dims) + dims*postLen;
+			for (int pin = 0; pin < entryCnt; pin++) {
+				if (isSubNode(getSubCode(pin))) {
+					long pos = Bits.readArray(ba, offs, IK_WIDTH(dims));
+					if (((pos | maskLower) & maskUpper) == pos) {
+						prefetchSubNode(pin, pos, valTemplate, rangeMin, rangeMax, checker, buffer, pp);
+					}
+				}
+				offs += entryLen;
+			}
+		}
+	}
+
+	private void prefetchSubNode(int pin, long hcPos, long[] valTemplate, long[] rangeMin, 
+			long[] rangeMax, PhFilter checker, long[] buffer, PersistenceProvider pp) {
+		byte subCode = getSubCode(pin);
+		if (!isSubNode(subCode)) {
+			return;
+		}
+		//same checks as in the query iterators
+		System.arraycopy(valTemplate, 0, buffer, 0, buffer.length);
+		PhTreeHelper.applyHcPos(hcPos, postLen, buffer);
+		if (!checkAndApplyInfix(subCode, pin, hcPos, buffer, rangeMin, rangeMax)) {
+			return;
+		}
+		prefetchSubNode(subCode, getValue(pin), checker, buffer, pp);
+	}
+
+	private static void prefetchSubNode(byte subCode, Object subNode, PhFilter checker, 
+			long[] buffer, PersistenceProvider pp) {
+		int subPostLen = calcSubPostLen(subCode);
+		if (checker != null && subPostLen < PhTree12.DEPTH_64-1 
+				&& !checker.isValid(subPostLen+1, buffer)) {
+			return;
+		}
+		pp.prefetchNode(subNode);
+	}
+
 	/**
 	 * 
 	 * @param hcPos
 	 * @param pin position in node: ==hcPos for AHC or pos in array for LHC
 	 * @param key
+	 * @param value
+	 * @param tree the tree, provides the thresholds for switching the node representation
 	 */
-	void addPostPIN(long hcPos, int pin, long[] key, Object value, PersistenceProvider pp) {
+	void addPostPIN(long hcPos, int pin, long[] key, Object value, PhTree12<?> tree) {
+		final PersistenceProvider pp = tree.getPersistenceProvider();
 		final int dims = key.length;
 		final int bufEntryCnt = getEntryCount();
 		//decide here whether to use hyper-cube or linear representation
@@ -927,7 +1004,7 @@ public class Node implements Externalizable {
 		//    For one dimension, both need one additional bit to indicate either
 		//    null/not-null (hypercube, actually two bit) or to indicate the index. 
 
-		if (!isNT() && shouldSwitchToNT(bufEntryCnt)) {
+		if (!isNT() && shouldSwitchToNT(bufEntryCnt, tree)) {
 			ntBuild(bufEntryCnt, dims, key, pp);
 		}
 		if (isNT()) {
@@ -936,7 +1013,7 @@ public class Node implements Externalizable {
 		}
 
 		//switch representation (HC <-> Linear)?
-		if (!isAHC() && shouldSwitchToAHC(bufEntryCnt + 1, dims)) {
+		if (!isAHC() && shouldSwitchToAHC(bufEntryCnt + 1, dims, tree)) {
 			switchLhcToAhcAndGrow(bufEntryCnt, dims);
 			//no need to update pin now, we are in HC now.
 		}
@@ -947,9 +1024,7 @@ public class Node implements Externalizable {
 		if (isAHC()) {
 			//hyper-cube
 			int offsPostKey = posToOffsBitsDataAHC(hcPos, offsIndex, dims);
-			for (int i = 0; i < key.length; i++) {
-				Bits.writeArray(ba, offsPostKey + postLen * i, postLen, key[i]);
-			}
+			Bits.writeArray(ba, offsPostKey, postLen, key);
 			setValue((int) hcPos, value, SUBCODE_KEY_VALUE);
 		} else {
 			//get position
@@ -964,10 +1039,7 @@ public class Node implements Externalizable {
 			Bits.writeArray(ia, offs, IK_WIDTH(dims), hcPos);
 			//insert value:
 			offs += IK_WIDTH(dims);
-			for (int i = 0; i < key.length; i++) {
-				Bits.writeArray(ia, offs, postLen, key[i]);
-				offs += postLen;
-			}
+			Bits.writeArray(ia, offs, postLen, key);
 			values = Refs.insertSpaceAtPos(values, pin, bufEntryCnt+1);
 			subCodes = RefsByte.insertSpaceAtPos(subCodes, pin, bufEntryCnt+1);
 			setValue(pin, value, SUBCODE_KEY_VALUE);
@@ -975,19 +1047,13 @@ public class Node implements Externalizable {
 	}
 
 	void postToNI(int startBit, int postLen, long[] outKey, long hcPos, long[] prefix, long mask) {
-		for (int d = 0; d < outKey.length; d++) {
-			outKey[d] = Bits.readArray(ba, startBit, postLen) | (prefix[d] & mask);
-			startBit += postLen;
-		}
+		Bits.readArray(ba, startBit, postLen, prefix, mask, outKey);
 		PhTreeHelper.applyHcPos(hcPos, postLen, outKey);
 	}
 
 	void postFromNI(long[] ia, int startBit, long key[], int postLen) {
 		//insert postifx
-		for (int d = 0; d < key.length; d++) {
-			Bits.writeArray(ia, startBit, postLen, key[d]);
-			startBit += postLen;
-		}
+		Bits.writeArray(ia, startBit, postLen, key);
 	}
 
 	/**
@@ -1056,7 +1122,8 @@ public class Node implements Externalizable {
 	 * @param removeSub Remove sub or post?
 	 * @return Previous value if post was removed
 	 */
-	private Object ntDeconstruct(int dims, long posToRemove, PersistenceProvider pp) {
+	private Object ntDeconstruct(int dims, long posToRemove, PhTree12<?> tree) {
+		final PersistenceProvider pp = tree.getPersistenceProvider();
 		//Migrate node to node-index representation
 		if (ind == null || !isNT()) {
 			throw new IllegalStateException();
@@ -1066,7 +1133,7 @@ public class Node implements Externalizable {
 		decEntryCount();
 
 		//calc node mode.
-		boolean shouldBeAHC = useAHC(entryCountNew, dims);
+		boolean shouldBeAHC = useAHC(entryCountNew, dims, tree);
 		setAHC(shouldBeAHC);
 
 
@@ -1128,6 +1195,7 @@ public class Node implements Externalizable {
 			subCodes = RefsByte.arrayReplace(subCodes, sc2);
 		}			
 
+		ind.removeSubNodes(pp);
 		NtNodePool.offer(ind);
 		ind = null;
 		return oldValue;
@@ -1323,21 +1391,22 @@ public class Node implements Externalizable {
 		return true;
 	}
 	
-	Object removeEntryNT(long hcPos, final int dims, PersistenceProvider pp) {
+	Object removeEntryNT(long hcPos, final int dims, PhTree12<?> tree) {
+		final PersistenceProvider pp = tree.getPersistenceProvider();
 		final int bufEntryCnt = getEntryCount();
-		if (shouldSwitchFromNtToHC(bufEntryCnt)) {
-			return ntDeconstruct(dims, hcPos, pp);
+		if (shouldSwitchFromNtToHC(bufEntryCnt, tree)) {
+			return ntDeconstruct(dims, hcPos, tree);
 		}
 		Object o = ntRemoveAnything(hcPos, dims, pp);
 		decEntryCount();
 		return o;
 	}
 	
-	Object removeEntry(long hcPos, int posInNode, final int dims) {
+	Object removeEntry(long hcPos, int posInNode, final int dims, PhTree12<?> tree) {
 		final int bufEntryCnt = getEntryCount();
 		
 		//switch representation (HC <-> Linear)?
-		if (isAHC() && shouldSwitchToLHC(bufEntryCnt, dims)) {
+		if (isAHC() && shouldSwitchToLHC(bufEntryCnt, dims, tree)) {
 			//revert to linearized representation, if applicable
 			Object oldVal = switchAhcToLhcAndShrink(bufEntryCnt, dims, hcPos);
 			decEntryCount();
@@ -1573,4 +1642,84 @@ public class Node implements Externalizable {
 		}
 	}
 
+	/**
+	 * Write this node and all sub-nodes to a snapshot. Sub-nodes are resolved with
+	 * the persistence provider, so the snapshot contains no persistence IDs.
+	 * @param out output
+	 * @param pp persistence provider
+	 * @throws IOException if writing fails
+	 */
+	void writeSnapshot(PhSnapshot.Output out, PersistenceProvider pp) throws IOException {
+		out.writeInt(entryCnt);
+		out.writeByte(postLen);
+		out.writeBoolean(isAHC);
+		PhSnapshot.writeLongs(ba, out);
+		boolean isNT = ind != null;
+		out.writeBoolean(isNT);
+		if (isNT) {
+			ind.writeSnapshot(out, pp, (v, o) -> writeSnapshotEntry(v, o, pp));
+		} else {
+			PhSnapshot.writeBytes(subCodes, out);
+			out.writeInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				Object v = values[i];
+				if (v != null && isSubNode(getSubCode(i))) {
+					v = pp.loadNode(v);
+				}
+				writeSnapshotEntry(v, out, pp);
+			}
+		}
+	}
+
+	private static void writeSnapshotEntry(Object v, PhSnapshot.Output out, 
+			PersistenceProvider pp) throws IOException {
+		if (v == null) {
+			out.writeByte(PhSnapshot.SLOT_EMPTY);
+		} else if (v instanceof Node) {
+			out.writeByte(PhSnapshot.SLOT_NODE);
+			((Node)v).writeSnapshot(out, pp);
+		} else {
+			out.writeValue(v);
+		}
+	}
+
+	/**
+	 * Read a node and all sub-nodes from a snapshot.
+	 * The node is meant for trees with {@link PersistenceProvider#NONE}.
+	 * @param in input
+	 * @return the node
+	 * @throws IOException if reading fails
+	 */
+	static Node readSnapshot(ObjectInput in) throws IOException {
+		Node n = NodePool.getNode();
+		n.entryCnt = in.readInt();
+		n.postLen = in.readByte();
+		n.isAHC = in.readBoolean();
+		n.ba = PhSnapshot.readLongs(in);
+		if (in.readBoolean()) {
+			n.ind = NtNode.readSnapshot(in, Node::readSnapshotEntry);
+			n.values = null;
+			n.subCodes = null;
+		} else {
+			n.subCodes = PhSnapshot.readBytes(in);
+			int nValues = in.readInt();
+			n.values = Refs.arrayCreate(nValues);
+			for (int i = 0; i < nValues; i++) {
+				n.values[i] = readSnapshotEntry(in.readByte(), in);
+			}
+		}
+		return n;
+	}
+
+	private static Object readSnapshotEntry(byte slot, ObjectInput in) throws IOException {
+		switch (slot) {
+		case PhSnapshot.SLOT_EMPTY: 
+			return null;
+		case PhSnapshot.SLOT_NODE: 
+			return readSnapshot(in);
+		default:
+			return PhSnapshot.readValue(slot, in);
+		}
+	}
+
 }
@@ -5,6 +5,7 @@ import java.util.List;
 import ch.ethz.globis.phtree.PersistenceProvider;
 import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v12.PhTree12.NodeEntry;
 import ch.ethz.globis.phtree.v12.nt.NtIteratorMask;
 import ch.ethz.globis.phtree.v12.nt.NodeTreeV12.NtEntry12;
@@ -53,7 +54,10 @@ public class NodeIteratorListReuse<T, R> {
 	private long[] rangeMax;
 
 	private final PhIteratorStack pool;
+	private PhQueryStats stats;
 	private final PersistenceProvider pp;
+	private long[] prefetchBuffer;
+	private NtIteratorMask<Object> prefetchNtIterator;
 	
 	private final class NodeIterator {
 	
@@ -79,22 +83,38 @@ public class NodeIteratorListReuse<T, R> {
 		void reinitAndRun(Node node, long lower, long upper) {
 			this.node = node;
 			boolean isNI = node.isNT();
-			this.niIterator = null;
+			if (stats != null) {
+				stats.addNode(node.isAHC(), isNI);
+			}
 			nMaxEntry = node.getEntryCount();
 			this.nEntryFound = 0;
 			this.maskLower = lower;
 			this.maskUpper = upper;
 
 			useHcIncrementer = false;
-			if (isNI && niIterator == null) {
+			if (isNI) {
 				//TODO use non-mask iterator if node is fully included in query rectangle 
-				niIterator = node.ntIteratorWithMask(dims, maskLower, maskUpper, pp);
+				//the NT iterator is reused with the NodeIterator
+				if (niIterator == null) {
+					niIterator = node.ntIteratorWithMask(dims, maskLower, maskUpper, pp);
+				} else {
+					niIterator.reset(node.ind(), maskLower, maskUpper);
+				}
 			}
 
 			if (dims > 6 && nMaxEntry > 10) {
 				initHCI(isNI);
 			}
 
+			if (pp.isPrefetchEnabled()) {
+				if (prefetchBuffer == null) {
+					prefetchBuffer = new long[dims];
+					prefetchNtIterator = new NtIteratorMask<>(dims, pp);
+				}
+				node.prefetchSubNodes(maskLower, maskUpper, valTemplate, rangeMin, rangeMax, null, 
+						prefetchBuffer, prefetchNtIterator, pp);
+			}
+
 			//For sub-HC, the standard iteration is extremely efficient ( node[pos]!=0 ?), so we
 			//should resort to HC-incrementer only rarely.
 			//Use it only if it is at least 25% full
@@ -131,6 +151,9 @@ public class NodeIteratorListReuse<T, R> {
 		}
 		
 		private void checkAndAddResult(PhEntry<T> e) {
+			if (stats != null) {
+				stats.nPostfixMatched++;
+			}
 			results.phOffer(e);
 		}
 
@@ -142,6 +165,9 @@ public class NodeIteratorListReuse<T, R> {
 
 		@SuppressWarnings("unchecked")
 		private void readValue(int pin, long pos) {
+			if (stats != null) {
+				stats.nPostfixChecked++;
+			}
 			NodeEntry<T> resultBuffer = (NodeEntry<T>) results.phGetTempEntry();
 			long[] key = resultBuffer.getKey();
 			Object o = node.checkAndGetEntryPIN(pin, pos, valTemplate, key, rangeMin, rangeMax);
@@ -160,6 +186,9 @@ public class NodeIteratorListReuse<T, R> {
 		}
 
 		private void readValue(long pos, Object value, NodeEntry<T> result) {
+			if (stats != null) {
+				stats.nPostfixChecked++;
+			}
 			if (!node.checkAndGetEntryNt(pos, value, result, valTemplate, rangeMin, rangeMax)) {
 				results.phReturnTemp(result);
 				return;
@@ -178,10 +207,14 @@ public class NodeIteratorListReuse<T, R> {
 					readValue(pin, currentPos);
 				}
 				
+				long prev = currentPos;
 				currentPos = PhTree12.inc(currentPos, maskLower, maskUpper);
 				if (currentPos <= maskLower) {
 					break;
 				}
+				if (stats != null) {
+					stats.nHcSkipped += currentPos - prev - 1;
+				}
 			} while (results.size() < maxResults);
 		}
 
@@ -258,6 +291,9 @@ public class NodeIteratorListReuse<T, R> {
 				byte subCode = e.getKdSubCode();
 				if (Node.isSubNode(subCode)) {
 					PhTreeHelper.applyHcPos(e.key(), node.getPostLen(), valTemplate);
+					if (stats != null) {
+						stats.nPostfixChecked++;
+					}
 					if (node.checkAndApplyInfixNt(subCode, e.getKdKey(),
 							valTemplate, rangeMin, rangeMax)) {
 						checkAndRunSubnode(subCode, e.value());
@@ -282,6 +318,9 @@ public class NodeIteratorListReuse<T, R> {
 				byte subCode = resultBuffer.getSubCode();
 				if (Node.isSubNode(subCode)) {
 					PhTreeHelper.applyHcPos(currentPos, node.getPostLen(), valTemplate);
+					if (stats != null) {
+						stats.nPostfixChecked++;
+					}
 					if (node.checkAndApplyInfixNt(subCode, resultBuffer.getKey(), 
 							valTemplate, rangeMin, rangeMax)) {
 						Object o = resultBuffer.getValue();
@@ -295,10 +334,14 @@ public class NodeIteratorListReuse<T, R> {
 					results.phReturnTemp(resultBuffer);
 				}
 
+				long prev = currentPos;
 				currentPos = PhTree12.inc(currentPos, maskLower, maskUpper);
 				if (currentPos <= maskLower) {
 					break;
 				}
+				if (stats != null) {
+					stats.nHcSkipped += currentPos - prev - 1;
+				}
 			}
 		}
 
@@ -325,6 +368,13 @@ public class NodeIteratorListReuse<T, R> {
 		return results;
 	}
 	
+	/**
+	 * @param stats statistics of the following queries, can be {@code null}
+	 */
+	void setStats(PhQueryStats stats) {
+		this.stats = stats;
+	}
+
 	void run(Node node) {
 		//create limits for the local node. there is a lower and an upper limit. Each limit
 		//consists of a series of DIM bit, one for each dimension.
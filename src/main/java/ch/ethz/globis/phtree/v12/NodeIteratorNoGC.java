@@ -2,6 +2,8 @@ package ch.ethz.globis.phtree.v12;
 
 import ch.ethz.globis.phtree.PersistenceProvider;
 import ch.ethz.globis.phtree.PhFilter;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v12.PhTree12.NodeEntry;
 import ch.ethz.globis.phtree.v12.nt.NtIteratorMask;
 import ch.ethz.globis.phtree.v12.nt.NodeTreeV12.NtEntry12;
@@ -38,7 +40,11 @@ public class NodeIteratorNoGC<T> {
 	private boolean useHcIncrementer;
 	private boolean useNiHcIncrementer;
 	private PhFilter checker;
+	private long[] prefetchBuffer;
+	private NtIteratorMask<Object> prefetchNtIterator;
+	private PhQueryStats stats;
 	private final PersistenceProvider pp;
+	private final int lhcBinarySearchThreshold;
 
 	/**
 	 * 
@@ -46,9 +52,21 @@ public class NodeIteratorNoGC<T> {
 	 * @param valTemplate A null indicates that no values are to be extracted.
 	 */
 	public NodeIteratorNoGC(int dims, long[] valTemplate, PersistenceProvider pp) {
+		this(dims, valTemplate, pp, PhTree12.LHC_BINARY_SEARCH_THRESHOLD);
+	}
+
+	/**
+	 * 
+	 * @param dims
+	 * @param valTemplate A null indicates that no values are to be extracted.
+	 * @param lhcBinarySearchThreshold see {@link PhTreeConfig#setLhcBinarySearchThreshold(int)}
+	 */
+	public NodeIteratorNoGC(int dims, long[] valTemplate, PersistenceProvider pp, 
+			int lhcBinarySearchThreshold) {
 		this.dims = dims;
 		this.valTemplate = valTemplate;
 		this.pp = pp;
+		this.lhcBinarySearchThreshold = lhcBinarySearchThreshold;
 	}
 	
 	/**
@@ -96,6 +114,15 @@ public class NodeIteratorNoGC<T> {
 			niIterator.reset(node.ind(), maskLower, maskUpper);
 		}
 
+		if (pp.isPrefetchEnabled()) {
+			if (prefetchBuffer == null) {
+				prefetchBuffer = new long[dims];
+				prefetchNtIterator = new NtIteratorMask<>(dims, pp);
+			}
+			node.prefetchSubNodes(maskLower, maskUpper, valTemplate, rangeMin, rangeMax, checker, 
+					prefetchBuffer, prefetchNtIterator, pp);
+		}
+
 		//For sub-HC, the standard iteration is extremely efficient ( node[pos]!=0 ?), so we
 		//should resort to HC-incrementer only rarely.
 		//Use it only if it is at least 25% full
@@ -144,6 +171,9 @@ public class NodeIteratorNoGC<T> {
 	 */
 	@SuppressWarnings("unchecked")
 	private boolean readValue(int pin, long pos, NodeEntry<T> result) {
+		if (stats != null) {
+			stats.nPostfixChecked++;
+		}
 		Object o = node.checkAndGetEntryPIN(pin, pos, valTemplate, result.getKey(), 
 				rangeMin, rangeMax);
 		if (o == null) {
@@ -170,6 +200,9 @@ public class NodeIteratorNoGC<T> {
 	}
 
 	private boolean readValue(long pos, Object value, NodeEntry<T> result) {
+		if (stats != null) {
+			stats.nPostfixChecked++;
+		}
 		if (!node.checkAndGetEntryNt(pos, value, result, valTemplate, rangeMin, rangeMax)) {
 			return false;
 		}
@@ -197,10 +230,14 @@ public class NodeIteratorNoGC<T> {
 				//starting position
 				currentPos = maskLower;
 			} else {
+				long prev = currentPos;
 				currentPos = PhTree12.inc(currentPos, maskLower, maskUpper);
 				if (currentPos <= maskLower) {
 					return false;
 				}
+				if (stats != null) {
+					stats.nHcSkipped += currentPos - prev - 1;
+				}
 			}
 
 			int pin = node.getPosition(currentPos, dims);
@@ -292,10 +329,14 @@ public class NodeIteratorNoGC<T> {
 				//starting position
 				currentPos = maskLower;
 			} else {
+				long prev = currentPos;
 				currentPos = PhTree12.inc(currentPos, maskLower, maskUpper);
 				if (currentPos <= maskLower) {
 					break;
 				}
+				if (stats != null) {
+					stats.nHcSkipped += currentPos - prev - 1;
+				}
 			}
 
 			Object v = node.ntGetEntry(currentPos, result, pp);
@@ -411,7 +452,7 @@ public class NodeIteratorNoGC<T> {
 				}
 			} else {
 				//LHC
-				if (this.next + PhTree12.LHC_BINARY_SEARCH_THRESHOLD < this.maskLower) {
+				if (this.next + lhcBinarySearchThreshold < this.maskLower) {
 					int pin = node.getPosition(maskLower, dims);
 					//If we don't find it we use the next following entry, i.e. -(pin+1)
 					pin = pin >= 0 ? pin : -(pin+1); 
@@ -443,7 +484,9 @@ public class NodeIteratorNoGC<T> {
 		return true;
 	}
 
-	void init(long[] rangeMin, long[] rangeMax, Node node, PhFilter checker) {
+	void init(long[] rangeMin, long[] rangeMax, Node node, PhFilter checker, 
+			PhQueryStats stats) {
+		this.stats = stats;
 		this.node = node; //for calcLimits
 		calcLimits(rangeMin, rangeMax);
 		reinit(node, rangeMin, rangeMax, checker);
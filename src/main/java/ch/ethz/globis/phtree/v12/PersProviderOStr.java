@@ -34,13 +34,14 @@ import java.util.IdentityHashMap;
 
 import ch.ethz.globis.phtree.PersistenceProvider;
 import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTreeConfig;
 
 public class PersProviderOStr extends PersistenceProvider {
 	
 	private int idCnt = 0;
 	private static final boolean LOG = true;
 	
-	private int dims = -1;
+	private PhTreeConfig cfg = null;
 	private int nEntries = -1;
 	private Object rootId = null;
 	
@@ -197,21 +198,20 @@ public class PersProviderOStr extends PersistenceProvider {
 	}
 
 	@Override
-	public void writeTree(PhTree<?> tree, int dims) {
-		this.dims = dims;
+	public void writeTree(PhTree<?> tree, PhTreeConfig cfg) {
+		this.cfg = cfg;
 		this.nEntries = 0;
 	}
 
 	@Override
 	public void updateTree(PhTree<?> tree, int dims, int nEntries, Object rootId) {
-		this.dims = dims;
 		this.nEntries = nEntries;
 		this.rootId = rootId;
 	}
 
 	@Override
 	public <T> PhTree<T> loadTree() {
-		return new PhTree12<>(dims, nEntries, rootId, this);
+		return new PhTree12<>(cfg, nEntries, rootId, this);
 	}
 
 	@Override
@@ -8,25 +8,56 @@ package ch.ethz.globis.phtree.v12;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ch.ethz.globis.phtree.PersistenceProvider;
 import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhExtent;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.util.BloomFilter;
 import ch.ethz.globis.phtree.v12.nt.NtNode;
 import ch.ethz.globis.phtree.v12.nt.NtNodePool;
 
 /**
  * Persistence provider that stores nodes in a map of byte[].
+ * 
+ * Nodes are clustered into pages of {@link #PAGE_SIZE} bytes. A new node is placed into
+ * the page of its parent node if it fits, otherwise into the page that was used for the
+ * previously placed node (usually a sibling), otherwise into a new page. 
+ * When a node grows and its page overflows, the node is moved to another page. 
+ * Nodes that are larger than a page occupy their own (overflow) page.
+ * 
+ * Page reads are only counted if a node is loaded from a page other than the
+ * page that was read last. 
+ * 
+ * Optionally, pages can be prefetched asynchronously by a pool of I/O threads, 
+ * see {@link #setPrefetchThreads(int)}. Query iterators then request the pages of all
+ * matching sub-nodes when they enter a node.
+ * 
+ * Optionally, a {@link BloomFilter} can be used to answer point lookups for absent keys
+ * without reading any pages, see {@link #setBloomFilter(BloomFilter)}. The filter is stored 
+ * during {@link #flush()} and restored by {@link #loadTree()}.
  */
 public class PersProviderPagedSerBuf extends PersistenceProvider {
 	
-	private int dims;
+	private PhTreeConfig cfg;
 	private int nEntries = -1;
 	private Object rootId = -1;
 	private int pageIdCnt = 0;
@@ -40,9 +71,14 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 	
 	public static final int PAGE_SIZE = 4096;
 	
+	//page header: number of nodes in page
+	private static final int PAGE_HEADER_SIZE = 4;
+	//node header: node id and length
+	private static final int NODE_HEADER_SIZE = 8;
+	
 	private IdentityHashMap<Externalizable, Integer> idMap = new IdentityHashMap<>();
 	
-	//pageId -> page
+	//bucketId -> page
 	private HashMap<Integer, byte[]> database = new HashMap<>();
 	
 	//this is a buffer to avoid writing data before it is required.
@@ -51,12 +87,34 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 	
 	private HashMap<Integer, Bucket> bucketByObjId = new HashMap<>();
 	private HashMap<Integer, Bucket> bucketByBucketId = new HashMap<>();
-	private int prevBucket;
+	//nodeId -> id of the node that was accessed before the node was registered (=parent)
+	private HashMap<Integer, Integer> parentByObjId = new HashMap<>();
+	private Bucket prevBucket;
 	private Integer prevNodeId = null;
+	//The last page that was read, this is considered 'cached'
+	private int prevPageRead = -1;
+	//The decoded content of the last page that was read
+	private Map<Integer, byte[]> prevPage = null;
+	
+	//Maximum number of pages that are prefetched but not yet loaded
+	private static final int PREFETCH_MAX = 64;
+	private ExecutorService prefetchPool = null;
+	//bucketId -> page content
+	private final ConcurrentHashMap<Integer, Future<Map<Integer, byte[]>>> prefetched = 
+			new ConcurrentHashMap<>();
+	
+	private BloomFilter bloomFilter = null;
+	//The persistent version of the filter
+	private byte[] bloomFilterData = null;
 
 	private int nNodeRead;
 	private int nNodeNew;
 	private int nNodeUpdate;
+	private int nPageRead;
+	private int nPageWrite;
+	private int nPagePrefetch;
+	private int nPagePrefetchHit;
+	private int nBloomReject;
 	private long nBytesRead;
 	private long nBytesWritten;
 	private long maxNodeSize = 0;
@@ -79,14 +137,37 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 			return ret;
 		}
 		
-		byte[] buf = database.get(id);
+		Bucket bucket = bucketByObjId.get(id);
+		if (bucket == null) {
+			throw new IllegalArgumentException("id=" + id);
+		}
+		Map<Integer, byte[]> nodes;
+		if (bucket.id == prevPageRead && prevPage != null) {
+			nodes = prevPage;
+		} else {
+			byte[] page = database.get(bucket.id);
+			if (bucket.id != prevPageRead) {
+				nPageRead += bucket.getPageCount();
+				nBytesRead += page.length;
+				prevPageRead = bucket.id;
+			}
+			Future<Map<Integer, byte[]>> future = prefetched.remove(bucket.id);
+			if (future != null) {
+				nPagePrefetchHit++;
+				try {
+					nodes = future.get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException(e);
+				}
+			} else {
+				nodes = readPage(page);
+			}
+			prevPage = nodes;
+		}
+		byte[] buf = nodes.get(id);
 		if (buf == null) {
-//			for (Map.Entry<Integer, byte[]> e: database.entrySet()) {
-//				System.out.println("e: " + e.getKey() + " -> " + e.getValue());
-//			}
 			throw new IllegalArgumentException("id=" + id);
 		}
-		nBytesRead += buf.length;
 		ByteArrayInputStream bais = new ByteArrayInputStream(buf);
 		Externalizable node;
 		try {
@@ -157,7 +238,132 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 		reassignBucket(id, o);
 	}
 
-	private void writeNode(Externalizable o, Object id) {
+	@Override
+	public void prefetchNode(Object o) {
+		if (prefetchPool == null || o == null || bufferById.containsKey(o)) {
+			return;
+		}
+		Bucket bucket = bucketByObjId.get(o);
+		if (bucket == null || bucket.id == prevPageRead || prefetched.containsKey(bucket.id)) {
+			return;
+		}
+		if (prefetched.size() >= PREFETCH_MAX) {
+			//Too many pages have been prefetched but not loaded
+			discardPrefetched();
+		}
+		final byte[] page = database.get(bucket.id);
+		nPagePrefetch++;
+		prefetched.put(bucket.id, prefetchPool.submit(() -> readPage(page)));
+	}
+
+	@Override
+	public boolean isPrefetchEnabled() {
+		return prefetchPool != null;
+	}
+	
+	/**
+	 * Enable or disable asynchronous prefetching of pages.
+	 * @param nThreads Number of I/O threads. '0' disables prefetching.
+	 */
+	public void setPrefetchThreads(int nThreads) {
+		if (prefetchPool != null) {
+			discardPrefetched();
+			prefetchPool.shutdown();
+			prefetchPool = null;
+		}
+		if (nThreads > 0) {
+			prefetchPool = Executors.newFixedThreadPool(nThreads, r -> {
+				Thread t = new Thread(r, "PhTree-prefetch");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+	
+	private void discardPrefetched() {
+		for (Future<?> f: prefetched.values()) {
+			f.cancel(false);
+		}
+		prefetched.clear();
+	}
+	
+	@Override
+	public void registerKey(long[] key) {
+		if (bloomFilter != null) {
+			bloomFilter.add(key);
+		}
+	}
+	
+	@Override
+	public boolean mightContainKey(long[] key) {
+		if (bloomFilter == null || bloomFilter.mightContain(key)) {
+			return true;
+		}
+		nBloomReject++;
+		return false;
+	}
+	
+	/**
+	 * Set a Bloom filter for point lookups. This should be done before any keys are 
+	 * inserted, otherwise the filter must be rebuilt with 
+	 * {@link #rebuildBloomFilter(PhTree)}.
+	 * @param filter The filter or 'null' to disable filtering.
+	 */
+	public void setBloomFilter(BloomFilter filter) {
+		this.bloomFilter = filter;
+		this.bloomFilterData = null;
+	}
+	
+	public BloomFilter getBloomFilter() {
+		return bloomFilter;
+	}
+	
+	/**
+	 * Clear the Bloom filter and add all keys of the tree. This should be used after
+	 * bulk loading or after many removals.
+	 * @param tree The tree
+	 */
+	public void rebuildBloomFilter(PhTree<?> tree) {
+		if (bloomFilter == null) {
+			return;
+		}
+		bloomFilter.clear();
+		PhExtent<?> it = tree.queryExtent();
+		while (it.hasNext()) {
+			bloomFilter.add(it.nextEntryReuse().getKey());
+		}
+	}
+	
+	private void writeBloomFilter() {
+		if (bloomFilter == null) {
+			bloomFilterData = null;
+			return;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(baos);
+			bloomFilter.writeExternal(out);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		bloomFilterData = baos.toByteArray();
+		nBytesWritten += bloomFilterData.length;
+	}
+	
+	private void readBloomFilter() {
+		BloomFilter f = new BloomFilter();
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bloomFilterData));
+			f.readExternal(in);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		nBytesRead += bloomFilterData.length;
+		bloomFilter = f;
+	}
+	
+	private byte[] writeNode(Externalizable o, Object id) {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream(PAGE_SIZE);
 		try {
 			ObjectOutputStream out = new ObjectOutputStream(baos);
@@ -174,10 +380,46 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 			throw new RuntimeException(e);
 		}
 		byte[] buf = baos.toByteArray();
-		database.put((Integer)id, buf);
 		log("write id=", id, "o=", o);
-		nBytesWritten += buf.length;
 		maxNodeSize = buf.length > maxNodeSize ? buf.length : maxNodeSize;
+		return buf;
+	}
+	
+	private static byte[] writePage(Map<Integer, byte[]> nodes) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(PAGE_SIZE);
+		try {
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeInt(nodes.size());
+			for (Map.Entry<Integer, byte[]> e: nodes.entrySet()) {
+				out.writeInt(e.getKey());
+				out.writeInt(e.getValue().length);
+				out.write(e.getValue());
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+	
+	private static Map<Integer, byte[]> readPage(byte[] page) {
+		LinkedHashMap<Integer, byte[]> nodes = new LinkedHashMap<>();
+		if (page == null) {
+			return nodes;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(page));
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				int id = in.readInt();
+				byte[] buf = new byte[in.readInt()];
+				in.readFully(buf);
+				nodes.put(id, buf);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return nodes;
 	}
 	
 	@Override
@@ -185,24 +427,98 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 		return "OBJ-STR";
 	}
 
+	/**
+	 * @return the number of pages read. Pages count as read if they differ from 
+	 * the previously read page. Oversized pages count as multiple reads. 
+	 */
 	@Override
 	public int statsGetPageReads() {
-		return nNodeRead;
+		return nPageRead;
 	}
 
+	/**
+	 * @return the number of pages written during {@link #flush()}.
+	 */
 	@Override
 	public int statsGetPageWrites() {
+		return nPageWrite;
+	}
+
+	/**
+	 * @return the number of nodes requested from the persistence provider, this includes
+	 * requests for nodes that are buffered.
+	 */
+	public int statsGetNodeReads() {
+		return nNodeRead;
+	}
+
+	/**
+	 * @return the number of pages requested for prefetching.
+	 */
+	public int statsGetPagePrefetches() {
+		return nPagePrefetch;
+	}
+
+	/**
+	 * @return the number of page reads that were served by a prefetched page.
+	 */
+	public int statsGetPagePrefetchHits() {
+		return nPagePrefetchHit;
+	}
+
+	/**
+	 * @return the number of point lookups that were rejected by the Bloom filter.
+	 */
+	public int statsGetBloomFilterRejects() {
+		return nBloomReject;
+	}
+
+	/**
+	 * @return the number of node registrations and node updates.
+	 */
+	public int statsGetNodeWrites() {
 		return nNodeNew + nNodeUpdate;
 	}
+	
+	/**
+	 * @return the number of pages in storage, including overflow pages.
+	 */
+	public int statsGetPageCount() {
+		int n = 0;
+		for (Bucket b: bucketByBucketId.values()) {
+			n += b.getPageCount();
+		}
+		return n;
+	}
+	
+	/**
+	 * @return The average fill factor of the pages in storage, between 0 and 1.
+	 */
+	public double statsGetFillFactor() {
+		long nBytes = 0;
+		for (Bucket b: bucketByBucketId.values()) {
+			nBytes += b.totalSize;
+		}
+		int nPages = statsGetPageCount();
+		return nPages == 0 ? 0 : nBytes / (double)(nPages * (long)PAGE_SIZE);
+	}
 
 	@Override
 	public void statsReset() {
 		nNodeRead = 0;
 		nNodeNew = 0;
 		nNodeUpdate = 0;
+		nPageRead = 0;
+		nPageWrite = 0;
+		nPagePrefetch = 0;
+		nPagePrefetchHit = 0;
+		nBloomReject = 0;
 		nBytesRead = 0;
 		nBytesWritten = 0;
 		maxNodeSize = 0;
+		prevPageRead = -1;
+		prevPage = null;
+		discardPrefetched();
 	}
 
 	@Override
@@ -211,15 +527,23 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 		for (byte[] ba: database.values()) {
 			nBytesInStorage += ba.length;
 		}
+		int nNodes = bucketByObjId.size();
 		return "nNodeRead=" + nNodeRead + 
 				"  nNodeNew=" + nNodeNew +
 				"  nNodeUpdate=" + nNodeUpdate + 
-				"  pages=" + database.size() + 
+				"  nPageRead=" + nPageRead + 
+				"  nPageWrite=" + nPageWrite + 
+				"  nPagePrefetch=" + nPagePrefetch + 
+				"  nPagePrefetchHit=" + nPagePrefetchHit + 
+				"  nBloomReject=" + nBloomReject + 
+				"  pages=" + statsGetPageCount() + 
+				"  nodes=" + nNodes + 
+				"  fillFactor=" + statsGetFillFactor() + 
 				"  bytesRead=" + nBytesRead +
 				"  bytesWritten=" + nBytesWritten +
 				"  bytesStored=" + nBytesInStorage +
 				"  maxNodeSize=" + maxNodeSize +
-				"  avgNodeSize=" + (nBytesInStorage/database.size());
+				"  avgNodeSize=" + (nNodes == 0 ? 0 : nBytesInStorage/nNodes);
 	}
 	
 	private void log(Object ...strings) {
@@ -234,14 +558,13 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 	}
 
 	@Override
-	public void writeTree(PhTree<?> tree, int dims) {
-		this.dims = dims;
+	public void writeTree(PhTree<?> tree, PhTreeConfig cfg) {
+		this.cfg = cfg;
 		this.nEntries = 0;
 	}
 
 	@Override
 	public void updateTree(PhTree<?> tree, int dims, int nEntries, Object rootId) {
-		this.dims = dims;
 		this.nEntries = nEntries;
 		this.rootId = rootId;
 	}
@@ -249,65 +572,159 @@ public class PersProviderPagedSerBuf extends PersistenceProvider {
 
 	@Override
 	public <T> PhTree<T> loadTree() {
-		return new PhTree12<>(dims, nEntries, rootId, this);
+		PhTree<T> tree = new PhTree12<>(cfg, nEntries, rootId, this);
+		if (bloomFilterData != null) {
+			readBloomFilter();
+		} else if (bloomFilter != null) {
+			rebuildBloomFilter(tree);
+		}
+		return tree;
 	}
 
 	@Override
 	public void flush() {
 		log("flush size=", bufferById.size(), "/", bufferByObj.size());
-		for (Map.Entry<Integer, Externalizable> e: bufferById.entrySet()) {
-			writeNode(e.getValue(), e.getKey());
+		discardPrefetched();
+		//Place nodes in order of their IDs, this usually places parents before children.
+		List<Integer> ids = new ArrayList<>(bufferById.keySet());
+		Collections.sort(ids);
+		HashMap<Bucket, Map<Integer, byte[]>> dirtyPages = new HashMap<>();
+		for (Integer id: ids) {
+			byte[] buf = writeNode(bufferById.get(id), id);
+			int size = NODE_HEADER_SIZE + buf.length;
+			Bucket b = bucketByObjId.get(id);
+			if (b != null && !b.canReplace(id, size)) {
+				//Node has grown and does not fit anymore -> re-cluster
+				getDirtyPage(b, dirtyPages).remove(id);
+				b.removeNode(id);
+				b = null;
+			}
+			if (b == null) {
+				b = findBucket(id, size);
+				bucketByObjId.put(id, b);
+			}
+			b.addNode(id, size);
+			getDirtyPage(b, dirtyPages).put(id, buf);
+			prevBucket = b;
+		}
+		for (Map.Entry<Bucket, Map<Integer, byte[]>> e: dirtyPages.entrySet()) {
+			Bucket b = e.getKey();
+			if (b.id == prevPageRead) {
+				//the cached page is outdated
+				prevPageRead = -1;
+				prevPage = null;
+			}
+			if (b.isEmpty()) {
+				database.remove(b.id);
+				bucketByBucketId.remove(b.id);
+				if (prevBucket == b) {
+					prevBucket = null;
+				}
+				continue;
+			}
+			byte[] page = writePage(e.getValue());
+			database.put(b.id, page);
+			nPageWrite += b.getPageCount();
+			nBytesWritten += page.length;
 		}
 		bufferById.clear();
 		bufferByObj.clear();
+		parentByObjId.clear();
+		writeBloomFilter();
+	}
+	
+	private Map<Integer, byte[]> getDirtyPage(Bucket b, HashMap<Bucket, Map<Integer, byte[]>> pages) {
+		Map<Integer, byte[]> page = pages.get(b);
+		if (page == null) {
+			page = readPage(database.get(b.id));
+			pages.put(b, page);
+		}
+		return page;
+	}
+	
+	/**
+	 * Find a bucket for a new or relocated node. 
+	 * Priorities: bucket of parent node, previous bucket (usually a sibling), new bucket.
+	 */
+	private Bucket findBucket(Integer nodeId, int size) {
+		Integer parentId = parentByObjId.get(nodeId);
+		Bucket b = parentId == null ? null : bucketByObjId.get(parentId);
+		if (b != null && b.canAdd(size)) {
+			return b;
+		}
+		if (prevBucket != null && prevBucket.canAdd(size)) {
+			return prevBucket;
+		}
+		b = new Bucket(++bucketIdCount);
+		bucketByBucketId.put(b.id, b);
+		return b;
 	}
 	
 	private void assignBucket(Integer nodeId, Externalizable o) {
-		if (prevNodeId == null) {
-			//no previous read -> must be root
-			Bucket b = new Bucket(++bucketIdCount);
-			b.addNode(nodeId, o);
-			
+		//New nodes are registered right after their parent has been loaded. The actual 
+		//placement is deferred until flush(), when the size of the node is known.
+		if (prevNodeId != null) {
+			parentByObjId.put(nodeId, prevNodeId);
 		}
-		
 	}
 
 	private void reassignBucket(Integer id, Externalizable o) {
-		// TODO Auto-generated method stub
-		
+		//Nodes that have a bucket keep it until they outgrow it. If they have to be moved
+		//during flush(), we try to move them close to the current parent.
+		if (prevNodeId != null && !prevNodeId.equals(id) && !parentByObjId.containsKey(id)) {
+			parentByObjId.put(id, prevNodeId);
+		}
 	}
 
+	/**
+	 * A bucket represents a page. It keeps track of which nodes are stored in the page.
+	 */
 	private static class Bucket {
 		private final int id;
-		private final int totalSize = 0;
+		private int totalSize = PAGE_HEADER_SIZE;
+		private final HashMap<Integer, Integer> sizeByNodeId = new HashMap<>();
+		
 		public Bucket(int id) {
 			this.id = id;
 		}
-		public boolean addNode(Integer nodeId, Externalizable o) {
-			//if (small enough)// TODO Auto-generated method stub
-			return true;
-			//else
-			//return false
-			
-			//Priorities: for new nodes
-			// - first try to store in bucket of parent node, then try siblings (node with same 
-			//   parent). 
-			//   -> 'parent' has some flaws: 
-			//      1) New intermediate nodes could mean that a a previously immediate parent
-			//         mutates to a grand-parent (still in same node)
-			//		   -> prefer subnodes with infixLen==0?????
-			//      2) -> Later, a direct child could be rejected because of grandchildren that 
-			//         already reside in the node. Should we trigger a reorg in this case?
-			//      3) Resizing could mean that any node (parent/child/grandchild) could trigger
-			//         a split. We need to reanalize the nodes to find out which are direct children
-			//         -> Again, store infixlen/postlen in the bucket?
-			//         -> Prioritization on postLen could still favour certain grandchildren over
-			//            certain direct children. However, would that be really bad? By tendency,
-			//            this could result in a more compact structure, with clusters of points 
-			//            ending up io the same node
-			//
-			//   -> bulk loading would be an advantage. 
-			
+		
+		/**
+		 * Empty buckets accept any node, even if it is larger than a page.
+		 */
+		boolean canAdd(int size) {
+			return sizeByNodeId.isEmpty() || totalSize + size <= PAGE_SIZE;
+		}
+		
+		boolean canReplace(Integer nodeId, int size) {
+			Integer oldSize = sizeByNodeId.get(nodeId);
+			if (sizeByNodeId.size() == 1) {
+				//the only node, the page may overflow
+				return true;
+			}
+			return totalSize - oldSize + size <= PAGE_SIZE;
+		}
+		
+		public void addNode(Integer nodeId, int size) {
+			Integer oldSize = sizeByNodeId.put(nodeId, size);
+			if (oldSize != null) {
+				totalSize -= oldSize;
+			}
+			totalSize += size;
+		}
+
+		public void removeNode(Integer nodeId) {
+			totalSize -= sizeByNodeId.remove(nodeId);
+		}
+		
+		boolean isEmpty() {
+			return sizeByNodeId.isEmpty();
+		}
+		
+		/**
+		 * @return Number of pages, this is larger than 1 for overflow pages.
+		 */
+		int getPageCount() {
+			return (totalSize + PAGE_SIZE - 1) / PAGE_SIZE;
 		}
 	}
 }
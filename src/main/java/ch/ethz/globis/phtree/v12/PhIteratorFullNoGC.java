@@ -50,8 +50,8 @@ public final class PhIteratorFullNoGC<T> implements PhExtent<T> {
 		private int size = 0;
 		
 		@SuppressWarnings("unchecked")
-		public PhIteratorStack() {
-			stack = new NodeIteratorFullNoGC[PhTree12.DEPTH_64];
+		public PhIteratorStack(int depth) {
+			stack = new NodeIteratorFullNoGC[depth];
 		}
 
 		public boolean isEmpty() {
@@ -92,7 +92,7 @@ public final class PhIteratorFullNoGC<T> implements PhExtent<T> {
 	public PhIteratorFullNoGC(PhTree12<T> pht, PhFilter checker) {
 		this.dims = pht.getDim();
 		this.checker = checker;
-		this.stack = new PhIteratorStack();
+		this.stack = new PhIteratorStack(pht.getBitDepth());
 		this.valTemplate = new long[dims];
 		this.pht = pht;
 		this.pp = pht.getPersistenceProvider();
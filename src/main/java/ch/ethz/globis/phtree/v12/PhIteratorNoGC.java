@@ -30,6 +30,7 @@ import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilter;
 import ch.ethz.globis.phtree.PhTreeHelper;
 import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v12.PhTree12.NodeEntry;
 
 /**
@@ -51,8 +52,8 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		private int size = 0;
 		
 		@SuppressWarnings("unchecked")
-		public PhIteratorStack() {
-			stack = new NodeIteratorNoGC[PhTree12.DEPTH_64];
+		public PhIteratorStack(int depth) {
+			stack = new NodeIteratorNoGC[depth];
 		}
 
 		public boolean isEmpty() {
@@ -62,10 +63,14 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		public NodeIteratorNoGC<T> prepareAndPush(Node node) {
 			NodeIteratorNoGC<T> ni = stack[size++];
 			if (ni == null)  {
-				ni = new NodeIteratorNoGC<>(dims, valTemplate, pp);
+				ni = new NodeIteratorNoGC<>(dims, valTemplate, pp, 
+						pht.lhcBinarySearchThreshold());
 				stack[size-1] = ni;
 			}
-			ni.init(rangeMin, rangeMax, node, checker);
+			ni.init(rangeMin, rangeMax, node, checker, stats);
+			if (stats != null) {
+				stats.addNode(node.isAHC(), node.isNT());
+			}
 			return ni;
 		}
 
@@ -84,6 +89,7 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 	private long[] rangeMin;
 	private long[] rangeMax;
 	private PhFilter checker;
+	private PhQueryStats stats;
 	private final PhTree12<T> pht;
 	private final PersistenceProvider pp;
 	
@@ -94,7 +100,7 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 	public PhIteratorNoGC(PhTree12<T> pht, PhFilter checker) {
 		this.dims = pht.getDim();
 		this.checker = checker;
-		this.stack = new PhIteratorStack();
+		this.stack = new PhIteratorStack(pht.getBitDepth());
 		this.valTemplate = new long[dims];
 		this.pht = pht;
 		this.pp = pht.getPersistenceProvider();
@@ -108,6 +114,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		this.rangeMax = rangeMax;
 		this.stack.size = 0;
 		this.isFinished = false;
+		if (stats != null) {
+			stats.nQueries++;
+		}
 		
 		if (pht.getRoot() == null) {
 			//empty index
@@ -128,6 +137,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 					p = stack.prepareAndPush((Node) pp.loadNode(result.node));
 					continue;
 				} else {
+					if (stats != null) {
+						stats.nPostfixMatched++;
+					}
 					resultFree = resultToReturn;
 					resultToReturn = result;
 					return;
@@ -140,6 +152,11 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
 		isFinished = true;
 	}
 	
+	@Override
+	public void setStats(PhQueryStats stats) {
+		this.stats = stats;
+	}
+
 	@Override
 	public long[] nextKey() {
 		long[] key = nextEntryReuse().getKey();
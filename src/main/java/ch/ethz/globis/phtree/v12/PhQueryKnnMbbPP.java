@@ -35,6 +35,7 @@ import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilterDistance;
 import ch.ethz.globis.phtree.PhTree.PhExtent;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v12.PhTree12.NodeEntry;
 
 /**
@@ -76,7 +77,11 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
   private int nMin;
   private PhTree12<T> pht;
   private final PersistenceProvider pp;
+  private PhDistance userDistance;
   private PhDistance distance;
+  private PhQueryStats stats;
+  //counters of the window queries, they are part of this query
+  private final PhQueryStats windowStats = new PhQueryStats();
   private final ArrayList<PhEntryDist<T>> entries = new ArrayList<>();
   private int resultSize = 0;
   private int currentPos = -1;
@@ -128,15 +133,30 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
     return nextValue();
   }
 
+  @Override
+  public void setStats(PhQueryStats stats) {
+    this.stats = stats;
+    iter.setStats(stats == null ? null : windowStats);
+  }
+
   @Override
   public PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center) {
-    this.distance = dist == null ? this.distance : dist;
+    this.userDistance = dist == null ? this.userDistance : dist;
+    this.distance = stats == null ? userDistance : stats.countDistances(userDistance);
     this.nMin = nMin;
+    if (stats != null) {
+      stats.nQueries++;
+      windowStats.clear();
+    }
     clearEntries();
 
     if (nMin > 0) {
       nearestNeighbourBinarySearch(center, nMin);
     }
+    if (stats != null) {
+      windowStats.nQueries = 0;
+      stats.add(windowStats);
+    }
 
     currentPos = 0;
     return this;
@@ -240,6 +260,9 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
 
     while (!findNeighbours(currentDist, nMin, val)) {
       currentDist *= 10;
+      if (stats != null) {
+        stats.nKnnExpansions++;
+      }
     }
   }
 
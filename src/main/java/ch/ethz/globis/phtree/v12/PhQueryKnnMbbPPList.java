@@ -33,6 +33,7 @@ import ch.ethz.globis.phtree.PhEntryDist;
 import ch.ethz.globis.phtree.PhFilterDistance;
 import ch.ethz.globis.phtree.PhTree.PhExtent;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v12.PhTree12.NodeEntry;
 
 /**
@@ -75,6 +76,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	private PhTree12<T> pht;
 	private final PersistenceProvider pp;
 	private PhDistance distance;
+	//the distance function without counting
+	private PhDistance userDistance;
+	private PhQueryStats stats;
 	private int currentPos = -1;
 	private final long[] mbbMin;
 	private final long[] mbbMax;
@@ -83,6 +87,7 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	private final KnnResultList results; 
 	private final NodeIteratorFullNoGC<T> ni;
 	private final long[] niBuffer; 
+	private final NodeEntry<T> niResult;
 
 
 	/**
@@ -100,6 +105,14 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 		this.iter = new NodeIteratorListReuse<>(dims, results, pp);
 		this.niBuffer = new long[dims];
 		this.ni = new NodeIteratorFullNoGC<>(dims, niBuffer, pp);
+		//This allows writing the result directly into 'niBuffer'
+		this.niResult = new NodeEntry<>(niBuffer, Node.SUBCODE_EMPTY, null);
+	}
+
+	@Override
+	public void setStats(PhQueryStats stats) {
+		this.stats = stats;
+		iter.setStats(stats);
 	}
 
 	@Override
@@ -137,8 +150,12 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 	@Override
 	public PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center) {
-		this.distance = dist == null ? this.distance : dist;
+		this.userDistance = dist == null ? this.userDistance : dist;
+		this.distance = stats == null ? userDistance : stats.countDistances(userDistance);
 		this.nMin = nMin;
+		if (stats != null) {
+			stats.nQueries++;
+		}
 		
 		if (nMin > 0) {
 			results.reset(nMin, center);
@@ -188,8 +205,7 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 			niBuffer[i] = key[i] & mask;
 		}
 		
-		//This allows writing the result directly into 'ret'
-		NodeEntry<T> result = new NodeEntry<>(niBuffer, Node.SUBCODE_EMPTY, null);
+		NodeEntry<T> result = niResult;
 		ni.init(node, null);
 		while (ni.increment(result)) {
 			if (result.node != null) {
@@ -218,9 +234,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 	}
 
 	private double calcDiagonal(long[] key, Node node) {
-		//First, get min/max.
-		long[] min = new long[dims];
-		long[] max = new long[dims];
+		//First, get min/max. The MBB is not used yet, it is calculated after the estimate.
+		long[] min = mbbMin;
+		long[] max = mbbMax;
 		long mask = (-1L) << (node.getPostLen()+1);
 		long mask1111 = ~mask;
 		for (int i = 0; i < dims; i++) {
@@ -280,6 +296,9 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 		while (!findNeighbours(estimatedDist, nMin, val)) {
 			estimatedDist *= 10;
+			if (stats != null) {
+				stats.nKnnExpansions++;
+			}
 		}
 	}
 
@@ -513,19 +532,8 @@ public class PhQueryKnnMbbPPList<T> implements PhKnnQuery<T> {
 
 		@Override
 		boolean phIsPrefixValid(long[] prefix, int bitsToIgnore) {
-			long maskMin = (-1L) << bitsToIgnore;
-			long maskMax = ~maskMin;
-			long[] buf = new long[prefix.length];
-			for (int i = 0; i < buf.length; i++) {
-				//if v is outside the node, return distance to closest edge,
-				//otherwise return v itself (assume possible distance=0)
-				long min = prefix[i] & maskMin;
-				long max = prefix[i] | maskMax;
-				buf[i] = min > center[i] ? min : (max < center[i] ? max : center[i]); 
-			}
-			//TODO if buf==center -> no need to check distance 
 			//TODO return true for dim < 3????
-			return distance.dist(center, buf) <= maxDistance;
+			return distance.distToPrefix(center, prefix, bitsToIgnore) <= maxDistance;
 			//return checker.isValid(bitsToIgnore, prefix);
 			//TODO
 			//TODO
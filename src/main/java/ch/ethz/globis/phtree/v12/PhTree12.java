@@ -7,7 +7,9 @@ import static ch.ethz.globis.phtree.PhTreeHelper.posInArray;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -23,6 +25,7 @@ import ch.ethz.globis.phtree.PhTree;
 import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTreeHelper;
 import ch.ethz.globis.phtree.util.PhMapper;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.PhTreeStats;
 import ch.ethz.globis.phtree.util.StringBuilderLn;
 import ch.ethz.globis.phtree.v12.PhResultList.PhEntryFactory;
@@ -92,7 +95,8 @@ public class PhTree12<T> extends PhTree<T> {
 	
 	//This threshold is used to decide during query iteration whether the first value
 	//should be found by binary search or by full scan.
-	public static final int LHC_BINARY_SEARCH_THRESHOLD = 50;
+	public static final int LHC_BINARY_SEARCH_THRESHOLD = 
+			PhTreeConfig.DEFAULT_LHC_BINARY_SEARCH_THRESHOLD;
 	
 	static final int DEPTH_64 = 64;
 	
@@ -103,9 +107,22 @@ public class PhTree12<T> extends PhTree<T> {
 	private final int dims;
 
 	private final AtomicInteger nEntries = new AtomicInteger();
+
+	//Node thresholds, see PhTreeConfig.
+	private final double ahcLhcBias;
+	private final int ntThreshold;
+	private final int lhcBinarySearchThreshold;
+
+	//Bits per key value, keys must not have any bits of the domainMask set.
+	private final int depth;
+	private final long domainMask;
 	
 	private Object rootId = null;
 
+	//Buffers of update(), they are allocated on the first update.
+	private Node[] updateStack;
+	private final int[] updateInsertRequired = new int[1];
+
 	
 	/**
 	 * @param <T>
@@ -156,23 +173,85 @@ public class PhTree12<T> extends PhTree<T> {
 
 	public PhTree12(int dim) {
 		dims = dim;
+		ahcLhcBias = Node.AHC_LHC_BIAS;
+		ntThreshold = Node.NT_THRESHOLD;
+		lhcBinarySearchThreshold = LHC_BINARY_SEARCH_THRESHOLD;
+		depth = DEPTH_64;
+		domainMask = 0;
 		debugCheck();
 	}
 
 	public PhTree12(PhTreeConfig cfg) {
 		dims = cfg.getDimActual();
+		ahcLhcBias = cfg.getAhcLhcBias();
+		ntThreshold = cfg.getNtThreshold();
+		lhcBinarySearchThreshold = cfg.getLhcBinarySearchThreshold();
+		depth = cfg.getDepth();
+		domainMask = PhTreeHelper.domainMask(depth);
 		pp = cfg.getPersistenceProvider();
-		pp.writeTree(this, dims);
+		pp.writeTree(this, getConfig());
 		debugCheck();
 	}
 
+	/**
+	 * Create a tree from existing nodes, with a depth of 64 bits and the default node 
+	 * thresholds. 
+	 * @param dims dimensionality
+	 * @param nEntries number of entries
+	 * @param rootId id of the root node or {@code null}
+	 * @param pp the persistence provider that contains the nodes
+	 * @see #PhTree12(PhTreeConfig, int, Object, PersistenceProvider)
+	 */
 	public PhTree12(int dims, int nEntries, Object rootId, PersistenceProvider pp) {
-		this.dims = dims;
+		this(new PhTreeConfig(dims), nEntries, rootId, pp);
+	}
+
+	/**
+	 * Create a tree from existing nodes. The persistence provider of the configuration
+	 * is ignored.
+	 * @param cfg dimensionality, depth and node thresholds of the tree
+	 * @param nEntries number of entries
+	 * @param rootId id of the root node or {@code null}
+	 * @param pp the persistence provider that contains the nodes
+	 */
+	public PhTree12(PhTreeConfig cfg, int nEntries, Object rootId, PersistenceProvider pp) {
+		this.dims = cfg.getDimActual();
+		this.ahcLhcBias = cfg.getAhcLhcBias();
+		this.ntThreshold = cfg.getNtThreshold();
+		this.lhcBinarySearchThreshold = cfg.getLhcBinarySearchThreshold();
+		this.depth = cfg.getDepth();
+		this.domainMask = PhTreeHelper.domainMask(depth);
 		this.nEntries.set(nEntries);
 		this.rootId = rootId;
 		this.pp = pp;
 	}
+
+	/**
+	 * @return a new configuration with the dimensionality, depth and node thresholds 
+	 * of this tree 
+	 */
+	public PhTreeConfig getConfig() {
+		PhTreeConfig cfg = new PhTreeConfig(dims);
+		cfg.setDepth(depth);
+		cfg.setAhcLhcBias(ahcLhcBias);
+		cfg.setNtThreshold(ntThreshold);
+		cfg.setLhcBinarySearchThreshold(lhcBinarySearchThreshold);
+		cfg.setPersistenceProvider(pp);
+		return cfg;
+	}
 	
+	double ahcLhcBias() {
+		return ahcLhcBias;
+	}
+
+	int ntThreshold() {
+		return ntThreshold;
+	}
+
+	int lhcBinarySearchThreshold() {
+		return lhcBinarySearchThreshold;
+	}
+
 	void increaseNrEntries() {
 		nEntries.incrementAndGet();
 		pp.updateTree(this, dims, nEntries.get(), rootId);
@@ -190,7 +269,7 @@ public class PhTree12<T> extends PhTree<T> {
 
 	@Override
 	public PhTreeStats getStats() {
-		return getStats(0, getRoot(), new PhTreeStats(DEPTH_64));
+		return getStats(0, getRoot(), new PhTreeStats(depth));
 	}
 
 	private PhTreeStats getStats(int currentDepth, Node node, PhTreeStats stats) {
@@ -201,11 +280,12 @@ public class PhTree12<T> extends PhTree<T> {
 		if (node.isNT()) {
 			stats.nNT++;
 		}
-		int infixLen = 63-currentDepth-node.getPostLen();
+		int infixLen = depth-1-currentDepth-node.getPostLen();
 		stats.infixHist[infixLen]++;
 		stats.nodeDepthHist[currentDepth]++;
 		int size = node.getEntryCount();
-		stats.nodeSizeLogHist[32-Integer.numberOfLeadingZeros(size)]++;
+		stats.addNode(node.isNT() ? PhTreeStats.TYPE_NT 
+				: (node.isAHC() ? PhTreeStats.TYPE_AHC : PhTreeStats.TYPE_LHC), size);
 		
 		currentDepth += infixLen;
 		stats.q_totalDepth += currentDepth;
@@ -233,12 +313,15 @@ public class PhTree12<T> extends PhTree<T> {
 		}
 		
 		final int REF = 4;//bytes for a reference
-		// this +  value[] + ba[] + ind() + isHC + postLen + infLen + nEntries
-		stats.size += align8(12 + REF + REF + REF + 1 + 1 + 1 + 4);
+		// this +  value[] + ba[] + subCodes[] + ind() + isHC + postLen + nEntries
+		stats.addSize(PhTreeStats.MEM_NODE, align8(12 + REF + REF + REF + REF + 1 + 1 + 4));
 		//count children
 		int nChildren = node.getEntryCount();
-		stats.size += 16 + align8(Bits.arraySizeInByte(node.ba));
-		stats.size += node.values() != null ? 16 + align8(node.values().length * REF) : 0;
+		stats.addSize(PhTreeStats.MEM_BA, 16 + align8(Bits.arraySizeInByte(node.ba)));
+		stats.addSize(PhTreeStats.MEM_VALUES, 
+				node.values() != null ? 16 + align8(node.values().length * REF) : 0);
+		stats.addSize(PhTreeStats.MEM_SUBCODES, 
+				node.subCodes != null ? 16 + align8(node.subCodes.length) : 0);
 		if (nChildren == 1 && (node != getRoot()) && nEntries.get() > 1) {
 			//This should not happen! Except for a root node if the tree has <2 entries.
 			logErr("WARNING: found lonely node...");
@@ -266,7 +349,9 @@ public class PhTree12<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T put(long[] key, T value) {
+		PhTreeHelper.checkDomain(key, domainMask);
 		Object nonNullValue = value == null ? PhTreeHelper.NULL : value;
+		pp.registerKey(key);
 		if (getRoot() == null) {
 			insertRoot(key, nonNullValue);
 			return null;
@@ -283,10 +368,10 @@ public class PhTree12<T> extends PhTree<T> {
     }
 
     void insertRoot(long[] key, Object value) {
-        Node root = Node.createNode(dims, DEPTH_64-1);
+        Node root = Node.createNode(dims, depth-1);
         //calcPostfixes(valueSet, root, 0);
         long pos = posInArray(key, root.getPostLen());
-        root.addPostPIN(pos, -1, key, value, getPersistenceProvider());
+        root.addPostPIN(pos, -1, key, value, this);
         rootId = pp.registerNode(root);
         increaseNrEntries();
     }
@@ -294,6 +379,9 @@ public class PhTree12<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean contains(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask) || !pp.mightContainKey(key)) {
+			return false;
+		}
 		Object o = getRoot();
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
@@ -306,6 +394,9 @@ public class PhTree12<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T get(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask) || !pp.mightContainKey(key)) {
+			return null;
+		}
 		Object o = getRoot();
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
@@ -323,15 +414,22 @@ public class PhTree12<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T remove(long... key) {
+		if (!PhTreeHelper.isInDomain(key, domainMask)) {
+			return null;
+		}
 		Object o = getRoot();
-		Node currentNode = (Node) o;
+		Node root = (Node) o;
+		Node currentNode = root;
 		Node parentNode = null;
 		while (o instanceof Node) {
 			currentNode = (Node) o;
 			o = currentNode.doIfMatching(key, false, parentNode, null, null, this);
 			parentNode = currentNode;
 		}
-		pp.updateNode(currentNode);
+		//Nodes that have been merged into their parent have already been removed
+		if (currentNode != null && (currentNode.getEntryCount() > 0 || currentNode == root)) {
+			pp.updateNode(currentNode);
+		}
 		//TODO update parent node!!!
 		//TODO update parent node!!!
 		//TODO update parent node!!!
@@ -346,20 +444,32 @@ public class PhTree12<T> extends PhTree<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public T update(long[] oldKey, long[] newKey) {
-		Node[] stack = new Node[64];
+		if (!PhTreeHelper.isInDomain(oldKey, domainMask)) {
+			return null;
+		}
+		PhTreeHelper.checkDomain(newKey, domainMask);
+		if (updateStack == null) {
+			updateStack = new Node[depth];
+		}
+		Node[] stack = updateStack;
 		int stackSize = 0;
 		
 		Object o = getRoot();
 		Node parentNode = null;
-		final int[] insertRequired = new int[]{NO_INSERT_REQUIRED};
+		final int[] insertRequired = updateInsertRequired;
+		insertRequired[0] = NO_INSERT_REQUIRED;
 		while (o instanceof Node) {
 			Node currentNode = (Node) o;
 			stack[stackSize++] = currentNode;
 			o = currentNode.doIfMatching(oldKey, false, parentNode, newKey, insertRequired, this);
 			parentNode = currentNode;
 		}
+		final int stackUsed = stackSize;
 		
 		Object value = o == PhTreeHelper.NULL ? null : o;
+		if (o != null) {
+			pp.registerKey(newKey);
+		}
 
 		//traverse the tree from bottom to top
 		//this avoids extracting and checking infixes.
@@ -381,6 +491,8 @@ public class PhTree12<T> extends PhTree<T> {
 				}
 			}
 		}		
+		//do not keep removed nodes alive
+		Arrays.fill(stack, 0, stackUsed, null);
 		
 		return (T) value;
 	}
@@ -388,10 +500,11 @@ public class PhTree12<T> extends PhTree<T> {
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + 
-				" AHC/LHC=" + Node.AHC_LHC_BIAS +  
+				" depth=" + depth +  
+				" AHC/LHC=" + ahcLhcBias() +  
 				" AHC-on=" + AHC_ENABLED +  
 				" HCI-on=" + HCI_ENABLED +  
-				" NtLimit=" + Node.NT_THRESHOLD +  
+				" NtLimit=" + ntThreshold() +  
 				" NtMaxDim=" + NtNode.MAX_DIM +
 				" I/O=" + pp.getDescription() +
 				" DEBUG=" + PhTreeHelper.DEBUG;
@@ -416,7 +529,7 @@ public class PhTree12<T> extends PhTree<T> {
 			if (o instanceof Node) {
 				toStringPlain(sb, (Node) o, key);
 			} else {
-				sb.append(Bits.toBinary(key, DEPTH_64));
+				sb.append(Bits.toBinary(key, depth));
 				sb.appendLn("  v=" + o);
 			}
 		}
@@ -438,7 +551,7 @@ public class PhTree12<T> extends PhTree<T> {
 		for (int i = 0; i < currentDepth; i++) {
 			ind += "-";
 		}
-		int infixLen = 63-currentDepth-node.getPostLen();
+		int infixLen = depth-1-currentDepth-node.getPostLen();
 		sb.append( ind + "il=" + infixLen + " pl=" + (node.getPostLen()) + 
 				" ec=" + node.getEntryCount() +
 				" mode=" + (node.isAHC() ? "AHC" : node.ind() == null ? "LHC" : "NT") + 
@@ -467,7 +580,7 @@ public class PhTree12<T> extends PhTree<T> {
 				toStringTree(sb, currentDepth + 1, (Node) o, key, printValue);
 			}  else {
 				//post-fix
-				sb.append(ind + Bits.toBinary(key, DEPTH_64));
+				sb.append(ind + Bits.toBinary(key, depth));
 				sb.append("  hcPos=" + i);
 				if (printValue) {
 					sb.append("  v=" + o);
@@ -572,7 +685,7 @@ public class PhTree12<T> extends PhTree<T> {
 
 	@Override
 	public int getBitDepth() {
-		return PhTree12.DEPTH_64;
+		return depth;
 	}
 
 	/**
@@ -627,6 +740,35 @@ public class PhTree12<T> extends PhTree<T> {
 		nEntries.addAndGet(-deletedPosts);
 	}
 
+	@Override
+	public void writeSnapshot(OutputStream os) throws IOException {
+		PhSnapshot.Output out = new PhSnapshot.Output(os);
+		out.writeHeader(PhSnapshot.VERSION_V12);
+		getConfig().write(out);
+		out.writeInt(nEntries.get());
+		out.writeBoolean(rootId != null);
+		if (rootId != null) {
+			getRoot().writeSnapshot(out, pp);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a tree from a snapshot. The header must already have been read.
+	 * The returned tree uses {@link PersistenceProvider#NONE}.
+	 * @param in input
+	 * @return the tree
+	 * @throws IOException if reading fails
+	 * @param <T> value type
+	 * @see PhTree#readSnapshot(java.io.InputStream)
+	 */
+	public static <T> PhTree12<T> readSnapshotData(ObjectInput in) throws IOException {
+		PhTreeConfig cfg = PhTreeConfig.read(in);
+		int n = in.readInt();
+		Object root = in.readBoolean() ? Node.readSnapshot(in) : null;
+		return new PhTree12<>(cfg, n, root, PersistenceProvider.NONE);
+	}
+
 
 	/**
 	 * Best HC incrementer ever. 
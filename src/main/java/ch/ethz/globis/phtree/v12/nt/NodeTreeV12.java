@@ -359,6 +359,7 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 					long[] kdKey2 = new long[outerDims];
 					currentNode.getKdKeyByPIN(pin2, kdKey2);
 					parentNode.localReplaceEntry(parentPin, kdKey2, kdSubCode2, ntSubCode2, val2);
+					pp.removeNode(currentNode);
 					currentNode.discardNode();
 				}
 				return ret;
@@ -665,6 +666,7 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 	 * Collect tree statistics.
 	 * @param node
 	 * @param stats
+	 * @return number of entries in the NT, i.e. sub-nodes and postfixes of the node 
 	 */
 	public static int getStats(NtNode<?> node, PhTreeStats stats, int dims, 
 			List<Node> entryBuffer, int currentDepth, PersistenceProvider pp) {
@@ -673,10 +675,11 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 		//Counter for NtNodes
 		stats.nNtNodes++;
 
-		// ba[] + values[] + kdKey[] + postLen + isAHC + entryCount
-		stats.size += align8(12 + REF + REF + REF + 1 + 1 + 2);
+		// ba[] + values[] + kdKey[] + kdSubCodes[] + ntSubCodes[] + postLen + isAHC + entryCount
+		stats.addSize(PhTreeStats.MEM_NT, align8(12 + REF + REF + REF + REF + REF + 1 + 1 + 2));
 
 		int nNodeEntriesFound = 0;
+		int nKdEntries = 0;
 		Object[] data = node.values();
 		for (int i = 0; i < data.length; i++) {
 			byte ntSubCode = node.getNtSubCode(i);
@@ -685,9 +688,10 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 			}
 			nNodeEntriesFound++;
 			if (NtNode.isNtSubNode(ntSubCode)) {
-				getStats((NtNode<?>) pp.loadNode(data[i]), stats, dims, entryBuffer, 
+				nKdEntries += getStats((NtNode<?>) pp.loadNode(data[i]), stats, dims, entryBuffer, 
 						currentDepth, pp);
 			} else {
+				nKdEntries++;
 				//subnode entry or postfix entry
 				byte kdSubCode = node.getKdSubCode(i);
 				if (Node.isSubNode(kdSubCode)) {
@@ -703,9 +707,11 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 		}
 		//count children
 		//nChildren += node.getEntryCount();
-		stats.size += 16 + align8(node.ba.length * 8);
-		stats.size += 16 + align8(node.values().length * REF);
-		stats.size += 16 + align8(node.kdKeys().length * 8);
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.ba.length * 8));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.values().length * REF));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.kdKeys().length * 8));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.kdSubCodes().length));
+		stats.addSize(PhTreeStats.MEM_NT, 16 + align8(node.ntSubCodes().length));
 		
 		if (dims<=31 && node.getEntryCount() > (1L<<dims)) {
 			System.err.println("WARNING: Over-populated node found: ntec=" + node.getEntryCount());
@@ -718,7 +724,7 @@ public class NodeTreeV12<T> implements NodeTree64<T> {
 			System.err.println("Array too large in NT: " + node.ba.length + " - " + baS + " = " + 
 					(node.ba.length - baS));
 		}
-		return nNodeEntriesFound;
+		return nKdEntries;
 	}
 	
 	public static class NtEntry12<T> extends NtEntry<T> {
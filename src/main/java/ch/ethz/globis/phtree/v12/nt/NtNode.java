@@ -8,6 +8,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
 import ch.ethz.globis.phtree.PersistenceProvider;
+import ch.ethz.globis.phtree.util.PhSnapshot;
 import ch.ethz.globis.phtree.util.Refs;
 import ch.ethz.globis.phtree.util.RefsByte;
 import ch.ethz.globis.phtree.util.RefsLong;
@@ -117,12 +118,29 @@ public class NtNode<T> implements Externalizable {
 		this.ntSubCodes = RefsByte.arrayCreate(2);
 	}
 	
+	/**
+	 * Remove all nested sub-nodes of this node from the persistence provider. 
+	 * @param pp persistence provider
+	 */
+	public void removeSubNodes(PersistenceProvider pp) {
+		//LHC arrays may be longer than the number of entries
+		int n = isAHC() ? values.length : getEntryCount();
+		for (int i = 0; i < n; i++) {
+			if (values[i] != null && isNtSubNode(getNtSubCode(i))) {
+				NtNode<?> sub = (NtNode<?>) pp.loadNode(values[i]);
+				sub.removeSubNodes(pp);
+				pp.removeNode(sub);
+			}
+		}
+	}
+
 	void discardNode() {
-		Bits.arrayReplace(ba, null);
-		RefsLong.arrayReplace(kdKeys, null);
-		Refs.arrayReplace(values, null);
-		RefsByte.arrayReplace(kdSubCodes, null);
-		RefsByte.arrayReplace(ntSubCodes, null);
+		//pooled nodes must not keep the arrays, they may be reused by other nodes
+		ba = Bits.arrayReplace(ba, null);
+		kdKeys = RefsLong.arrayReplace(kdKeys, null);
+		values = Refs.arrayReplace(values, null);
+		kdSubCodes = RefsByte.arrayReplace(kdSubCodes, null);
+		ntSubCodes = RefsByte.arrayReplace(ntSubCodes, null);
 		NtNodePool.offer(this);
 	}
 	
@@ -768,6 +786,14 @@ public class NtNode<T> implements Externalizable {
 	long[] kdKeys() {
 		return kdKeys;
 	}
+	
+	byte[] kdSubCodes() {
+		return kdSubCodes;
+	}
+	
+	byte[] ntSubCodes() {
+		return ntSubCodes;
+	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
@@ -796,4 +822,72 @@ public class NtNode<T> implements Externalizable {
 		ntSubCodes = RefsByte.read(in);
 	}
 	
+	/**
+	 * Write this node and all nested sub-nodes to a snapshot. Sub-nodes are resolved with
+	 * the persistence provider, so the snapshot contains no persistence IDs.
+	 * @param out output
+	 * @param pp persistence provider
+	 * @param entryWriter writer for entries that are not nested sub-nodes
+	 * @throws IOException if writing fails
+	 */
+	public void writeSnapshot(PhSnapshot.Output out, PersistenceProvider pp, 
+			PhSnapshot.SlotWriter entryWriter) throws IOException {
+		out.writeShort(entryCnt);
+		out.writeByte(postLen);
+		out.writeBoolean(isAHC);
+		PhSnapshot.writeLongs(ba, out);
+		PhSnapshot.writeLongs(kdKeys, out);
+		PhSnapshot.writeBytes(kdSubCodes, out);
+		PhSnapshot.writeBytes(ntSubCodes, out);
+		//LHC arrays may be longer than the number of entries
+		int nValues = isAHC ? values.length : entryCnt;
+		out.writeInt(nValues);
+		for (int i = 0; i < nValues; i++) {
+			Object v = values[i];
+			if (v == null) {
+				out.writeByte(PhSnapshot.SLOT_EMPTY);
+			} else if (isNtSubNode(getNtSubCode(i))) {
+				out.writeByte(PhSnapshot.SLOT_NT_NODE);
+				((NtNode<?>)pp.loadNode(v)).writeSnapshot(out, pp, entryWriter);
+			} else if (Node.isSubNode(getKdSubCode(i))) {
+				entryWriter.write(pp.loadNode(v), out);
+			} else {
+				entryWriter.write(v, out);
+			}
+		}
+	}
+
+	/**
+	 * Read a node and all nested sub-nodes from a snapshot.
+	 * The node is meant for trees with {@link PersistenceProvider#NONE}.
+	 * @param in input
+	 * @param entryReader reader for entries that are not nested sub-nodes
+	 * @return the node
+	 * @throws IOException if reading fails
+	 * @param <T> value type
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> NtNode<T> readSnapshot(ObjectInput in, PhSnapshot.SlotReader entryReader) 
+			throws IOException {
+		NtNode<T> n = (NtNode<T>) NtNodePool.getNode();
+		n.entryCnt = in.readShort();
+		n.postLen = in.readByte();
+		n.isAHC = in.readBoolean();
+		n.ba = PhSnapshot.readLongs(in);
+		n.kdKeys = PhSnapshot.readLongs(in);
+		n.kdSubCodes = PhSnapshot.readBytes(in);
+		n.ntSubCodes = PhSnapshot.readBytes(in);
+		int nValues = in.readInt();
+		n.values = Refs.arrayCreate(nValues);
+		for (int i = 0; i < nValues; i++) {
+			byte slot = in.readByte();
+			if (slot == PhSnapshot.SLOT_NT_NODE) {
+				n.values[i] = readSnapshot(in, entryReader);
+			} else if (slot != PhSnapshot.SLOT_EMPTY) {
+				n.values[i] = entryReader.read(slot, in);
+			}
+		}
+		return n;
+	}
+
 }
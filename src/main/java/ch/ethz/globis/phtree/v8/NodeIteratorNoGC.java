@@ -29,6 +29,7 @@ import org.zoodb.index.critbit.CritBit64.QueryIteratorMask;
 import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilter;
 import ch.ethz.globis.phtree.PhTreeHelper;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v8.PhTree8.NodeEntry;
 
 
@@ -75,6 +76,7 @@ public class NodeIteratorNoGC<T> {
   private boolean isPostFinished;
   private boolean isSubFinished;
   private PhFilter checker;
+  private PhQueryStats stats;
   private final PhEntry<T> nextPost1;
   private final PhEntry<T> nextPost2;
   private boolean isNextPost1free;
@@ -249,6 +251,9 @@ public class NodeIteratorNoGC<T> {
    * @return False if the value does not match the range, otherwise true.
    */
   private boolean readValue(long pos, int offsPostKey, PhEntry<T> result) {
+    if (stats != null) {
+      stats.nPostfixChecked++;
+    }
     long[] key = result.getKey();
     System.arraycopy(valTemplate, 0, key, 0, DIM);
     PhTreeHelper.applyHcPos(pos, postLen, key);
@@ -268,6 +273,9 @@ public class NodeIteratorNoGC<T> {
   }
 
   private boolean readValue(long pos, NodeEntry<T> e, PhEntry<T> result) {
+    if (stats != null) {
+      stats.nPostfixChecked++;
+    }
     //extract postfix
     final long mask = postLen < 63 ? (~0L)<<postLen+1 : 0;
     long[] eKey = e.getKey();
@@ -572,7 +580,8 @@ public class NodeIteratorNoGC<T> {
   }
 
   void init(long[] rangeMin, long[] rangeMax, 
-      long[] valTemplate, Node<T> node, PhFilter checker) {
+      long[] valTemplate, Node<T> node, PhFilter checker, PhQueryStats stats) {
+    this.stats = stats;
     //create limits for the local node. there is a lower and an upper limit. Each limit
     //consists of a series of DIM bit, one for each dimension.
     //For the lower limit, a '1' indicates that the 'lower' half of this dimension does 
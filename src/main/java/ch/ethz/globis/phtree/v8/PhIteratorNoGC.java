@@ -29,6 +29,7 @@ import ch.ethz.globis.phtree.PhEntry;
 import ch.ethz.globis.phtree.PhFilter;
 import ch.ethz.globis.phtree.PhTreeHelper;
 import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 
 /**
  * This PhIterator uses a loop instead of recursion in findNextElement();. 
@@ -79,7 +80,10 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
         stack[size-1] = ni;
       }
 
-      ni.init(rangeMin, rangeMax, valTemplate, node, checker);
+      ni.init(rangeMin, rangeMax, valTemplate, node, checker, stats);
+      if (stats != null) {
+        stats.addNode(node.isPostHC(), node.isPostNI());
+      }
       return true;
     }
 
@@ -99,6 +103,7 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
   private long[] rangeMax;
   private PhFilter checker;
   private final PhTree8<T> pht;
+  private PhQueryStats stats;
 
   private PhEntry<T> result;
   boolean isFinished = false;
@@ -117,6 +122,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
     this.rangeMax = rangeMax;
     this.stack.size = 0;
     this.isFinished = false;
+    if (stats != null) {
+      stats.nQueries++;
+    }
 
     if (pht.getRoot() == null) {
       //empty index
@@ -141,6 +149,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
             //take care that it is only applied AFTER the previous subNodes has been traversed,
             //otherwise we may mess up the valTemplate which is used in the previous Subnode.
             PhTreeHelper.applyHcPos(p.getCurrentPos(), p.node().getPostLen(), valTemplate);
+            if (stats != null) {
+              stats.nPostfixChecked++;
+            }
             if (stack.prepare(p.getCurrentSubNode())) {
               continue stackLoop;
             } else {
@@ -149,6 +160,9 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
             }
           } else {
             result = p.getCurrentPost();
+            if (stats != null) {
+              stats.nPostfixMatched++;
+            }
             return;
           }
         }
@@ -159,6 +173,11 @@ public final class PhIteratorNoGC<T> implements PhQuery<T> {
     isFinished = true;
   }
 
+  @Override
+  public void setStats(PhQueryStats stats) {
+    this.stats = stats;
+  }
+
   @Override
   public long[] nextKey() {
     long[] key = nextEntryReuse().getKey();
@@ -15,6 +15,7 @@ import ch.ethz.globis.phtree.PhEntryDist;
 import ch.ethz.globis.phtree.PhFilterDistance;
 import ch.ethz.globis.phtree.PhTree.PhIterator;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.util.PhQueryStats;
 import ch.ethz.globis.phtree.v8.PhTree8.NodeEntry;
 
 /**
@@ -55,7 +56,11 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
   private final int DIM;
   private int nMin;
   private PhTree8<T> pht;
+  private PhDistance userDistance;
   private PhDistance distance;
+  private PhQueryStats stats;
+  //counters of the window queries, they are part of this query
+  private final PhQueryStats windowStats = new PhQueryStats();
 	private final ArrayList<PhEntryDist<T>> entries = new ArrayList<>();
   private int resultSize = 0;
   private int currentPos = -1;
@@ -106,15 +111,30 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
     return nextValue();
   }
 
+  @Override
+  public void setStats(PhQueryStats stats) {
+    this.stats = stats;
+    itEx.setStats(stats == null ? null : windowStats);
+  }
+
   @Override
 	public PhKnnQuery<T> reset(int nMin, PhDistance dist, long... center) {
-    this.distance = dist == null ? this.distance : dist;
+    this.userDistance = dist == null ? this.userDistance : dist;
+    this.distance = stats == null ? userDistance : stats.countDistances(userDistance);
     this.nMin = nMin;
+    if (stats != null) {
+      stats.nQueries++;
+      windowStats.clear();
+    }
     clearEntries();
 
     if (nMin > 0) {
       nearestNeighbourBinarySearch(center, nMin);
     }
+    if (stats != null) {
+      windowStats.nQueries = 0;
+      stats.add(windowStats);
+    }
 
     currentPos = 0;
     return this;
@@ -259,6 +279,9 @@ public class PhQueryKnnMbbPP<T> implements PhKnnQuery<T> {
     
     while (!findNeighbours(currentDist, nMin, val)) {
       currentDist *= 10;
+      if (stats != null) {
+        stats.nKnnExpansions++;
+      }
     }
   }
 
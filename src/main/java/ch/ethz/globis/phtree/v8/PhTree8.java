@@ -154,7 +154,8 @@ public class PhTree8<T> extends PhTree<T> {
     stats.infixHist[node.getInfixLen()]++;
     stats.nodeDepthHist[currentDepth]++;
     int size = node.getPostCount() + node.getSubCount();
-    stats.nodeSizeLogHist[32-Integer.numberOfLeadingZeros(size)]++;
+    stats.addNode(node.isPostNI() ? PhTreeStats.TYPE_NT 
+        : (node.isPostHC() ? PhTreeStats.TYPE_AHC : PhTreeStats.TYPE_LHC), size);
 
     currentDepth += node.getInfixLen();
     stats.q_totalDepth += currentDepth;
@@ -0,0 +1,366 @@
+package elki.index.tree.spatial.ph;
+
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.PhTreeF;
+import ch.ethz.globis.phtree.PhTreeF.PhKnnQueryF;
+import ch.ethz.globis.phtree.PhTreeF.PhRangeQueryF;
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.DBID;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNHeap;
+import elki.database.ids.KNNList;
+import elki.database.ids.ModifiableDoubleDBIDList;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.index.DynamicIndex;
+import elki.index.KNNIndex;
+import elki.index.PagedIndexFactory;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.persistent.PageFile;
+import elki.persistent.PageFileFactory;
+import elki.utilities.Alias;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Implementation of a disk-based PH-tree.
+ * <p>
+ * The nodes of the tree are stored in an ELKI {@link PageFile} via a
+ * {@link PageFilePersistenceProvider}, the values are the integer
+ * representations of the DBIDs. The keys are encoded with the
+ * {@link PhtSettings.Preprocessor#AUTO} preprocessor, the distances of the
+ * results are computed from the relation. Optionally, the pages of the nodes
+ * that a query will visit are read ahead by I/O threads, see
+ * {@link PageFilePersistenceProvider#setPrefetchThreads(int)}.
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "T. Zaeschke, C. Zimmerli, M.C. Norrie", //
+    title = "The PH-Tree -- A Space-Efficient Storage Structure and Multi-Dimensional Index", //
+    booktitle = "Proc. Intl. Conf. on Management of Data (SIGMOD'14), 2014", //
+    url = "https://doi.org/10.1145/361002.361007", bibkey = "DBLP:conf/sigmod/ZaschkeZN14")
+public class DiskPHTree<O extends NumberVector> implements DynamicIndex, KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(DiskPHTree.class);
+
+  /**
+   * Indexed relation
+   */
+  private Relation<O> relation;
+
+  /**
+   * Distance computations performed.
+   */
+  private long distComputations = 0L;
+
+  /**
+   * Persistence provider.
+   */
+  private final PageFilePersistenceProvider pp;
+
+  /**
+   * The PH-Tree instance.
+   */
+  private final PhTreeF<Integer> tree;
+
+  /**
+   * The number of dimensions.
+   */
+  private int dims = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param pageFile Page file
+   */
+  public DiskPHTree(Relation<O> relation, PageFile<PhTreePage> pageFile) {
+    this(relation, pageFile, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param pageFile Page file
+   * @param prefetchThreads Number of I/O threads for prefetching, 0 disables
+   *        prefetching
+   */
+  public DiskPHTree(Relation<O> relation, PageFile<PhTreePage> pageFile, int prefetchThreads) {
+    super();
+    this.relation = relation;
+    dims = RelationUtil.dimensionality(relation);
+    pp = new PageFilePersistenceProvider(pageFile);
+    pp.setPrefetchThreads(prefetchThreads);
+    PreProcessorPointF pre = new PhtSettings().createPreprocessor(relation, dims);
+    PhTreeConfig cfg = new PhTreeConfig(dims);
+    cfg.setDepth(pre.getBitDepth());
+    cfg.setPersistenceProvider(pp);
+    PhTree<Integer> t = PhTree.create(cfg);
+    tree = PhTreeF.wrap(t, pre);
+  }
+
+  @Override
+  public void initialize() {
+    double[] v = new double[dims];
+    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      tree.put(oToDouble(relation.get(iter), v), DBIDUtil.asInteger(iter));
+    }
+    pp.flush();
+  }
+
+  @Override
+  public void logStatistics() {
+    final String prefix = this.getClass().getName();
+    LOG.statistics(new LongStatistic(prefix + ".distance-computations", distComputations));
+    LOG.statistics(new LongStatistic(prefix + ".prefetches", pp.statsGetPagePrefetches()));
+    LOG.statistics(new LongStatistic(prefix + ".prefetch-hits", pp.statsGetPagePrefetchHits()));
+    pp.getPageFile().logStatistics();
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeKNNQuery(df) : null;
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeRangeQuery(df) : null;
+  }
+
+  /**
+   * kNN query for the ph-tree.
+   */
+  public class PHTreeKNNQuery implements KNNSearcher<O> {
+    /**
+     * Norm to use.
+     */
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
+
+    /**
+     * Norm wrapper.
+     */
+    private final PhNorm dist;
+
+    /**
+     * Query instance.
+     */
+    private final PhKnnQueryF<Integer> query;
+
+    /**
+     * Center point.
+     */
+    private final double[] center;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm to use
+     */
+    public PHTreeKNNQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
+      super();
+      this.norm = norm;
+      this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
+      this.center = new double[dims];
+      // use 'k=0' to avoid executing a query here (center = {0,0,...})
+      this.query = tree.nearestNeighbour(0, dist, new double[dims]);
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      oToDouble(obj, center);
+      query.reset(k, dist, center);
+      while(query.hasNext()) {
+        DBID id = DBIDUtil.importInteger(query.nextValue());
+        knns.insert(norm.distance(obj, relation.get(id)), id);
+      }
+      distComputations += dist.getAndResetDistanceCounter();
+      return knns.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for the ph-tree.
+   */
+  public class PHTreeRangeQuery implements RangeSearcher<O> {
+    /**
+     * Norm to use.
+     */
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
+
+    /**
+     * Norm wrapper.
+     */
+    private final PhNorm dist;
+
+    /**
+     * Query instance.
+     */
+    private PhRangeQueryF<Integer> query;
+
+    /**
+     * The query center.
+     */
+    private final double[] mid;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm to use
+     */
+    public PHTreeRangeQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
+      super();
+      this.norm = norm;
+      this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
+      this.mid = new double[dims];
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      oToDouble(obj, mid);
+      range = Math.abs(range);
+      if(query == null) {
+        query = tree.rangeQuery(range, dist, mid);
+      }
+      else {
+        query.reset(range, mid);
+      }
+      while(query.hasNext()) {
+        DBID id = DBIDUtil.importInteger(query.nextValue());
+        result.add(norm.distance(obj, relation.get(id)), id);
+      }
+      result.sort();
+      return result;
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "diskph" })
+  public static class Factory<O extends NumberVector> extends PagedIndexFactory<O> {
+    /**
+     * Number of I/O threads for prefetching.
+     */
+    private final int prefetchThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param pageFileFactory Page file factory
+     */
+    public Factory(PageFileFactory<?> pageFileFactory) {
+      this(pageFileFactory, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pageFileFactory Page file factory
+     * @param prefetchThreads Number of I/O threads for prefetching, 0 disables
+     *        prefetching
+     */
+    public Factory(PageFileFactory<?> pageFileFactory, int prefetchThreads) {
+      super(pageFileFactory);
+      this.prefetchThreads = prefetchThreads;
+    }
+
+    @Override
+    public DiskPHTree<O> instantiate(Relation<O> relation) {
+      return new DiskPHTree<>(relation, makePageFile(PhTreePage.class), prefetchThreads);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    public static class Par<O extends NumberVector> extends PagedIndexFactory.Par<O> {
+      /**
+       * Option for the number of I/O threads.
+       */
+      public static final OptionID PREFETCH_THREADS_ID = new OptionID("phtree.prefetch-threads", //
+          "Number of threads that read the pages of the nodes that a query will visit ahead of time. "//
+              + "0 disables prefetching.");
+
+      /**
+       * Number of I/O threads for prefetching.
+       */
+      protected int prefetchThreads = 0;
+
+      @Override
+      public void configure(Parameterization config) {
+        super.configure(config);
+        new IntParameter(PREFETCH_THREADS_ID, 0) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+            .grab(config, x -> prefetchThreads = x);
+      }
+
+      @Override
+      public DiskPHTree.Factory<O> make() {
+        return new DiskPHTree.Factory<>(pageFileFactory, prefetchThreads);
+      }
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    boolean ret = tree.remove(oToDouble(relation.get(id), new double[dims])) != null;
+    pp.flush();
+    return ret;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    tree.put(oToDouble(relation.get(id), new double[dims]), DBIDUtil.asInteger(id));
+    pp.flush();
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    double[] v = new double[dims];
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      tree.remove(oToDouble(relation.get(iter), v));
+    }
+    pp.flush();
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    double[] v = new double[dims];
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      tree.put(oToDouble(relation.get(iter), v), DBIDUtil.asInteger(iter));
+    }
+    pp.flush();
+  }
+
+  private double[] oToDouble(O o, double[] v) {
+    for(int k = 0; k < dims; k++) {
+      v[k] = o.doubleValue(k);
+    }
+    return v;
+  }
+}
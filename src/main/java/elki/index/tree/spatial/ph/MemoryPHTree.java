@@ -1,13 +1,24 @@
 package elki.index.tree.spatial.ph;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import ch.ethz.globis.phtree.PhEntryDist;
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhIncrementalQuery;
+import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTreeF;
+import ch.ethz.globis.phtree.PhTreeF.PhEntryDistF;
 import ch.ethz.globis.phtree.PhTreeF.PhKnnQueryF;
 import ch.ethz.globis.phtree.PhTreeF.PhRangeQueryF;
 import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+import ch.ethz.globis.phtree.util.BitTools;
 import elki.data.NumberVector;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBID;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
@@ -15,24 +26,28 @@ import elki.database.ids.DBIDs;
 import elki.database.ids.KNNHeap;
 import elki.database.ids.KNNList;
 import elki.database.ids.ModifiableDoubleDBIDList;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
-import elki.distance.Distance;
-import elki.distance.NumberVectorDistance;
-import elki.distance.minkowski.LPNormDistance;
-import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.index.DistancePriorityIndex;
 import elki.index.DynamicIndex;
 import elki.index.IndexFactory;
-import elki.index.KNNIndex;
-import elki.index.RangeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.LongStatistic;
 import elki.utilities.Alias;
 import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Implementation of an in-memory PH-tree.
@@ -41,6 +56,7 @@ import elki.utilities.optionhandling.Parameterizer;
  *
  * @apiviz.has PHTreeKNNQuery
  * @apiviz.has PHTreeRangeQuery
+ * @apiviz.has PHTreePrioritySearcher
  *
  * @param <O> Vector type
  */
@@ -48,12 +64,23 @@ import elki.utilities.optionhandling.Parameterizer;
     title = "The PH-Tree -- A Space-Efficient Storage Structure and Multi-Dimensional Index", //
     booktitle = "Proc. Intl. Conf. on Management of Data (SIGMOD'14), 2014", //
     url = "https://doi.org/10.1145/361002.361007", bibkey = "DBLP:conf/sigmod/ZaschkeZN14")
-public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIndex<O>, RangeIndex<O> {
+public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, DistancePriorityIndex<O> {
   /**
    * Class logger
    */
   private static final Logging LOG = Logging.getLogger(MemoryPHTree.class);
 
+  /**
+   * Number of objects per block for parallel preprocessing.
+   */
+  private static final int BLOCK_SIZE = 4096;
+
+  /**
+   * Maximum size of the key buffer of a bulk insertion, larger insertions
+   * are performed one by one.
+   */
+  private static final long MAX_BULK_KEYS = Integer.MAX_VALUE - 8;
+
   /**
    * Indexed relation
    */
@@ -74,33 +101,84 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
    */
   private int dims = -1;
 
+  /**
+   * Preprocess and sort bulk insertions in parallel.
+   */
+  private final boolean parallel;
+
+  /**
+   * Use the distances calculated by the tree. This requires a lossless
+   * preprocessor, otherwise the distances are recomputed from the relation.
+   */
+  private final boolean exact;
+
+  /**
+   * Incremental queries are supported (only by v11).
+   */
+  private final boolean incremental;
+
   /**
    * Constructor.
    *
    * @param relation Relation to index
    */
   public MemoryPHTree(Relation<O> relation) {
+    this(relation, false, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param parallel Preprocess and sort bulk insertions in parallel
+   */
+  public MemoryPHTree(Relation<O> relation, boolean parallel) {
+    this(relation, parallel, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param parallel Preprocess and sort bulk insertions in parallel
+   * @param exact Use the lossless IEEE key encoding, the distances of query
+   *        results are then taken from the tree without accessing the relation
+   */
+  public MemoryPHTree(Relation<O> relation, boolean parallel, boolean exact) {
+    this(relation, parallel, settings(exact));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param parallel Preprocess and sort bulk insertions in parallel
+   * @param settings Tree version, preprocessor and tuning parameters
+   */
+  public MemoryPHTree(Relation<O> relation, boolean parallel, PhtSettings settings) {
     super();
     this.relation = relation;
+    this.parallel = parallel;
+    this.exact = settings.isLossless();
+    this.incremental = settings.version == PhtSettings.Version.V11;
     dims = RelationUtil.dimensionality(relation);
-    // TODO
-    // standard preprocessor
-    // tree = PhTreeF.create(dims);
-    // IntegerPP: about 20% faster, but slightly less accurate
-    tree = PhTreeF.create(dims, new PreProcessorPointF.Multiply(100L * 1000L * 1000L));
+    PreProcessorPointF pre = settings.createPreprocessor(relation, dims);
+    tree = PhTreeF.wrap(settings.createTree(dims, pre.getBitDepth()), pre);
+  }
+
+  /**
+   * Default settings.
+   *
+   * @param exact Use the lossless IEEE key encoding
+   * @return settings
+   */
+  private static PhtSettings settings(boolean exact) {
+    return new PhtSettings(PhtSettings.Version.V11, exact ? PhtSettings.Preprocessor.IEEE : PhtSettings.Preprocessor.AUTO);
   }
 
   @Override
   public void initialize() {
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O o = relation.get(iter);
-      double[] v = new double[dims];
-      for(int k = 0; k < dims; k++) {
-        v[k] = o.doubleValue(k);
-      }
-      DBID id = DBIDUtil.deref(iter);
-      tree.put(v, id);
-    }
+    insertAll(relation.getDBIDs());
   }
 
   @Override
@@ -110,34 +188,29 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
 
   @Override
   public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    Distance<? super O> df = distanceQuery.getDistance();
-    // TODO: if we know this works for other distance functions, add them, too!
-    if(df instanceof LPNormDistance) {
-      return new PHTreeKNNQuery((LPNormDistance) df);
-    }
-    if(df instanceof SquaredEuclideanDistance) {
-      return new PHTreeKNNQuery((SquaredEuclideanDistance) df);
-    }
-    // if(df instanceof SparseLPNormDistance) {
-    //  return new PHTreeKNNQuery((SparseLPNormDistance) df);
-    // }
-    return null;
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeKNNQuery(df) : null;
   }
 
   @Override
   public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    Distance<? super O> df = distanceQuery.getDistance();
-    // TODO: if we know this works for other distance functions, add them, too!
-    if(df instanceof LPNormDistance) {
-      return new PHTreeRangeQuery((LPNormDistance) df);
-    }
-    if(df instanceof SquaredEuclideanDistance) {
-      return new PHTreeRangeQuery((SquaredEuclideanDistance) df);
-    }
-    //if(df instanceof SparseLPNormDistance) {
-    //  return new PHTreeRangeQuery((SparseLPNormDistance) df);
-    //}
-    return null;
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeRangeQuery(df) : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Incremental nearest neighbour search is only implemented by the V11 tree,
+   * for other tree versions this returns {@code null}.
+   */
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    if(!incremental) {
+      return null;
+    }
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreePrioritySearcher(df) : null;
   }
 
   /**
@@ -149,7 +222,7 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
     /**
      * Norm to use.
      */
-    private final NumberVectorDistance<?> norm;
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
 
     /**
      * Norm wrapper.
@@ -171,7 +244,7 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
      *
      * @param norm Norm to use
      */
-    public PHTreeKNNQuery(NumberVectorDistance<?> norm) {
+    public PHTreeKNNQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
       super();
       this.norm = norm;
       this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
@@ -186,10 +259,19 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
 
       oToDouble(obj, center);
       query.reset(k, dist, center);
-      while(query.hasNext()) {
-        DBID id = query.nextValue();
-        O o2 = relation.get(id);
-        knns.insert(norm.distance(obj, o2), id);
+      if(exact) {
+        while(query.hasNext()) {
+          PhEntryDistF<DBID> e = query.nextEntryReuse();
+          knns.insert(e.dist(), e.getValue());
+        }
+      }
+      else {
+        while(query.hasNext()) {
+          DBID id = query.nextValue();
+          O o2 = relation.get(id);
+          knns.insert(norm.distance(obj, o2), id);
+          distComputations++;
+        }
       }
       distComputations += dist.getAndResetDistanceCounter();
       return knns.toKNNList();
@@ -203,7 +285,7 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
     /**
      * Norm to use.
      */
-    private final NumberVectorDistance<?> norm;
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
 
     /**
      * Norm wrapper.
@@ -228,7 +310,7 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
      *
      * @param norm Norm to use
      */
-    public PHTreeRangeQuery(NumberVectorDistance<?> norm) {
+    public PHTreeRangeQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
       super();
       this.norm = norm;
       this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
@@ -240,26 +322,189 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
       oToDouble(obj, mid);
       range = Math.abs(range);
 
-      long[] longCenter = new long[dims];
-      tree.getPreprocessor().pre(mid, longCenter);
-
       if(query == null) {
         query = tree.rangeQuery(range, dist, mid);
       } else {
         query.reset(range, mid);
       }
 
-      while(query.hasNext()) {
-        DBID id = query.nextValue();
-        O o2 = relation.get(id);
-        double distance = norm.distance(obj, o2);
-        result.add(distance, id);
+      if(exact) {
+        while(query.hasNext()) {
+          DBID id = query.nextValue();
+          result.add(query.lastDistance(), id);
+        }
+      }
+      else {
+        while(query.hasNext()) {
+          DBID id = query.nextValue();
+          O o2 = relation.get(id);
+          double distance = norm.distance(obj, o2);
+          result.add(distance, id);
+          distComputations++;
+        }
       }
+      distComputations += dist.getAndResetDistanceCounter();
       result.sort();
       return result;
     }
   }
 
+  /**
+   * Priority searcher for the ph-tree, based on an incremental nearest
+   * neighbour query.
+   * <p>
+   * In exact mode, the distances computed by the tree are exact, otherwise
+   * they are only approximations and the exact distances are computed from the
+   * relation.
+   * <p>
+   * Without exact keys, the tree also applies the cutoff and computes
+   * {@link #allLowerBound()} on the quantized keys. Both can then differ from
+   * the exact distances by the quantization error of the preprocessor, so
+   * objects within this error of the cutoff may be missed.
+   */
+  public class PHTreePrioritySearcher implements PrioritySearcher<O> {
+    /**
+     * Norm to use.
+     */
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
+
+    /**
+     * Norm wrapper.
+     */
+    private final PhNorm dist;
+
+    /**
+     * Query instance.
+     */
+    private final PhIncrementalQuery<DBID> query;
+
+    /**
+     * Center point.
+     */
+    private final double[] center;
+
+    /**
+     * Preprocessed center point.
+     */
+    private final long[] lCenter;
+
+    /**
+     * Query object.
+     */
+    private O obj;
+
+    /**
+     * Current object, or {@code null}.
+     */
+    private DBID cur;
+
+    /**
+     * Distance of the current object, as computed by the tree.
+     */
+    private double curDist;
+
+    /**
+     * Current search cutoff.
+     */
+    private double threshold = Double.POSITIVE_INFINITY;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm to use
+     */
+    public PHTreePrioritySearcher(SpatialPrimitiveDistance<? super NumberVector> norm) {
+      super();
+      this.norm = norm;
+      this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
+      this.center = new double[dims];
+      this.lCenter = new long[dims];
+      this.query = tree.getInternalTree().incrementalNearestNeighbour(dist, lCenter);
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O obj) {
+      this.obj = obj;
+      tree.getPreprocessor().pre(oToDouble(obj, center), lCenter);
+      query.reset(dist, lCenter);
+      threshold = Double.POSITIVE_INFINITY;
+      return advance();
+    }
+
+    @Override
+    public PrioritySearcher<O> advance() {
+      if(query.hasNext()) {
+        PhEntryDist<DBID> e = query.nextEntryReuse();
+        cur = e.getValue();
+        curDist = e.dist();
+      }
+      else {
+        cur = null;
+        distComputations += dist.getAndResetDistanceCounter();
+      }
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return cur != null;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return cur.internalGetIndex();
+    }
+
+    @Override
+    public PrioritySearcher<O> decreaseCutoff(double threshold) {
+      if(threshold < this.threshold) {
+        this.threshold = threshold;
+        query.setMaxDistance(threshold);
+      }
+      return this;
+    }
+
+    @Override
+    public double computeExactDistance() {
+      if(exact) {
+        return curDist;
+      }
+      distComputations++;
+      return norm.distance(obj, relation.get(cur));
+    }
+
+    @Override
+    public double getApproximateDistance() {
+      return curDist;
+    }
+
+    @Override
+    public double getApproximateAccuracy() {
+      return exact ? 0. : Double.NaN;
+    }
+
+    @Override
+    public double getLowerBound() {
+      return exact ? curDist : Double.NaN;
+    }
+
+    @Override
+    public double getUpperBound() {
+      return exact ? curDist : Double.NaN;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Without exact keys, this can exceed the exact distances of the remaining
+     * objects by the quantization error.
+     */
+    @Override
+    public double allLowerBound() {
+      return query.lowerBound();
+    }
+  }
+
   /**
    * Factory class
    *
@@ -273,15 +518,57 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
   @Alias({ "miniph", "ph" })
   public static class Factory<O extends NumberVector> implements IndexFactory<O> {
     /**
-     * Constructor. Trivial parameterizable.
+     * Preprocess and sort bulk insertions in parallel.
+     */
+    private final boolean parallel;
+
+    /**
+     * Tree version, preprocessor and tuning parameters.
+     */
+    private final PhtSettings settings;
+
+    /**
+     * Constructor.
      */
     public Factory() {
+      this(false, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallel Preprocess and sort bulk insertions in parallel
+     */
+    public Factory(boolean parallel) {
+      this(parallel, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallel Preprocess and sort bulk insertions in parallel
+     * @param exact Use the lossless key encoding and the distances calculated
+     *        by the tree
+     */
+    public Factory(boolean parallel, boolean exact) {
+      this(parallel, settings(exact));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallel Preprocess and sort bulk insertions in parallel
+     * @param settings Tree version, preprocessor and tuning parameters
+     */
+    public Factory(boolean parallel, PhtSettings settings) {
       super();
+      this.parallel = parallel;
+      this.settings = settings;
     }
 
     @Override
     public MemoryPHTree<O> instantiate(Relation<O> relation) {
-      return new MemoryPHTree<>(relation);
+      return new MemoryPHTree<>(relation, parallel, settings);
     }
 
     @Override
@@ -290,9 +577,101 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
     }
 
     public static class Par implements Parameterizer {
+      /**
+       * Option to preprocess bulk insertions in parallel.
+       */
+      public static final OptionID PARALLEL_ID = new OptionID("phtree.parallel", //
+          "Preprocess and sort the objects in parallel when building the index.");
+
+      /**
+       * Option to choose the tree implementation.
+       */
+      public static final OptionID VERSION_ID = new OptionID("phtree.version", //
+          "PH-tree implementation. Incremental (priority) search is only supported by V11.");
+
+      /**
+       * Option to choose the key encoding.
+       */
+      public static final OptionID PREPROCESSOR_ID = new OptionID("phtree.preprocessor", //
+          "Conversion of the coordinates to keys: lossless IEEE encoding, multiplication with a scale, "//
+              + "32 bit float encoding, or (AUTO) float encoding for float vectors and otherwise "//
+              + "quantization with an offset and scale per dimension that are fitted to the data. "//
+              + "With IEEE, the distances computed by the tree are used for the query results.");
+
+      /**
+       * Option for the scale of the multiplying preprocessor.
+       */
+      public static final OptionID SCALE_ID = new OptionID("phtree.scale", //
+          "Scale of the multiplying preprocessor, determines the precision of the keys.");
+
+      /**
+       * Option for the AHC/LHC bias.
+       */
+      public static final OptionID AHC_LHC_BIAS_ID = new OptionID("phtree.ahc-lhc-bias", //
+          "Nodes use the hypercube representation when size(linear)*bias >= size(hypercube). "//
+              + "Larger values are faster but use more memory. Ignored by V8.");
+
+      /**
+       * Option for the NT threshold.
+       */
+      public static final OptionID NT_THRESHOLD_ID = new OptionID("phtree.nt-threshold", //
+          "Number of entries at which nodes are stored as nested trees. Ignored by V8.");
+
+      /**
+       * Preprocess and sort bulk insertions in parallel.
+       */
+      protected boolean parallel = false;
+
+      /**
+       * Tree implementation.
+       */
+      protected PhtSettings.Version version;
+
+      /**
+       * Key encoding.
+       */
+      protected PhtSettings.Preprocessor preprocessor;
+
+      /**
+       * Scale of the multiplying preprocessor.
+       */
+      protected double scale = PhtSettings.DEFAULT_SCALE;
+
+      /**
+       * AHC/LHC bias.
+       */
+      protected double ahcLhcBias = PhTreeConfig.DEFAULT_AHC_LHC_BIAS;
+
+      /**
+       * NT threshold.
+       */
+      protected int ntThreshold = PhTreeConfig.DEFAULT_NT_THRESHOLD;
+
+      @Override
+      public void configure(Parameterization config) {
+        new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
+        new EnumParameter<>(VERSION_ID, PhtSettings.Version.class, PhtSettings.Version.V11) //
+            .grab(config, x -> version = x);
+        new EnumParameter<>(PREPROCESSOR_ID, PhtSettings.Preprocessor.class, PhtSettings.Preprocessor.AUTO) //
+            .grab(config, x -> preprocessor = x);
+        if(preprocessor == PhtSettings.Preprocessor.MULTIPLY) {
+          new DoubleParameter(SCALE_ID, PhtSettings.DEFAULT_SCALE) //
+              .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+              .grab(config, x -> scale = x);
+        }
+        if(version != PhtSettings.Version.V8) {
+          new DoubleParameter(AHC_LHC_BIAS_ID, PhTreeConfig.DEFAULT_AHC_LHC_BIAS) //
+              .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
+              .grab(config, x -> ahcLhcBias = x);
+          new IntParameter(NT_THRESHOLD_ID, PhTreeConfig.DEFAULT_NT_THRESHOLD) //
+              .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+              .grab(config, x -> ntThreshold = x);
+        }
+      }
+
       @Override
       public MemoryPHTree.Factory<NumberVector> make() {
-        return new MemoryPHTree.Factory<>();
+        return new MemoryPHTree.Factory<>(parallel, new PhtSettings(version, preprocessor, scale, ahcLhcBias, ntThreshold));
       }
     }
   }
@@ -317,12 +696,82 @@ public class MemoryPHTree<O extends NumberVector> implements DynamicIndex, KNNIn
     }
   }
 
+  /**
+   * Bulk insertion. All objects are preprocessed into a single key buffer and
+   * then inserted in (approximate) z-order, so that consecutive insertions
+   * mostly follow the same path in the tree.
+   * <p>
+   * The nodes are not built bottom-up from the sorted buffer, every key is
+   * still inserted with {@link PhTree#put}, only the preprocessing and the
+   * sorting run in parallel. The puts take about two thirds of the time of a
+   * bulk insertion of uniformly distributed points.
+   */
   @Override
   public void insertAll(DBIDs ids) {
-    DBIDIter iter = ids.iter();
-    for(; iter.valid(); iter.advance()) {
-      insert(iter);
+    final int n = ids.size();
+    if(n == 0) {
+      return;
+    }
+    if((long) n * dims > MAX_BULK_KEYS) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        insert(iter);
+      }
+      return;
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final long[] keys = new long[n * dims];
+    preprocess(aids, keys);
+
+    // Sort by the leading z-order bits, the lowest bits are replaced by the
+    // index of the object. Bits above the highest differing bit are skipped.
+    long diff = 0;
+    for(int i = dims; i < keys.length; i++) {
+      diff |= keys[i] ^ keys[i % dims];
     }
+    final int startBit = 63 - Long.numberOfLeadingZeros(diff);
+    final long indexMask = (Long.highestOneBit(n) << 1) - 1L;
+    final long[] order = new long[n];
+    for(int i = 0; i < n; i++) {
+      long z = startBit < 0 ? 0 : BitTools.zOrderPrefix(keys, i * dims, dims, startBit);
+      // flip the sign bit: signed sort gives unsigned order
+      order[i] = ((z ^ Long.MIN_VALUE) & ~indexMask) | i;
+    }
+    if(parallel) {
+      Arrays.parallelSort(order);
+    }
+    else {
+      Arrays.sort(order);
+    }
+
+    final PhTree<DBID> pht = tree.getInternalTree();
+    final long[] key = new long[dims];
+    final DBIDArrayIter iter = aids.iter();
+    for(long o : order) {
+      int i = (int) (o & indexMask);
+      System.arraycopy(keys, i * dims, key, 0, dims);
+      pht.put(key, DBIDUtil.deref(iter.seek(i)));
+    }
+  }
+
+  /**
+   * Convert all objects to PH-tree keys.
+   *
+   * @param ids Objects
+   * @param keys Output buffer, {@code dims} keys per object
+   */
+  private void preprocess(ArrayDBIDs ids, long[] keys) {
+    final int n = ids.size();
+    final PreProcessorPointF pre = tree.getPreprocessor();
+    IntStream blocks = IntStream.range(0, (n + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    (parallel ? blocks.parallel() : blocks).forEach(b -> {
+      final double[] v = new double[dims];
+      final long[] l = new long[dims];
+      final DBIDArrayIter iter = ids.iter();
+      for(int i = b * BLOCK_SIZE, end = Math.min(n, i + BLOCK_SIZE); i < end; i++) {
+        pre.pre(oToDouble(relation.get(iter.seek(i)), v), l);
+        System.arraycopy(l, 0, keys, i * dims, dims);
+      }
+    });
   }
 
   private double[] oToDouble(O o, double[] v) {
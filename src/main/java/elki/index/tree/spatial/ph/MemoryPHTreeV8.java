@@ -20,10 +20,7 @@ import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
-import elki.distance.Distance;
-import elki.distance.NumberVectorDistance;
-import elki.distance.minkowski.LPNormDistance;
-import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.SpatialPrimitiveDistance;
 import elki.index.DynamicIndex;
 import elki.index.IndexFactory;
 import elki.index.KNNIndex;
@@ -111,34 +108,14 @@ public class MemoryPHTreeV8<O extends NumberVector> implements DynamicIndex, KNN
 
   @Override
   public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    Distance<? super O> df = distanceQuery.getDistance();
-    // TODO: if we know this works for other distance functions, add them, too!
-    if(df instanceof LPNormDistance) {
-      return new PHTreeKNNQuery((LPNormDistance) df);
-    }
-    if(df instanceof SquaredEuclideanDistance) {
-      return new PHTreeKNNQuery((SquaredEuclideanDistance) df);
-    }
-    // if(df instanceof SparseLPNormDistance) {
-    //  return new PHTreeKNNQuery((SparseLPNormDistance) df);
-    // }
-    return null;
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeKNNQuery(df) : null;
   }
 
   @Override
   public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    Distance<? super O> df = distanceQuery.getDistance();
-    // TODO: if we know this works for other distance functions, add them, too!
-    if(df instanceof LPNormDistance) {
-      return new PHTreeRangeQuery((LPNormDistance) df);
-    }
-    if(df instanceof SquaredEuclideanDistance) {
-      return new PHTreeRangeQuery((SquaredEuclideanDistance) df);
-    }
-    //if(df instanceof SparseLPNormDistance) {
-    //  return new PHTreeRangeQuery((SparseLPNormDistance) df);
-    //}
-    return null;
+    SpatialPrimitiveDistance<? super NumberVector> df = PhNorm.spatialDistance(distanceQuery.getDistance(), relation);
+    return df != null ? new PHTreeRangeQuery(df) : null;
   }
 
   /**
@@ -150,7 +127,7 @@ public class MemoryPHTreeV8<O extends NumberVector> implements DynamicIndex, KNN
     /**
      * Norm to use.
      */
-    private final NumberVectorDistance<?> norm;
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
 
     /**
      * Norm wrapper.
@@ -172,7 +149,7 @@ public class MemoryPHTreeV8<O extends NumberVector> implements DynamicIndex, KNN
      *
      * @param norm Norm to use
      */
-    public PHTreeKNNQuery(NumberVectorDistance<?> norm) {
+    public PHTreeKNNQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
       super();
       this.norm = norm;
       this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
@@ -204,7 +181,7 @@ public class MemoryPHTreeV8<O extends NumberVector> implements DynamicIndex, KNN
     /**
      * Norm to use.
      */
-    private final NumberVectorDistance<?> norm;
+    private final SpatialPrimitiveDistance<? super NumberVector> norm;
 
     /**
      * Norm wrapper.
@@ -229,7 +206,7 @@ public class MemoryPHTreeV8<O extends NumberVector> implements DynamicIndex, KNN
      *
      * @param norm Norm to use
      */
-    public PHTreeRangeQuery(NumberVectorDistance<?> norm) {
+    public PHTreeRangeQuery(SpatialPrimitiveDistance<? super NumberVector> norm) {
       super();
       this.norm = norm;
       this.dist = new PhNorm(norm, dims, tree.getPreprocessor());
@@ -0,0 +1,856 @@
+package elki.index.tree.spatial.ph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ch.ethz.globis.phtree.PersistenceProvider;
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhExtent;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.util.BloomFilter;
+import ch.ethz.globis.phtree.v12.Node;
+import ch.ethz.globis.phtree.v12.PhTree12;
+import ch.ethz.globis.phtree.v12.nt.NtNode;
+import ch.ethz.globis.phtree.v12.nt.NtNodePool;
+import elki.persistent.DefaultPageHeader;
+import elki.persistent.LRUCache;
+import elki.persistent.MemoryPageFile;
+import elki.persistent.PageFile;
+import elki.persistent.PageHeader;
+import elki.utilities.datastructures.arraylike.IntegerArray;
+
+/**
+ * Persistence provider for {@link PhTree12} that stores the nodes in an ELKI
+ * {@link PageFile}.
+ * <p>
+ * Every node is stored in its own page, nodes that are larger than a page are
+ * continued in overflow pages. The id of a node is the id of its first page.
+ * Buffering can be provided by the page file, for example by wrapping it in an
+ * {@link LRUCache}. This allows comparing the I/O of the PH-tree with the I/O
+ * of other paged ELKI indexes. Page reads are counted on the page file that is
+ * passed to the constructor, if a cache is created with
+ * {@link #PageFilePersistenceProvider(PageFile, int)}, only reads that miss the
+ * cache are counted.
+ * <p>
+ * New and modified nodes are kept in memory until {@link #flush()} is called.
+ * The pages of removed nodes are reused for new nodes. The ids of the free
+ * pages are stored in the meta page, ids that do not fit are stored in a chain
+ * of free pages.
+ * <p>
+ * Optionally, nodes can be prefetched by a pool of I/O threads, see
+ * {@link #setPrefetchThreads(int)}. Query iterators then request the pages of
+ * all matching sub-nodes when they enter a node, and the pages are read while
+ * the query processes the current node. This only pays off if the page file
+ * can serve several reads at once, like an SSD. Of the ELKI page files, only
+ * {@link MemoryPageFile} without a cache supports concurrent reads, the reads
+ * of other page files are serialized.
+ * <p>
+ * Optionally, a {@link BloomFilter} answers point lookups for absent keys
+ * without reading any pages, see {@link #setBloomFilter(BloomFilter)}. The
+ * filter is stored in a chain of pages by {@link #flush()} and restored by
+ * {@link #loadTree()}.
+ */
+public class PageFilePersistenceProvider extends PersistenceProvider {
+  private static final byte NODE_PH = 1;
+
+  private static final byte NODE_NT = 2;
+
+  private static final int NO_PAGE = -1;
+
+  /**
+   * Size of the meta data, excluding the free pages.
+   */
+  private static final int META_SIZE = 96;
+
+  /**
+   * Maximum number of nodes that are prefetched but not yet loaded, when
+   * exceeded the oldest prefetched node is dropped.
+   */
+  private static final int PREFETCH_MAX = 1024;
+
+  /**
+   * The page file.
+   */
+  private final PageFile<PhTreePage> file;
+
+  /**
+   * Lock for the page file, which is also read by the prefetch threads. Writes
+   * use the write lock.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Lock for page reads, the read lock if the page file supports concurrent
+   * reads, otherwise the write lock.
+   */
+  private final Lock readLock;
+
+  /**
+   * Payload capacity of a page.
+   */
+  private final int capacity;
+
+  /**
+   * Id of the page with the tree meta data.
+   */
+  private final int metaPageID;
+
+  /**
+   * Ids of nodes in memory. Nodes that are no longer referenced by the tree
+   * can be garbage collected.
+   */
+  private final WeakHashMap<Externalizable, Integer> idByNode = new WeakHashMap<>();
+
+  /**
+   * New or modified nodes that have not been written yet.
+   */
+  private final TreeMap<Integer, Externalizable> dirty = new TreeMap<>();
+
+  /**
+   * Overflow pages of nodes that span more than one page.
+   */
+  private final HashMap<Integer, int[]> overflowByID = new HashMap<>();
+
+  /**
+   * Dimensionality, depth and node thresholds of the tree.
+   */
+  private PhTreeConfig cfg;
+
+  private int nEntries;
+
+  private Object rootId;
+
+  /**
+   * Pages of removed nodes, they are reused for new nodes. The pages are not
+   * deleted from the page file because {@link elki.persistent.MemoryPageFile}
+   * fails to reuse deleted page ids.
+   */
+  private final IntegerArray freePages = new IntegerArray();
+
+  /**
+   * I/O threads for prefetching, or null.
+   */
+  private ExecutorService prefetchPool = null;
+
+  /**
+   * Nodes that are being read or have been read by the I/O threads, in the
+   * order of the prefetch requests.
+   */
+  private final LinkedHashMap<Integer, Future<Chain>> prefetched = new LinkedHashMap<Integer, Future<Chain>>() {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Future<Chain>> eldest) {
+      if(size() <= PREFETCH_MAX) {
+        return false;
+      }
+      // Queries visit the sub-nodes of the latest node first
+      eldest.getValue().cancel(false);
+      return true;
+    }
+  };
+
+  /**
+   * Filter for point lookups, or null.
+   */
+  private BloomFilter bloomFilter = null;
+
+  /**
+   * Whether the filter has changed since it was written.
+   */
+  private boolean bloomFilterDirty = false;
+
+  /**
+   * Id of the first page of the stored filter, or {@link #NO_PAGE}.
+   */
+  private int bloomFilterPageID = NO_PAGE;
+
+  private final AtomicInteger nPageRead = new AtomicInteger();
+
+  private int nPageWrite = 0;
+
+  private int nPrefetch = 0;
+
+  private int nPrefetchHit = 0;
+
+  private int nBloomReject = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param file the page file
+   */
+  public PageFilePersistenceProvider(PageFile<PhTreePage> file) {
+    this(file, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param file the page file
+   * @param cacheSize size of the page cache in bytes, or 0 for no cache
+   */
+  public PageFilePersistenceProvider(PageFile<PhTreePage> file, int cacheSize) {
+    PageFile<PhTreePage> counting = new CountingPageFile(file);
+    this.file = cacheSize > 0 ? new LRUCache<>(cacheSize, counting) : counting;
+    this.readLock = cacheSize <= 0 && file instanceof MemoryPageFile ? lock.readLock() : lock.writeLock();
+    this.capacity = PhTreePage.capacity(file.getPageSize());
+    if(capacity <= 0) {
+      throw new IllegalArgumentException("Page size too small: " + file.getPageSize());
+    }
+    if(this.file.initialize(new DefaultPageHeader(file.getPageSize()))) {
+      // existing file
+      metaPageID = 0;
+      readMeta();
+    }
+    else {
+      metaPageID = this.file.setPageID(new PhTreePage());
+      writeMeta();
+    }
+  }
+
+  /**
+   * @return the page file
+   */
+  public PageFile<PhTreePage> getPageFile() {
+    return file;
+  }
+
+  @Override
+  public Object loadNode(Object o) {
+    if(o == null) {
+      return null;
+    }
+    Integer id = (Integer) o;
+    Externalizable node = dirty.get(id);
+    if(node != null) {
+      return node;
+    }
+    Future<Chain> future = prefetched.remove(id);
+    Chain chain;
+    if(future != null) {
+      nPrefetchHit++;
+      try {
+        chain = future.get();
+      }
+      catch(InterruptedException | ExecutionException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    else {
+      chain = readChain(id);
+    }
+    if(chain.overflow != null) {
+      overflowByID.put(id, chain.overflow);
+    }
+    node = deserialize(chain.data);
+    idByNode.put(node, id);
+    return node;
+  }
+
+  @Override
+  public Object registerNode(Externalizable o) {
+    // This reserves the page id
+    Integer id = newPage();
+    idByNode.put(o, id);
+    dirty.put(id, o);
+    return id;
+  }
+
+  @Override
+  public void updateNode(Externalizable o) {
+    Integer id = idByNode.get(o);
+    if(id == null) {
+      throw new IllegalArgumentException("Unknown node: " + o);
+    }
+    dirty.put(id, o);
+  }
+
+  @Override
+  public void removeNode(Externalizable o) {
+    Integer id = idByNode.remove(o);
+    if(id == null) {
+      return;
+    }
+    dirty.remove(id);
+    prefetched.remove(id);
+    freeChain(id);
+  }
+
+  @Override
+  public void prefetchNode(Object o) {
+    if(prefetchPool == null || o == null || dirty.containsKey(o) || prefetched.containsKey(o)) {
+      return;
+    }
+    final int id = (Integer) o;
+    nPrefetch++;
+    prefetched.put(id, prefetchPool.submit(() -> readChain(id)));
+  }
+
+  @Override
+  public boolean isPrefetchEnabled() {
+    return prefetchPool != null;
+  }
+
+  /**
+   * Enable or disable asynchronous prefetching of nodes.
+   *
+   * @param nThreads Number of I/O threads, 0 disables prefetching.
+   */
+  public void setPrefetchThreads(int nThreads) {
+    if(prefetchPool != null) {
+      discardPrefetched();
+      prefetchPool.shutdown();
+      prefetchPool = null;
+    }
+    if(nThreads > 0) {
+      prefetchPool = Executors.newFixedThreadPool(nThreads, r -> {
+        Thread t = new Thread(r, "PhTree-prefetch");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  private void discardPrefetched() {
+    for(Future<?> f : prefetched.values()) {
+      f.cancel(false);
+    }
+    prefetched.clear();
+  }
+
+  @Override
+  public void registerKey(long[] key) {
+    if(bloomFilter != null) {
+      bloomFilter.add(key);
+      bloomFilterDirty = true;
+    }
+  }
+
+  @Override
+  public boolean mightContainKey(long[] key) {
+    if(bloomFilter == null || bloomFilter.mightContain(key)) {
+      return true;
+    }
+    nBloomReject++;
+    return false;
+  }
+
+  /**
+   * Set a Bloom filter for point lookups. This should be done before any keys
+   * are inserted, otherwise the filter must be rebuilt with
+   * {@link #rebuildBloomFilter(PhTree)}.
+   *
+   * @param filter The filter or 'null' to disable filtering.
+   */
+  public void setBloomFilter(BloomFilter filter) {
+    this.bloomFilter = filter;
+    this.bloomFilterDirty = true;
+  }
+
+  /**
+   * @return the Bloom filter, or null
+   */
+  public BloomFilter getBloomFilter() {
+    return bloomFilter;
+  }
+
+  /**
+   * Clear the Bloom filter and add all keys of the tree. This should be used
+   * after bulk loading or after many removals.
+   *
+   * @param tree The tree
+   */
+  public void rebuildBloomFilter(PhTree<?> tree) {
+    if(bloomFilter == null) {
+      return;
+    }
+    bloomFilter.clear();
+    PhExtent<?> it = tree.queryExtent();
+    while(it.hasNext()) {
+      bloomFilter.add(it.nextEntryReuse().getKey());
+    }
+    bloomFilterDirty = true;
+  }
+
+  /**
+   * @return the number of point lookups that were rejected by the Bloom filter.
+   */
+  public int statsGetBloomFilterRejects() {
+    return nBloomReject;
+  }
+
+  /**
+   * @return the number of nodes requested for prefetching.
+   */
+  public int statsGetPagePrefetches() {
+    return nPrefetch;
+  }
+
+  /**
+   * @return the number of node reads that were served by a prefetched node.
+   */
+  public int statsGetPagePrefetchHits() {
+    return nPrefetchHit;
+  }
+
+  @Override
+  public String getDescription() {
+    return "PageFile:" + file.getClass().getSimpleName();
+  }
+
+  @Override
+  public int statsGetPageReads() {
+    return nPageRead.get();
+  }
+
+  @Override
+  public int statsGetPageWrites() {
+    return nPageWrite;
+  }
+
+  @Override
+  public void statsReset() {
+    nPageRead.set(0);
+    nPageWrite = 0;
+    nPrefetch = 0;
+    nPrefetchHit = 0;
+    nBloomReject = 0;
+    discardPrefetched();
+  }
+
+  @Override
+  public void writeTree(PhTree<?> tree, PhTreeConfig cfg) {
+    this.cfg = cfg;
+    this.nEntries = 0;
+    this.rootId = null;
+  }
+
+  @Override
+  public void updateTree(PhTree<?> tree, int dims, int nEntries, Object rootId) {
+    this.nEntries = nEntries;
+    this.rootId = rootId;
+  }
+
+  @Override
+  public <T> PhTree<T> loadTree() {
+    PhTree<T> tree = new PhTree12<>(cfg, nEntries, rootId, this);
+    if(bloomFilterPageID != NO_PAGE) {
+      readBloomFilter();
+    }
+    else if(bloomFilter != null) {
+      rebuildBloomFilter(tree);
+    }
+    return tree;
+  }
+
+  @Override
+  public void flush() {
+    // prefetched nodes may be outdated
+    discardPrefetched();
+    lock.writeLock().lock();
+    try {
+      for(Map.Entry<Integer, Externalizable> e : dirty.entrySet()) {
+        writeChain(e.getKey(), serialize(e.getValue()));
+      }
+      dirty.clear();
+      writeBloomFilter();
+      writeMeta();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Read a node and its overflow pages. This is also called by the I/O threads.
+   *
+   * @param id id of the first page
+   * @return the node data
+   */
+  private Chain readChain(int id) {
+    PhTreePage page = readPage(id);
+    int next = page.getNextPageID();
+    if(next == NO_PAGE) {
+      return new Chain(page.getData(), null);
+    }
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(2 * capacity);
+    bos.write(page.getData(), 0, page.getData().length);
+    int[] overflow = new int[4];
+    int nOverflow = 0;
+    while(next != NO_PAGE) {
+      if(nOverflow == overflow.length) {
+        overflow = Arrays.copyOf(overflow, nOverflow * 2);
+      }
+      overflow[nOverflow++] = next;
+      page = readPage(next);
+      bos.write(page.getData(), 0, page.getData().length);
+      next = page.getNextPageID();
+    }
+    return new Chain(bos.toByteArray(), Arrays.copyOf(overflow, nOverflow));
+  }
+
+  private void writeChain(int id, byte[] data) {
+    int nPages = Math.max(1, (data.length + capacity - 1) / capacity);
+    int[] oldOverflow = overflowByID.remove(id);
+    int nOld = oldOverflow == null ? 0 : oldOverflow.length;
+    // Assign page ids, reuse overflow pages where possible
+    int[] pageIDs = new int[nPages];
+    pageIDs[0] = id;
+    for(int i = 1; i < nPages; i++) {
+      pageIDs[i] = i <= nOld ? oldOverflow[i - 1] : newPage();
+    }
+    for(int i = nPages; i <= nOld; i++) {
+      freePages.add(oldOverflow[i - 1]);
+    }
+    for(int i = 0; i < nPages; i++) {
+      int start = i * capacity;
+      byte[] chunk = Arrays.copyOfRange(data, start, Math.min(data.length, start + capacity));
+      PhTreePage page = new PhTreePage(chunk, i + 1 < nPages ? pageIDs[i + 1] : NO_PAGE);
+      page.setPageID(pageIDs[i]);
+      file.writePage(page);
+      nPageWrite++;
+    }
+    if(nPages > 1) {
+      overflowByID.put(id, Arrays.copyOfRange(pageIDs, 1, nPages));
+    }
+  }
+
+  private void writeBloomFilter() {
+    if(!bloomFilterDirty) {
+      return;
+    }
+    bloomFilterDirty = false;
+    if(bloomFilter == null) {
+      if(bloomFilterPageID != NO_PAGE) {
+        freeChain(bloomFilterPageID);
+        bloomFilterPageID = NO_PAGE;
+      }
+      return;
+    }
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      bloomFilter.writeExternal(out);
+    }
+    catch(IOException e) {
+      throw new IllegalStateException(e);
+    }
+    if(bloomFilterPageID == NO_PAGE) {
+      bloomFilterPageID = newPage();
+    }
+    writeChain(bloomFilterPageID, bos.toByteArray());
+  }
+
+  private void readBloomFilter() {
+    Chain chain = readChain(bloomFilterPageID);
+    if(chain.overflow != null) {
+      overflowByID.put(bloomFilterPageID, chain.overflow);
+    }
+    BloomFilter f = new BloomFilter();
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(chain.data))) {
+      f.readExternal(in);
+    }
+    catch(IOException e) {
+      throw new IllegalStateException(e);
+    }
+    bloomFilter = f;
+    bloomFilterDirty = false;
+  }
+
+  /**
+   * Release the pages of a chain.
+   *
+   * @param id id of the first page
+   */
+  private void freeChain(int id) {
+    int[] overflow = overflowByID.remove(id);
+    if(overflow != null) {
+      for(int pageID : overflow) {
+        freePages.add(pageID);
+      }
+    }
+    freePages.add(id);
+  }
+
+  /**
+   * @return the id of a free page
+   */
+  private int newPage() {
+    if(!freePages.isEmpty()) {
+      return freePages.data[--freePages.size];
+    }
+    lock.writeLock().lock();
+    try {
+      return file.setPageID(new PhTreePage());
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private PhTreePage readPage(int pageID) {
+    PhTreePage page;
+    readLock.lock();
+    try {
+      page = file.readPage(pageID);
+    }
+    finally {
+      readLock.unlock();
+    }
+    if(page == null) {
+      throw new IllegalStateException("Page not found: " + pageID);
+    }
+    return page;
+  }
+
+  private static byte[] serialize(Externalizable node) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeByte(node instanceof NtNode ? NODE_NT : NODE_PH);
+      node.writeExternal(out);
+    }
+    catch(IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return bos.toByteArray();
+  }
+
+  private static Externalizable deserialize(byte[] data) {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      byte type = in.readByte();
+      Externalizable node;
+      switch(type){
+      case NODE_PH:
+        node = Node.createEmpty();
+        break;
+      case NODE_NT:
+        node = NtNodePool.getNode();
+        break;
+      default:
+        throw new IllegalStateException("Unknown node type: " + type);
+      }
+      node.readExternal(in);
+      return node;
+    }
+    catch(IOException | ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void writeMeta() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeBoolean(cfg != null);
+      if(cfg != null) {
+        cfg.write(out);
+      }
+      out.writeInt(nEntries);
+      out.writeInt(rootId == null ? NO_PAGE : (Integer) rootId);
+      out.writeInt(bloomFilterPageID);
+      int nFree = Math.min(freePages.size, (capacity - META_SIZE) / Integer.BYTES);
+      out.writeInt(nFree);
+      for(int i = 0; i < nFree; i++) {
+        out.writeInt(freePages.data[i]);
+      }
+      out.writeInt(writeFreeList(nFree));
+    }
+    catch(IOException e) {
+      throw new IllegalStateException(e);
+    }
+    PhTreePage page = new PhTreePage(bos.toByteArray(), NO_PAGE);
+    page.setPageID(metaPageID);
+    file.writePage(page);
+  }
+
+  private void readMeta() {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(file.readPage(metaPageID).getData()))) {
+      cfg = in.readBoolean() ? PhTreeConfig.read(in) : null;
+      nEntries = in.readInt();
+      int root = in.readInt();
+      rootId = root == NO_PAGE ? null : Integer.valueOf(root);
+      bloomFilterPageID = in.readInt();
+      for(int i = in.readInt(); i > 0; i--) {
+        freePages.add(in.readInt());
+      }
+      readFreeList(in.readInt());
+    }
+    catch(IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Store the free pages that do not fit into the meta page. They are stored in
+   * a chain of pages that are taken from the free pages themselves, so the
+   * chain does not occupy any pages that are in use.
+   *
+   * @param start index of the first free page that is not in the meta page
+   * @return id of the first page of the chain, or {@link #NO_PAGE}
+   */
+  private int writeFreeList(int start) throws IOException {
+    int perPage = capacity / Integer.BYTES - 1;
+    int head = NO_PAGE;
+    for(int end = freePages.size; end > start;) {
+      int pageID = freePages.data[--end];
+      int first = Math.max(start, end - perPage);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(capacity);
+      DataOutputStream out = new DataOutputStream(bos);
+      out.writeInt(end - first);
+      for(int i = first; i < end; i++) {
+        out.writeInt(freePages.data[i]);
+      }
+      PhTreePage page = new PhTreePage(bos.toByteArray(), head);
+      page.setPageID(pageID);
+      file.writePage(page);
+      head = pageID;
+      end = first;
+    }
+    return head;
+  }
+
+  /**
+   * Read the free pages that were stored by {@link #writeFreeList(int)}.
+   *
+   * @param pageID id of the first page of the chain, or {@link #NO_PAGE}
+   */
+  private void readFreeList(int pageID) throws IOException {
+    while(pageID != NO_PAGE) {
+      PhTreePage page = readPage(pageID);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(page.getData()));
+      for(int i = in.readInt(); i > 0; i--) {
+        freePages.add(in.readInt());
+      }
+      // the page of the chain is free, too
+      freePages.add(pageID);
+      pageID = page.getNextPageID();
+    }
+  }
+
+  /**
+   * Data of a node that is stored in a chain of pages.
+   */
+  private static class Chain {
+    /**
+     * Node data.
+     */
+    final byte[] data;
+
+    /**
+     * Overflow pages, or null.
+     */
+    final int[] overflow;
+
+    /**
+     * Constructor.
+     *
+     * @param data Node data
+     * @param overflow Overflow pages, or null
+     */
+    Chain(byte[] data, int[] overflow) {
+      this.data = data;
+      this.overflow = overflow;
+    }
+  }
+
+  /**
+   * Page file wrapper that counts the page reads of the wrapped file.
+   */
+  private class CountingPageFile implements PageFile<PhTreePage> {
+    /**
+     * Wrapped page file.
+     */
+    private final PageFile<PhTreePage> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param inner Wrapped page file
+     */
+    CountingPageFile(PageFile<PhTreePage> inner) {
+      this.inner = inner;
+    }
+
+    @Override
+    public PhTreePage readPage(int pageID) {
+      nPageRead.incrementAndGet();
+      return inner.readPage(pageID);
+    }
+
+    @Override
+    public int setPageID(PhTreePage page) {
+      return inner.setPageID(page);
+    }
+
+    @Override
+    public int writePage(PhTreePage page) {
+      return inner.writePage(page);
+    }
+
+    @Override
+    public void deletePage(int pageID) {
+      inner.deletePage(pageID);
+    }
+
+    @Override
+    public void close() {
+      inner.close();
+    }
+
+    @Override
+    public void clear() {
+      inner.clear();
+    }
+
+    @Override
+    public int getNextPageID() {
+      return inner.getNextPageID();
+    }
+
+    @Override
+    public void setNextPageID(int nextPageID) {
+      inner.setNextPageID(nextPageID);
+    }
+
+    @Override
+    public int getPageSize() {
+      return inner.getPageSize();
+    }
+
+    @Override
+    public boolean initialize(PageHeader header) {
+      return inner.initialize(header);
+    }
+
+    @Override
+    public void logStatistics() {
+      inner.logStatistics();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getDescription() + "  pageReads=" + nPageRead + "  pageWrites=" + nPageWrite //
+        + "  prefetches=" + nPrefetch + "  prefetchHits=" + nPrefetchHit //
+        + "  bloomRejects=" + nBloomReject //
+        + "  pages=" + file.getNextPageID() + "  dirty=" + dirty.size();
+  }
+}
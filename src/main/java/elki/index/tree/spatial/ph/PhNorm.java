@@ -1,27 +1,66 @@
 package elki.index.tree.spatial.ph;
 
+import java.util.Arrays;
+
 import ch.ethz.globis.phtree.PhDistance;
 import ch.ethz.globis.phtree.pre.PreProcessorPointF;
-import elki.distance.NumberVectorDistance;
+import elki.data.ModifiableHyperBoundingBox;
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.WeightedNumberVectorDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
 
 /**
  * PhDistance implementation that wraps around an ELKI distance.
- * 
+ * <p>
+ * Nodes are pruned with the {@code minDist} of the distance, so any
+ * {@link SpatialPrimitiveDistance} can be used. The query box of range and kNN
+ * queries can only be derived from the radius for unweighted Lp norms, for all
+ * other distances it covers the whole space and the query relies on pruning
+ * only.
+ *
  * @author Tilmann Zaeschke
  */
 final class PhNorm implements PhDistance {
-  private final NumberVectorDistance<?> norm;
+  private final SpatialPrimitiveDistance<? super NumberVector> norm;
   private final PreProcessorPointF pre;
   private final PhNumberVectorAdapter o1;
   private final PhNumberVectorAdapter o2;
-  
+
+  /**
+   * Node box, in preprocessed and in raw form.
+   */
+  private final long[] boxMin;
+  private final long[] boxMax;
+  private final ModifiableHyperBoundingBox box;
+
+  /**
+   * Every coordinate of a point within distance d differs by at most d.
+   */
+  private final boolean lpNorm;
+
+  /**
+   * Every coordinate of a point within distance d differs by at most sqrt(d).
+   */
+  private final boolean squared;
+
   private long distanceCalcCount = 0;
-  
-  PhNorm(NumberVectorDistance<?> norm, int dimensions, PreProcessorPointF pre) {
+
+  PhNorm(SpatialPrimitiveDistance<? super NumberVector> norm, int dimensions, PreProcessorPointF pre) {
     this.norm = norm;
     this.pre = pre;
     this.o1 = new PhNumberVectorAdapter(dimensions, pre);
     this.o2 = new PhNumberVectorAdapter(dimensions, pre);
+    this.boxMin = new long[dimensions];
+    this.boxMax = new long[dimensions];
+    this.box = new ModifiableHyperBoundingBox(new double[dimensions], new double[dimensions]);
+    this.lpNorm = norm instanceof LPNormDistance && !(norm instanceof WeightedNumberVectorDistance);
+    this.squared = norm instanceof SquaredEuclideanDistance;
   }
 
   @Override
@@ -30,6 +69,54 @@ final class PhNorm implements PhDistance {
     return norm.distance(o1.wrap(v1), o2.wrap(v2));
   }
 
+  @Override
+  public double distToPrefix(long[] v, long[] prefix, int bitsToIgnore) {
+    long maskMin = (-1L) << bitsToIgnore;
+    long maskMax = ~maskMin;
+    for(int i = 0; i < prefix.length; i++) {
+      boxMin[i] = prefix[i] & maskMin;
+      boxMax[i] = prefix[i] | maskMax;
+    }
+    double[] min = box.getMinRef();
+    double[] max = box.getMaxRef();
+    pre.post(boxMin, min);
+    pre.post(boxMax, max);
+    for(int i = 0; i < min.length; i++) {
+      // The corners of large nodes may not be valid numbers
+      if(Double.isNaN(min[i])) {
+        min[i] = Double.NEGATIVE_INFINITY;
+      }
+      if(Double.isNaN(max[i])) {
+        max[i] = Double.POSITIVE_INFINITY;
+      }
+    }
+    distanceCalcCount++;
+    return norm.minDist(o1.wrap(v), box);
+  }
+
+  /**
+   * Check whether a distance can be used for queries on the PH-tree.
+   *
+   * @param df Distance
+   * @param relation Indexed relation
+   * @return the distance, or {@code null} if it is not a spatial distance on
+   *         number vectors or not applicable to the relation
+   */
+  @SuppressWarnings("unchecked")
+  static SpatialPrimitiveDistance<? super NumberVector> spatialDistance(Distance<?> df, Relation<?> relation) {
+    if(!(df instanceof SpatialPrimitiveDistance)) {
+      return null;
+    }
+    // The distance is called with wrapped keys, not with the original vectors
+    TypeInformation restriction = df.getInputTypeRestriction();
+    if(!(restriction instanceof SimpleTypeInformation) //
+        || !((SimpleTypeInformation<?>) restriction).getRestrictionClass().isAssignableFrom(NumberVector.class) //
+        || !restriction.isAssignableFromType(relation.getDataTypeInformation())) {
+      return null;
+    }
+    return (SpatialPrimitiveDistance<? super NumberVector>) df;
+  }
+
   public long getAndResetDistanceCounter() {
     long x = distanceCalcCount;
     distanceCalcCount = 0;
@@ -39,16 +126,24 @@ final class PhNorm implements PhDistance {
   @Override
   public void toMBB(double distance, long[] center, long[] outMin,
       long[] outMax) {
-    double[] c = new double[center.length];
-    double[] min = new double[outMin.length];
-    double[] max = new double[outMax.length];
-    pre.post(center, c);
-    //TODO this only really works for eucledean distance...
-    for (int i = 0; i < center.length; i++) {
-      min[i] = c[i] - distance;
-      max[i] = c[i] + distance;
+    if(!lpNorm && !squared) {
+      Arrays.fill(outMin, Long.MIN_VALUE);
+      Arrays.fill(outMax, Long.MAX_VALUE);
+      return;
+    }
+    double r = squared ? Math.sqrt(distance) : distance;
+    // The node box is reused as buffer
+    double[] min = box.getMinRef();
+    double[] max = box.getMaxRef();
+    pre.post(center, min);
+    for(int i = 0; i < min.length; i++) {
+      // Widen by a few ulps, rounding of the box bounds and of the distance
+      // could otherwise exclude objects on the radius
+      double slack = 4 * Math.ulp(Math.abs(min[i]) + r);
+      max[i] = min[i] + r + slack;
+      min[i] -= r + slack;
     }
     pre.pre(min, outMin);
     pre.pre(max, outMax);
   }
-}
\ No newline at end of file
+}
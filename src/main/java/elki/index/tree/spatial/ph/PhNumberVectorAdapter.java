@@ -7,7 +7,6 @@ final class PhNumberVectorAdapter implements NumberVector {
   
   private final PreProcessorPointF pre;
   private final double[] min;
-  //private double[] max;
   
   public PhNumberVectorAdapter(int dimension, PreProcessorPointF pre) {
     this.pre = pre;
@@ -21,8 +20,7 @@ final class PhNumberVectorAdapter implements NumberVector {
 
   @Override
   public double getMax(int dimension) {
-    //return max[dimension];
-    throw new UnsupportedOperationException();
+    return min[dimension];
   }
 
   @Override
@@ -0,0 +1,97 @@
+package elki.index.tree.spatial.ph;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import elki.persistent.AbstractExternalizablePage;
+import elki.persistent.ExternalizablePage;
+
+/**
+ * Page of a PH-tree that is stored in an ELKI page file.
+ * <p>
+ * Each page holds (a part of) a serialized PH-tree node. Nodes that do not fit
+ * into a single page are continued in overflow pages, which are chained via
+ * {@link #getNextPageID()}.
+ */
+public class PhTreePage extends AbstractExternalizablePage implements ExternalizablePage {
+  /**
+   * Serial version
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Serialization overhead of a page, excluding the payload.
+   */
+  static final int PAGE_OVERHEAD = 32;
+
+  /**
+   * Id of the next page in the chain, or -1.
+   */
+  private int nextPageID = -1;
+
+  /**
+   * Payload.
+   */
+  private byte[] data = new byte[0];
+
+  /**
+   * Empty constructor for Externalizable interface.
+   */
+  public PhTreePage() {
+    super();
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param data Payload
+   * @param nextPageID Id of the next page in the chain, or -1
+   */
+  public PhTreePage(byte[] data, int nextPageID) {
+    super();
+    this.data = data;
+    this.nextPageID = nextPageID;
+  }
+
+  /**
+   * @return the payload
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @return Id of the next page in the chain, or -1
+   */
+  public int getNextPageID() {
+    return nextPageID;
+  }
+
+  /**
+   * Maximum payload of a page.
+   *
+   * @param pageSize Page size in bytes
+   * @return the number of payload bytes that fit into a page
+   */
+  static int capacity(int pageSize) {
+    // ObjectOutputStream adds up to 5 bytes of block header per 1024 bytes
+    return pageSize - PAGE_OVERHEAD - 5 * (pageSize / 1024 + 1);
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(nextPageID);
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    nextPageID = in.readInt();
+    data = new byte[in.readInt()];
+    in.readFully(data);
+  }
+}
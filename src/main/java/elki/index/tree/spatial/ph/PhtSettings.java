@@ -1,8 +1,203 @@
 package elki.index.tree.spatial.ph;
 
+import java.util.Arrays;
+
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhTree12;
+import ch.ethz.globis.phtree.v8.PhTree8;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+
+/**
+ * Tuning parameters of a PH-tree index.
+ *
+ * @author Tilmann Zaeschke
+ */
 public class PhtSettings {
+  /**
+   * PH-tree implementation.
+   */
+  public enum Version {
+    V8, V11, V12
+  }
+
+  /**
+   * Conversion of the coordinates to PH-tree keys.
+   */
+  public enum Preprocessor {
+    /**
+     * Lossless IEEE encoding.
+     */
+    IEEE,
+    /**
+     * Multiplication with a constant scale.
+     */
+    MULTIPLY,
+    /**
+     * 32 bit IEEE encoding of {@code float} values, in a tree with a depth of
+     * 32 bits.
+     */
+    FLOAT32,
+    /**
+     * {@link #FLOAT32} for {@link FloatVector} data, otherwise quantization
+     * with an offset and a scale per dimension, fitted to the indexed data.
+     */
+    AUTO
+  }
+
+  /**
+   * Default scale of the {@link Preprocessor#MULTIPLY} preprocessor.
+   */
+  public static final double DEFAULT_SCALE = 100. * 1000. * 1000.;
+
+  /**
+   * Tree implementation.
+   */
+  public final Version version;
+
+  /**
+   * Key encoding.
+   */
+  public final Preprocessor preprocessor;
+
+  /**
+   * Scale of the {@link Preprocessor#MULTIPLY} preprocessor.
+   */
+  public final double scale;
+
+  /**
+   * AHC/LHC bias, see {@link PhTreeConfig#setAhcLhcBias(double)}.
+   */
+  public final double ahcLhcBias;
+
+  /**
+   * NT threshold, see {@link PhTreeConfig#setNtThreshold(int)}.
+   */
+  public final int ntThreshold;
+
+  /**
+   * Constructor with the default settings.
+   */
+  public PhtSettings() {
+    this(Version.V11, Preprocessor.AUTO);
+  }
+
+  /**
+   * Constructor with the default scale and tuning parameters.
+   *
+   * @param version Tree implementation
+   * @param preprocessor Key encoding
+   */
+  public PhtSettings(Version version, Preprocessor preprocessor) {
+    this(version, preprocessor, DEFAULT_SCALE, PhTreeConfig.DEFAULT_AHC_LHC_BIAS, PhTreeConfig.DEFAULT_NT_THRESHOLD);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param version Tree implementation
+   * @param preprocessor Key encoding
+   * @param scale Scale of the {@link Preprocessor#MULTIPLY} preprocessor
+   * @param ahcLhcBias AHC/LHC bias, ignored by {@link Version#V8}
+   * @param ntThreshold NT threshold, ignored by {@link Version#V8}
+   */
+  public PhtSettings(Version version, Preprocessor preprocessor, double scale, double ahcLhcBias, int ntThreshold) {
+    super();
+    this.version = version;
+    this.preprocessor = preprocessor;
+    this.scale = scale;
+    this.ahcLhcBias = ahcLhcBias;
+    this.ntThreshold = ntThreshold;
+  }
+
+  /**
+   * Create an empty tree. The AHC/LHC bias, NT threshold and depth are
+   * ignored by {@link Version#V8}.
+   *
+   * @param dims Dimensionality
+   * @param depth Bits per key value, see
+   *        {@link PreProcessorPointF#getBitDepth()}
+   * @param <T> Value type
+   * @return new tree
+   */
+  public <T> PhTree<T> createTree(int dims, int depth) {
+    PhTreeConfig cfg = new PhTreeConfig(dims);
+    cfg.setDepth(depth);
+    cfg.setAhcLhcBias(ahcLhcBias);
+    cfg.setNtThreshold(ntThreshold);
+    switch(version){
+    case V8:
+      return new PhTree8<>(dims);
+    case V12:
+      return new PhTree12<>(cfg);
+    default:
+      return new PhTree11<>(cfg);
+    }
+  }
+
+  /**
+   * Create the preprocessor for the keys.
+   *
+   * @param relation Indexed relation, used to fit the scale
+   * @param dims Dimensionality
+   * @return preprocessor
+   */
+  public PreProcessorPointF createPreprocessor(Relation<? extends NumberVector> relation, int dims) {
+    switch(preprocessor){
+    case IEEE:
+      return new PreProcessorPointF.IEEE();
+    case FLOAT32:
+      return new PreProcessorPointF.Float32();
+    case AUTO:
+      return TypeUtil.FLOAT_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation()) ? //
+          new PreProcessorPointF.Float32() : fit(relation, dims);
+    default:
+      return new PreProcessorPointF.Multiply(scale);
+    }
+  }
 
-  public double ahcLhcBias;
-  public int ntThreshold;
+  /**
+   * @return {@code true} if the keys are encoded without loss of precision
+   */
+  public boolean isLossless() {
+    return preprocessor == Preprocessor.IEEE;
+  }
 
+  /**
+   * Fit a quantizing preprocessor to the range of the relation. Objects that
+   * are inserted later may lie outside of this range, see
+   * {@link PreProcessorPointF.Quantize}.
+   *
+   * @param relation Relation
+   * @param dims Dimensionality
+   * @return preprocessor
+   */
+  private static PreProcessorPointF fit(Relation<? extends NumberVector> relation, int dims) {
+    double[] min = new double[dims];
+    double[] max = new double[dims];
+    Arrays.fill(min, Double.POSITIVE_INFINITY);
+    Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      NumberVector v = relation.get(iter);
+      for(int d = 0; d < dims; d++) {
+        double x = v.doubleValue(d);
+        if(Double.isFinite(x)) {
+          min[d] = Math.min(min[d], x);
+          max[d] = Math.max(max[d], x);
+        }
+      }
+    }
+    for(int d = 0; d < dims; d++) {
+      if(min[d] > max[d]) {
+        min[d] = max[d] = 0;
+      }
+    }
+    return new PreProcessorPointF.Quantize(min, max);
+  }
 }
@@ -0,0 +1,122 @@
+package ch.ethz.globis.phtree.util;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Kernels} with the Vector API. This class is only part of the Java 17 layer of 
+ * the multi-release JAR. The results are identical to the scalar code, except that 
+ * the distance may differ in the last bits because the squares are summed in a 
+ * different order.
+ */
+public final class KernelsVector extends Kernels {
+
+	private static final VectorSpecies<Long> SL = LongVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> SD = DoubleVector.SPECIES_PREFERRED;
+	private static final int L = SL.length();
+
+	/**
+	 * Lane i holds L-1-i, the position of the bit of lane i in a block of L dimensions.
+	 */
+	private static final LongVector SHIFT;
+	static {
+		long[] shift = new long[L];
+		for (int i = 0; i < L; i++) {
+			shift[i] = L-1-i;
+		}
+		SHIFT = LongVector.fromArray(SL, shift, 0);
+	}
+
+	@Override
+	protected int minDims() {
+		//A single lane does not pay off, and the lengths of the species must match
+		return L > 1 && SD.length() == L ? L : Integer.MAX_VALUE;
+	}
+
+	@Override
+	public long posInArray(long[] valSet, int postLen) {
+		long pos = 0;
+		int i = 0;
+		for (; i <= valSet.length - L; i += L) {
+			long block = LongVector.fromArray(SL, valSet, i)
+					.lanewise(VectorOperators.LSHR, postLen).and(1L)
+					.lanewise(VectorOperators.LSHL, SHIFT)
+					.reduceLanes(VectorOperators.OR);
+			pos = (pos << L) | block;
+		}
+		for (; i < valSet.length; i++) {
+			pos <<= 1;
+			pos |= (valSet[i] >>> postLen) & 1L;
+		}
+		return pos;
+	}
+
+	@Override
+	public void applyHcPos(long pos, int postLen, long[] val) {
+		final int dims = val.length;
+		final long mask = 1L << postLen;
+		LongVector vPos = LongVector.broadcast(SL, pos);
+		int i = 0;
+		for (; i <= dims - L; i += L) {
+			//the bit for dimension d is at position dims-1-d of pos 
+			LongVector bits = vPos.lanewise(VectorOperators.LSHR, SHIFT.add(dims - L - i))
+					.and(1L).lanewise(VectorOperators.LSHL, postLen);
+			LongVector.fromArray(SL, val, i).and(~mask).or(bits).intoArray(val, i);
+		}
+		for (; i < dims; i++) {
+			val[i] = (val[i] & ~mask) | (((pos >>> (dims-1-i)) & 1L) << postLen);
+		}
+	}
+
+	@Override
+	public double distF(long[] v1, long[] v2) {
+		DoubleVector sum = DoubleVector.zero(SD);
+		int i = 0;
+		for (; i <= v1.length - L; i += L) {
+			DoubleVector d = toDouble(LongVector.fromArray(SL, v1, i))
+					.sub(toDouble(LongVector.fromArray(SL, v2, i)));
+			sum = d.fma(d, sum);
+		}
+		double d = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < v1.length; i++) {
+			double dl = BitTools.toDouble(v1[i]) - BitTools.toDouble(v2[i]);
+			d += dl*dl;
+		}
+		return Math.sqrt(d);
+	}
+
+	/**
+	 * Branch-free {@link BitTools#toDouble(long)}: negative values are XORed with 
+	 * 0x7FFFFFFFFFFFFFFF.
+	 */
+	private static DoubleVector toDouble(LongVector v) {
+		return v.lanewise(VectorOperators.XOR, 
+				v.lanewise(VectorOperators.ASHR, 63).lanewise(VectorOperators.LSHR, 1))
+				.reinterpretAsDoubles();
+	}
+}
@@ -0,0 +1,205 @@
+package ch.ethz.globis.phtree.test;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.ethz.globis.phtree.PhDistance;
+import ch.ethz.globis.phtree.PhDistanceF;
+import ch.ethz.globis.phtree.PhDistanceF32;
+import ch.ethz.globis.phtree.PhDistanceL;
+import ch.ethz.globis.phtree.PhDistancePreF;
+import ch.ethz.globis.phtree.PhFilterDistance;
+import ch.ethz.globis.phtree.PhRangeQuery;
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhExtent;
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+import ch.ethz.globis.phtree.test.data.Dataset;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhTree12;
+
+/**
+ * Checks that the query and update paths that reuse their buffers (the 'NoGC' iterators,
+ * reset() of queries, update()) do not allocate once the tree and the iterators exist.
+ * The allocated bytes are measured with {@code com.sun.management.ThreadMXBean}, the 
+ * tests are skipped on JVMs that do not support this.
+ * <p>
+ * An operation passes if one round of {@link #OPS} calls does not allocate anything. 
+ * Several rounds are allowed, because interpreted or partially compiled code may allocate 
+ * where compiled code does not.
+ */
+public class TestAllocation {
+
+	private static final int N = 10_000;
+	private static final int N_QUERY = 100;
+	private static final int WARMUP = 5_000;
+	private static final int OPS = 200;
+	private static final int MAX_ROUNDS = 50;
+	private static final Object VALUE = Boolean.TRUE;
+
+	private static com.sun.management.ThreadMXBean mx;
+
+	private int pos;
+
+	@BeforeClass
+	public static void setUpClass() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		mx = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(mx.isThreadAllocatedMemorySupported());
+		mx.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	private static void assertNoAllocation(String name, Runnable op) {
+		for (int i = 0; i < WARMUP; i++) {
+			op.run();
+		}
+		long id = Thread.currentThread().getId();
+		long min = Long.MAX_VALUE;
+		for (int r = 0; r < MAX_ROUNDS; r++) {
+			long start = mx.getThreadAllocatedBytes(id);
+			for (int i = 0; i < OPS; i++) {
+				op.run();
+			}
+			min = Math.min(min, mx.getThreadAllocatedBytes(id) - start);
+			if (min == 0) {
+				return;
+			}
+		}
+		fail(name + " allocates " + (double) min / OPS + " bytes per call");
+	}
+
+	private static PhTree<Object> create(int version, int dims) {
+		PhTreeConfig cfg = new PhTreeConfig(dims);
+		return version == 11 ? new PhTree11<>(cfg) : new PhTree12<>(cfg);
+	}
+
+	private long[] next(long[][] keys) {
+		if (++pos >= keys.length) {
+			pos = 0;
+		}
+		return keys[pos];
+	}
+
+	@Test
+	public void testV11() {
+		check(11, 3);
+		check(11, 10);
+	}
+
+	@Test
+	public void testV12() {
+		check(12, 3);
+		check(12, 10);
+	}
+
+	private void check(int version, int dims) {
+		String name = "v" + version + " dims=" + dims + " ";
+		PhTree<Object> tree = create(version, dims);
+		DataGenerator gen = Dataset.CUBE.create(dims, 0);
+		long[][] keys = gen.keys(N);
+		for (long[] k : keys) {
+			tree.put(k, VALUE);
+		}
+		long[][] centers = gen.reset(1).keys(N_QUERY);
+		
+		assertNoAllocation(name + "get()", () -> tree.get(next(keys)));
+		assertNoAllocation(name + "contains()", () -> tree.contains(next(keys)));
+
+		long[] min = new long[dims];
+		long[] max = new long[dims];
+		PhQuery<Object> q = tree.query(min, max);
+		assertNoAllocation(name + "query()", () -> {
+			long[] c = next(centers);
+			for (int d = 0; d < dims; d++) {
+				min[d] = c[d] - (1L << 50);
+				max[d] = c[d] + (1L << 50);
+			}
+			q.reset(min, max);
+			while (q.hasNext()) {
+				q.nextEntryReuse();
+			}
+		});
+
+		PhExtent<Object> ext = tree.queryExtent();
+		assertNoAllocation(name + "queryExtent()", () -> {
+			ext.reset();
+			for (int i = 0; i < 100 && ext.hasNext(); i++) {
+				ext.nextValue();
+			}
+		});
+
+		PhKnnQuery<Object> knn = tree.nearestNeighbour(10, PhDistanceF.THIS, null, centers[0]);
+		assertNoAllocation(name + "nearestNeighbour()", () -> {
+			knn.reset(10, PhDistanceF.THIS, next(centers));
+			while (knn.hasNext()) {
+				knn.nextEntryReuse();
+			}
+		});
+
+		PhRangeQuery<Object> range = tree.rangeQuery(0.1, PhDistanceF.THIS, centers[0]);
+		assertNoAllocation(name + "rangeQuery()", () -> {
+			range.reset(0.1, next(centers));
+			while (range.hasNext()) {
+				range.nextEntryReuse();
+			}
+		});
+
+		long[] moved = new long[dims];
+		assertNoAllocation(name + "update()", () -> {
+			long[] k = next(keys);
+			for (int d = 0; d < dims; d++) {
+				moved[d] = k[d] ^ 1;
+			}
+			tree.update(k, moved);
+			tree.update(moved, k);
+		});
+	}
+
+	@Test
+	public void testDistToPrefix() {
+		int dims = 3;
+		long[][] keys = Dataset.CUBE.create(dims, 0).keys(N_QUERY);
+		PhDistance[] distances = {PhDistanceF.THIS, PhDistanceL.THIS, PhDistanceF32.THIS,
+				new PhDistancePreF(new PreProcessorPointF.IEEE(), dims)};
+		for (PhDistance dist : distances) {
+			assertNoAllocation(dist.getClass().getSimpleName() + ".distToPrefix()", 
+					() -> dist.distToPrefix(next(keys), keys[0], 40));
+		}
+		PhFilterDistance filter = new PhFilterDistance();
+		filter.set(keys[0], PhDistanceF.THIS, 0.1);
+		assertNoAllocation("PhFilterDistance.isValid()", () -> filter.isValid(40, next(keys)));
+	}
+}
@@ -252,6 +252,21 @@ public class TestBitsLongRemove {
 //		System.out.println("n=" + BitsLong.getStats());
 	}
 	
+	@Test
+	public void testRemoveRandomAligned() {
+		Random r = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			int LEN = r.nextInt(14)+1;
+			long[] s = newBaPattern(LEN, r);
+			long[] x = s.clone();
+			int start = r.nextInt(LEN*BITS);
+			int del = BITS * r.nextInt((LEN*BITS-start)/BITS+1);
+			BitsLong.removeBits(s, start, del);
+			removetBitsSlow(x, start, del);
+			checkIgnoreTrailingBits(del, x, s);
+		}
+	}
+	
 	private void removetBitsSlow(long[] ba, int start, int nBits) {
 		int bitsToShift = ba.length*BITS - start - (nBits);
 		for (int i = 0; i < bitsToShift; i++) {
@@ -424,6 +424,65 @@ public class TestBitsLongWrite {
 		}
 	}
 	
+	@Test
+	public void testInsertRandomAligned() {
+		Random r = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			int LEN = r.nextInt(4)+1;
+			long[] s = newBaPattern(LEN, r);
+			long[] x = s.clone();
+			int start = r.nextInt(LEN*BITS);
+			int ins = BITS * r.nextInt((LEN*BITS-start)/BITS+1);
+			BitsLong.insertBits(s, start, ins);
+			BitsLong.insertBits1(x, start, ins);
+			check(x, s);
+		}
+	}
+	
+	@Test
+	public void testWriteRandomEntries() {
+		Random r = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			int n = r.nextInt(10);
+			int len = r.nextInt(BITS+1); //0..64
+			int LEN = (n*len)/BITS+2;
+			long[] s = newBaPattern(LEN, r);
+			long[] t1 = s.clone();
+			long[] t2 = s.clone();
+			int start = r.nextInt(LEN*BITS-n*len+1);
+			long[] val = newBaPattern(n, r);
+			BitsLong.writeArray(t1, start, len, val);
+			for (int j = 0; j < n; j++) {
+				BitsLong.writeArray(t2, start+j*len, len, val[j]);
+			}
+			check(t2, t1);
+		}
+	}
+	
+	@Test
+	public void testReadRandomEntries() {
+		Random r = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			int n = r.nextInt(10);
+			int len = r.nextInt(BITS+1); //0..64
+			int LEN = (n*len)/BITS+2;
+			long[] s = newBaPattern(LEN, r);
+			int start = r.nextInt(LEN*BITS-n*len+1);
+			long mask = len == BITS ? 0 : (-1L) << len;
+			long[] prefix = newBaPattern(n, r);
+			long[] out = new long[n];
+			BitsLong.readArray(s, start, len, prefix, mask, out);
+			for (int j = 0; j < n; j++) {
+				assertEquals((prefix[j] & mask) | BitsLong.readArray(s, start+j*len, len), out[j]);
+			}
+			//read into the prefix array
+			BitsLong.readArray(s, start, len, prefix, mask, prefix);
+			for (int j = 0; j < n; j++) {
+				assertEquals(out[j], prefix[j]);
+			}
+		}
+	}
+	
 	@Test
 	public void testWriteRandom() {
 		Random r = new Random(0);
@@ -24,11 +24,14 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
 
 import org.junit.Test;
 
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhExtent;
 import ch.ethz.globis.phtree.util.BitTools;
 
 
@@ -101,4 +104,60 @@ public class TestBitsToolsSplitMerge {
 			assertEquals(d, d2, 0.0);
 		}
 	}
+
+	@Test
+	public void testZOrderPrefixBitwise() {
+		Random rnd = new Random(0);
+		for (int dims = 1; dims <= 12; dims++) {
+			long[] key = new long[dims + 1];
+			for (int i = 0; i < 200; i++) {
+				for (int d = 0; d < key.length; d++) {
+					key[d] = rnd.nextBoolean() ? rnd.nextLong() : rnd.nextInt(1 << 20);
+				}
+				for (int startBit = 0; startBit < 64; startBit++) {
+					long z = 0;
+					int nBits = 0;
+					for (int b = startBit; b >= 0 && nBits < 64; b--) {
+						for (int d = 0; d < dims && nBits < 64; d++) {
+							z = (z << 1) | ((key[1 + d] >>> b) & 1L);
+							nBits++;
+						}
+					}
+					z = nBits < 64 ? z << (64 - nBits) : z;
+					assertEquals(z, BitTools.zOrderPrefix(key, 1, dims, startBit));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testZOrderPrefix() {
+		Random rnd = new Random(0);
+		for (int dims = 1; dims <= 5; dims++) {
+			int n = 1000;
+			PhTree<Integer> tree = PhTree.create(dims);
+			for (int i = 0; i < n; i++) {
+				long[] key = new long[dims];
+				for (int d = 0; d < dims; d++) {
+					//mix small and large values, including negative values
+					key[d] = rnd.nextBoolean() ? rnd.nextLong() : rnd.nextInt(1 << 24);
+				}
+				tree.put(key, i);
+			}
+			
+			//the PH-tree returns entries in z-order
+			PhExtent<Integer> it = tree.queryExtent();
+			long prev = 0;
+			int cnt = 0;
+			while (it.hasNext()) {
+				long z = BitTools.zOrderPrefix(it.nextKey(), 0, dims, 63);
+				assertTrue(Long.compareUnsigned(prev, z) <= 0);
+				prev = z;
+				cnt++;
+			}
+			assertEquals(tree.size(), cnt);
+		}
+		long[] key = {0b101, 0b011};
+		assertEquals(0b100111L << 58, BitTools.zOrderPrefix(key, 0, 2, 2));
+	}
 }
@@ -0,0 +1,179 @@
+package ch.ethz.globis.phtree.test;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.ethz.globis.phtree.PhDistanceF;
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.test.data.DataGenerator;
+import ch.ethz.globis.phtree.test.data.Dataset;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhTree12;
+
+/**
+ * Tests the data generators and compares window and kNN queries on all data sets with 
+ * a linear scan.
+ */
+public class TestDatasets {
+
+	private static final int N = 20_000;
+	private static final int N_QUERY = 50;
+
+	private static int dims(Dataset ds) {
+		switch (ds) {
+		case TIGER: return 2;
+		case EMBEDDING: return 32;
+		default: return 3;
+		}
+	}
+
+	@Test
+	public void testReproducible() {
+		for (Dataset ds : Dataset.values()) {
+			int dims = dims(ds);
+			DataGenerator g1 = ds.create(dims, 42);
+			DataGenerator g2 = ds.create(dims, 42);
+			long[][] k1 = g1.keys(1000);
+			assertArrayEquals(ds.name(), k1, g2.keys(1000));
+			assertArrayEquals(ds.name(), k1, g1.reset().keys(1000));
+			//same structure, different points
+			long[][] k3 = g1.reset(43).keys(1000);
+			assertTrue(ds.name(), !Arrays.deepEquals(k1, k3));
+			assertArrayEquals(ds.name(), k3, g2.reset(43).keys(1000));
+		}
+	}
+
+	@Test
+	public void testRange() {
+		double[] p = new double[2];
+		DataGenerator tiger = Dataset.TIGER.create(2, 0);
+		for (int i = 0; i < N; i++) {
+			tiger.next(p);
+			assertTrue(p[0] >= 0 && p[0] < 1 && p[1] >= 0 && p[1] < 1);
+		}
+		double[] e = new double[64];
+		DataGenerator emb = Dataset.EMBEDDING.create(64, 0);
+		for (int i = 0; i < 100; i++) {
+			emb.next(e);
+			double len = 0;
+			for (double x : e) {
+				len += x * x;
+			}
+			assertEquals(1, len, 1e-9);
+		}
+	}
+
+	@Test
+	public void testQueriesV11() {
+		for (Dataset ds : Dataset.values()) {
+			PhTreeConfig cfg = new PhTreeConfig(dims(ds));
+			check(ds, new PhTree11<>(cfg));
+		}
+	}
+
+	@Test
+	public void testQueriesV12() {
+		for (Dataset ds : Dataset.values()) {
+			PhTreeConfig cfg = new PhTreeConfig(dims(ds));
+			check(ds, new PhTree12<>(cfg));
+		}
+	}
+
+	private static void check(Dataset ds, PhTree<Object> tree) {
+		int dims = tree.getDim();
+		DataGenerator gen = ds.create(dims, 0);
+		List<long[]> keys = new ArrayList<>();
+		long[] key = new long[dims];
+		for (int i = 0; i < N; i++) {
+			gen.nextKey(key);
+			if (tree.put(key, key) == null) {
+				keys.add(key.clone());
+			}
+		}
+		assertEquals(keys.size(), tree.size());
+
+		gen.reset(1);
+		double[] c = new double[dims];
+		double[] lo = new double[dims];
+		double[] hi = new double[dims];
+		long[] min = new long[dims];
+		long[] max = new long[dims];
+		long[] center = new long[dims];
+		for (int i = 0; i < N_QUERY; i++) {
+			gen.next(c);
+			for (int d = 0; d < dims; d++) {
+				lo[d] = c[d] - 0.01;
+				hi[d] = c[d] + 0.01;
+			}
+			DataGenerator.encode(lo, min);
+			DataGenerator.encode(hi, max);
+			int n = 0;
+			for (PhQuery<Object> q = tree.query(min, max); q.hasNext(); q.nextValue()) {
+				n++;
+			}
+			int nRef = 0;
+			for (long[] k : keys) {
+				if (contains(min, max, k)) {
+					nRef++;
+				}
+			}
+			assertEquals(ds.name(), nRef, n);
+
+			DataGenerator.encode(c, center);
+			int k = 10;
+			double[] dist = new double[keys.size()];
+			for (int j = 0; j < dist.length; j++) {
+				dist[j] = PhDistanceF.THIS.dist(center, keys.get(j));
+			}
+			Arrays.sort(dist);
+			PhKnnQuery<Object> knn = tree.nearestNeighbour(k, PhDistanceF.THIS, null, center);
+			int j = 0;
+			while (knn.hasNext()) {
+				assertEquals(ds.name(), dist[j++], knn.nextEntryReuse().dist(), 0);
+			}
+			assertEquals(ds.name(), k, j);
+		}
+	}
+
+	private static boolean contains(long[] min, long[] max, long[] key) {
+		for (int d = 0; d < key.length; d++) {
+			if (key[d] < min[d] || key[d] > max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
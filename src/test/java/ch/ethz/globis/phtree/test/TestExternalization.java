@@ -29,7 +29,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -42,8 +47,16 @@ import ch.ethz.globis.phtree.PhTree;
 import ch.ethz.globis.phtree.PhTreeConfig;
 import ch.ethz.globis.phtree.PhTree.PhIterator;
 import ch.ethz.globis.phtree.test.util.TestSuper;
+import ch.ethz.globis.phtree.util.BloomFilter;
 import ch.ethz.globis.phtree.v12.PersProviderPagedSerBuf;
+import ch.ethz.globis.phtree.v11.PhTree11;
 import ch.ethz.globis.phtree.v12.PhTree12;
+import elki.index.tree.spatial.ph.PageFilePersistenceProvider;
+import elki.index.tree.spatial.ph.PhTreePage;
+import elki.persistent.LRUCache;
+import elki.persistent.MemoryPageFile;
+import elki.persistent.PageFile;
+import elki.persistent.PageHeader;
 
 public class TestExternalization extends TestSuper {
 
@@ -355,6 +368,655 @@ public class TestExternalization extends TestSuper {
 		
 		assertEquals(0, ind.size());
 	}
-	
+
+	@Test
+	public void testPageClustering() {
+		int N = 10000;
+		int DIM = 3;
+		Random R = new Random(0);
+		PhTree<Integer> ind = createTree(DIM);
+		long[][] keys = new long[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				keys[i][d] = R.nextInt(); //INT!
+			}
+			if (ind.contains(keys[i])) {
+				i--;
+				continue;
+			}
+			ind.put(keys[i], Integer.valueOf(i));
+		}
+		
+		ind = storeAndRead(ind);
+		PersProviderPagedSerBuf pp = 
+				(PersProviderPagedSerBuf) ((PhTree12<Integer>)ind).getPersistenceProvider();
+		assertTrue(pp.statsGetPageCount() < ind.getStats().getNodeCount());
+		assertTrue("" + pp.statsGetFillFactor(), pp.statsGetFillFactor() > 0.5);
+		
+		//point queries should read fewer pages than nodes
+		pp.statsReset();
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)ind.get(keys[i]));
+		}
+		//about 5 nodes per lookup, on fewer than 4 pages
+		assertTrue("" + pp.statsGetPageReads(), pp.statsGetPageReads() <= 4 * N);
+		assertTrue(pp.statsGetPageReads() < pp.statsGetNodeReads());
+		
+		//grow and re-cluster
+		for (int i = 0; i < N; i++) {
+			long[] key = keys[i].clone();
+			key[0]++;
+			ind.put(key, Integer.valueOf(-i));
+		}
+		pp.flush();
+		assertEquals(2*N, ind.size());
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)ind.get(keys[i]));
+		}
+		assertTrue("" + pp.statsGetFillFactor(), pp.statsGetFillFactor() > 0.5);
+	}
+
+	@Test
+	public void testPrefetch() {
+		int N = 10000;
+		int DIM = 3;
+		Random R = new Random(0);
+		PhTree<Integer> ind = createTree(DIM);
+		long[][] keys = new long[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				keys[i][d] = R.nextInt(); //INT!
+			}
+			if (ind.contains(keys[i])) {
+				i--;
+				continue;
+			}
+			ind.put(keys[i], Integer.valueOf(i));
+		}
+		
+		ind = storeAndRead(ind);
+		PersProviderPagedSerBuf pp = 
+				(PersProviderPagedSerBuf) ((PhTree12<Integer>)ind).getPersistenceProvider();
+		pp.setPrefetchThreads(2);
+		try {
+			pp.statsReset();
+			for (int i = 0; i < 100; i++) {
+				long[] min = new long[DIM];
+				long[] max = new long[DIM];
+				for (int d = 0; d < DIM; d++) {
+					min[d] = keys[i][d] - (1L<<28);
+					max[d] = keys[i][d] + (1L<<28);
+				}
+				int nIter = 0;
+				PhIterator<Integer> it = ind.query(min, max);
+				while (it.hasNext()) {
+					long[] k = it.nextKey();
+					for (int d = 0; d < DIM; d++) {
+						assertTrue(k[d] >= min[d] && k[d] <= max[d]);
+					}
+					nIter++;
+				}
+				List<PhEntry<Integer>> list = ind.queryAll(min, max);
+				assertEquals(nIter, list.size());
+				assertTrue(nIter >= 1);
+			}
+			assertTrue(pp.statsGetPagePrefetches() > 0);
+			assertTrue(pp.statsGetPagePrefetchHits() > 0);
+			
+			//kNN
+			for (int i = 0; i < 100; i++) {
+				PhTree.PhKnnQuery<Integer> q = ind.nearestNeighbour(1, keys[i]);
+				assertTrue(q.hasNext());
+				assertArrayEquals(keys[i], q.nextKey());
+			}
+		} finally {
+			pp.setPrefetchThreads(0);
+		}
+	}
+
+	@Test
+	public void testBloomFilter() {
+		int N = 10000;
+		int DIM = 3;
+		Random R = new Random(0);
+		PersProviderPagedSerBuf pp = new PersProviderPagedSerBuf();
+		pp.setBloomFilter(new BloomFilter(N, 0.01));
+		PhTreeConfig cfg = new PhTreeConfig(DIM);
+		cfg.setPersistenceProvider(pp);
+		PhTree<Integer> ind = PhTree.create(cfg);
+		long[][] keys = new long[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				keys[i][d] = R.nextInt(); //INT!
+			}
+			if (ind.contains(keys[i])) {
+				i--;
+				continue;
+			}
+			ind.put(keys[i], Integer.valueOf(i));
+		}
+		
+		ind = storeAndRead(ind);
+		assertTrue(pp.getBloomFilter().getKeyCount() >= N);
+		
+		//present keys
+		for (int i = 0; i < N; i++) {
+			assertTrue(ind.contains(keys[i]));
+			assertEquals(i, (int)ind.get(keys[i]));
+		}
+		
+		//absent keys
+		pp.statsReset();
+		long[] key = new long[DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				key[d] = keys[i][d] + 1;
+			}
+			assertFalse(ind.contains(key));
+			assertNull(ind.get(key));
+		}
+		assertTrue(pp.statsGetBloomFilterRejects() > 2*N*0.95);
+		assertTrue(pp.statsGetPageReads() < N/10);
+		
+		//rebuild after removal
+		for (int i = 0; i < N/2; i++) {
+			assertEquals(i, (int)ind.remove(keys[i]));
+		}
+		pp.rebuildBloomFilter(ind);
+		assertEquals(N/2, pp.getBloomFilter().getKeyCount());
+		for (int i = 0; i < N; i++) {
+			assertEquals(i >= N/2, ind.contains(keys[i]));
+		}
+	}
+
+	@Test
+	public void testSnapshotV11() throws IOException {
+		for (int d : new int[]{1, 3, 10}) {
+			snapshotTest(new PhTree11<>(d), 20000, d);
+		}
+	}
+
+	@Test
+	public void testSnapshotV12() throws IOException {
+		for (int d : new int[]{1, 3, 10}) {
+			snapshotTest(new PhTree12<>(d), 20000, d);
+			snapshotTest(createTree(d), 20000, d);
+		}
+	}
+
+	@Test
+	public void testSnapshotConfig() throws IOException {
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setDepth(20);
+		cfg.setAhcLhcBias(3.5);
+		cfg.setNtThreshold(40);
+		cfg.setLhcBinarySearchThreshold(10);
+		PhTree11<Integer> tree11 = new PhTree11<>(cfg);
+		snapshotTest(tree11, 20000, 3);
+		PhTree11<Integer> tree11b = (PhTree11<Integer>) snapshotCopy(tree11);
+		assertConfigEquals(tree11.getConfig(), tree11b.getConfig());
+		assertOutOfDomainRejected(tree11b, 20);
+
+		PhTree12<Integer> tree12 = new PhTree12<>(cfg);
+		snapshotTest(tree12, 20000, 3);
+		PhTree12<Integer> tree12b = (PhTree12<Integer>) snapshotCopy(tree12);
+		assertConfigEquals(tree12.getConfig(), tree12b.getConfig());
+		assertOutOfDomainRejected(tree12b, 20);
+	}
+
+	private static PhTree<Integer> snapshotCopy(PhTree<Integer> tree) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		tree.writeSnapshot(bos);
+		return PhTree.readSnapshot(new ByteArrayInputStream(bos.toByteArray()));
+	}
+
+	static void assertConfigEquals(PhTreeConfig expected, PhTreeConfig actual) {
+		assertEquals(expected.getDimActual(), actual.getDimActual());
+		assertEquals(expected.getDepth(), actual.getDepth());
+		assertEquals(expected.getAhcLhcBias(), actual.getAhcLhcBias(), 0.0);
+		assertEquals(expected.getNtThreshold(), actual.getNtThreshold());
+		assertEquals(expected.getLhcBinarySearchThreshold(), actual.getLhcBinarySearchThreshold());
+	}
+
+	static void assertOutOfDomainRejected(PhTree<Integer> tree, int depth) {
+		long[] key = {1, 2, 1L << depth};
+		try {
+			tree.put(key, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			//good
+		}
+		assertFalse(tree.contains(key));
+	}
+
+	@Test
+	public void testSnapshotEmpty() throws IOException {
+		PhTree<Integer> tree = PhTree.create(3);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		tree.writeSnapshot(bos);
+		PhTree<Integer> tree2 = PhTree.readSnapshot(new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(0, tree2.size());
+		assertNull(tree2.put(new long[]{1, 2, 3}, 1));
+		assertEquals(1, (int)tree2.get(1, 2, 3));
+	}
+
+	private static int count(PhIterator<?> it) {
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+
+	private void snapshotTest(PhTree<Integer> tree, int N, int DIM) throws IOException {
+		Random R = new Random(0);
+		long[][] keys = new long[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				keys[i][d] = R.nextInt(DIM == 1 ? 1000000 : 1000); //force infixes and large nodes
+			}
+			if (tree.contains(keys[i])) {
+				i--;
+				continue;
+			}
+			//use some 'null' values
+			tree.put(keys[i], i % 10 == 0 ? null : Integer.valueOf(i));
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		tree.writeSnapshot(Channels.newChannel(bos));
+		PhTree<Integer> tree2 = 
+				PhTree.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bos.toByteArray())));
+		
+		assertEquals(tree.getClass(), tree2.getClass());
+		assertEquals(tree.size(), tree2.size());
+		assertEquals(tree.getStats().getNodeCount(), tree2.getStats().getNodeCount());
+		for (int i = 0; i < N; i++) {
+			assertTrue(tree2.contains(keys[i]));
+			assertEquals(i % 10 == 0 ? null : Integer.valueOf(i), tree2.get(keys[i]));
+		}
+		long[] min = new long[DIM];
+		long[] max = new long[DIM];
+		Arrays.fill(min, 100);
+		Arrays.fill(max, DIM == 1 ? 600000 : 600);
+		assertEquals(count(tree.query(min, max)), count(tree2.query(min, max)));
+		
+		//the new tree must be fully functional
+		for (int i = 0; i < N; i += 2) {
+			//remove() of 'null' values is not tested here
+			Object v = tree2.remove(keys[i]);
+			if (i % 10 != 0) {
+				assertEquals(Integer.valueOf(i), v);
+			}
+		}
+		assertEquals(N/2, tree2.size());
+		for (int i = 0; i < N; i++) {
+			assertEquals(i % 2 != 0, tree2.contains(keys[i]));
+		}
+
+		//snapshot of a tree with removed entries
+		PhTree<Integer> tree3 = snapshotCopy(tree2);
+		assertEquals(tree2.getStats().getNodeCount(), tree3.getStats().getNodeCount());
+		for (int i = 0; i < N; i++) {
+			assertEquals(i % 2 != 0, tree3.contains(keys[i]));
+		}
+		for (int i = 0; i < N; i += 2) {
+			assertNull(tree3.put(keys[i], Integer.valueOf(i)));
+		}
+		for (int i = 0; i < N; i++) {
+			assertTrue(tree3.contains(keys[i]));
+		}
+	}
+
+	@Test
+	public void testElkiPageFile() {
+		//small pages to force overflow pages
+		PageFile<PhTreePage> file = new LRUCache<>(64 * 1024, new MemoryPageFile<>(512));
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(file);
+		PhTreeConfig cfg = new PhTreeConfig(10);
+		cfg.setPersistenceProvider(pp);
+		pageFileTest(PhTree.create(cfg), pp, 10000, 10, 0);
+		
+		//dynamic updates
+		PhTree<Integer> tree = pp.loadTree();
+		long[] key = new long[10];
+		for (int i = 0; i < 100; i++) {
+			Arrays.fill(key, i * 1000000L);
+			tree.put(key, 1000000 + i);
+			pp.flush();
+		}
+		for (int i = 0; i < 100; i++) {
+			Arrays.fill(key, i * 1000000L);
+			assertEquals(1000000 + i, (int)tree.get(key));
+		}
+	}
+
+	@Test
+	public void testElkiPageFileCache() {
+		PageFilePersistenceProvider pp = 
+				new PageFilePersistenceProvider(new MemoryPageFile<>(512), 64 * 1024);
+		PhTreeConfig cfg = new PhTreeConfig(10);
+		cfg.setPersistenceProvider(pp);
+		pageFileTest(PhTree.create(cfg), pp, 10000, 10, 0);
+
+		//repeated lookups are served by the cache
+		PhTree<Integer> tree = pp.loadTree();
+		long[] key = new long[10];
+		tree.put(key, Integer.MAX_VALUE);
+		pp.flush();
+		assertEquals(Integer.MAX_VALUE, (int)tree.get(key));
+		pp.statsReset();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.MAX_VALUE, (int)tree.get(key));
+		}
+		assertEquals(0, pp.statsGetPageReads());
+	}
+
+	@Test
+	public void testElkiPageFileRemove() {
+		MemoryPageFile<PhTreePage> file = new MemoryPageFile<>(512);
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(file);
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setPersistenceProvider(pp);
+		PhTree<Integer> tree = PhTree.create(cfg);
+		int N = 10000;
+		Random R = new Random(0);
+		int nPagesFirst = -1;
+		for (int round = 0; round < 3; round++) {
+			long[][] keys = new long[N][3];
+			for (int i = 0; i < N; i++) {
+				for (int d = 0; d < 3; d++) {
+					keys[i][d] = R.nextInt();
+				}
+				tree.put(keys[i], i);
+			}
+			pp.flush();
+			if (round == 0) {
+				nPagesFirst = file.getNextPageID();
+			} else {
+				//the pages of removed nodes are reused
+				assertTrue(file.getNextPageID() < nPagesFirst * 1.1);
+			}
+			for (int i = 0; i < N; i++) {
+				assertEquals(i, (int)tree.remove(keys[i]));
+			}
+			pp.flush();
+			assertEquals(0, tree.size());
+		}
+	}
+
+	@Test
+	public void testElkiPageFilePrefetch() {
+		testElkiPageFilePrefetch(new PhTreeConfig(3));
+	}
+
+	@Test
+	public void testElkiPageFilePrefetchNT() {
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setNtThreshold(2);
+		testElkiPageFilePrefetch(cfg);
+	}
+
+	private void testElkiPageFilePrefetch(PhTreeConfig cfg) {
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(new MemoryPageFile<>(512));
+		cfg.setPersistenceProvider(pp);
+		PhTree<Integer> tree = PhTree.create(cfg);
+		int N = 10000;
+		Random R = new Random(0);
+		long[][] keys = new long[N][3];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < 3; d++) {
+				keys[i][d] = R.nextInt();
+			}
+			tree.put(keys[i], i);
+		}
+		pp.flush();
+		
+		pp.setPrefetchThreads(2);
+		try {
+			pp.statsReset();
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < 100; i++) {
+					long[] min = new long[3];
+					long[] max = new long[3];
+					for (int d = 0; d < 3; d++) {
+						min[d] = keys[i][d] - (1L<<28);
+						max[d] = keys[i][d] + (1L<<28);
+					}
+					int nIter = 0;
+					PhIterator<Integer> it = tree.query(min, max);
+					while (it.hasNext()) {
+						PhEntry<Integer> e = it.nextEntry();
+						assertEquals(keys[e.getValue()][0], e.getKey()[0]);
+						nIter++;
+					}
+					assertEquals(tree.queryAll(min, max).size(), nIter);
+					assertTrue(nIter >= 1);
+				}
+				//modified nodes are not served from outdated prefetched pages
+				for (int i = 0; i < N; i += 2) {
+					assertEquals(i, (int)tree.remove(keys[i]));
+					keys[i][0]++;
+					tree.put(keys[i], i);
+				}
+				pp.flush();
+			}
+			assertTrue(pp.statsGetPagePrefetches() > 0);
+			assertTrue(pp.statsGetPagePrefetchHits() > 0);
+			for (int i = 0; i < N; i++) {
+				assertEquals(i, (int)tree.get(keys[i]));
+			}
+		} finally {
+			pp.setPrefetchThreads(0);
+		}
+	}
+
+	@Test
+	public void testPersistenceProviderConfig() {
+		PersistenceProvider[] pps = {new PersProviderPagedSerBuf(), 
+				new PageFilePersistenceProvider(new MemoryPageFile<>(512))};
+		for (PersistenceProvider pp : pps) {
+			PhTreeConfig cfg = new PhTreeConfig(3);
+			cfg.setDepth(20);
+			cfg.setAhcLhcBias(3.5);
+			cfg.setNtThreshold(40);
+			cfg.setLhcBinarySearchThreshold(10);
+			cfg.setPersistenceProvider(pp);
+			PhTree12<Integer> tree = new PhTree12<>(cfg);
+			Random R = new Random(0);
+			for (int i = 0; i < 1000; i++) {
+				tree.put(new long[]{R.nextInt(1 << 20), R.nextInt(1 << 20), R.nextInt(1 << 20)}, i);
+			}
+			pp.flush();
+			
+			PhTree12<Integer> tree2 = (PhTree12<Integer>) pp.<Integer>loadTree();
+			assertEquals(tree.size(), tree2.size());
+			assertConfigEquals(tree.getConfig(), tree2.getConfig());
+			assertOutOfDomainRejected(tree2, 20);
+		}
+	}
+
+	@Test
+	public void testElkiPageFileReopen() {
+		MemoryPageFile<PhTreePage> file = reopenablePageFile(512);
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(file);
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setDepth(20);
+		cfg.setNtThreshold(40);
+		cfg.setPersistenceProvider(pp);
+		PhTree12<Integer> tree = new PhTree12<>(cfg);
+		long[][] keys = new long[1000][3];
+		Random R = new Random(0);
+		for (int i = 0; i < keys.length; i++) {
+			for (int d = 0; d < 3; d++) {
+				keys[i][d] = R.nextInt(1 << 20);
+			}
+			tree.put(keys[i], i);
+		}
+		pp.flush();
+
+		pp = new PageFilePersistenceProvider(file);
+		PhTree12<Integer> tree2 = (PhTree12<Integer>) pp.<Integer>loadTree();
+		assertEquals(tree.size(), tree2.size());
+		assertConfigEquals(tree.getConfig(), tree2.getConfig());
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(tree.get(keys[i]), tree2.get(keys[i]));
+		}
+		assertOutOfDomainRejected(tree2, 20);
+	}
+
+	@Test
+	public void testElkiPageFileReopenFreePages() {
+		MemoryPageFile<PhTreePage> file = reopenablePageFile(512);
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(file);
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setPersistenceProvider(pp);
+		PhTree<Integer> tree = PhTree.create(cfg);
+		int N = 10000;
+		Random R = new Random(0);
+		long[][] keys = new long[N][3];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < 3; d++) {
+				keys[i][d] = R.nextInt();
+			}
+			tree.put(keys[i], i);
+		}
+		pp.flush();
+		int nPages = file.getNextPageID();
+		//far more free pages than fit into the meta page
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)tree.remove(keys[i]));
+		}
+		pp.flush();
+
+		pp = new PageFilePersistenceProvider(file);
+		tree = pp.loadTree();
+		assertEquals(0, tree.size());
+		for (int i = 0; i < N; i++) {
+			tree.put(keys[i], i);
+		}
+		pp.flush();
+		//the pages of removed nodes are reused after reopening
+		assertTrue(file.getNextPageID() < nPages * 1.1);
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)tree.get(keys[i]));
+		}
+	}
+
+	@Test
+	public void testElkiPageFileBloomFilter() {
+		MemoryPageFile<PhTreePage> file = reopenablePageFile(512);
+		PageFilePersistenceProvider pp = new PageFilePersistenceProvider(file);
+		PhTreeConfig cfg = new PhTreeConfig(3);
+		cfg.setPersistenceProvider(pp);
+		PhTree<Integer> tree = PhTree.create(cfg);
+		int N = 10000;
+		Random R = new Random(0);
+		long[][] keys = new long[N][3];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < 3; d++) {
+				keys[i][d] = R.nextInt();
+			}
+			tree.put(keys[i], i);
+		}
+		pp.flush();
+
+		//no filter stored, it is rebuilt when the tree is loaded
+		pp = new PageFilePersistenceProvider(file);
+		pp.setBloomFilter(new BloomFilter(N, 0.01));
+		tree = pp.loadTree();
+		assertEquals(N, pp.getBloomFilter().getKeyCount());
+		pp.flush();
+
+		//the filter is stored with the tree
+		pp = new PageFilePersistenceProvider(file);
+		tree = pp.loadTree();
+		assertNotNull(pp.getBloomFilter());
+		assertEquals(N, pp.getBloomFilter().getKeyCount());
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)tree.get(keys[i]));
+		}
+		pp.statsReset();
+		long[] key = new long[3];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < 3; d++) {
+				key[d] = keys[i][d] + 1;
+			}
+			assertFalse(tree.contains(key));
+		}
+		assertTrue(pp.statsGetBloomFilterRejects() > N*0.95);
+		assertTrue(pp.statsGetPageReads() < N/10);
+
+		//inserted keys are added to the stored filter
+		long[] newKey = {1, 2, 3};
+		tree.put(newKey, N);
+		pp.flush();
+		pp = new PageFilePersistenceProvider(file);
+		tree = pp.loadTree();
+		assertEquals(N, (int)tree.get(newKey));
+
+		//the pages of a removed filter are reused
+		pp.setBloomFilter(null);
+		pp.flush();
+		int nPages = file.getNextPageID();
+		pp.setBloomFilter(new BloomFilter(N, 0.01));
+		pp.rebuildBloomFilter(tree);
+		pp.flush();
+		assertEquals(nPages, file.getNextPageID());
+		pp = new PageFilePersistenceProvider(file);
+		tree = pp.loadTree();
+		assertEquals(N + 1, pp.getBloomFilter().getKeyCount());
+	}
+
+	/**
+	 * @param pageSize page size
+	 * @return a memory page file that reports an existing file when it is opened again
+	 */
+	private static MemoryPageFile<PhTreePage> reopenablePageFile(int pageSize) {
+		return new MemoryPageFile<PhTreePage>(pageSize) {
+			boolean opened = false;
+
+			@Override
+			public boolean initialize(PageHeader header) {
+				super.initialize(header);
+				boolean existing = opened;
+				opened = true;
+				return existing;
+			}
+		};
+	}
+
+	private void pageFileTest(PhTree<Integer> tree, PageFilePersistenceProvider pp, 
+			int N, int DIM, long SEED) {
+		Random R = new Random(SEED);
+		long[][] keys = new long[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int d = 0; d < DIM; d++) {
+				keys[i][d] = R.nextInt(); //INT!
+			}
+			if (tree.contains(keys[i])) {
+				i--;
+				continue;
+			}
+			tree.put(keys[i], Integer.valueOf(i));
+		}
+		pp.flush();
+		
+		tree = pp.loadTree();
+		assertEquals(N, tree.size());
+		pp.statsReset();
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, (int)tree.get(keys[i]));
+		}
+		assertTrue(pp.statsGetPageReads() >= N);
+		assertEquals(0, pp.statsGetPageWrites());
+		
+		long[] min = new long[DIM];
+		long[] max = new long[DIM];
+		Arrays.fill(min, Long.MIN_VALUE);
+		Arrays.fill(max, Long.MAX_VALUE);
+		assertEquals(N, count(tree.query(min, max)));
+	}
 
 }
@@ -28,7 +28,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -37,12 +39,24 @@ import java.util.Random;
 
 import org.junit.Test;
 
+import ch.ethz.globis.phtree.PhDistanceL;
 import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.PhRangeQuery;
+import ch.ethz.globis.phtree.PhTreeTuner;
 import ch.ethz.globis.phtree.PhTree.PhIterator;
+import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
+import ch.ethz.globis.phtree.PhTree.PhQuery;
 import ch.ethz.globis.phtree.test.util.TestSuper;
 import ch.ethz.globis.phtree.test.util.TestUtil;
 import ch.ethz.globis.phtree.util.BitTools;
 import ch.ethz.globis.phtree.util.Bits;
+import ch.ethz.globis.phtree.util.PhQueryStats;
+import ch.ethz.globis.phtree.util.PhTreeStats;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhQueryKnnMbbPP;
+import ch.ethz.globis.phtree.v12.PhTree12;
+import ch.ethz.globis.phtree.v8.PhTree8;
 
 public class TestIndexQueries extends TestSuper {
 
@@ -1098,4 +1112,386 @@ public class TestIndexQueries extends TestSuper {
 		assertFalse(it.hasNext());
 	}
 	
+	@Test
+	public void testQueryWithThresholds() {
+		final int N = 20000;
+		final int DIM = 4;
+		Random R = new Random(0);
+		long[][] data = new long[N][DIM];
+		for (long[] v : data) {
+			for (int d = 0; d < DIM; d++) {
+				v[d] = R.nextInt(1000);
+			}
+		}
+		PhTreeConfig cfg = new PhTreeConfig(DIM);
+		//linear nodes only, always use binary search
+		cfg.setAhcLhcBias(0);
+		cfg.setNtThreshold(Integer.MAX_VALUE);
+		cfg.setLhcBinarySearchThreshold(0);
+		for (int v = 0; v < 2; v++) {
+			PhTree<long[]> ind = v == 0 ? new PhTree11<>(cfg) : new PhTree12<>(cfg);
+			PhTree<long[]> ref = v == 0 ? new PhTree11<>(DIM) : new PhTree12<>(DIM);
+			for (long[] k : data) {
+				ind.put(k, k);
+				ref.put(k, k);
+			}
+			assertEquals(ref.size(), ind.size());
+			assertEquals(0, ind.getStats().getAhcCount());
+			assertEquals(0, ind.getStats().getNtCount());
+			for (int i = 0; i < 100; i++) {
+				long[] min = new long[DIM];
+				long[] max = new long[DIM];
+				for (int d = 0; d < DIM; d++) {
+					min[d] = R.nextInt(1000);
+					max[d] = min[d] + R.nextInt(300);
+				}
+				int n = 0;
+				PhIterator<long[]> it = ind.query(min, max);
+				while (it.hasNext()) {
+					long[] k = it.nextKey();
+					for (int d = 0; d < DIM; d++) {
+						assertTrue(min[d] <= k[d] && k[d] <= max[d]);
+					}
+					n++;
+				}
+				int nRef = 0;
+				it = ref.query(min, max);
+				while (it.hasNext()) {
+					it.nextKey();
+					nRef++;
+				}
+				assertEquals(nRef, n);
+			}
+		}
+	}
+	
+	@Test
+	public void testQueryWithDepth() {
+		final int N = 20000;
+		final int DIM = 3;
+		final int DEPTH = 16;
+		final int MAX = 1 << DEPTH;
+		Random R = new Random(0);
+		long[][] data = new long[N][DIM];
+		for (long[] v : data) {
+			for (int d = 0; d < DIM; d++) {
+				v[d] = R.nextInt(MAX);
+			}
+		}
+		PhTreeConfig cfg = new PhTreeConfig(DIM);
+		cfg.setDepth(DEPTH);
+		for (int v = 0; v < 2; v++) {
+			PhTree<long[]> ind = v == 0 ? new PhTree11<>(cfg) : new PhTree12<>(cfg);
+			PhTree<long[]> ref = v == 0 ? new PhTree11<>(DIM) : new PhTree12<>(DIM);
+			assertEquals(DEPTH, ind.getBitDepth());
+			for (long[] k : data) {
+				assertEquals(ref.put(k, k) == null, ind.put(k, k) == null);
+			}
+			assertEquals(ref.size(), ind.size());
+			assertTrue(ind.getStats().getNodeCount() < ref.getStats().getNodeCount());
+			for (long[] k : data) {
+				assertTrue(ind.contains(k));
+			}
+			//keys outside of the domain
+			assertFalse(ind.contains(MAX, 0, 0));
+			assertNull(ind.get(-1, 0, 0));
+			assertNull(ind.remove(data[0][0] | MAX, data[0][1], data[0][2]));
+			try {
+				ind.put(new long[] {0, MAX, 0}, null);
+				fail();
+			} catch (IllegalArgumentException e) {
+				//expected
+			}
+			for (int i = 0; i < 100; i++) {
+				long[] min = new long[DIM];
+				long[] max = new long[DIM];
+				for (int d = 0; d < DIM; d++) {
+					//also query boxes that exceed the domain
+					min[d] = R.nextInt(MAX + MAX/2) - MAX/4;
+					max[d] = i % 10 == 0 ? Long.MAX_VALUE : min[d] + R.nextInt(MAX/2);
+				}
+				assertEquals(toSet(ref.query(min, max)), toSet(ind.query(min, max)));
+				long[] center = data[R.nextInt(N)].clone();
+				center[0] = R.nextInt(MAX);
+				PhKnnQuery<long[]> nn = ind.nearestNeighbour(5, center);
+				PhKnnQuery<long[]> nnRef = ref.nearestNeighbour(5, center);
+				while (nnRef.hasNext()) {
+					assertEquals(nnRef.nextEntryReuse().dist(), nn.nextEntryReuse().dist(), 0.0);
+				}
+				assertFalse(nn.hasNext());
+			}
+			for (long[] k : data) {
+				ind.remove(k);
+			}
+			assertEquals(0, ind.size());
+		}
+	}
+
+	private static HashSet<List<Long>> toSet(PhIterator<?> it) {
+		HashSet<List<Long>> set = new HashSet<>();
+		while (it.hasNext()) {
+			long[] k = it.nextKey();
+			List<Long> l = new ArrayList<>(k.length);
+			for (long x : k) {
+				l.add(x);
+			}
+			set.add(l);
+		}
+		return set;
+	}
+
+	@Test
+	public void testTuner() {
+		final int DIM = 6;
+		Random R = new Random(0);
+		long[][] data = new long[20000][DIM];
+		for (long[] v : data) {
+			for (int d = 0; d < DIM; d++) {
+				v[d] = R.nextInt(100);
+			}
+		}
+		PhTreeTuner tuner = new PhTreeTuner(DIM);
+		tuner.setSampleSize(5000);
+		tuner.setRounds(1);
+		tuner.setAhcLhcBiasCandidates(0, 2, 100);
+		tuner.setNtThresholdCandidates(20, 150);
+		for (int i = 0; i < 20; i++) {
+			long[] min = data[R.nextInt(data.length)];
+			long[] max = min.clone();
+			for (int d = 0; d < DIM; d++) {
+				max[d] += 20;
+			}
+			tuner.recordWindowQuery(min, max);
+			tuner.recordKnnQuery(5, data[R.nextInt(data.length)]);
+		}
+		
+		List<PhTreeTuner.Result> results = tuner.evaluate(data, PhTreeTuner.Objective.MEMORY);
+		assertEquals(6, results.size());
+		long minMem = Long.MAX_VALUE;
+		for (PhTreeTuner.Result r : results) {
+			minMem = Math.min(minMem, r.getMemory());
+			PhTreeStats s = r.getStats();
+			assertEquals(s.getNodeCount(), s.getLhcCount() + s.getAhcCount() + s.getNtCount());
+			int n = 0;
+			for (int[] h : s.getNodeTypeHistogram()) {
+				for (int x : h) {
+					n += x;
+				}
+			}
+			assertEquals(s.getNodeCount(), n);
+			assertTrue(r.getThroughput() > 0);
+		}
+		PhTreeTuner.Result best = tuner.tune(data, PhTreeTuner.Objective.MEMORY);
+		assertEquals(minMem, best.getMemory());
+		assertEquals(1.0, best.getScore(), 0.0);
+		
+		//the tuned configuration can be used for a tree
+		PhTree<long[]> ind = PhTree.create(best.getConfig());
+		for (long[] v : data) {
+			ind.put(v, v);
+		}
+		assertTrue(ind.size() > 0);
+	}
+
+	@Test
+	public void testTunerInvalidArguments() {
+		PhTreeTuner tuner = new PhTreeTuner(3);
+		List<Runnable> invalid = Arrays.asList(
+				() -> tuner.setRounds(0),
+				() -> tuner.setSampleSize(0),
+				() -> tuner.setSampleSize(-1),
+				() -> tuner.setAhcLhcBiasCandidates(),
+				() -> tuner.setAhcLhcBiasCandidates(1, -1),
+				() -> tuner.setNtThresholdCandidates(),
+				() -> tuner.setNtThresholdCandidates(0),
+				() -> tuner.setMemoryWeight(1.5));
+		for (Runnable r : invalid) {
+			try {
+				r.run();
+				fail();
+			} catch (IllegalArgumentException e) {
+				//expected
+			}
+		}
+	}
+	
+	@Test
+	public void testStatsMemSize() {
+		final int N = 20000;
+		final int DIM = 8;
+		Random R = new Random(0);
+		for (int v = 0; v < 2; v++) {
+			PhTree<long[]> ind = v == 0 ? new PhTree11<>(DIM) : new PhTree12<>(DIM);
+			for (int i = 0; i < N; i++) {
+				long[] k = new long[DIM];
+				for (int d = 0; d < DIM; d++) {
+					k[d] = R.nextLong();
+				}
+				ind.put(k, k);
+			}
+			PhTreeStats s = ind.getStats();
+			assertTrue(s.getNtCount() > 0);
+			long total = 0;
+			for (int c = PhTreeStats.MEM_NODE; c <= PhTreeStats.MEM_NT; c++) {
+				total += s.getCalculatedMemSize(c);
+			}
+			assertEquals(s.getCalculatedMemSize(), total);
+			assertTrue(s.getCalculatedMemSize(PhTreeStats.MEM_NODE) > 0);
+			assertTrue(s.getCalculatedMemSize(PhTreeStats.MEM_BA) > 0);
+			assertTrue(s.getCalculatedMemSize(PhTreeStats.MEM_NT) > 0);
+			//only v12 has sub-node codes
+			assertEquals(v == 1, s.getCalculatedMemSize(PhTreeStats.MEM_SUBCODES) > 0);
+		}
+	}
+
+	@Test
+	public void testQueryStats() {
+		final int N = 20000;
+		final int DIM = 8;
+		Random R = new Random(0);
+		for (int v = 0; v < 2; v++) {
+			PhTree<long[]> ind = v == 0 ? new PhTree11<>(DIM) : new PhTree12<>(DIM);
+			for (int i = 0; i < N; i++) {
+				long[] k = new long[DIM];
+				for (int d = 0; d < DIM; d++) {
+					k[d] = R.nextInt(1 << 20);
+				}
+				ind.put(k, k);
+			}
+			long[] min = new long[DIM];
+			long[] max = new long[DIM];
+			long[] center = new long[DIM];
+			for (int d = 0; d < DIM; d++) {
+				//the HC incrementer is used for windows with few matching HC positions
+				max[d] = d == 0 ? (1 << 20) : (1 << 19);
+				center[d] = 1 << 19;
+			}
+
+			//window query
+			PhQueryStats window = new PhQueryStats();
+			PhQuery<long[]> q = ind.query(min, max);
+			q.setStats(window);
+			q.reset(min, max);
+			int n = 0;
+			while (q.hasNext()) {
+				q.next();
+				n++;
+			}
+			assertTrue(n > 0);
+			assertEquals(1, window.nQueries);
+			assertEquals(n, window.nPostfixMatched);
+			assertTrue(window.nPostfixChecked > n);
+			assertEquals(window.nNodes, window.nAHC + window.nLHC + window.nNT);
+			assertTrue(window.nNT > 0);
+			assertTrue(window.nHcSkipped > 0);
+			assertEquals(0, window.nDist);
+
+			//range query
+			PhQueryStats range = new PhQueryStats();
+			PhRangeQuery<long[]> rq = ind.rangeQuery(1 << 18, center);
+			rq.setStats(range);
+			rq.reset(1 << 18, center);
+			n = 0;
+			while (rq.hasNext()) {
+				rq.next();
+				n++;
+			}
+			assertTrue(n > 0);
+			assertEquals(1, range.nQueries);
+			assertEquals(n, range.nPostfixMatched);
+			assertTrue(range.nDist >= n);
+			assertTrue(range.nDistPrefix > 0);
+
+			//kNN query
+			PhQueryStats knn = new PhQueryStats();
+			PhKnnQuery<long[]> kq = ind.nearestNeighbour(10, center);
+			kq.setStats(knn);
+			kq.reset(10, null, center);
+			n = 0;
+			while (kq.hasNext()) {
+				kq.next();
+				n++;
+			}
+			assertEquals(10, n);
+			assertEquals(1, knn.nQueries);
+			assertTrue(knn.nNodes > 0);
+			assertTrue(knn.nPostfixMatched >= 10);
+			assertTrue(knn.nDist >= knn.nPostfixMatched);
+
+			//no counting without statistics
+			long nDist = knn.nDist;
+			kq.setStats(null);
+			kq.reset(10, null, center);
+			assertEquals(1, knn.nQueries);
+			assertEquals(nDist, knn.nDist);
+
+			PhQueryStats all = new PhQueryStats().add(window).add(range).add(knn);
+			assertEquals(3, all.nQueries);
+			assertEquals(window.nNodes + range.nNodes + knn.nNodes, all.nNodes);
+			assertEquals(range.nDist + knn.nDist, all.nDist);
+			all.clear();
+			assertEquals(0, all.nNodes);
+		}
+	}
+
+	@Test
+	public void testQueryStatsV8AndKnnMbbPP() {
+		final int N = 20000;
+		final int DIM = 3;
+		Random R = new Random(0);
+		PhTree8<long[]> ind8 = new PhTree8<>(DIM);
+		PhTree12<long[]> ind12 = new PhTree12<>(DIM);
+		for (int i = 0; i < N; i++) {
+			long[] k = new long[DIM];
+			for (int d = 0; d < DIM; d++) {
+				k[d] = R.nextInt(1 << 20);
+			}
+			ind8.put(k, k);
+			ind12.put(k, k);
+		}
+		long[] center = {1 << 19, 1 << 19, 1 << 19};
+
+		//range query on version 8 forwards the statistics to the window query 
+		PhQueryStats range = new PhQueryStats();
+		PhRangeQuery<long[]> rq = ind8.rangeQuery(1 << 17, center);
+		rq.setStats(range);
+		rq.reset(1 << 17, center);
+		int n = 0;
+		while (rq.hasNext()) {
+			rq.next();
+			n++;
+		}
+		assertTrue(n > 0);
+		assertEquals(1, range.nQueries);
+		assertEquals(n, range.nPostfixMatched);
+		assertTrue(range.nPostfixChecked > n);
+		assertTrue(range.nNodes > 0);
+		assertEquals(range.nNodes, range.nAHC + range.nLHC + range.nNT);
+		assertTrue(range.nDist >= n);
+
+		//kNN queries that run window queries count them as part of the kNN query
+		List<PhKnnQuery<long[]>> queries = new ArrayList<>();
+		queries.add(ind8.nearestNeighbour(10, center));
+		queries.add(new PhQueryKnnMbbPP<>(ind12));
+		for (PhKnnQuery<long[]> kq : queries) {
+			PhQueryStats knn = new PhQueryStats();
+			kq.setStats(knn);
+			kq.reset(10, PhDistanceL.THIS, center);
+			n = 0;
+			while (kq.hasNext()) {
+				kq.next();
+				n++;
+			}
+			assertEquals(10, n);
+			assertEquals(1, knn.nQueries);
+			assertTrue(knn.nNodes > 0);
+			assertTrue(knn.nPostfixMatched >= 10);
+			assertTrue(knn.nDist >= knn.nPostfixMatched);
+
+			kq.setStats(null);
+			kq.reset(10, PhDistanceL.THIS, center);
+			assertEquals(1, knn.nQueries);
+		}
+	}
+	
 }
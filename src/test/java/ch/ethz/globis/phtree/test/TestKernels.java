@@ -0,0 +1,111 @@
+package ch.ethz.globis.phtree.test;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import ch.ethz.globis.phtree.util.BitTools;
+import ch.ethz.globis.phtree.util.Kernels;
+
+/**
+ * Compare the vector kernels with the scalar code. These tests are skipped if the 
+ * vector kernels are not available, see {@link Kernels}. They do not need to be enabled.
+ */
+public class TestKernels {
+
+	private static final Kernels VECTOR = Kernels.createVector();
+
+	private static final int[] DIMS = {1, 3, 4, 8, 9, 15, 16, 17, 31, 32, 33, 63, 64};
+
+	@Test
+	public void testPosInArray() {
+		Assume.assumeNotNull(VECTOR);
+		Random R = new Random(0);
+		for (int dims : DIMS) {
+			long[] key = new long[dims];
+			for (int i = 0; i < 1000; i++) {
+				for (int d = 0; d < dims; d++) {
+					key[d] = R.nextLong();
+				}
+				int postLen = R.nextInt(64);
+				long exp = 0;
+				for (int d = 0; d < dims; d++) {
+					exp = (exp << 1) | ((key[d] >>> postLen) & 1L);
+				}
+				assertEquals(exp, VECTOR.posInArray(key, postLen));
+			}
+		}
+	}
+
+	@Test
+	public void testApplyHcPos() {
+		Assume.assumeNotNull(VECTOR);
+		Random R = new Random(0);
+		for (int dims : DIMS) {
+			long[] key = new long[dims];
+			long[] exp = new long[dims];
+			for (int i = 0; i < 1000; i++) {
+				for (int d = 0; d < dims; d++) {
+					key[d] = exp[d] = R.nextLong();
+				}
+				int postLen = R.nextInt(64);
+				long pos = dims == 64 ? R.nextLong() : R.nextLong() & ((1L << dims) - 1);
+				for (int d = 0; d < dims; d++) {
+					long bit = (pos >>> (dims - 1 - d)) & 1L;
+					exp[d] = (exp[d] & ~(1L << postLen)) | (bit << postLen);
+				}
+				VECTOR.applyHcPos(pos, postLen, key);
+				assertArrayEquals(exp, key);
+			}
+		}
+	}
+
+	@Test
+	public void testDistF() {
+		Assume.assumeNotNull(VECTOR);
+		Random R = new Random(0);
+		for (int dims : DIMS) {
+			long[] v1 = new long[dims];
+			long[] v2 = new long[dims];
+			for (int i = 0; i < 1000; i++) {
+				double exp = 0;
+				for (int d = 0; d < dims; d++) {
+					double x1 = (R.nextDouble() - 0.5) * 1000;
+					double x2 = (R.nextDouble() - 0.5) * 1000;
+					v1[d] = BitTools.toSortableLong(x1);
+					v2[d] = BitTools.toSortableLong(x2);
+					exp += (x1 - x2) * (x1 - x2);
+				}
+				exp = Math.sqrt(exp);
+				assertEquals(exp, VECTOR.distF(v1, v2), exp * 1e-14);
+			}
+		}
+	}
+}
@@ -35,11 +35,14 @@ import java.util.Random;
 
 import org.junit.Test;
 
+import ch.ethz.globis.phtree.PhEntryDist;
 import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTree.PhIncrementalQuery;
 import ch.ethz.globis.phtree.PhTree.PhIterator;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
 import ch.ethz.globis.phtree.test.util.TestUtil;
 import ch.ethz.globis.phtree.util.Bits;
+import ch.ethz.globis.phtree.v11.PhTree11;
 
 public class TestNearestNeighbour {
 
@@ -420,6 +423,59 @@ public class TestNearestNeighbour {
 
 
 
+  @Test
+  public void testIncremental() {
+    final int DIM = 3;
+    final int N = 2000;
+    final Random R = new Random(0);
+
+    PhTree<Object> ind = new PhTree11<>(DIM);
+    List<long[]> keys = new ArrayList<>();
+    for (int i = 0; i < N; i++) {
+      long[] v = new long[DIM];
+      for (int j = 0; j < DIM; j++) {
+        v[j] = R.nextInt(2000) - 1000;
+      }
+      if (ind.put(v, v) == null) {
+        keys.add(v);
+      }
+    }
+
+    PhIncrementalQuery<Object> q = ind.incrementalNearestNeighbour(null, new long[DIM]);
+    for (int i = 0; i < 50; i++) {
+      long[] c = new long[DIM];
+      for (int j = 0; j < DIM; j++) {
+        c[j] = R.nextInt(2400) - 1200;
+      }
+      double[] exp = new double[keys.size()];
+      for (int j = 0; j < exp.length; j++) {
+        exp[j] = dist(c, keys.get(j));
+      }
+      Arrays.sort(exp);
+
+      q.reset(null, c);
+      int n = 0;
+      while (q.hasNext()) {
+        double bound = q.lowerBound();
+        PhEntryDist<Object> e = q.nextEntryReuse();
+        assertEquals(exp[n], e.dist(), 0.0);
+        assertEquals(dist(c, (long[]) e.getValue()), e.dist(), 0.0);
+        assertEquals(bound, e.dist(), 0.0);
+        n++;
+        if (n == 100) {
+          //only return entries within the distance of the 100th entry
+          q.setMaxDistance(e.dist());
+        }
+      }
+      int nExp = 100;
+      while (nExp < exp.length && exp[nExp] <= exp[99]) {
+        nExp++;
+      }
+      assertEquals(nExp, n);
+      assertEquals(Double.POSITIVE_INFINITY, q.lowerBound(), 0.0);
+    }
+  }
+
   private long[] nearestNeighbor1(PhTree<?> tree, long[] q) {
     double d = Double.MAX_VALUE;
     long[] best = null;
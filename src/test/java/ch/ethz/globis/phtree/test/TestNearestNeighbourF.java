@@ -40,7 +40,10 @@ import ch.ethz.globis.phtree.PhTreeF;
 import ch.ethz.globis.phtree.PhTree.PhIterator;
 import ch.ethz.globis.phtree.PhTree.PhKnnQuery;
 import ch.ethz.globis.phtree.PhTreeF.PhIteratorF;
+import ch.ethz.globis.phtree.PhTreeF.PhEntryDistF;
 import ch.ethz.globis.phtree.PhTreeF.PhKnnQueryF;
+import ch.ethz.globis.phtree.PhTreeF.PhRangeQueryF;
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
 import ch.ethz.globis.phtree.util.BitTools;
 import ch.ethz.globis.phtree.util.Bits;
 
@@ -235,6 +238,62 @@ public class TestNearestNeighbourF {
     }
   }
 
+  @Test
+	public void testQueryND64RandomQuantize() {
+		final int DIM = 5;
+		final int N = 1000;
+		final int NQ = 200;
+		final int K = 5;
+		final Random R = new Random(0);
+		//A narrow range far from 0 would lose precision with a fixed multiplier
+		double[][] data = new double[N][DIM];
+		for (int i = 0; i < N; i++) {
+			for (int j = 0; j < DIM; j++) {
+				data[i][j] = 1000 + R.nextDouble()*0.001;
+			}
+		}
+		PhTreeF<double[]> ind = PhTreeF.create(data);
+		PreProcessorPointF.Quantize pre = (PreProcessorPointF.Quantize) ind.getPreprocessor();
+		for (double[] v : data) {
+			ind.put(v, v);
+		}
+		assertEquals(N, ind.size());
+		for (int j = 0; j < DIM; j++) {
+			assertTrue(pre.getErrorBound(j) < 1e-15);
+		}
+		PhKnnQueryF<double[]> q = ind.nearestNeighbour(K, new double[DIM]);
+		for (int i = 0; i < NQ; i++) {
+			double[] v = new double[DIM];
+			for (int j = 0; j < DIM; j++) {
+				v[j] = 1000 + R.nextDouble()*0.001;
+			}
+			double[] dExp = new double[N];
+			for (int n = 0; n < N; n++) {
+				dExp[n] = dist(v, data[n]);
+			}
+			Arrays.sort(dExp);
+			q.reset(K, null, v);
+			for (int k = 0; k < K; k++) {
+				assertTrue(q.hasNext());
+				PhEntryDistF<double[]> e = q.nextEntryReuse();
+				assertEquals(dExp[k], dist(v, e.getValue()), 1e-12);
+				assertEquals(dExp[k], e.dist(), 1e-12);
+				for (int j = 0; j < DIM; j++) {
+					assertEquals(e.getValue()[j], e.getKey()[j], pre.getErrorBound(j));
+				}
+			}
+			assertTrue(!q.hasNext());
+			//range query with the distance of the k-th neighbour
+			PhRangeQueryF<double[]> rq = ind.rangeQuery(dExp[K-1] * 1.000001, v);
+			int n = 0;
+			while (rq.hasNext()) {
+				assertTrue(dist(v, rq.nextValue()) <= dExp[K-1] * 1.000001);
+				n++;
+			}
+			assertEquals(K, n);
+		}
+	}
+
   @Test
 	public void testQueryND64RandomDistFunc_OnArray() {
 		final int DIM = 15;
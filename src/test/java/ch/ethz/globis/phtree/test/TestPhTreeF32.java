@@ -0,0 +1,174 @@
+package ch.ethz.globis.phtree.test;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.PhTreeConfig;
+import ch.ethz.globis.phtree.PhTreeF32;
+import ch.ethz.globis.phtree.PhTreeF32.PhEntryDistF32;
+import ch.ethz.globis.phtree.PhTreeF32.PhKnnQueryF32;
+import ch.ethz.globis.phtree.PhTreeF32.PhQueryF32;
+import ch.ethz.globis.phtree.PhTreeF32.PhRangeQueryF32;
+import ch.ethz.globis.phtree.util.BitTools;
+
+public class TestPhTreeF32 {
+
+  @Test
+  public void testCreateKeepsConfig() {
+    PhTreeConfig cfg = new PhTreeConfig(2);
+    PhTreeF32<Integer> tree = PhTreeF32.create(cfg);
+    assertEquals(64, cfg.getDepth());
+    assertEquals(PhTreeF32.DEPTH, tree.getInternalTree().getBitDepth());
+    //the configuration can still be used for 64 bit trees
+    assertEquals(64, PhTree.create(cfg).getBitDepth());
+  }
+
+  @Test
+  public void testSortableUInt() {
+    float[] values = {Float.NEGATIVE_INFINITY, -Float.MAX_VALUE, -1.5f, -Float.MIN_VALUE, 
+        -0f, 0f, Float.MIN_VALUE, 1f, 1.5f, Float.MAX_VALUE, Float.POSITIVE_INFINITY};
+    long prev = -1;
+    for (float f : values) {
+      long l = BitTools.toSortableUInt(f);
+      assertTrue(l >= 0 && l < (1L << 32));
+      assertTrue(l > prev);
+      prev = l;
+      assertEquals(Float.floatToRawIntBits(f), Float.floatToRawIntBits(BitTools.uIntToFloat(l)));
+    }
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    PhTreeF32<float[]> idx = PhTreeF32.create(3);
+    assertEquals(32, idx.getInternalTree().getBitDepth());
+    float[][] data = {{1, 2, 3}, {-1, -2, -3}, {0, -0f, 0}, {1e-40f, 1e30f, -1e-30f},
+        {Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 7}};
+    for (float[] k : data) {
+      assertNull(idx.put(k, k));
+    }
+    assertEquals(data.length, idx.size());
+    for (float[] k : data) {
+      assertTrue(idx.contains(k));
+      assertArrayEquals(k, idx.get(k), 0f);
+    }
+    assertFalse(idx.contains(1, 2, 3.0000002f));
+    assertArrayEquals(data[0], idx.update(data[0], new float[] {4, 5, 6}), 0f);
+    assertFalse(idx.contains(data[0]));
+    assertTrue(idx.contains(4, 5, 6));
+    for (int i = 1; i < data.length; i++) {
+      assertArrayEquals(data[i], idx.remove(data[i]), 0f);
+    }
+    assertEquals(1, idx.size());
+  }
+
+  @Test
+  public void testQueries() {
+    final int DIM = 3;
+    final int N = 10000;
+    final int K = 10;
+    final Random R = new Random(0);
+    float[][] data = new float[N][DIM];
+    PhTreeF32<float[]> idx = PhTreeF32.create(DIM);
+    for (float[] k : data) {
+      for (int d = 0; d < DIM; d++) {
+        k[d] = (R.nextFloat() - 0.5f) * 100;
+      }
+      idx.put(k, k);
+    }
+    assertEquals(N, idx.size());
+    for (int i = 0; i < 100; i++) {
+      float[] min = new float[DIM];
+      float[] max = new float[DIM];
+      float[] center = new float[DIM];
+      for (int d = 0; d < DIM; d++) {
+        min[d] = (R.nextFloat() - 0.5f) * 100;
+        max[d] = min[d] + R.nextFloat() * 30;
+        center[d] = (R.nextFloat() - 0.5f) * 100;
+      }
+      //window query
+      int nExp = 0;
+      for (float[] k : data) {
+        boolean in = true;
+        for (int d = 0; d < DIM; d++) {
+          in &= min[d] <= k[d] && k[d] <= max[d];
+        }
+        nExp += in ? 1 : 0;
+      }
+      PhQueryF32<float[]> q = idx.query(min, max);
+      int n = 0;
+      while (q.hasNext()) {
+        float[] k = q.nextKey();
+        for (int d = 0; d < DIM; d++) {
+          assertTrue(min[d] <= k[d] && k[d] <= max[d]);
+        }
+        n++;
+      }
+      assertEquals(nExp, n);
+      assertEquals(nExp, idx.queryAll(min, max).size());
+      
+      //kNN
+      double[] dists = new double[N];
+      for (int j = 0; j < N; j++) {
+        dists[j] = dist(center, data[j]);
+      }
+      Arrays.sort(dists);
+      PhKnnQueryF32<float[]> knn = idx.nearestNeighbour(K, center);
+      for (int k = 0; k < K; k++) {
+        PhEntryDistF32<float[]> e = knn.nextEntryReuse();
+        assertEquals(dists[k], e.dist(), 0.0);
+        assertEquals(dists[k], dist(center, e.getValue()), 0.0);
+      }
+      assertFalse(knn.hasNext());
+      
+      //range query
+      PhRangeQueryF32<float[]> rq = idx.rangeQuery(dists[K-1], center);
+      n = 0;
+      while (rq.hasNext()) {
+        assertTrue(dist(center, rq.nextValue()) <= dists[K-1]);
+        n++;
+      }
+      assertEquals(K, n);
+    }
+  }
+
+  private static double dist(float[] v1, float[] v2) {
+    double d = 0;
+    for (int i = 0; i < v1.length; i++) {
+      double dl = (double) v1[i] - v2[i];
+      d += dl*dl;
+    }
+    return Math.sqrt(d);
+  }
+}
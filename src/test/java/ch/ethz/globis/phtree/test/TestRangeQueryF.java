@@ -39,6 +39,9 @@ import ch.ethz.globis.phtree.PhTreeF;
 import ch.ethz.globis.phtree.PhTreeF.PhIteratorF;
 import ch.ethz.globis.phtree.PhTreeF.PhRangeQueryF;
 import ch.ethz.globis.phtree.util.BitTools;
+import ch.ethz.globis.phtree.v11.PhTree11;
+import ch.ethz.globis.phtree.v12.PhTree12;
+import ch.ethz.globis.phtree.v8.PhTree8;
 import ch.ethz.globis.phtree.util.Bits;
 
 public class TestRangeQueryF {
@@ -204,6 +207,41 @@ public class TestRangeQueryF {
   }
 
 
+  @Test
+  public void testLastDistance() {
+    lastDistanceTest(PhTreeF.wrap(new PhTree8<Object>(4)));
+    lastDistanceTest(PhTreeF.wrap(new PhTree11<Object>(4)));
+    lastDistanceTest(PhTreeF.wrap(new PhTree12<Object>(4)));
+  }
+
+  private void lastDistanceTest(PhTreeF<Object> ind) {
+    final int DIM = 4;
+    final int N = 2000;
+    final Random R = new Random(0);
+    for (int i = 0; i < N; i++) {
+      double[] v = new double[DIM];
+      for (int j = 0; j < DIM; j++) {
+        v[j] = R.nextDouble()*100;
+      }
+      ind.put(v, v);
+    }
+    PhRangeQueryF<Object> q = ind.rangeQuery(1, new double[DIM]);
+    for (int i = 0; i < 100; i++) {
+      double[] c = new double[DIM];
+      for (int j = 0; j < DIM; j++) {
+        c[j] = R.nextDouble()*100;
+      }
+      q.reset(20, c);
+      int n = 0;
+      while (q.hasNext()) {
+        double[] v = (double[]) q.nextValue();
+        assertEquals(dist(c, v), q.lastDistance(), 0.0);
+        n++;
+      }
+      assertEquals(rangeQuery(ind, 20, c).size(), n);
+    }
+  }
+
   /**
    * This used to return an empty result set.
    */
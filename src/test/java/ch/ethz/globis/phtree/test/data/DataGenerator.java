@@ -0,0 +1,366 @@
+package ch.ethz.globis.phtree.test.data;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+
+import ch.ethz.globis.phtree.util.BitTools;
+
+/**
+ * Reproducible stream of synthetic points. A generator creates its fixed structure
+ * (cluster centers, projections, ...) from the seed that is passed to the constructor,
+ * the points are then drawn from a random stream that can be restarted with
+ * {@link #reset(long)}. Points are returned one at a time, so arbitrarily large data sets
+ * can be generated without keeping them in memory.
+ * <p>
+ * Points may occur more than once. Generators are not thread-safe.
+ *
+ * @see Dataset
+ */
+public abstract class DataGenerator {
+
+	/**
+	 * Mixes the seed of the structure, so that it does not use the same random numbers
+	 * as the points.
+	 */
+	private static final long STRUCTURE_SEED = 0x9E3779B97F4A7C15L;
+
+	protected final int dims;
+	private final long seed;
+	private final double[] buf;
+	protected Random rnd;
+
+	/**
+	 * @param dims number of dimensions
+	 * @param seed the seed of the structure and of the first stream of points
+	 */
+	protected DataGenerator(int dims, long seed) {
+		if (dims < 1) {
+			throw new IllegalArgumentException("dims=" + dims);
+		}
+		this.dims = dims;
+		this.seed = seed;
+		this.buf = new double[dims];
+		this.rnd = new Random(seed);
+	}
+
+	/**
+	 * @return a random source for the structure of the data set, it depends only on the seed
+	 */
+	protected Random structureRandom() {
+		return new Random(seed ^ STRUCTURE_SEED);
+	}
+
+	public int getDims() {
+		return dims;
+	}
+
+	/**
+	 * Restart the stream of points.
+	 * @return this
+	 */
+	public DataGenerator reset() {
+		return reset(seed);
+	}
+
+	/**
+	 * Restart the stream of points with a different seed. The structure of the data set is 
+	 * not changed, this allows, for example, to draw query points from the same distribution 
+	 * as the data.
+	 * @param streamSeed seed of the points
+	 * @return this
+	 */
+	public DataGenerator reset(long streamSeed) {
+		rnd = new Random(streamSeed);
+		return this;
+	}
+
+	/**
+	 * @param out the next point
+	 * @return 'out'
+	 */
+	public abstract double[] next(double[] out);
+
+	/**
+	 * @param out the next point, encoded with {@link BitTools#toSortableLong(double)}
+	 * @return 'out'
+	 */
+	public long[] nextKey(long[] out) {
+		return encode(next(buf), out);
+	}
+
+	/**
+	 * @param n number of points
+	 * @return the next 'n' points
+	 */
+	public double[][] points(int n) {
+		double[][] points = new double[n][];
+		for (int i = 0; i < n; i++) {
+			points[i] = next(new double[dims]);
+		}
+		return points;
+	}
+
+	/**
+	 * @param n number of points
+	 * @return the next 'n' points, encoded with {@link BitTools#toSortableLong(double)}
+	 */
+	public long[][] keys(int n) {
+		long[][] keys = new long[n][];
+		for (int i = 0; i < n; i++) {
+			keys[i] = nextKey(new long[dims]);
+		}
+		return keys;
+	}
+
+	public static long[] encode(double[] point, long[] out) {
+		for (int d = 0; d < point.length; d++) {
+			out[d] = BitTools.toSortableLong(point[d]);
+		}
+		return out;
+	}
+
+	/**
+	 * Uniformly distributed points in the unit cube.
+	 */
+	public static class Cube extends DataGenerator {
+
+		public Cube(int dims, long seed) {
+			super(dims, seed);
+		}
+
+		@Override
+		public double[] next(double[] out) {
+			for (int d = 0; d < dims; d++) {
+				out[d] = rnd.nextDouble();
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Gaussian clusters with their centers evenly distributed on a line, as in the PH-tree paper.
+	 * The line runs parallel to the first axis from {@code (0, offset, offset, ...)} to 
+	 * {@code (1, offset, offset, ...)}. For an offset of 0.5, all points lie close to a 
+	 * bit boundary of the keys. 
+	 */
+	public static class Cluster extends DataGenerator {
+
+		public static final int N_CLUSTERS = 1000;
+		public static final double SIGMA = 0.0001;
+
+		private final double offset;
+
+		public Cluster(int dims, long seed, double offset) {
+			super(dims, seed);
+			this.offset = offset;
+		}
+
+		@Override
+		public double[] next(double[] out) {
+			int c = rnd.nextInt(N_CLUSTERS);
+			out[0] = (c + 0.5) / N_CLUSTERS + rnd.nextGaussian() * SIGMA;
+			for (int d = 1; d < dims; d++) {
+				out[d] = offset + rnd.nextGaussian() * SIGMA;
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Points in the unit cube with a power-law density, most points are close to the origin. 
+	 * Every coordinate is {@code u^exponent} for a uniformly distributed {@code u}.
+	 */
+	public static class PowerLaw extends DataGenerator {
+
+		private final double exponent;
+
+		public PowerLaw(int dims, long seed, double exponent) {
+			super(dims, seed);
+			this.exponent = exponent;
+		}
+
+		@Override
+		public double[] next(double[] out) {
+			for (int d = 0; d < dims; d++) {
+				out[d] = Math.pow(rnd.nextDouble(), exponent);
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Two dimensional points on line segments in the unit square, similar to the road data of
+	 * the TIGER/Line data set. Roads start around a few towns, most of them run along the
+	 * axes of a street grid. The coordinates are rounded to {@link #RESOLUTION}, so points 
+	 * on the same street share a coordinate. All coordinates are in {@code [0,1)}.
+	 */
+	public static class Tiger extends DataGenerator {
+
+		public static final double RESOLUTION = 1e-6;
+		private static final int N_TOWNS = 100;
+		private static final double TOWN_SIGMA = 0.02;
+		private static final double STEP = 0.0005;
+		private static final int MEAN_ROAD_POINTS = 50;
+		private static final double P_GRID = 0.7;
+		private static final double P_TURN = 0.05;
+
+		private final double[][] towns;
+		private double x;
+		private double y;
+		private double dx;
+		private double dy;
+		private boolean grid;
+		private int remaining;
+
+		public Tiger(int dims, long seed) {
+			super(dims, seed);
+			if (dims != 2) {
+				throw new IllegalArgumentException("Tiger data is 2D: dims=" + dims);
+			}
+			Random r = structureRandom();
+			towns = new double[N_TOWNS][2];
+			for (double[] t : towns) {
+				t[0] = r.nextDouble();
+				t[1] = r.nextDouble();
+			}
+		}
+
+		@Override
+		public DataGenerator reset(long streamSeed) {
+			remaining = 0;
+			return super.reset(streamSeed);
+		}
+
+		private void newRoad() {
+			//large towns have more roads
+			double u = rnd.nextDouble();
+			double[] t = towns[(int) (u * u * N_TOWNS)];
+			x = clamp(t[0] + rnd.nextGaussian() * TOWN_SIGMA);
+			y = clamp(t[1] + rnd.nextGaussian() * TOWN_SIGMA);
+			grid = rnd.nextDouble() < P_GRID;
+			if (grid) {
+				x = round(x);
+				y = round(y);
+				int dir = rnd.nextInt(4);
+				dx = dir == 0 ? 1 : (dir == 1 ? -1 : 0);
+				dy = dir == 2 ? 1 : (dir == 3 ? -1 : 0);
+			} else {
+				turn(rnd.nextDouble() * 2 * Math.PI);
+			}
+			remaining = 1 + (int) (-Math.log(1 - rnd.nextDouble()) * MEAN_ROAD_POINTS);
+		}
+
+		private void turn(double angle) {
+			dx = Math.cos(angle);
+			dy = Math.sin(angle);
+		}
+
+		@Override
+		public double[] next(double[] out) {
+			if (remaining == 0) {
+				newRoad();
+			}
+			out[0] = round(x);
+			out[1] = round(y);
+			remaining--;
+			if (!grid && rnd.nextDouble() < P_TURN) {
+				turn(Math.atan2(dy, dx) + rnd.nextGaussian() * 0.3);
+			}
+			x += dx * STEP;
+			y += dy * STEP;
+			if (x < 0 || x >= 1 || y < 0 || y >= 1) {
+				remaining = 0;
+			}
+			return out;
+		}
+
+		private static double clamp(double v) {
+			return Math.min(Math.max(v, 0), Math.nextDown(1.0));
+		}
+
+		private static double round(double v) {
+			return Math.min(Math.rint(v / RESOLUTION) * RESOLUTION, 1 - RESOLUTION);
+		}
+	}
+
+	/**
+	 * High dimensional vectors with unit length, similar to the embeddings of text or images.
+	 * The points are drawn from Gaussian topics in a low dimensional latent space, projected 
+	 * with a random linear map, disturbed by noise and normalized. The coordinates lie in
+	 * {@code [-1,1]}, the intrinsic dimensionality is about {@code latentDims}.
+	 */
+	public static class Embedding extends DataGenerator {
+
+		private static final int N_TOPICS = 100;
+		private static final double TOPIC_SIGMA = 0.3;
+		private static final double NOISE_SIGMA = 0.05;
+
+		private final double[][] topics;
+		private final double[][] projection;
+		private final double[] latent;
+
+		public Embedding(int dims, long seed, int latentDims) {
+			super(dims, seed);
+			Random r = structureRandom();
+			topics = new double[N_TOPICS][latentDims];
+			for (double[] t : topics) {
+				for (int i = 0; i < latentDims; i++) {
+					t[i] = r.nextGaussian();
+				}
+			}
+			projection = new double[dims][latentDims];
+			double scale = 1 / Math.sqrt(latentDims);
+			for (double[] p : projection) {
+				for (int i = 0; i < latentDims; i++) {
+					p[i] = r.nextGaussian() * scale;
+				}
+			}
+			latent = new double[latentDims];
+		}
+
+		@Override
+		public double[] next(double[] out) {
+			double[] t = topics[rnd.nextInt(N_TOPICS)];
+			for (int i = 0; i < latent.length; i++) {
+				latent[i] = t[i] + rnd.nextGaussian() * TOPIC_SIGMA;
+			}
+			double len = 0;
+			for (int d = 0; d < dims; d++) {
+				double[] p = projection[d];
+				double v = rnd.nextGaussian() * NOISE_SIGMA;
+				for (int i = 0; i < latent.length; i++) {
+					v += p[i] * latent[i];
+				}
+				out[d] = v;
+				len += v * v;
+			}
+			len = Math.sqrt(len);
+			for (int d = 0; d < dims; d++) {
+				out[d] /= len;
+			}
+			return out;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package ch.ethz.globis.phtree.test.data;
+
+/*
+This file is part of ELKI:
+Environment for Developing KDD-Applications Supported by Index-Structures
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Predefined synthetic data sets.
+ */
+public enum Dataset {
+	/**
+	 * Uniformly distributed points in the unit cube.
+	 */
+	CUBE {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.Cube(dims, seed);
+		}
+	},
+	/**
+	 * Gaussian clusters on a line through the center of the unit cube, see
+	 * {@link DataGenerator.Cluster}.
+	 */
+	CLUSTER_0_5 {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.Cluster(dims, seed, 0.5);
+		}
+	},
+	/**
+	 * Gaussian clusters on a line with an offset of 5, outside of the unit cube.
+	 */
+	CLUSTER_5 {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.Cluster(dims, seed, 5);
+		}
+	},
+	/**
+	 * Power-law distributed coordinates in the unit cube, see {@link DataGenerator.PowerLaw}.
+	 */
+	SKEWED {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.PowerLaw(dims, seed, 4);
+		}
+	},
+	/**
+	 * Road-like line segments, two dimensions only, see {@link DataGenerator.Tiger}.
+	 */
+	TIGER {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.Tiger(dims, seed);
+		}
+	},
+	/**
+	 * Normalized vectors with an intrinsic dimensionality of at most 8, 
+	 * see {@link DataGenerator.Embedding}.
+	 */
+	EMBEDDING {
+		@Override
+		public DataGenerator create(int dims, long seed) {
+			return new DataGenerator.Embedding(dims, seed, Math.min(dims, 8));
+		}
+	};
+
+	/**
+	 * @param dims number of dimensions
+	 * @param seed seed of the data set
+	 * @return a new generator
+	 */
+	public abstract DataGenerator create(int dims, long seed);
+}
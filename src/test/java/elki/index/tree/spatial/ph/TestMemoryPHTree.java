@@ -0,0 +1,366 @@
+package elki.index.tree.spatial.ph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import ch.ethz.globis.phtree.PhTree;
+import ch.ethz.globis.phtree.pre.PreProcessorPointF;
+import ch.ethz.globis.phtree.util.PhTreeStats;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.ids.ModifiableDoubleDBIDList;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
+import elki.distance.minkowski.MinimumDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.minkowski.WeightedEuclideanDistance;
+import elki.distance.minkowski.WeightedSquaredEuclideanDistance;
+
+/**
+ * Tests of the ELKI index adapter {@link MemoryPHTree}.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class TestMemoryPHTree {
+  /**
+   * The bulk insertion must result in the same index as inserting the objects
+   * one by one, also when several objects have the same coordinates.
+   */
+  @Test
+  public void testBulkLoadDuplicates() {
+    Random r = new Random(0);
+    double[][] data = new double[5000][3];
+    for(double[] p : data) {
+      for(int d = 0; d < p.length; d++) {
+        // few distinct values: many duplicates
+        p[d] = r.nextInt(8) - 4;
+      }
+    }
+    Relation<NumberVector> relation = relation(data);
+    DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+    for(boolean parallel : new boolean[] { false, true }) {
+      MemoryPHTree<NumberVector> bulk = new MemoryPHTree<>(relation, parallel);
+      bulk.initialize();
+      MemoryPHTree<NumberVector> single = new MemoryPHTree<>(relation, parallel);
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        single.insert(it);
+      }
+
+      KNNSearcher<NumberVector> knnB = bulk.kNNByObject(dq, 10, 0);
+      KNNSearcher<NumberVector> knnS = single.kNNByObject(dq, 10, 0);
+      RangeSearcher<NumberVector> rangeB = bulk.rangeByObject(dq, 2., 0);
+      RangeSearcher<NumberVector> rangeS = single.rangeByObject(dq, 2., 0);
+      // all 512 distinct keys
+      assertEquals(512, rangeB.getRange(relation.get(relation.iterDBIDs()), 100.).size());
+      DBIDArrayIter iter = DBIDUtil.ensureArray(relation.getDBIDs()).iter();
+      for(int i = 0; i < 200; i++) {
+        NumberVector q = relation.get(iter.seek(r.nextInt(data.length)));
+        KNNList kb = knnB.getKNN(q, 10);
+        KNNList ks = knnS.getKNN(q, 10);
+        assertEquals(10, kb.size());
+        assertSameResult(ks, kb);
+        DoubleDBIDList rb = rangeB.getRange(q, 2.);
+        DoubleDBIDList rs = rangeS.getRange(q, 2.);
+        assertSameResult(rs, rb);
+      }
+    }
+  }
+
+  /**
+   * The tree uses the thresholds of the settings, and objects can be deleted
+   * from nodes with the nested tree representation.
+   */
+  @Test
+  public void testDeleteWithThresholds() {
+    Random r = new Random(0);
+    // few distinct values per dimension: large nodes
+    Set<String> distinct = new HashSet<>();
+    double[][] data = new double[20000][];
+    for(int i = 0; i < data.length; i++) {
+      double[] p = new double[8];
+      for(int d = 0; d < p.length; d++) {
+        p[d] = r.nextInt(4);
+      }
+      if(!distinct.add(Arrays.toString(p))) {
+        i--;
+        continue;
+      }
+      data[i] = p;
+    }
+    Relation<NumberVector> relation = relation(data);
+    DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+    NumberVector q = relation.get(relation.iterDBIDs());
+    for(PhtSettings.Version v : new PhtSettings.Version[] { PhtSettings.Version.V11, PhtSettings.Version.V12 }) {
+      // never AHC, NT already for small nodes
+      PhtSettings settings = new PhtSettings(v, PhtSettings.Preprocessor.IEEE, PhtSettings.DEFAULT_SCALE, 0., 40);
+      PhTree<double[]> tree = settings.createTree(8, 64);
+      PreProcessorPointF pre = settings.createPreprocessor(relation, 8);
+      for(double[] p : data) {
+        long[] key = new long[8];
+        pre.pre(p, key);
+        tree.put(key, p);
+      }
+      PhTreeStats stats = tree.getStats();
+      assertEquals(0, stats.getAhcCount());
+      assertTrue(stats.getNtCount() > 0);
+
+      MemoryPHTree<NumberVector> index = new MemoryPHTree<>(relation, false, settings);
+      index.initialize();
+      // incremental search is only implemented by V11
+      assertEquals(v == PhtSettings.Version.V11, index.priorityByObject(dq, 100., 0) != null);
+      RangeSearcher<NumberVector> rq = index.rangeByObject(dq, 100., 0);
+      int n = data.length;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        assertTrue(index.delete(it));
+        assertFalse(index.delete(it));
+        if(--n % 1000 == 0) {
+          assertEquals(n, rq.getRange(q, 100.).size());
+        }
+      }
+    }
+  }
+
+  /**
+   * kNN and range queries must return the same results as a linear scan, with
+   * the exact and with the quantizing key encoding. The Lp norms restrict the
+   * query box, the other distances rely on pruning with {@code minDist} only.
+   */
+  @Test
+  public void testDistancesLinearScan() {
+    Random r = new Random(0);
+    double[][] data = new double[1000][3];
+    for(double[] p : data) {
+      for(int d = 0; d < p.length; d++) {
+        p[d] = r.nextGaussian();
+      }
+    }
+    Relation<NumberVector> relation = relation(data);
+    double[] weights = { 0.5, 1., 2. };
+    List<SpatialPrimitiveDistance<? super NumberVector>> distances = Arrays.asList(//
+        EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, ManhattanDistance.STATIC, //
+        MaximumDistance.STATIC, MinimumDistance.STATIC, new LPNormDistance(3), //
+        new WeightedEuclideanDistance(weights), new WeightedSquaredEuclideanDistance(weights));
+    for(boolean exact : new boolean[] { false, true }) {
+      MemoryPHTree<NumberVector> index = new MemoryPHTree<>(relation, false, exact);
+      index.initialize();
+      for(SpatialPrimitiveDistance<? super NumberVector> df : distances) {
+        DistanceQuery<NumberVector> dq = df.instantiate(relation);
+        KNNSearcher<NumberVector> knnq = index.kNNByObject(dq, 10, 0);
+        RangeSearcher<NumberVector> rangeq = index.rangeByObject(dq, 1., 0);
+        DBIDArrayIter iter = DBIDUtil.ensureArray(relation.getDBIDs()).iter();
+        for(int i = 0; i < 50; i++) {
+          NumberVector q = relation.get(iter.seek(r.nextInt(data.length)));
+          ModifiableDoubleDBIDList scan = DBIDUtil.newDistanceDBIDList();
+          for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+            scan.add(df.distance(q, relation.get(it)), it);
+          }
+          scan.sort();
+          KNNList knn = knnq.getKNN(q, 10);
+          assertSameResult(scan.slice(0, 10), knn);
+          // the radius of the squared Euclidean distance is mostly < 1.
+          // The quantized keys may put objects on the radius slightly outside
+          double range = exact ? scan.doubleValue(9) : (scan.doubleValue(9) + scan.doubleValue(10)) * .5;
+          assertSameResult(scan.slice(0, 10), rangeq.getRange(q, range));
+        }
+      }
+    }
+  }
+
+  /**
+   * The priority searcher must enumerate all objects in the order of a linear
+   * scan. Without exact keys, the distances and bounds of the tree are only
+   * accurate up to the quantization error.
+   */
+  @Test
+  public void testPrioritySearcher() {
+    Random r = new Random(0);
+    double[][] data = new double[1000][3];
+    for(double[] p : data) {
+      for(int d = 0; d < p.length; d++) {
+        p[d] = r.nextGaussian();
+      }
+    }
+    Relation<NumberVector> relation = relation(data);
+    DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+    for(boolean exact : new boolean[] { false, true }) {
+      final double eps = exact ? 0. : 1e-12;
+      MemoryPHTree<NumberVector> index = new MemoryPHTree<>(relation, false, exact);
+      index.initialize();
+      PrioritySearcher<NumberVector> ps = index.priorityByObject(dq, Double.POSITIVE_INFINITY, 0);
+      DBIDArrayIter iter = DBIDUtil.ensureArray(relation.getDBIDs()).iter();
+      for(int i = 0; i < 20; i++) {
+        NumberVector q = relation.get(iter.seek(r.nextInt(data.length)));
+        ModifiableDoubleDBIDList scan = DBIDUtil.newDistanceDBIDList();
+        for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+          scan.add(dq.distance(q, it), it);
+        }
+        scan.sort();
+        int n = 0;
+        for(ps.search(q); ps.valid(); ps.advance(), n++) {
+          double d = ps.computeExactDistance();
+          assertEquals(scan.doubleValue(n), d, eps);
+          assertEquals(d, ps.getApproximateDistance(), eps);
+          // bound of the objects that were not returned yet
+          if(n + 1 < data.length) {
+            assertTrue(ps.allLowerBound() <= scan.doubleValue(n + 1) + eps);
+          }
+        }
+        assertEquals(data.length, n);
+        assertSameResult(scan.slice(0, 10), ps.getKNN(q, 10));
+        double range = (scan.doubleValue(9) + scan.doubleValue(10)) * .5;
+        assertSameResult(scan.slice(0, 10), ps.getRange(q, range, DBIDUtil.newDistanceDBIDList()));
+      }
+    }
+  }
+
+  /**
+   * The query box of the squared Euclidean distance is the box of the root of
+   * the query radius.
+   */
+  @Test
+  public void testSquaredEuclideanBox() {
+    PreProcessorPointF pre = new PreProcessorPointF.IEEE();
+    PhNorm norm = new PhNorm(SquaredEuclideanDistance.STATIC, 2, pre);
+    long[] center = new long[2], min = new long[2], max = new long[2];
+    pre.pre(new double[] { 0.5, -1. }, center);
+    norm.toMBB(0.25, center, min, max);
+    // the box is widened by a few ulps only
+    double[] dmin = new double[2], dmax = new double[2];
+    pre.post(min, dmin);
+    pre.post(max, dmax);
+    assertArrayEquals(new double[] { 0., -1.5 }, dmin, 1e-15);
+    assertArrayEquals(new double[] { 1., -0.5 }, dmax, 1e-15);
+    assertTrue(dmin[0] <= 0. && dmin[1] <= -1.5);
+    assertTrue(dmax[0] >= 1. && dmax[1] >= -0.5);
+  }
+
+  /**
+   * Computing the query box and the distance to a node must not allocate, the
+   * kNN and range queries call them for every query and node. The allocated
+   * bytes are measured with {@code com.sun.management.ThreadMXBean}, the test
+   * is skipped on JVMs that do not support this.
+   */
+  @Test
+  public void testPhNormNoAllocation() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(mx.isThreadAllocatedMemorySupported());
+    mx.setThreadAllocatedMemoryEnabled(true);
+    PreProcessorPointF pre = new PreProcessorPointF.IEEE();
+    long[] center = new long[3], min = new long[3], max = new long[3];
+    pre.pre(new double[] { 0.5, -1., 2. }, center);
+    List<SpatialPrimitiveDistance<? super NumberVector>> distances = Arrays.asList(//
+        EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, ManhattanDistance.STATIC, //
+        new WeightedEuclideanDistance(new double[] { 0.5, 1., 2. }));
+    for(SpatialPrimitiveDistance<? super NumberVector> df : distances) {
+      PhNorm norm = new PhNorm(df, 3, pre);
+      String name = df.getClass().getSimpleName();
+      assertNoAllocation(mx, name + " toMBB()", () -> norm.toMBB(0.25, center, min, max));
+      assertNoAllocation(mx, name + " distToPrefix()", () -> norm.distToPrefix(center, min, 40));
+    }
+  }
+
+  /**
+   * Check that an operation does not allocate once it is compiled. Several
+   * rounds are allowed, because interpreted code may allocate where compiled
+   * code does not.
+   *
+   * @param mx Thread bean
+   * @param name Operation name
+   * @param op Operation
+   */
+  private static void assertNoAllocation(com.sun.management.ThreadMXBean mx, String name, Runnable op) {
+    for(int i = 0; i < 10000; i++) {
+      op.run();
+    }
+    long id = Thread.currentThread().getId();
+    long minBytes = Long.MAX_VALUE;
+    for(int r = 0; r < 50; r++) {
+      long start = mx.getThreadAllocatedBytes(id);
+      for(int i = 0; i < 200; i++) {
+        op.run();
+      }
+      minBytes = Math.min(minBytes, mx.getThreadAllocatedBytes(id) - start);
+      if(minBytes == 0) {
+        return;
+      }
+    }
+    fail(name + " allocates " + minBytes / 200. + " bytes per call");
+  }
+
+  /**
+   * The corners of large nodes decode to NaN with the IEEE encoding, the box
+   * must then be extended to infinity instead.
+   */
+  @Test
+  public void testNaNPrefixBox() {
+    PreProcessorPointF pre = new PreProcessorPointF.IEEE();
+    PhNorm norm = new PhNorm(MinimumDistance.STATIC, 2, pre);
+    // x from 0 to NaN, y from NaN to -0
+    long[] prefix = { 0L, Long.MIN_VALUE };
+    long[] v = new long[2];
+    pre.pre(new double[] { -1., 1. }, v);
+    assertEquals(1., norm.distToPrefix(v, prefix, 63), 0.);
+    pre.pre(new double[] { 1., -1. }, v);
+    assertEquals(0., norm.distToPrefix(v, prefix, 63), 0.);
+  }
+
+  /**
+   * Create an in-memory relation.
+   *
+   * @param data Vectors
+   * @return relation
+   */
+  private static Relation<NumberVector> relation(double[][] data) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Compare two query results. Objects with equal distances may be reported
+   * in any order, so only the distances and the sets of objects are compared.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameResult(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals(expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals(e.doubleValue(), a.doubleValue(), 0.);
+    }
+    assertEquals(expected.size(), DBIDUtil.intersectionSize(expected, actual));
+  }
+}